@@ -0,0 +1,108 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare, 2018.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.italiangrid.storm.webdav.authz;
+
+import static com.codahale.metrics.MetricRegistry.name;
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.util.Collection;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.security.core.GrantedAuthority;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+
+/**
+ * Memoizes the authorities computed for a normalized credential (e.g. the VO and FQANs found
+ * in a VOMS proxy, or the issuer and claims of a token). Cached sets are immutable, so they can be
+ * shared by concurrent requests.
+ */
+public class AuthoritiesCache {
+
+  public static final Logger LOG = LoggerFactory.getLogger(AuthoritiesCache.class);
+
+  private static final AuthoritiesCache DISABLED = new AuthoritiesCache();
+
+  private final Cache<Object, Set<GrantedAuthority>> cache;
+
+  private final Meter hits;
+  private final Meter misses;
+
+  private AuthoritiesCache() {
+    cache = null;
+    hits = new Meter();
+    misses = new Meter();
+  }
+
+  public AuthoritiesCache(MetricRegistry registry, long maxSize) {
+    checkArgument(maxSize > 0, "maxSize must be > 0");
+    cache = CacheBuilder.newBuilder().maximumSize(maxSize).build();
+    hits = registry.meter(name(AuthoritiesCache.class, "hits"));
+    misses = registry.meter(name(AuthoritiesCache.class, "misses"));
+    registry.gauge(name(AuthoritiesCache.class, "size"), () -> cache::size);
+  }
+
+  public static AuthoritiesCache disabled() {
+    return DISABLED;
+  }
+
+  public Set<GrantedAuthority> get(Object credentialKey,
+      Supplier<Collection<? extends GrantedAuthority>> loader) {
+
+    if (cache == null) {
+      return ImmutableSet.copyOf(loader.get());
+    }
+
+    Set<GrantedAuthority> authorities = cache.getIfPresent(credentialKey);
+
+    if (authorities != null) {
+      hits.mark();
+      return authorities;
+    }
+
+    try {
+      return cache.get(credentialKey, () -> {
+        misses.mark();
+        return ImmutableSet.copyOf(loader.get());
+      });
+    } catch (ExecutionException | UncheckedExecutionException e) {
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      throw new IllegalStateException(e.getCause());
+    }
+  }
+
+  public void invalidateAll() {
+    if (cache != null) {
+      LOG.debug("Invalidating cached authorities");
+      cache.invalidateAll();
+    }
+  }
+
+  public long size() {
+    return cache == null ? 0 : cache.size();
+  }
+}
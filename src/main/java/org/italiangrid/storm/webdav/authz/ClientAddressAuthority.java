@@ -0,0 +1,134 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare, 2018.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.italiangrid.storm.webdav.authz;
+
+import static java.lang.String.format;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.web.util.matcher.IpAddressMatcher;
+
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableList;
+import com.google.common.net.InetAddresses;
+
+/**
+ * An authority restricting the client addresses a credential can be used from, given as a comma
+ * separated list of addresses or CIDR ranges, e.g. <code>192.168.1.0/24,::1</code>. The ranges
+ * are validated and compiled once, when the authority is created.
+ */
+public class ClientAddressAuthority implements GrantedAuthority {
+
+  private static final long serialVersionUID = 1L;
+
+  public static final String AUTHORITY_TEMPLATE = "CLIENT_ADDRESS(%s)";
+
+  private static final Splitter RANGE_SPLITTER = Splitter.on(',').trimResults().omitEmptyStrings();
+
+  private final List<String> ranges;
+  private final String authority;
+
+  private transient volatile List<IpAddressMatcher> matchers;
+
+  public ClientAddressAuthority(String ranges) {
+    this.ranges = ImmutableList.copyOf(RANGE_SPLITTER.split(ranges));
+
+    if (this.ranges.isEmpty()) {
+      throw new IllegalArgumentException("Empty client address restriction");
+    }
+
+    this.ranges.forEach(ClientAddressAuthority::validateRange);
+    this.authority = format(AUTHORITY_TEMPLATE, String.join(",", this.ranges));
+    this.matchers = compile(this.ranges);
+  }
+
+  private static void validateRange(String range) {
+    final int idx = range.indexOf('/');
+    final String address = idx < 0 ? range : range.substring(0, idx);
+
+    // Checked upfront, as IpAddressMatcher would resolve host names
+    if (!InetAddresses.isInetAddress(address)) {
+      throw new IllegalArgumentException(format("Invalid client address: '%s'", range));
+    }
+
+    if (idx >= 0) {
+      final int maxBits = InetAddresses.forString(address).getAddress().length * 8;
+      try {
+        final int bits = Integer.parseInt(range.substring(idx + 1));
+        if (bits < 0 || bits > maxBits) {
+          throw new IllegalArgumentException(format("Invalid client address range: '%s'", range));
+        }
+      } catch (NumberFormatException e) {
+        throw new IllegalArgumentException(format("Invalid client address range: '%s'", range),
+            e);
+      }
+    }
+  }
+
+  private static List<IpAddressMatcher> compile(List<String> ranges) {
+    return ranges.stream().map(IpAddressMatcher::new).collect(Collectors.toList());
+  }
+
+  public boolean matches(String clientAddress) {
+    if (clientAddress == null || !InetAddresses.isInetAddress(clientAddress)) {
+      return false;
+    }
+
+    if (matchers == null) {
+      matchers = compile(ranges);
+    }
+
+    for (IpAddressMatcher m : matchers) {
+      if (m.matches(clientAddress)) {
+        return true;
+      }
+    }
+
+    return false;
+  }
+
+  public List<String> getRanges() {
+    return ranges;
+  }
+
+  @Override
+  public String getAuthority() {
+    return authority;
+  }
+
+  @Override
+  public String toString() {
+    return authority;
+  }
+
+  @Override
+  public int hashCode() {
+    return authority.hashCode();
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    if (this == obj) {
+      return true;
+    }
+    if (obj == null || getClass() != obj.getClass()) {
+      return false;
+    }
+    return authority.equals(((ClientAddressAuthority) obj).authority);
+  }
+}
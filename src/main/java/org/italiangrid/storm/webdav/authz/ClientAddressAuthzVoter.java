@@ -0,0 +1,72 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare, 2018.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.italiangrid.storm.webdav.authz;
+
+import java.util.Collection;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.security.access.AccessDecisionVoter;
+import org.springframework.security.access.ConfigAttribute;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.web.FilterInvocation;
+
+/**
+ * Denies access when the principal holds {@link ClientAddressAuthority} restrictions and the
+ * client address does not satisfy all of them. Abstains otherwise, so that access is still
+ * decided by the other voters.
+ */
+public class ClientAddressAuthzVoter implements AccessDecisionVoter<FilterInvocation> {
+
+  private static final Logger logger = LoggerFactory.getLogger(ClientAddressAuthzVoter.class);
+
+  @Override
+  public boolean supports(ConfigAttribute attribute) {
+    return false;
+  }
+
+  @Override
+  public boolean supports(Class<?> clazz) {
+    return FilterInvocation.class.isAssignableFrom(clazz);
+  }
+
+  @Override
+  public int vote(Authentication authentication, FilterInvocation filter,
+      Collection<ConfigAttribute> attributes) {
+
+    if (authentication == null) {
+      return ACCESS_ABSTAIN;
+    }
+
+    final String clientAddress = filter.getRequest().getRemoteAddr();
+
+    for (GrantedAuthority a : authentication.getAuthorities()) {
+      if (a instanceof ClientAddressAuthority
+          && !((ClientAddressAuthority) a).matches(clientAddress)) {
+
+        if (logger.isDebugEnabled()) {
+          logger.debug("Access denied. Client address {} does not match restriction {}",
+              clientAddress, a);
+        }
+
+        return ACCESS_DENIED;
+      }
+    }
+
+    return ACCESS_ABSTAIN;
+  }
+}
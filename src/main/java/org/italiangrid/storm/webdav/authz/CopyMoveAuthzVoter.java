@@ -19,12 +19,15 @@ import static org.italiangrid.storm.webdav.server.servlet.WebDAVMethod.COPY;
 
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 import java.util.Collection;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import javax.servlet.http.HttpServletRequest;
 
+import org.italiangrid.storm.webdav.authz.scope.PathScopeAuthority;
 import org.italiangrid.storm.webdav.config.StorageAreaConfiguration;
 import org.italiangrid.storm.webdav.config.StorageAreaInfo;
 import org.italiangrid.storm.webdav.server.PathResolver;
@@ -34,6 +37,7 @@ import org.slf4j.LoggerFactory;
 import org.springframework.security.access.AccessDecisionVoter;
 import org.springframework.security.access.ConfigAttribute;
 import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.web.FilterInvocation;
 
 public class CopyMoveAuthzVoter implements AccessDecisionVoter<FilterInvocation> {
@@ -87,11 +91,24 @@ public class CopyMoveAuthzVoter implements AccessDecisionVoter<FilterInvocation>
     return path;
   }
 
-  private StorageAreaInfo getSAFromPath(String destinationURL) throws MalformedURLException {
-
+  private String getPathInContext(String destinationURL) throws MalformedURLException {
     URL url = new URL(destinationURL);
-    String pathInContext = dropSlashWebdavFromPath(url.getPath());
-    return pathResolver.resolveStorageArea(pathInContext);
+    return dropSlashWebdavFromPath(url.getPath());
+  }
+
+  private boolean destinationExists(String path) {
+    String resolvedPath = pathResolver.resolvePath(path);
+    return resolvedPath == null || Files.exists(Paths.get(resolvedPath));
+  }
+
+  private boolean scopesAllowWrite(Authentication authentication, String path) {
+    for (GrantedAuthority a : authentication.getAuthorities()) {
+      if (a instanceof PathScopeAuthority && ((PathScopeAuthority) a).allowsWrite(path,
+          () -> destinationExists(path))) {
+        return true;
+      }
+    }
+    return false;
   }
 
   @Override
@@ -114,7 +131,8 @@ public class CopyMoveAuthzVoter implements AccessDecisionVoter<FilterInvocation>
 
     try {
 
-      StorageAreaInfo sa = getSAFromPath(destination);
+      String destinationPath = getPathInContext(destination);
+      StorageAreaInfo sa = pathResolver.resolveStorageArea(destinationPath);
 
       if (sa == null) {
         return ACCESS_DENIED;
@@ -125,6 +143,10 @@ public class CopyMoveAuthzVoter implements AccessDecisionVoter<FilterInvocation>
         return ACCESS_GRANTED;
       }
 
+      if (scopesAllowWrite(authentication, destinationPath)) {
+        return ACCESS_GRANTED;
+      }
+
       if (logger.isDebugEnabled()) {
         logger.debug(
             "Access denied. Principal does not have write permissions on " + "storage area {}",
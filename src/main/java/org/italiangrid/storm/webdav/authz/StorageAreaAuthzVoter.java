@@ -0,0 +1,218 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare, 2018.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.italiangrid.storm.webdav.authz;
+
+import static java.util.Objects.isNull;
+
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.BooleanSupplier;
+
+import javax.servlet.http.HttpServletRequest;
+
+import org.italiangrid.storm.webdav.authz.scope.PathScopeAuthority;
+import org.italiangrid.storm.webdav.authz.util.PathPrefixTrie;
+import org.italiangrid.storm.webdav.authz.util.ReadonlyHTTPMethodMatcher;
+import org.italiangrid.storm.webdav.config.StorageAreaConfiguration;
+import org.italiangrid.storm.webdav.config.StorageAreaInfo;
+import org.italiangrid.storm.webdav.server.PathResolver;
+import org.italiangrid.storm.webdav.server.ResolvedResource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.security.access.AccessDecisionVoter;
+import org.springframework.security.access.ConfigAttribute;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.web.FilterInvocation;
+import org.springframework.security.web.util.matcher.RequestMatcher;
+
+/**
+ * Authorizes access to storage areas. Access points are indexed in a path trie, and the SA
+ * permissions held by the authenticated principal are turned into a bitset in a single pass over
+ * its authorities. Read-only methods require read permission on the storage area, all the other
+ * methods require both read and write permission. Principals holding a
+ * {@link PathScopeAuthority} are also granted access to the paths covered by their scopes. Since
+ * a create scope does not allow overwriting, the target of a PUT authorized only by such a scope
+ * is checked for existence; without a path resolver the target is assumed to exist.
+ *
+ * The voter abstains on requests that do not target a storage area.
+ */
+public class StorageAreaAuthzVoter implements AccessDecisionVoter<FilterInvocation> {
+
+  private static final Logger logger = LoggerFactory.getLogger(StorageAreaAuthzVoter.class);
+
+  private final PathPrefixTrie<Integer> accessPoints = new PathPrefixTrie<>();
+  private final Map<String, Integer> permissionBits = new HashMap<>();
+  private final String[] saNames;
+  private final PathResolver pathResolver;
+
+  public StorageAreaAuthzVoter(StorageAreaConfiguration saConfig) {
+    this(saConfig, null);
+  }
+
+  public StorageAreaAuthzVoter(StorageAreaConfiguration saConfig, PathResolver pathResolver) {
+
+    this.pathResolver = pathResolver;
+    saNames = new String[saConfig.getStorageAreaInfo().size()];
+
+    int index = 0;
+    for (StorageAreaInfo sa : saConfig.getStorageAreaInfo()) {
+      saNames[index] = sa.name();
+      permissionBits.put(SAPermission.canRead(sa.name()).getAuthority(), readBit(index));
+      permissionBits.put(SAPermission.canWrite(sa.name()).getAuthority(), writeBit(index));
+
+      for (String ap : sa.accessPoints()) {
+        if (!accessPoints.putIfAbsent(ap, index)) {
+          logger.warn("Access point {} already bound to another storage area, ignoring it for {}",
+              ap, sa.name());
+        }
+      }
+      index++;
+    }
+  }
+
+  private static int readBit(int saIndex) {
+    return 2 * saIndex;
+  }
+
+  private static int writeBit(int saIndex) {
+    return 2 * saIndex + 1;
+  }
+
+  public static String requestPath(HttpServletRequest request) {
+    String servletPath = request.getServletPath();
+    String pathInfo = request.getPathInfo();
+
+    if (pathInfo == null) {
+      return servletPath;
+    }
+
+    return servletPath == null ? pathInfo : servletPath.concat(pathInfo);
+  }
+
+  public Integer resolveStorageAreaIndex(HttpServletRequest request) {
+    return resolveStorageAreaIndex(requestPath(request));
+  }
+
+  private Integer resolveStorageAreaIndex(String path) {
+    return path == null ? null : accessPoints.longestPrefixMatch(path);
+  }
+
+  /**
+   * Matches requests targeting a storage area access point.
+   */
+  public RequestMatcher storageAreaRequestMatcher() {
+    return r -> resolveStorageAreaIndex(r) != null;
+  }
+
+  public BitSet permissions(Collection<? extends GrantedAuthority> authorities) {
+    BitSet bits = new BitSet(2 * saNames.length);
+
+    for (GrantedAuthority a : authorities) {
+      if (a instanceof SAPermission) {
+        Integer bit = permissionBits.get(a.getAuthority());
+        if (bit != null) {
+          bits.set(bit);
+        }
+      }
+    }
+
+    return bits;
+  }
+
+  @Override
+  public boolean supports(ConfigAttribute attribute) {
+    return false;
+  }
+
+  @Override
+  public boolean supports(Class<?> clazz) {
+    return FilterInvocation.class.isAssignableFrom(clazz);
+  }
+
+  @Override
+  public int vote(Authentication authentication, FilterInvocation filter,
+      Collection<ConfigAttribute> attributes) {
+
+    final HttpServletRequest request = filter.getRequest();
+    final String path = requestPath(request);
+
+    return vote(authentication, path, request.getMethod(), () -> {
+      ResolvedResource rr = ResolvedResource.fromRequest(request);
+      if (!isNull(rr) && rr.matches(path)) {
+        return rr.exists();
+      }
+      return targetExists(path);
+    });
+  }
+
+  private boolean targetExists(String path) {
+    if (isNull(pathResolver)) {
+      return true;
+    }
+
+    String resolvedPath = pathResolver.resolvePath(path);
+    return isNull(resolvedPath) || Files.exists(Paths.get(resolvedPath));
+  }
+
+  /**
+   * Votes on access to a path with the given method, applying the same rules used for a request
+   * targeting that path. This is used for paths that are accessed without a request of their own,
+   * like the peer side of a local third-party copy.
+   */
+  public int vote(Authentication authentication, String path, String method) {
+    return vote(authentication, path, method, () -> targetExists(path));
+  }
+
+  private int vote(Authentication authentication, String path, String method,
+      BooleanSupplier targetExists) {
+
+    final Integer saIndex = resolveStorageAreaIndex(path);
+
+    if (saIndex == null) {
+      return ACCESS_ABSTAIN;
+    }
+
+    if (authentication == null) {
+      return ACCESS_DENIED;
+    }
+
+    final BitSet perms = permissions(authentication.getAuthorities());
+    final boolean readonly = ReadonlyHTTPMethodMatcher.isReadonlyMethod(method);
+
+    if (perms.get(readBit(saIndex)) && (readonly || perms.get(writeBit(saIndex)))) {
+      return ACCESS_GRANTED;
+    }
+
+    for (GrantedAuthority a : authentication.getAuthorities()) {
+      if (a instanceof PathScopeAuthority && ((PathScopeAuthority) a).allowsMethod(path, method,
+          targetExists)) {
+        return ACCESS_GRANTED;
+      }
+    }
+
+    if (logger.isDebugEnabled()) {
+      logger.debug("Access denied. Principal does not have {} permissions on storage area {}",
+          readonly ? "read" : "read and write", saNames[saIndex]);
+    }
+
+    return ACCESS_DENIED;
+  }
+}
@@ -0,0 +1,65 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare, 2018.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.italiangrid.storm.webdav.authz;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.Collection;
+
+import org.italiangrid.storm.webdav.server.tracing.Span;
+import org.springframework.security.access.AccessDecisionManager;
+import org.springframework.security.access.AccessDeniedException;
+import org.springframework.security.access.ConfigAttribute;
+import org.springframework.security.authentication.InsufficientAuthenticationException;
+import org.springframework.security.core.Authentication;
+
+/**
+ * Traces the authorization decisions taken by the delegate.
+ */
+public class TracingAccessDecisionManager implements AccessDecisionManager {
+
+  private final AccessDecisionManager delegate;
+
+  public TracingAccessDecisionManager(AccessDecisionManager delegate) {
+    checkNotNull(delegate);
+    this.delegate = delegate;
+  }
+
+  @Override
+  public void decide(Authentication authentication, Object object,
+      Collection<ConfigAttribute> configAttributes) {
+
+    try (Span span = Span.start("authz")) {
+      try {
+        delegate.decide(authentication, object, configAttributes);
+        span.setAttribute("storm.authz.decision", "granted");
+      } catch (AccessDeniedException | InsufficientAuthenticationException e) {
+        span.setAttribute("storm.authz.decision", "denied");
+        throw e;
+      }
+    }
+  }
+
+  @Override
+  public boolean supports(ConfigAttribute attribute) {
+    return delegate.supports(attribute);
+  }
+
+  @Override
+  public boolean supports(Class<?> clazz) {
+    return delegate.supports(clazz);
+  }
+}
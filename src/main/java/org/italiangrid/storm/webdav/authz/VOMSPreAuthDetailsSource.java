@@ -26,11 +26,13 @@ import javax.security.auth.x500.X500Principal;
 import javax.servlet.http.HttpServletRequest;
 
 import org.italiangrid.storm.webdav.authz.vomap.VOMapDetailsService;
+import org.italiangrid.storm.webdav.server.tracing.Span;
 import org.italiangrid.voms.VOMSAttribute;
 import org.italiangrid.voms.ac.VOMSACValidator;
 import org.springframework.security.authentication.AuthenticationDetailsSource;
 import org.springframework.security.core.GrantedAuthority;
 
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Sets;
 
 public class VOMSPreAuthDetailsSource
@@ -39,37 +41,79 @@ public class VOMSPreAuthDetailsSource
   private final AuthorizationPolicyService policyService;
   private final VOMSACValidator validator;
   private final VOMapDetailsService voMapDetailsService;
+  private final AuthoritiesCache authoritiesCache;
+  private final Optional<VOMSValidationCache> validationCache;
 
   public VOMSPreAuthDetailsSource(VOMSACValidator vomsValidator,
       AuthorizationPolicyService policyService, VOMapDetailsService voMapDetailsService) {
+    this(vomsValidator, policyService, voMapDetailsService, AuthoritiesCache.disabled(), null);
+  }
+
+  public VOMSPreAuthDetailsSource(VOMSACValidator vomsValidator,
+      AuthorizationPolicyService policyService, VOMapDetailsService voMapDetailsService,
+      AuthoritiesCache authoritiesCache, VOMSValidationCache validationCache) {
     this.policyService = policyService;
     this.validator = vomsValidator;
     this.voMapDetailsService = voMapDetailsService;
+    this.authoritiesCache = authoritiesCache;
+    this.validationCache = Optional.ofNullable(validationCache);
+
+    // VO membership may change on vomap refresh
+    voMapDetailsService.addRefreshListener(authoritiesCache::invalidateAll);
   }
 
   @Override
   public VOMSAuthenticationDetails buildDetails(HttpServletRequest request) {
 
-    Set<GrantedAuthority> authorities = Sets.newHashSet();
+    try (Span span = Span.start("authn.voms")) {
+      List<VOMSAttribute> attributes = getAttributes(request);
 
-    List<VOMSAttribute> attributes = getAttributes(request);
+      Set<GrantedAuthority> authorities;
 
-    authorities.addAll(getAuthoritiesFromAttributes(attributes));
-    
-    if (attributes.isEmpty()) {
-      authorities.addAll(getAuthoritiesFromVoMapFiles(request));
+      if (!attributes.isEmpty()) {
+        authorities = authoritiesCache.get(attributesKey(attributes),
+            () -> withSAPermissions(getAuthoritiesFromAttributes(attributes)));
+      } else {
+        Optional<X500Principal> principal = Utils.getX500PrincipalFromRequest(request);
+        authorities = authoritiesCache.get(voMapKey(principal),
+            () -> withSAPermissions(getAuthoritiesFromVoMapFiles(principal)));
+      }
+
+      span.setAttribute("storm.voms.attributes", attributes.size());
+      return new VOMSAuthenticationDetails(request, authorities, attributes);
     }
-    
-    authorities.addAll(policyService.getSAPermissions(authorities));
+  }
+
+  protected Set<GrantedAuthority> withSAPermissions(Set<GrantedAuthority> authorities) {
+    Set<GrantedAuthority> result = Sets.newHashSet(authorities);
+    result.addAll(policyService.getSAPermissions(authorities));
+    return result;
+  }
 
-    return new VOMSAuthenticationDetails(request, authorities, attributes);
+  protected Object attributesKey(List<VOMSAttribute> attributes) {
+    ImmutableList.Builder<String> key = ImmutableList.builder();
+    key.add("voms");
 
+    for (VOMSAttribute va : attributes) {
+      key.add("vo:" + va.getVO());
+      for (String fqan : va.getFQANs()) {
+        key.add(fqan);
+      }
+    }
+
+    return key.build();
   }
-  
-  
-  protected Set<GrantedAuthority> getAuthoritiesFromVoMapFiles(HttpServletRequest request) {
-    
-    Optional<X500Principal> principal = Utils.getX500PrincipalFromRequest(request);
+
+  protected Object voMapKey(Optional<X500Principal> principal) {
+    if (!principal.isPresent()) {
+      return ImmutableList.of("vomap");
+    }
+
+    return ImmutableList.of("vomap", principal.get().getName());
+  }
+
+  protected Set<GrantedAuthority> getAuthoritiesFromVoMapFiles(
+      Optional<X500Principal> principal) {
 
     if (!principal.isPresent()) {
       return Collections.emptySet();
@@ -107,6 +151,9 @@ public class VOMSPreAuthDetailsSource
 
     if (chain.isPresent()) {
       if (chain.get().length > 0) {
+        if (validationCache.isPresent()) {
+          return validationCache.get().validate(chain.get(), validator::validate);
+        }
         return validator.validate(chain.get());
       }
     }
@@ -52,6 +52,33 @@ public class VOMSVOMapAuthority implements GrantedAuthority,
     return authority.compareTo(o.authority);
   }
 
+  @Override
+  public int hashCode() {
+
+    final int prime = 31;
+    int result = 1;
+    result = prime * result + ((authority == null) ? 0 : authority.hashCode());
+    return result;
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+
+    if (this == obj)
+      return true;
+    if (obj == null)
+      return false;
+    if (getClass() != obj.getClass())
+      return false;
+    VOMSVOMapAuthority other = (VOMSVOMapAuthority) obj;
+    if (authority == null) {
+      if (other.authority != null)
+        return false;
+    } else if (!authority.equals(other.authority))
+      return false;
+    return true;
+  }
+
   @Override
   public String toString() {
     return authority;
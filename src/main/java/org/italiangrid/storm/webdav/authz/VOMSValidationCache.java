@@ -0,0 +1,162 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare, 2018.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.italiangrid.storm.webdav.authz;
+
+import static com.codahale.metrics.MetricRegistry.name;
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.security.cert.CertificateEncodingException;
+import java.security.cert.X509Certificate;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import org.italiangrid.voms.VOMSAttribute;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.RatioGauge;
+import com.codahale.metrics.Timer;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableList;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+
+/**
+ * Caches the VOMS attributes validated for a client certificate chain, keyed by the fingerprint
+ * of the chain's leaf certificate, so that requests on the same connection (or by the same proxy
+ * on other connections) do not parse and verify the ACs again. An entry is kept until the
+ * earliest of the ACs and leaf certificate end of validity, and at most for the configured
+ * lifetime.
+ */
+public class VOMSValidationCache {
+
+  public static final Logger LOG = LoggerFactory.getLogger(VOMSValidationCache.class);
+
+  private static class Entry {
+    final List<VOMSAttribute> attributes;
+    final Instant validUntil;
+
+    Entry(List<VOMSAttribute> attributes, Instant validUntil) {
+      this.attributes = attributes;
+      this.validUntil = validUntil;
+    }
+  }
+
+  private final Cache<HashCode, Entry> cache;
+  private final Clock clock;
+
+  private final Meter hits;
+  private final Meter misses;
+  private final Timer validationTimer;
+
+  public VOMSValidationCache(MetricRegistry registry, Clock clock, long maxSize,
+      Duration entryLifetime) {
+    checkArgument(maxSize > 0, "maxSize must be > 0");
+    checkArgument(!entryLifetime.isNegative() && !entryLifetime.isZero(),
+        "entryLifetime must be positive");
+
+    this.clock = clock;
+    this.cache = CacheBuilder.newBuilder()
+      .maximumSize(maxSize)
+      .expireAfterWrite(entryLifetime.toMillis(), TimeUnit.MILLISECONDS)
+      .build();
+
+    hits = registry.meter(name(VOMSValidationCache.class, "hits"));
+    misses = registry.meter(name(VOMSValidationCache.class, "misses"));
+    validationTimer = registry.timer(name(VOMSValidationCache.class, "validation"));
+
+    registry.gauge(name(VOMSValidationCache.class, "hit-ratio"), () -> new RatioGauge() {
+      @Override
+      protected Ratio getRatio() {
+        return Ratio.of(hits.getOneMinuteRate(),
+            hits.getOneMinuteRate() + misses.getOneMinuteRate());
+      }
+    });
+    registry.gauge(name(VOMSValidationCache.class, "size"), () -> cache::size);
+  }
+
+  public List<VOMSAttribute> validate(X509Certificate[] chain,
+      Function<X509Certificate[], List<VOMSAttribute>> validator) {
+
+    final HashCode key = fingerprint(chain[0]);
+
+    if (key != null) {
+      final Entry entry = cache.getIfPresent(key);
+
+      if (entry != null) {
+        if (clock.instant().isBefore(entry.validUntil)) {
+          hits.mark();
+          return entry.attributes;
+        }
+        cache.invalidate(key);
+      }
+    }
+
+    misses.mark();
+
+    final List<VOMSAttribute> attributes;
+    try (Timer.Context c = validationTimer.time()) {
+      attributes = ImmutableList.copyOf(validator.apply(chain));
+    }
+
+    if (key != null) {
+      final Instant validUntil = validUntil(chain[0], attributes);
+      if (clock.instant().isBefore(validUntil)) {
+        cache.put(key, new Entry(attributes, validUntil));
+      }
+    }
+
+    return attributes;
+  }
+
+  public long size() {
+    return cache.size();
+  }
+
+  public void invalidateAll() {
+    cache.invalidateAll();
+  }
+
+  private static Instant validUntil(X509Certificate leaf, List<VOMSAttribute> attributes) {
+    Instant validUntil = leaf.getNotAfter().toInstant();
+
+    for (VOMSAttribute a : attributes) {
+      Instant acNotAfter = a.getNotAfter().toInstant();
+      if (acNotAfter.isBefore(validUntil)) {
+        validUntil = acNotAfter;
+      }
+    }
+
+    return validUntil;
+  }
+
+  private static HashCode fingerprint(X509Certificate cert) {
+    try {
+      return Hashing.sha256().hashBytes(cert.getEncoded());
+    } catch (CertificateEncodingException e) {
+      LOG.warn("Error encoding certificate {}, not caching VOMS validation: {}",
+          cert.getSubjectX500Principal(), e.getMessage());
+      return null;
+    }
+  }
+}
@@ -0,0 +1,157 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare, 2018.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.italiangrid.storm.webdav.authz.scope;
+
+import static org.italiangrid.storm.webdav.authz.util.ReadonlyHTTPMethodMatcher.isReadonlyMethod;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BooleanSupplier;
+import java.util.stream.Collectors;
+
+import org.italiangrid.storm.webdav.authz.scope.StorageScope.Activity;
+import org.italiangrid.storm.webdav.authz.util.PathPrefixTrie;
+import org.springframework.security.core.GrantedAuthority;
+
+import com.google.common.collect.ImmutableList;
+
+/**
+ * An authority granting access to paths according to a set of {@link StorageScope}s, resolved to
+ * request paths. Scopes are compiled into a path trie, so that checking a request requires a
+ * single walk down the request path.
+ *
+ * Read-only methods require the read activity, PUT and MKCOL require either the create or the
+ * modify activity, all the other methods require the modify activity. The create activity does not
+ * allow overwriting existing content, so a PUT on an existing resource requires the modify
+ * activity.
+ */
+public class PathScopeAuthority implements GrantedAuthority {
+
+  private static final long serialVersionUID = 1L;
+
+  public static final String AUTHORITY_TEMPLATE = "PATH_SCOPES(%s)";
+
+  private static final int WRITE_MASK = Activity.CREATE.mask() | Activity.MODIFY.mask();
+
+  private final List<StorageScope> scopes;
+  private final String authority;
+
+  private transient volatile PathPrefixTrie<Integer> index;
+
+  public PathScopeAuthority(Collection<StorageScope> scopes) {
+    this.scopes = ImmutableList.copyOf(scopes);
+    this.authority = String.format(AUTHORITY_TEMPLATE,
+        this.scopes.stream().map(StorageScope::toString).collect(Collectors.joining(" ")));
+    this.index = compile(this.scopes);
+  }
+
+  private static PathPrefixTrie<Integer> compile(List<StorageScope> scopes) {
+    Map<String, Integer> masks = new HashMap<>();
+    for (StorageScope s : scopes) {
+      masks.merge(s.getPath(), s.getActivity().mask(), (a, b) -> a | b);
+    }
+
+    PathPrefixTrie<Integer> trie = new PathPrefixTrie<>();
+    masks.forEach(trie::putIfAbsent);
+    return trie;
+  }
+
+  private PathPrefixTrie<Integer> index() {
+    if (index == null) {
+      index = compile(scopes);
+    }
+    return index;
+  }
+
+  /**
+   * Returns the bitmask of the activities granted on the path.
+   */
+  public int activities(String path) {
+    final int[] mask = {0};
+    index().forEachPrefixMatch(path, m -> mask[0] |= m);
+    return mask[0];
+  }
+
+  public boolean allows(String path, Activity activity) {
+    return (activities(path) & activity.mask()) != 0;
+  }
+
+  /**
+   * Checks whether the scopes allow writing the resource at the given path. The existence of the
+   * resource is only checked when the scopes grant the create activity, but not the modify one.
+   */
+  public boolean allowsWrite(String path, BooleanSupplier targetExists) {
+    return allowsCreateOrModify(activities(path), targetExists);
+  }
+
+  public boolean allowsMethod(String path, String method, BooleanSupplier targetExists) {
+    final int mask = activities(path);
+
+    if (isReadonlyMethod(method)) {
+      return (mask & Activity.READ.mask()) != 0;
+    }
+
+    if ("PUT".equals(method)) {
+      return allowsCreateOrModify(mask, targetExists);
+    }
+
+    if ("MKCOL".equals(method)) {
+      return (mask & WRITE_MASK) != 0;
+    }
+
+    return (mask & Activity.MODIFY.mask()) != 0;
+  }
+
+  private static boolean allowsCreateOrModify(int mask, BooleanSupplier targetExists) {
+    if ((mask & Activity.MODIFY.mask()) != 0) {
+      return true;
+    }
+
+    return (mask & Activity.CREATE.mask()) != 0 && !targetExists.getAsBoolean();
+  }
+
+  public List<StorageScope> getScopes() {
+    return scopes;
+  }
+
+  @Override
+  public String getAuthority() {
+    return authority;
+  }
+
+  @Override
+  public String toString() {
+    return authority;
+  }
+
+  @Override
+  public int hashCode() {
+    return authority.hashCode();
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    if (this == obj) {
+      return true;
+    }
+    if (obj == null || getClass() != obj.getClass()) {
+      return false;
+    }
+    return authority.equals(((PathScopeAuthority) obj).authority);
+  }
+}
@@ -0,0 +1,184 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare, 2018.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.italiangrid.storm.webdav.authz.scope;
+
+import static com.google.common.base.Strings.isNullOrEmpty;
+
+import java.io.Serializable;
+import java.util.List;
+import java.util.Optional;
+
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableList;
+
+/**
+ * A WLCG storage scope, e.g. <code>storage.read:/data</code>, granting an activity on a path and
+ * on everything below it.
+ *
+ * Scope paths are relative to a base path: the storage area access point for tokens issued by
+ * trusted external issuers, the root of this service for locally issued tokens.
+ */
+public class StorageScope implements Serializable {
+
+  private static final long serialVersionUID = 1L;
+
+  public enum Activity {
+    READ("storage.read"),
+    CREATE("storage.create"),
+    MODIFY("storage.modify"),
+    STAGE("storage.stage");
+
+    private final String scopeName;
+
+    private Activity(String scopeName) {
+      this.scopeName = scopeName;
+    }
+
+    public String getScopeName() {
+      return scopeName;
+    }
+
+    public int mask() {
+      return 1 << ordinal();
+    }
+
+    public static Optional<Activity> fromScopeName(String scopeName) {
+      for (Activity a : values()) {
+        if (a.scopeName.equals(scopeName)) {
+          return Optional.of(a);
+        }
+      }
+      return Optional.empty();
+    }
+  }
+
+  public static final char SCOPE_PATH_SEPARATOR = ':';
+
+  private static final Splitter SCOPE_SPLITTER = Splitter.on(' ').omitEmptyStrings();
+  private static final Splitter PATH_SPLITTER = Splitter.on('/');
+
+  private final Activity activity;
+  private final String path;
+
+  private StorageScope(Activity activity, String path) {
+    this.activity = activity;
+    this.path = path;
+  }
+
+  public static StorageScope of(Activity activity, String path) {
+    return new StorageScope(activity, normalizePath(path)
+      .orElseThrow(() -> new IllegalArgumentException("Invalid scope path: " + path)));
+  }
+
+  /**
+   * Parses a storage scope, returning an empty optional for other scopes and for storage scopes
+   * with an invalid path.
+   */
+  public static Optional<StorageScope> parse(String scope) {
+    if (isNullOrEmpty(scope)) {
+      return Optional.empty();
+    }
+
+    final int idx = scope.indexOf(SCOPE_PATH_SEPARATOR);
+    final String name = idx < 0 ? scope : scope.substring(0, idx);
+
+    Optional<Activity> activity = Activity.fromScopeName(name);
+
+    if (!activity.isPresent()) {
+      return Optional.empty();
+    }
+
+    // A storage scope without path applies to the whole base path
+    final String path = idx < 0 ? "/" : scope.substring(idx + 1);
+
+    return normalizePath(path).map(p -> new StorageScope(activity.get(), p));
+  }
+
+  /**
+   * Parses the storage scopes found in a space-separated list of scopes.
+   */
+  public static List<StorageScope> parseScopes(String scopes) {
+    if (isNullOrEmpty(scopes)) {
+      return ImmutableList.of();
+    }
+
+    ImmutableList.Builder<StorageScope> result = ImmutableList.builder();
+    for (String s : SCOPE_SPLITTER.split(scopes)) {
+      parse(s).ifPresent(result::add);
+    }
+    return result.build();
+  }
+
+  static Optional<String> normalizePath(String path) {
+    if (isNullOrEmpty(path) || path.charAt(0) != '/') {
+      return Optional.empty();
+    }
+
+    StringBuilder normalized = new StringBuilder(path.length());
+
+    for (String segment : PATH_SPLITTER.split(path)) {
+      if (segment.isEmpty() || ".".equals(segment)) {
+        continue;
+      }
+      if ("..".equals(segment)) {
+        return Optional.empty();
+      }
+      normalized.append('/').append(segment);
+    }
+
+    return Optional.of(normalized.length() == 0 ? "/" : normalized.toString());
+  }
+
+  /**
+   * Returns this scope with its path resolved against the given base path.
+   */
+  public StorageScope resolve(String basePath) {
+    if ("/".equals(path)) {
+      return of(activity, basePath);
+    }
+    return of(activity, basePath + path);
+  }
+
+  public Activity getActivity() {
+    return activity;
+  }
+
+  public String getPath() {
+    return path;
+  }
+
+  @Override
+  public String toString() {
+    return activity.getScopeName() + SCOPE_PATH_SEPARATOR + path;
+  }
+
+  @Override
+  public int hashCode() {
+    return 31 * activity.hashCode() + path.hashCode();
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    if (this == obj) {
+      return true;
+    }
+    if (obj == null || getClass() != obj.getClass()) {
+      return false;
+    }
+    StorageScope other = (StorageScope) obj;
+    return activity == other.activity && path.equals(other.path);
+  }
+}
@@ -0,0 +1,110 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare, 2018.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.italiangrid.storm.webdav.authz.scope;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.italiangrid.storm.webdav.authz.SAPermission;
+import org.italiangrid.storm.webdav.authz.scope.StorageScope.Activity;
+import org.italiangrid.storm.webdav.config.StorageAreaConfiguration;
+import org.italiangrid.storm.webdav.config.StorageAreaInfo;
+import org.springframework.security.core.GrantedAuthority;
+
+/**
+ * Decides which storage scopes can be granted to a principal in a locally issued token.
+ *
+ * A scope can be granted when it touches at least one storage area, and the principal holds the
+ * required permission on all the storage areas it touches: the storage area containing the scope
+ * path, and those whose access points are below the scope path. Read and stage activities require
+ * read permission, create and modify activities require write permission.
+ */
+public class StorageScopeGrantPolicy {
+
+  private final List<StorageAreaInfo> storageAreas;
+
+  public StorageScopeGrantPolicy(StorageAreaConfiguration saConfig) {
+    this.storageAreas = saConfig.getStorageAreaInfo();
+  }
+
+  static boolean isSameOrBelow(String path, String prefix) {
+    final String p = prefix.endsWith("/") ? prefix.substring(0, prefix.length() - 1) : prefix;
+
+    if (p.isEmpty() || path.equals(p)) {
+      return true;
+    }
+
+    return path.startsWith(p) && path.length() > p.length() && path.charAt(p.length()) == '/';
+  }
+
+  private static GrantedAuthority requiredPermission(StorageAreaInfo sa, Activity activity) {
+    if (Activity.READ == activity || Activity.STAGE == activity) {
+      return SAPermission.canRead(sa.name());
+    }
+    return SAPermission.canWrite(sa.name());
+  }
+
+  public boolean canGrant(StorageScope scope, Collection<? extends GrantedAuthority> saPermissions) {
+    boolean touchesStorageArea = false;
+
+    for (StorageAreaInfo sa : storageAreas) {
+      for (String ap : sa.accessPoints()) {
+        if (isSameOrBelow(scope.getPath(), ap) || isSameOrBelow(ap, scope.getPath())) {
+          if (!saPermissions.contains(requiredPermission(sa, scope.getActivity()))) {
+            return false;
+          }
+          touchesStorageArea = true;
+        }
+      }
+    }
+
+    return touchesStorageArea;
+  }
+
+  /**
+   * Returns the requested scopes that can be granted. A scope that cannot be granted as a whole is
+   * narrowed to the access points below its path on which it can be granted, so that e.g.
+   * <code>storage.read:/</code> becomes a read scope for each readable storage area.
+   */
+  public List<StorageScope> grantableScopes(List<StorageScope> requested,
+      Collection<? extends GrantedAuthority> saPermissions) {
+
+    Set<StorageScope> granted = new LinkedHashSet<>();
+
+    for (StorageScope scope : requested) {
+      if (canGrant(scope, saPermissions)) {
+        granted.add(scope);
+        continue;
+      }
+
+      for (StorageAreaInfo sa : storageAreas) {
+        for (String ap : sa.accessPoints()) {
+          if (isSameOrBelow(ap, scope.getPath())) {
+            StorageScope narrowed = StorageScope.of(scope.getActivity(), ap);
+            if (canGrant(narrowed, saPermissions)) {
+              granted.add(narrowed);
+            }
+          }
+        }
+      }
+    }
+
+    return new ArrayList<>(granted);
+  }
+}
@@ -0,0 +1,132 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare, 2018.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.italiangrid.storm.webdav.authz.util;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * A trie of path prefixes, matched segment by segment. A prefix matches a path when all the
+ * prefix segments are leading segments of the path, so that <code>/test</code> matches
+ * <code>/test</code> and <code>/test/file</code>, but not <code>/testfile</code>.
+ *
+ * The trie is not thread safe while being built, and can be shared once built.
+ */
+public class PathPrefixTrie<T> {
+
+  private static class Node<T> {
+    final Map<String, Node<T>> children = new HashMap<>();
+    T value;
+  }
+
+  private final Node<T> root = new Node<>();
+
+  private int size = 0;
+
+  /**
+   * Associates the value to the prefix, unless the prefix is already in the trie.
+   *
+   * @return <code>true</code> if the value has been added
+   */
+  public boolean putIfAbsent(String prefix, T value) {
+    Node<T> node = root;
+
+    int start = 0;
+    int len = prefix.length();
+
+    while (start < len) {
+      int end = segmentEnd(prefix, start);
+      if (end > start) {
+        node = node.children.computeIfAbsent(prefix.substring(start, end), k -> new Node<>());
+      }
+      start = end + 1;
+    }
+
+    if (node.value != null) {
+      return false;
+    }
+
+    node.value = value;
+    size++;
+    return true;
+  }
+
+  /**
+   * Returns the value associated to the longest prefix matching the path, or <code>null</code>.
+   */
+  public T longestPrefixMatch(String path) {
+    Node<T> node = root;
+    T match = root.value;
+
+    int start = 0;
+    int len = path.length();
+
+    while (start < len) {
+      int end = segmentEnd(path, start);
+      if (end > start) {
+        node = node.children.get(path.substring(start, end));
+        if (node == null) {
+          break;
+        }
+        if (node.value != null) {
+          match = node.value;
+        }
+      }
+      start = end + 1;
+    }
+
+    return match;
+  }
+
+  /**
+   * Passes the values associated to all the prefixes matching the path to the consumer, from the
+   * shortest prefix to the longest.
+   */
+  public void forEachPrefixMatch(String path, Consumer<? super T> consumer) {
+    Node<T> node = root;
+
+    if (root.value != null) {
+      consumer.accept(root.value);
+    }
+
+    int start = 0;
+    int len = path.length();
+
+    while (start < len) {
+      int end = segmentEnd(path, start);
+      if (end > start) {
+        node = node.children.get(path.substring(start, end));
+        if (node == null) {
+          return;
+        }
+        if (node.value != null) {
+          consumer.accept(node.value);
+        }
+      }
+      start = end + 1;
+    }
+  }
+
+  public int size() {
+    return size;
+  }
+
+  private static int segmentEnd(String s, int start) {
+    int end = s.indexOf('/', start);
+    return end < 0 ? s.length() : end;
+  }
+}
@@ -40,6 +40,10 @@ public class ReadonlyHTTPMethodMatcher implements RequestMatcher {
 
   private final AntPathRequestMatcher pathMatcher;
 
+  public static boolean isReadonlyMethod(String method) {
+    return method != null && METHODS.contains(method);
+  }
+
   public ReadonlyHTTPMethodMatcher(String pattern) {
 
     pathMatcher = new AntPathRequestMatcher(pattern);
@@ -15,9 +15,11 @@
  */
 package org.italiangrid.storm.webdav.authz.vomap;
 
-import java.util.Collections;
-import java.util.HashSet;
+import static com.codahale.metrics.MetricRegistry.name;
+
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
@@ -28,6 +30,9 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.util.Assert;
 
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+
 public class DefaultVOMapDetailsService implements VOMapDetailsService {
 
   private static final Logger logger = LoggerFactory
@@ -40,13 +45,36 @@ public class DefaultVOMapDetailsService implements VOMapDetailsService {
 
   Set<VOMembershipProvider> providers;
 
+  private final List<Runnable> refreshListeners = new CopyOnWriteArrayList<>();
+
+  private volatile VOMembershipIndex index;
+
+  private final Timer parseTimer;
+
   public DefaultVOMapDetailsService(Set<VOMembershipProvider> providers,
     long refreshPeriod) {
 
+    this(providers, refreshPeriod, new MetricRegistry());
+  }
+
+  public DefaultVOMapDetailsService(Set<VOMembershipProvider> providers,
+    long refreshPeriod, MetricRegistry registry) {
+
     Assert.notNull(providers,
       "Please provide a non-null (but possibly empty) set of providers");
     this.providers = providers;
     this.refreshPeriodInSeconds = refreshPeriod;
+    this.index = VOMembershipIndex.build(providers);
+
+    parseTimer = registry.timer(name(DefaultVOMapDetailsService.class, "parse"));
+    registry.gauge(name(DefaultVOMapDetailsService.class, "subjects"),
+      () -> () -> index.getSubjectCount());
+
+    for (VOMembershipProvider p : providers) {
+      registry.gauge(name(DefaultVOMapDetailsService.class, "members", p.getVOName()),
+        () -> () -> p.getMembers().size());
+    }
+
     if (refreshPeriodInSeconds > 0) {
       scheduleRefresh();
     }
@@ -76,25 +104,31 @@ public class DefaultVOMapDetailsService implements VOMapDetailsService {
 
     Assert.notNull(principal, "Principal cannot be null");
 
-    HashSet<String> voNames = new HashSet<String>();
-
-    for (VOMembershipProvider p : providers) {
-
-      if (p.hasSubjectAsMember(principal.getName())) {
-        voNames.add(p.getVOName());
-      }
-    }
-
-    return Collections.unmodifiableSet(voNames);
+    return index.getSubjectVOs(principal.getName());
   }
 
   protected void refresh() {
 
     logger.debug("Refreshing vo membership providers...");
+
+    boolean changed = false;
+
     for (VOMembershipProvider p : providers) {
       if (p instanceof Refreshable) {
+        Refreshable r = (Refreshable) p;
         try {
-          ((Refreshable) p).refresh();
+          final long lastRefreshTime = r.getLastRefreshTime();
+          final long startTime = System.nanoTime();
+
+          r.refresh();
+
+          // Providers only reload their members when the source has changed
+          if (r.getLastRefreshTime() != lastRefreshTime) {
+            parseTimer.update(System.nanoTime() - startTime, TimeUnit.NANOSECONDS);
+            logger.info("VO {} membership reloaded: {} members", p.getVOName(),
+              p.getMembers().size());
+            changed = true;
+          }
         } catch (Throwable t) {
           logger.warn(
             "Exception caught refreshing VOMembership provider for VO: {}. {}",
@@ -102,5 +136,28 @@ public class DefaultVOMapDetailsService implements VOMapDetailsService {
         }
       }
     }
+
+    if (!changed) {
+      logger.debug("No vo membership changes detected");
+      return;
+    }
+
+    index = VOMembershipIndex.build(providers);
+    logger.debug("VO membership index rebuilt: {} subjects in {} VOs",
+      index.getSubjectCount(), index.getVOCount());
+
+    for (Runnable l : refreshListeners) {
+      try {
+        l.run();
+      } catch (Throwable t) {
+        logger.warn("Exception caught running vo membership refresh listener: {}",
+          t.getMessage(), t);
+      }
+    }
+  }
+
+  @Override
+  public void addRefreshListener(Runnable listener) {
+    refreshListeners.add(listener);
   }
 }
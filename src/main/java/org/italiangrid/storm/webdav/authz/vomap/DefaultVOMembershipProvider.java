@@ -16,7 +16,6 @@
 package org.italiangrid.storm.webdav.authz.vomap;
 
 import java.util.Set;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import org.springframework.util.Assert;
 
@@ -25,11 +24,9 @@ public class DefaultVOMembershipProvider implements VOMembershipProvider,
 
   private final String voName;
   private final VOMembershipSource membershipSource;
-  private long lastRefreshTimestamp = 0L;
+  private volatile long lastRefreshTimestamp = 0L;
 
-  protected ReentrantReadWriteLock refreshLock = new ReentrantReadWriteLock();
-
-  protected Set<String> members = null;
+  protected volatile Set<String> members = null;
 
   public DefaultVOMembershipProvider(String voName,
     VOMembershipSource membershipSource) {
@@ -51,32 +48,26 @@ public class DefaultVOMembershipProvider implements VOMembershipProvider,
   @Override
   public boolean hasSubjectAsMember(String subject) {
 
-    refreshLock.readLock().lock();
+    return members.contains(subject);
+  }
 
-    try {
-      return members.contains(subject);
+  @Override
+  public Set<String> getMembers() {
 
-    } finally {
-      refreshLock.readLock().unlock();
-      ;
-    }
+    return members;
   }
 
   @Override
   public void refresh() {
 
-    Set<String> newMembers = membershipSource.getVOMembers();
-
-    refreshLock.writeLock().lock();
+    if (!membershipSource.hasChanged()) {
+      return;
+    }
 
+    // The member set is never modified after being published, so
+    // it can be swapped without locking
+    members = membershipSource.getVOMembers();
     lastRefreshTimestamp = System.currentTimeMillis();
-
-    try {
-      members = newMembers;
-
-    } finally {
-      refreshLock.writeLock().unlock();
-    }
   }
 
   @Override
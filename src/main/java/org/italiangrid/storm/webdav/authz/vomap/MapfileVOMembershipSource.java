@@ -22,8 +22,10 @@ import static com.google.common.base.Strings.isNullOrEmpty;
 import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
-import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import org.apache.commons.csv.CSVFormat;
@@ -32,6 +34,9 @@ import org.apache.commons.csv.CSVRecord;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
+
 import eu.emi.security.authn.x509.impl.OpensslNameUtils;
 
 public class MapfileVOMembershipSource implements VOMembershipSource {
@@ -39,9 +44,18 @@ public class MapfileVOMembershipSource implements VOMembershipSource {
   private static final Logger logger = LoggerFactory
     .getLogger(MapfileVOMembershipSource.class);
 
+  // Subjects listed in several map files share the same string instance
+  private static final Interner<String> SUBJECTS = Interners.newWeakInterner();
+
   private final String voName;
   private final File mapFile;
 
+  private long lastModified = -1;
+  private long lastLength = -1;
+
+  // Openssl to RFC2253 conversions of the subjects found in the last parse
+  private Map<String, String> conversions = Collections.emptyMap();
+
   public MapfileVOMembershipSource(String voName, File mapFile) {
 
     checkNotNull(mapFile);
@@ -52,13 +66,9 @@ public class MapfileVOMembershipSource implements VOMembershipSource {
 
   }
 
-  private CSVParser getParser() {
+  private CSVParser getParser() throws IOException {
 
-    try {
-      return new CSVParser(new FileReader(mapFile), CSVFormat.DEFAULT);
-    } catch (IOException e) {
-      throw new RuntimeException(e.getMessage(), e);
-    }
+    return new CSVParser(new FileReader(mapFile), CSVFormat.DEFAULT);
   }
 
   private boolean isValidCSVRecord(CSVRecord r) {
@@ -77,27 +87,52 @@ public class MapfileVOMembershipSource implements VOMembershipSource {
     return true;
   }
 
+  @SuppressWarnings("deprecation")
+  private String toRfc2253(String subject, Map<String, String> previousConversions) {
+
+    String rfcSubject = previousConversions.get(subject);
+
+    if (rfcSubject == null) {
+      rfcSubject = SUBJECTS.intern(OpensslNameUtils.opensslToRfc2253(subject));
+
+      if (logger.isDebugEnabled()) {
+        logger.debug("Converted subject {} to rfc format {}", subject,
+          rfcSubject);
+      }
+    }
+
+    return rfcSubject;
+  }
+
   @Override
-  public Set<String> getVOMembers() {
+  public synchronized boolean hasChanged() {
 
-    long startTime = System.currentTimeMillis();
+    return mapFile.lastModified() != lastModified || mapFile.length() != lastLength;
+  }
 
-    Set<String> subjects = new HashSet<String>();
+  @Override
+  public synchronized Set<String> getVOMembers() {
+
+    long startTime = System.currentTimeMillis();
 
-    CSVParser parser = getParser();
+    // Read before parsing, so that changes made while parsing are
+    // detected at the next check
+    final long modified = mapFile.lastModified();
+    final long length = mapFile.length();
 
-    try {
+    Set<String> subjects = new HashSet<String>();
+    Map<String, String> newConversions = new HashMap<String, String>();
 
-      List<CSVRecord> records = parser.getRecords();
+    try (CSVParser parser = getParser()) {
 
-      for (CSVRecord r : records) {
+      for (CSVRecord r : parser) {
 
         if (logger.isDebugEnabled()) {
           logger.debug("Parsed record: {} for VO {}", r, voName);
         }
 
         if (!isValidCSVRecord(r)) {
-          break;
+          continue;
         }
 
         String subject = r.get(0);
@@ -106,21 +141,19 @@ public class MapfileVOMembershipSource implements VOMembershipSource {
           logger.debug("Parsed subject {} as member of VO {}", subject, voName);
         }
 
-        @SuppressWarnings("deprecation")
-        String rfcSubject = OpensslNameUtils.opensslToRfc2253(subject);
-
-        if (logger.isDebugEnabled()) {
-          logger.debug("Converted subject {} to rfc format {}", subject,
-            rfcSubject);
-        }
-
+        String rfcSubject = toRfc2253(subject, conversions);
+        newConversions.put(subject, rfcSubject);
         subjects.add(rfcSubject);
       }
 
     } catch (IOException e) {
-      throw new RuntimeException(e);
+      throw new RuntimeException(e.getMessage(), e);
     }
 
+    conversions = newConversions;
+    lastModified = modified;
+    lastLength = length;
+
     long totalTime = System.currentTimeMillis() - startTime;
 
     logger.debug("Parsing VO {} members from {} took {} msecs.", voName,
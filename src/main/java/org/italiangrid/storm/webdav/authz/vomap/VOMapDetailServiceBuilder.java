@@ -29,6 +29,8 @@ import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
+import com.codahale.metrics.MetricRegistry;
+
 @Component
 public class VOMapDetailServiceBuilder {
 
@@ -38,10 +40,13 @@ public class VOMapDetailServiceBuilder {
 
   private final ServiceConfiguration serviceConf;
 
+  private final MetricRegistry metricRegistry;
+
   @Autowired
-  public VOMapDetailServiceBuilder(ServiceConfiguration conf) {
+  public VOMapDetailServiceBuilder(ServiceConfiguration conf, MetricRegistry registry) {
 
     this.serviceConf = conf;
+    this.metricRegistry = registry;
   }
 
   private void directorySanityChecks(File directory) {
@@ -111,7 +116,7 @@ public class VOMapDetailServiceBuilder {
     }
 
     return new DefaultVOMapDetailsService(providers,
-        serviceConf.getVOMapFilesRefreshIntervalInSeconds());
+        serviceConf.getVOMapFilesRefreshIntervalInSeconds(), metricRegistry);
   }
 
 }
@@ -23,4 +23,11 @@ public interface VOMapDetailsService {
 
   public Set<String> getPrincipalVOs(X500Principal principal);
 
+  /**
+   * Registers a callback invoked after VO membership information has been refreshed.
+   */
+  default void addRefreshListener(Runnable listener) {
+    // Membership information is static by default
+  }
+
 }
@@ -0,0 +1,90 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare, 2018.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.italiangrid.storm.webdav.authz.vomap;
+
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+
+/**
+ * An immutable inverted index from subject to the set of VOs listing the subject as member.
+ *
+ * Subjects listed in several VOs are stored once, and subjects belonging to the same VOs share
+ * the same VO set instance, so a lookup is a single hash probe and the index size is proportional
+ * to the number of distinct subjects.
+ */
+public class VOMembershipIndex {
+
+  public static final VOMembershipIndex EMPTY = new VOMembershipIndex(ImmutableMap.of(), 0);
+
+  private final Map<String, Set<String>> subjectVOs;
+  private final int voCount;
+
+  private VOMembershipIndex(Map<String, Set<String>> subjectVOs, int voCount) {
+    this.subjectVOs = subjectVOs;
+    this.voCount = voCount;
+  }
+
+  public static VOMembershipIndex build(Collection<? extends VOMembershipProvider> providers) {
+
+    List<VOMembershipProvider> sortedProviders = providers.stream()
+      .sorted(Comparator.comparing(VOMembershipProvider::getVOName))
+      .collect(Collectors.toList());
+
+    Map<String, BitSet> subjectBits = new HashMap<>();
+
+    for (int i = 0; i < sortedProviders.size(); i++) {
+      for (String subject : sortedProviders.get(i).getMembers()) {
+        subjectBits.computeIfAbsent(subject, s -> new BitSet(sortedProviders.size())).set(i);
+      }
+    }
+
+    Map<BitSet, Set<String>> voSets = new HashMap<>();
+    ImmutableMap.Builder<String, Set<String>> index = ImmutableMap.builder();
+
+    for (Map.Entry<String, BitSet> e : subjectBits.entrySet()) {
+      Set<String> vos = voSets.computeIfAbsent(e.getValue(), bits -> {
+        ImmutableSet.Builder<String> names = ImmutableSet.builder();
+        bits.stream().forEach(i -> names.add(sortedProviders.get(i).getVOName()));
+        return names.build();
+      });
+      index.put(e.getKey(), vos);
+    }
+
+    return new VOMembershipIndex(index.build(), sortedProviders.size());
+  }
+
+  public Set<String> getSubjectVOs(String subject) {
+    return subjectVOs.getOrDefault(subject, Collections.emptySet());
+  }
+
+  public int getSubjectCount() {
+    return subjectVOs.size();
+  }
+
+  public int getVOCount() {
+    return voCount;
+  }
+}
@@ -15,10 +15,14 @@
  */
 package org.italiangrid.storm.webdav.authz.vomap;
 
+import java.util.Set;
+
 public interface VOMembershipProvider {
 
   public String getVOName();
 
   public boolean hasSubjectAsMember(String subject);
 
+  public Set<String> getMembers();
+
 }
@@ -23,4 +23,12 @@ public interface VOMembershipSource {
 
   public Set<String> getVOMembers();
 
+  /**
+   * Tells whether the membership information may have changed since the last call to
+   * {@link #getVOMembers()}.
+   */
+  default boolean hasChanged() {
+    return true;
+  }
+
 }
@@ -43,6 +43,9 @@ public class DefaultConfigurationLogger implements ConfigurationLogger {
       .info("Max connections: {}", serviceConfiguration.getMaxConnections());
     logger.info("Max connection queue size: {}",
       serviceConfiguration.getMaxQueueSize());
+    logger.info("Thread mode: {}", serviceConfiguration.getThreadMode());
+    logger.info("Max concurrent requests per storage area: {}",
+      serviceConfiguration.getMaxConcurrentRequestsPerStorageArea());
     logger.info("### TLS configuration");
     logger.info("Service certificate path: {}",
       serviceConfiguration.getCertificatePath());
@@ -0,0 +1,90 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare, 2018.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.italiangrid.storm.webdav.config;
+
+import javax.validation.constraints.DecimalMax;
+import javax.validation.constraints.DecimalMin;
+import javax.validation.constraints.NotNull;
+import javax.validation.constraints.Positive;
+
+/**
+ * HTTP/2 tuning for the TLS connector. The receive windows bound how much data a client can
+ * upload before waiting for a window update; the defaults are sized for high bandwidth-delay
+ * product links rather than for Jetty's 1 MiB/512 KiB defaults.
+ */
+public class Http2Properties {
+
+  public enum FlowControlStrategy {
+    SIMPLE,
+    BUFFERING
+  }
+
+  @Positive
+  int maxConcurrentStreams = 128;
+
+  @Positive
+  int initialSessionRecvWindow = 16 * 1024 * 1024;
+
+  @Positive
+  int initialStreamRecvWindow = 8 * 1024 * 1024;
+
+  @NotNull
+  FlowControlStrategy flowControlStrategy = FlowControlStrategy.BUFFERING;
+
+  @DecimalMin("0.0")
+  @DecimalMax("1.0")
+  float bufferingFlowControlRatio = 0.5f;
+
+  public int getMaxConcurrentStreams() {
+    return maxConcurrentStreams;
+  }
+
+  public void setMaxConcurrentStreams(int maxConcurrentStreams) {
+    this.maxConcurrentStreams = maxConcurrentStreams;
+  }
+
+  public int getInitialSessionRecvWindow() {
+    return initialSessionRecvWindow;
+  }
+
+  public void setInitialSessionRecvWindow(int initialSessionRecvWindow) {
+    this.initialSessionRecvWindow = initialSessionRecvWindow;
+  }
+
+  public int getInitialStreamRecvWindow() {
+    return initialStreamRecvWindow;
+  }
+
+  public void setInitialStreamRecvWindow(int initialStreamRecvWindow) {
+    this.initialStreamRecvWindow = initialStreamRecvWindow;
+  }
+
+  public FlowControlStrategy getFlowControlStrategy() {
+    return flowControlStrategy;
+  }
+
+  public void setFlowControlStrategy(FlowControlStrategy flowControlStrategy) {
+    this.flowControlStrategy = flowControlStrategy;
+  }
+
+  public float getBufferingFlowControlRatio() {
+    return bufferingFlowControlRatio;
+  }
+
+  public void setBufferingFlowControlRatio(float bufferingFlowControlRatio) {
+    this.bufferingFlowControlRatio = bufferingFlowControlRatio;
+  }
+}
@@ -70,6 +70,32 @@ public class OAuthProperties {
   @Min(value = 1, message = "The refresh period must be a positive integer")
   int refreshPeriodMinutes = 1;
 
+  @Min(value = 1, message = "The JWKS min refresh backoff must be a positive integer")
+  long jwksMinBackoffSecs = 5;
+
+  @Min(value = 1, message = "The JWKS max refresh backoff must be a positive integer")
+  long jwksMaxBackoffSecs = 300;
+
+  @Min(value = 0, message = "The unknown key refetch interval must be a non-negative integer")
+  long unknownKeyRefetchMinIntervalSecs = 30;
+
+  @Min(value = 1, message = "The JWKS fetch timeout must be a positive integer")
+  long jwksFetchTimeoutSecs = 10;
+
+  @Min(value = 1, message = "The number of JWKS refresh threads must be a positive integer")
+  int jwksRefreshThreads = 4;
+
+  boolean enableVerifiedTokenCache = true;
+
+  @Min(value = 1, message = "The verified token cache size must be a positive integer")
+  long verifiedTokenCacheSize = 10000;
+
+  @Min(value = 1, message = "The verified token cache max TTL must be a positive integer")
+  long verifiedTokenCacheMaxTtlSecs = 600;
+
+  @Min(value = 0, message = "The verified token cache expiry skew must be a non-negative integer")
+  long verifiedTokenCacheExpirySkewSecs = 10;
+
   public List<AuthorizationServer> getIssuers() {
     return issuers;
   }
@@ -84,5 +110,77 @@ public class OAuthProperties {
 
   public void setRefreshPeriodMinutes(int refreshPeriodMinutes) {
     this.refreshPeriodMinutes = refreshPeriodMinutes;
-  }  
+  }
+
+  public long getJwksMinBackoffSecs() {
+    return jwksMinBackoffSecs;
+  }
+
+  public void setJwksMinBackoffSecs(long jwksMinBackoffSecs) {
+    this.jwksMinBackoffSecs = jwksMinBackoffSecs;
+  }
+
+  public long getJwksMaxBackoffSecs() {
+    return jwksMaxBackoffSecs;
+  }
+
+  public void setJwksMaxBackoffSecs(long jwksMaxBackoffSecs) {
+    this.jwksMaxBackoffSecs = jwksMaxBackoffSecs;
+  }
+
+  public long getUnknownKeyRefetchMinIntervalSecs() {
+    return unknownKeyRefetchMinIntervalSecs;
+  }
+
+  public void setUnknownKeyRefetchMinIntervalSecs(long unknownKeyRefetchMinIntervalSecs) {
+    this.unknownKeyRefetchMinIntervalSecs = unknownKeyRefetchMinIntervalSecs;
+  }
+
+  public long getJwksFetchTimeoutSecs() {
+    return jwksFetchTimeoutSecs;
+  }
+
+  public void setJwksFetchTimeoutSecs(long jwksFetchTimeoutSecs) {
+    this.jwksFetchTimeoutSecs = jwksFetchTimeoutSecs;
+  }
+
+  public int getJwksRefreshThreads() {
+    return jwksRefreshThreads;
+  }
+
+  public void setJwksRefreshThreads(int jwksRefreshThreads) {
+    this.jwksRefreshThreads = jwksRefreshThreads;
+  }
+
+  public boolean isEnableVerifiedTokenCache() {
+    return enableVerifiedTokenCache;
+  }
+
+  public void setEnableVerifiedTokenCache(boolean enableVerifiedTokenCache) {
+    this.enableVerifiedTokenCache = enableVerifiedTokenCache;
+  }
+
+  public long getVerifiedTokenCacheSize() {
+    return verifiedTokenCacheSize;
+  }
+
+  public void setVerifiedTokenCacheSize(long verifiedTokenCacheSize) {
+    this.verifiedTokenCacheSize = verifiedTokenCacheSize;
+  }
+
+  public long getVerifiedTokenCacheMaxTtlSecs() {
+    return verifiedTokenCacheMaxTtlSecs;
+  }
+
+  public void setVerifiedTokenCacheMaxTtlSecs(long verifiedTokenCacheMaxTtlSecs) {
+    this.verifiedTokenCacheMaxTtlSecs = verifiedTokenCacheMaxTtlSecs;
+  }
+
+  public long getVerifiedTokenCacheExpirySkewSecs() {
+    return verifiedTokenCacheExpirySkewSecs;
+  }
+
+  public void setVerifiedTokenCacheExpirySkewSecs(long verifiedTokenCacheExpirySkewSecs) {
+    this.verifiedTokenCacheExpirySkewSecs = verifiedTokenCacheExpirySkewSecs;
+  }
 }
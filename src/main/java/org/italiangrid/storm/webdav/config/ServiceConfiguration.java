@@ -17,6 +17,11 @@ package org.italiangrid.storm.webdav.config;
 
 public interface ServiceConfiguration {
 
+  public enum ThreadMode {
+    PLATFORM,
+    VIRTUAL
+  }
+
   public int getHTTPSPort();
 
   public int getHTTPPort();
@@ -39,6 +44,16 @@ public interface ServiceConfiguration {
 
   public int getConnectorMaxIdleTimeInMsec();
 
+  public ThreadMode getThreadMode();
+
+  public int getMaxConcurrentRequestsPerStorageArea();
+
+  public int getConnectorOutputBufferSize();
+
+  public int getConnectorBufferPoolMaxCapacity();
+
+  public int getConnectorBufferPoolMaxQueueLength();
+
   public String getSAConfigDir();
 
   public boolean enableVOMapFiles();
@@ -55,4 +70,6 @@ public interface ServiceConfiguration {
   
   public boolean enableHttp2();
 
+  public Http2Properties getHttp2();
+
 }
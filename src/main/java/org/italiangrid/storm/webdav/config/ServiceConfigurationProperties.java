@@ -15,12 +15,19 @@
  */
 package org.italiangrid.storm.webdav.config;
 
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import javax.validation.Valid;
+import javax.validation.constraints.DecimalMax;
+import javax.validation.constraints.DecimalMin;
 import javax.validation.constraints.Max;
+import javax.validation.constraints.Min;
 import javax.validation.constraints.NotBlank;
 import javax.validation.constraints.NotEmpty;
+import javax.validation.constraints.NotNull;
 import javax.validation.constraints.Positive;
 
 import org.springframework.boot.context.properties.ConfigurationProperties;
@@ -49,6 +56,226 @@ public class ServiceConfigurationProperties implements ServiceConfiguration {
     }
   }
 
+  public static class AdmissionControlProperties {
+
+    boolean enabled = false;
+
+    @Min(0)
+    int maxQueuedRequestsPerSa = 100;
+
+    @Positive
+    long maxQueueWaitMsec = 5000;
+
+    @Positive
+    int retryAfterSecs = 5;
+
+    Map<String, Integer> methodLimits = new HashMap<>();
+
+    public boolean isEnabled() {
+      return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+      this.enabled = enabled;
+    }
+
+    public int getMaxQueuedRequestsPerSa() {
+      return maxQueuedRequestsPerSa;
+    }
+
+    public void setMaxQueuedRequestsPerSa(int maxQueuedRequestsPerSa) {
+      this.maxQueuedRequestsPerSa = maxQueuedRequestsPerSa;
+    }
+
+    public long getMaxQueueWaitMsec() {
+      return maxQueueWaitMsec;
+    }
+
+    public void setMaxQueueWaitMsec(long maxQueueWaitMsec) {
+      this.maxQueueWaitMsec = maxQueueWaitMsec;
+    }
+
+    public int getRetryAfterSecs() {
+      return retryAfterSecs;
+    }
+
+    public void setRetryAfterSecs(int retryAfterSecs) {
+      this.retryAfterSecs = retryAfterSecs;
+    }
+
+    public Map<String, Integer> getMethodLimits() {
+      return methodLimits;
+    }
+
+    public void setMethodLimits(Map<String, Integer> methodLimits) {
+      this.methodLimits = methodLimits;
+    }
+  }
+
+  public static class AsyncIoProperties {
+
+    boolean enabled = false;
+
+    @Positive
+    int bufferSize = 65536;
+
+    public boolean isEnabled() {
+      return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+      this.enabled = enabled;
+    }
+
+    public int getBufferSize() {
+      return bufferSize;
+    }
+
+    public void setBufferSize(int bufferSize) {
+      this.bufferSize = bufferSize;
+    }
+  }
+
+  public static class RequestLogProperties {
+
+    boolean enabled = false;
+
+    @Positive
+    int bufferSize = 8192;
+
+    public boolean isEnabled() {
+      return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+      this.enabled = enabled;
+    }
+
+    public int getBufferSize() {
+      return bufferSize;
+    }
+
+    public void setBufferSize(int bufferSize) {
+      this.bufferSize = bufferSize;
+    }
+  }
+
+  public static class TracingProperties {
+
+    boolean enabled = false;
+
+    @DecimalMin("0.0")
+    @DecimalMax("1.0")
+    double samplingRatio = 0.01;
+
+    boolean trustIncomingSampling = false;
+
+    @NotBlank
+    String endpoint = "http://localhost:4318/v1/traces";
+
+    @Positive
+    long exportIntervalMsec = 5000;
+
+    @Positive
+    int maxQueuedSpans = 4096;
+
+    @Positive
+    int maxBatchSize = 512;
+
+    public boolean isEnabled() {
+      return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+      this.enabled = enabled;
+    }
+
+    public double getSamplingRatio() {
+      return samplingRatio;
+    }
+
+    public void setSamplingRatio(double samplingRatio) {
+      this.samplingRatio = samplingRatio;
+    }
+
+    public boolean isTrustIncomingSampling() {
+      return trustIncomingSampling;
+    }
+
+    public void setTrustIncomingSampling(boolean trustIncomingSampling) {
+      this.trustIncomingSampling = trustIncomingSampling;
+    }
+
+    public String getEndpoint() {
+      return endpoint;
+    }
+
+    public void setEndpoint(String endpoint) {
+      this.endpoint = endpoint;
+    }
+
+    public long getExportIntervalMsec() {
+      return exportIntervalMsec;
+    }
+
+    public void setExportIntervalMsec(long exportIntervalMsec) {
+      this.exportIntervalMsec = exportIntervalMsec;
+    }
+
+    public int getMaxQueuedSpans() {
+      return maxQueuedSpans;
+    }
+
+    public void setMaxQueuedSpans(int maxQueuedSpans) {
+      this.maxQueuedSpans = maxQueuedSpans;
+    }
+
+    public int getMaxBatchSize() {
+      return maxBatchSize;
+    }
+
+    public void setMaxBatchSize(int maxBatchSize) {
+      this.maxBatchSize = maxBatchSize;
+    }
+  }
+
+  public static class MetricsReporterProperties {
+
+    boolean enabled = true;
+
+    @Positive
+    int reportingPeriodSecs = 60;
+
+    public boolean isEnabled() {
+      return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+      this.enabled = enabled;
+    }
+
+    public int getReportingPeriodSecs() {
+      return reportingPeriodSecs;
+    }
+
+    public void setReportingPeriodSecs(int reportingPeriodSecs) {
+      this.reportingPeriodSecs = reportingPeriodSecs;
+    }
+  }
+
+  public static class RequestMetricsProperties {
+
+    boolean enabled = true;
+
+    public boolean isEnabled() {
+      return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+      this.enabled = enabled;
+    }
+  }
+
   public static class ChecksumFilterProperties {
 
     boolean enabled = true;
@@ -66,6 +293,11 @@ public class ServiceConfigurationProperties implements ServiceConfiguration {
 
     boolean disabled = false;
 
+    boolean authoritiesCacheEnabled = true;
+
+    @Positive
+    long authoritiesCacheMaxSize = 10000;
+
     public boolean isDisabled() {
       return disabled;
     }
@@ -73,6 +305,22 @@ public class ServiceConfigurationProperties implements ServiceConfiguration {
     public void setDisabled(boolean disabled) {
       this.disabled = disabled;
     }
+
+    public boolean isAuthoritiesCacheEnabled() {
+      return authoritiesCacheEnabled;
+    }
+
+    public void setAuthoritiesCacheEnabled(boolean authoritiesCacheEnabled) {
+      this.authoritiesCacheEnabled = authoritiesCacheEnabled;
+    }
+
+    public long getAuthoritiesCacheMaxSize() {
+      return authoritiesCacheMaxSize;
+    }
+
+    public void setAuthoritiesCacheMaxSize(long authoritiesCacheMaxSize) {
+      this.authoritiesCacheMaxSize = authoritiesCacheMaxSize;
+    }
   }
 
   public static class ConnectorProperties {
@@ -94,6 +342,44 @@ public class ServiceConfigurationProperties implements ServiceConfiguration {
     @Positive
     int maxIdleTimeMsec = 30000;
 
+    @NotNull
+    ThreadMode threadMode = ThreadMode.PLATFORM;
+
+    @Min(0)
+    int maxConcurrentRequestsPerSa = 0;
+
+    @Positive
+    int outputBufferSize = 32768;
+
+    @Positive
+    int bufferPoolMaxCapacity = 65536;
+
+    int bufferPoolMaxQueueLength = -1;
+
+    public int getOutputBufferSize() {
+      return outputBufferSize;
+    }
+
+    public void setOutputBufferSize(int outputBufferSize) {
+      this.outputBufferSize = outputBufferSize;
+    }
+
+    public int getBufferPoolMaxCapacity() {
+      return bufferPoolMaxCapacity;
+    }
+
+    public void setBufferPoolMaxCapacity(int bufferPoolMaxCapacity) {
+      this.bufferPoolMaxCapacity = bufferPoolMaxCapacity;
+    }
+
+    public int getBufferPoolMaxQueueLength() {
+      return bufferPoolMaxQueueLength;
+    }
+
+    public void setBufferPoolMaxQueueLength(int bufferPoolMaxQueueLength) {
+      this.bufferPoolMaxQueueLength = bufferPoolMaxQueueLength;
+    }
+
     public int getPort() {
       return port;
     }
@@ -133,6 +419,22 @@ public class ServiceConfigurationProperties implements ServiceConfiguration {
     public void setMaxIdleTimeMsec(int maxIdleTimeMsec) {
       this.maxIdleTimeMsec = maxIdleTimeMsec;
     }
+
+    public ThreadMode getThreadMode() {
+      return threadMode;
+    }
+
+    public void setThreadMode(ThreadMode threadMode) {
+      this.threadMode = threadMode;
+    }
+
+    public int getMaxConcurrentRequestsPerSa() {
+      return maxConcurrentRequestsPerSa;
+    }
+
+    public void setMaxConcurrentRequestsPerSa(int maxConcurrentRequestsPerSa) {
+      this.maxConcurrentRequestsPerSa = maxConcurrentRequestsPerSa;
+    }
   }
 
   public static class TLSProperties {
@@ -154,6 +456,17 @@ public class ServiceConfigurationProperties implements ServiceConfiguration {
 
     boolean enableHttp2 = false;
 
+    @Valid
+    Http2Properties http2 = new Http2Properties();
+
+    public Http2Properties getHttp2() {
+      return http2;
+    }
+
+    public void setHttp2(Http2Properties http2) {
+      this.http2 = http2;
+    }
+
     public String getCertificatePath() {
       return certificatePath;
     }
@@ -256,6 +569,31 @@ public class ServiceConfigurationProperties implements ServiceConfiguration {
     }
   }
 
+  public static class FsOperationsProperties {
+
+    @Positive(message = "The filesystem operations parallelism must be a positive integer")
+    int parallelism = 16;
+
+    @Positive(message = "The max concurrent operations per filesystem must be a positive integer")
+    int maxConcurrentOpsPerFilesystem = 8;
+
+    public int getParallelism() {
+      return parallelism;
+    }
+
+    public void setParallelism(int parallelism) {
+      this.parallelism = parallelism;
+    }
+
+    public int getMaxConcurrentOpsPerFilesystem() {
+      return maxConcurrentOpsPerFilesystem;
+    }
+
+    public void setMaxConcurrentOpsPerFilesystem(int maxConcurrentOpsPerFilesystem) {
+      this.maxConcurrentOpsPerFilesystem = maxConcurrentOpsPerFilesystem;
+    }
+  }
+
   public static class AuthorizationServerProperties {
 
     boolean enabled = true;
@@ -269,6 +607,18 @@ public class ServiceConfigurationProperties implements ServiceConfiguration {
     @Positive
     int maxTokenLifetimeSec = 43200;
 
+    String signatureAlgorithm = "HS256";
+
+    String jwksPath;
+
+    @Min(value = 0, message = "Key rotation period must be a non-negative integer")
+    long keyRotationPeriodSec = 0;
+
+    @Min(value = 0, message = "Retired signing keys to keep must be a non-negative integer")
+    int retiredSigningKeysToKeep = 2;
+
+    List<String> peerIssuers = new ArrayList<>();
+
     public boolean isEnabled() {
       return enabled;
     }
@@ -300,6 +650,46 @@ public class ServiceConfigurationProperties implements ServiceConfiguration {
     public void setMaxTokenLifetimeSec(int maxTokenLifetimeSec) {
       this.maxTokenLifetimeSec = maxTokenLifetimeSec;
     }
+
+    public String getSignatureAlgorithm() {
+      return signatureAlgorithm;
+    }
+
+    public void setSignatureAlgorithm(String signatureAlgorithm) {
+      this.signatureAlgorithm = signatureAlgorithm;
+    }
+
+    public String getJwksPath() {
+      return jwksPath;
+    }
+
+    public void setJwksPath(String jwksPath) {
+      this.jwksPath = jwksPath;
+    }
+
+    public long getKeyRotationPeriodSec() {
+      return keyRotationPeriodSec;
+    }
+
+    public void setKeyRotationPeriodSec(long keyRotationPeriodSec) {
+      this.keyRotationPeriodSec = keyRotationPeriodSec;
+    }
+
+    public int getRetiredSigningKeysToKeep() {
+      return retiredSigningKeysToKeep;
+    }
+
+    public void setRetiredSigningKeysToKeep(int retiredSigningKeysToKeep) {
+      this.retiredSigningKeysToKeep = retiredSigningKeysToKeep;
+    }
+
+    public List<String> getPeerIssuers() {
+      return peerIssuers;
+    }
+
+    public void setPeerIssuers(List<String> peerIssuers) {
+      this.peerIssuers = peerIssuers;
+    }
   }
 
   @Valid
@@ -336,6 +726,9 @@ public class ServiceConfigurationProperties implements ServiceConfiguration {
       @Positive(message = "The VOMS cache entry lifetime must be a positive integer")
       int entryLifetimeSec;
 
+      @Positive(message = "The VOMS cache max entries must be a positive integer")
+      int maxEntries = 5000;
+
       public boolean isEnabled() {
         return enabled;
       }
@@ -351,6 +744,14 @@ public class ServiceConfigurationProperties implements ServiceConfiguration {
       public void setEntryLifetimeSec(int entryLifetimeSec) {
         this.entryLifetimeSec = entryLifetimeSec;
       }
+
+      public int getMaxEntries() {
+        return maxEntries;
+      }
+
+      public void setMaxEntries(int maxEntries) {
+        this.maxEntries = maxEntries;
+      }
     }
 
     VOMSCacheProperties cache;
@@ -379,6 +780,18 @@ public class ServiceConfigurationProperties implements ServiceConfiguration {
 
   private MacaroonFilterProperties macaroonFilter;
 
+  private AdmissionControlProperties admissionControl = new AdmissionControlProperties();
+
+  private AsyncIoProperties asyncIo = new AsyncIoProperties();
+
+  private RequestMetricsProperties requestMetrics = new RequestMetricsProperties();
+
+  private MetricsReporterProperties metricsReporter = new MetricsReporterProperties();
+
+  private RequestLogProperties requestLog = new RequestLogProperties();
+
+  private TracingProperties tracing = new TracingProperties();
+
   private ConnectorProperties connector;
 
   private TLSProperties tls;
@@ -391,6 +804,8 @@ public class ServiceConfigurationProperties implements ServiceConfiguration {
 
   private VOMSProperties voms;
 
+  private FsOperationsProperties fsOperations = new FsOperationsProperties();
+
   private String logConfigurationPath;
 
   private String accessLogConfigurationPath;
@@ -527,6 +942,18 @@ public class ServiceConfigurationProperties implements ServiceConfiguration {
   }
 
 
+  @Override
+  public ThreadMode getThreadMode() {
+    return getConnector().getThreadMode();
+  }
+
+
+  @Override
+  public int getMaxConcurrentRequestsPerStorageArea() {
+    return getConnector().getMaxConcurrentRequestsPerSa();
+  }
+
+
   @Override
   public String getSAConfigDir() {
     return getSa().getConfigDir();
@@ -582,6 +1009,15 @@ public class ServiceConfigurationProperties implements ServiceConfiguration {
   }
 
 
+  public FsOperationsProperties getFsOperations() {
+    return fsOperations;
+  }
+
+  public void setFsOperations(FsOperationsProperties fsOperations) {
+    this.fsOperations = fsOperations;
+  }
+
+
   public List<String> getHostnames() {
     return hostnames;
   }
@@ -611,6 +1047,66 @@ public class ServiceConfigurationProperties implements ServiceConfiguration {
     this.macaroonFilter = macaroonFilter;
   }
 
+
+  public AdmissionControlProperties getAdmissionControl() {
+    return admissionControl;
+  }
+
+
+  public void setAdmissionControl(AdmissionControlProperties admissionControl) {
+    this.admissionControl = admissionControl;
+  }
+
+
+  public AsyncIoProperties getAsyncIo() {
+    return asyncIo;
+  }
+
+
+  public void setAsyncIo(AsyncIoProperties asyncIo) {
+    this.asyncIo = asyncIo;
+  }
+
+
+  public RequestMetricsProperties getRequestMetrics() {
+    return requestMetrics;
+  }
+
+
+  public void setRequestMetrics(RequestMetricsProperties requestMetrics) {
+    this.requestMetrics = requestMetrics;
+  }
+
+
+  public MetricsReporterProperties getMetricsReporter() {
+    return metricsReporter;
+  }
+
+
+  public void setMetricsReporter(MetricsReporterProperties metricsReporter) {
+    this.metricsReporter = metricsReporter;
+  }
+
+
+  public RequestLogProperties getRequestLog() {
+    return requestLog;
+  }
+
+
+  public void setRequestLog(RequestLogProperties requestLog) {
+    this.requestLog = requestLog;
+  }
+
+
+  public TracingProperties getTracing() {
+    return tracing;
+  }
+
+
+  public void setTracing(TracingProperties tracing) {
+    this.tracing = tracing;
+  }
+
   public ChecksumStrategy getChecksumStrategy() {
     return checksumStrategy;
   }
@@ -630,4 +1126,28 @@ public class ServiceConfigurationProperties implements ServiceConfiguration {
   public boolean enableHttp2() {
     return getTls().isEnableHttp2();
   }
+
+
+  @Override
+  public Http2Properties getHttp2() {
+    return getTls().getHttp2();
+  }
+
+
+  @Override
+  public int getConnectorOutputBufferSize() {
+    return getConnector().getOutputBufferSize();
+  }
+
+
+  @Override
+  public int getConnectorBufferPoolMaxCapacity() {
+    return getConnector().getBufferPoolMaxCapacity();
+  }
+
+
+  @Override
+  public int getConnectorBufferPoolMaxQueueLength() {
+    return getConnector().getBufferPoolMaxQueueLength();
+  }
 }
@@ -15,6 +15,9 @@
  */
 package org.italiangrid.storm.webdav.config;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import javax.validation.constraints.Min;
 import javax.validation.constraints.NotBlank;
 import javax.validation.constraints.Positive;
@@ -39,6 +42,13 @@ public class ThirdPartyCopyProperties {
   @Positive(message = "tpc.reportDelaySecs must be a positive integer (i.e. > 0)")
   int reportDelaySecs;
 
+  @Positive(message = "tpc.maxReportDelaySecs must be a positive integer (i.e. > 0)")
+  int maxReportDelaySecs = 10;
+
+  boolean adaptiveReportDelay = true;
+
+  boolean suppressSubSecondPerfMarkers = true;
+
   @Min(value = 4096, message = "tpc.httpClientSocketBufferSize must be > 4096")
   int httpClientSocketBufferSize = 8192;
 
@@ -47,6 +57,10 @@ public class ThirdPartyCopyProperties {
   
   boolean useConscrypt = false;
 
+  boolean enableLocalCopy = false;
+
+  List<String> sharedFilesystemPeers = new ArrayList<>();
+
   public String getTlsProtocol() {
     return tlsProtocol;
   }
@@ -79,6 +93,30 @@ public class ThirdPartyCopyProperties {
     this.reportDelaySecs = reportDelaySecs;
   }
 
+  public int getMaxReportDelaySecs() {
+    return maxReportDelaySecs;
+  }
+
+  public void setMaxReportDelaySecs(int maxReportDelaySecs) {
+    this.maxReportDelaySecs = maxReportDelaySecs;
+  }
+
+  public boolean isAdaptiveReportDelay() {
+    return adaptiveReportDelay;
+  }
+
+  public void setAdaptiveReportDelay(boolean adaptiveReportDelay) {
+    this.adaptiveReportDelay = adaptiveReportDelay;
+  }
+
+  public boolean isSuppressSubSecondPerfMarkers() {
+    return suppressSubSecondPerfMarkers;
+  }
+
+  public void setSuppressSubSecondPerfMarkers(boolean suppressSubSecondPerfMarkers) {
+    this.suppressSubSecondPerfMarkers = suppressSubSecondPerfMarkers;
+  }
+
   public int getHttpClientSocketBufferSize() {
     return httpClientSocketBufferSize;
   }
@@ -102,4 +140,20 @@ public class ThirdPartyCopyProperties {
   public void setUseConscrypt(boolean useConscrypt) {
     this.useConscrypt = useConscrypt;
   }
+
+  public boolean isEnableLocalCopy() {
+    return enableLocalCopy;
+  }
+
+  public void setEnableLocalCopy(boolean enableLocalCopy) {
+    this.enableLocalCopy = enableLocalCopy;
+  }
+
+  public List<String> getSharedFilesystemPeers() {
+    return sharedFilesystemPeers;
+  }
+
+  public void setSharedFilesystemPeers(List<String> sharedFilesystemPeers) {
+    this.sharedFilesystemPeers = sharedFilesystemPeers;
+  }
 }
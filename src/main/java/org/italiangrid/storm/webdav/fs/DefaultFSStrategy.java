@@ -15,24 +15,29 @@
  */
 package org.italiangrid.storm.webdav.fs;
 
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.util.Objects.isNull;
+import static org.italiangrid.storm.webdav.fs.SyscallTimers.Syscall.OPEN;
+import static org.italiangrid.storm.webdav.fs.SyscallTimers.Syscall.RENAME;
+
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
 
-import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.IOUtils;
 import org.italiangrid.storm.webdav.checksum.Adler32ChecksumInputStream;
 import org.italiangrid.storm.webdav.error.SameFileError;
 import org.italiangrid.storm.webdav.error.StoRMWebDAVError;
+import org.italiangrid.storm.webdav.error.TreeOperationError;
 import org.italiangrid.storm.webdav.fs.attrs.ExtendedAttributesHelper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
-import com.google.common.io.Files;
-
 @Component
 public class DefaultFSStrategy implements FilesystemAccess {
 
@@ -40,11 +45,23 @@ public class DefaultFSStrategy implements FilesystemAccess {
     .getLogger(DefaultFSStrategy.class);
 
   final ExtendedAttributesHelper attrsHelper;
+  final LocalCopyEngine copyEngine;
+  final TreeOperationEngine treeEngine;
+  final SyscallTimers syscallTimers;
 
   @Autowired
-  public DefaultFSStrategy(ExtendedAttributesHelper helper) {
+  public DefaultFSStrategy(ExtendedAttributesHelper helper, LocalCopyEngine engine,
+    TreeOperationEngine treeEngine) {
+    this(helper, engine, treeEngine, null);
+  }
+
+  public DefaultFSStrategy(ExtendedAttributesHelper helper, LocalCopyEngine engine,
+    TreeOperationEngine treeEngine, SyscallTimers syscallTimers) {
 
     attrsHelper = helper;
+    copyEngine = engine;
+    this.treeEngine = treeEngine;
+    this.syscallTimers = syscallTimers;
   }
 
   @Override
@@ -65,6 +82,19 @@ public class DefaultFSStrategy implements FilesystemAccess {
   public boolean rm(File f) {
 
     LOG.debug("rm: {}", f.getAbsolutePath());
+
+    if (Files.isDirectory(f.toPath(), LinkOption.NOFOLLOW_LINKS)) {
+
+      TreeOperationResult result = treeEngine.deleteTree(f.toPath());
+
+      if (result.hasFailures()) {
+        throw new TreeOperationError(String.format("%d members of %s could not be removed",
+          result.getFailureCount(), f.getAbsolutePath()), result);
+      }
+
+      return true;
+    }
+
     return f.delete();
   }
 
@@ -81,7 +111,14 @@ public class DefaultFSStrategy implements FilesystemAccess {
       }
       
       // Overwrites the destination, if it exists 
-      Files.move(source, dest);
+      final long start = System.nanoTime();
+      try {
+        Files.move(source.toPath(), dest.toPath(), REPLACE_EXISTING);
+      } finally {
+        if (!isNull(syscallTimers)) {
+          syscallTimers.record(RENAME, start);
+        }
+      }
 
     } catch (IOException e) {
       throw new StoRMWebDAVError(e.getMessage(), e);
@@ -110,11 +147,17 @@ public class DefaultFSStrategy implements FilesystemAccess {
 
       if (source.isDirectory()) {
 
-        FileUtils.copyDirectory(source, dest);
+        TreeOperationResult result =
+            treeEngine.copyTree(source.toPath(), dest.toPath());
+
+        if (result.hasFailures()) {
+          throw new TreeOperationError(String.format("%d members of %s could not be copied",
+            result.getFailureCount(), source.getAbsolutePath()), result);
+        }
 
       } else {
 
-        Files.copy(source, dest);
+        copyEngine.copyFile(source.toPath(), dest.toPath());
 
       }
 
@@ -124,6 +167,17 @@ public class DefaultFSStrategy implements FilesystemAccess {
     }
   }
 
+  private FileOutputStream openForWrite(File file) throws IOException {
+    final long start = System.nanoTime();
+    try {
+      return new FileOutputStream(file);
+    } finally {
+      if (!isNull(syscallTimers)) {
+        syscallTimers.record(OPEN, start);
+      }
+    }
+  }
+
   @Override
   public File create(File file, InputStream in) {
 
@@ -138,7 +192,10 @@ public class DefaultFSStrategy implements FilesystemAccess {
 
       Adler32ChecksumInputStream cis = new Adler32ChecksumInputStream(in);
 
-      IOUtils.copy(cis, new FileOutputStream(file));
+      try (FileOutputStream out = openForWrite(file)) {
+        IOUtils.copy(cis, out);
+      }
+
       attrsHelper.setChecksumAttribute(file, cis.getChecksumValue());
 
       return file;
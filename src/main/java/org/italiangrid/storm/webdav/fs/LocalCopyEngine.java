@@ -0,0 +1,138 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare, 2018.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.italiangrid.storm.webdav.fs;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static java.lang.String.format;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardOpenOption.CREATE_NEW;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.UUID;
+import java.util.function.LongConsumer;
+
+import org.italiangrid.storm.webdav.fs.attrs.ExtendedAttributesHelper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Copies files within locally mounted storage.
+ * 
+ * File contents are copied with {@link FileChannel#transferTo}, which the JDK maps to in-kernel
+ * copies (sendfile/copy_file_range) where available, and the StoRM checksum extended attributes
+ * are copied instead of being recomputed. Contents and attributes are written to a temporary file
+ * next to the destination, which then replaces the destination atomically: a failed copy leaves
+ * the destination untouched, and no stale checksum attribute survives a successful one.
+ */
+public class LocalCopyEngine {
+
+  public static final Logger LOG = LoggerFactory.getLogger(LocalCopyEngine.class);
+
+  public static final String CHECKSUM_ATTR_PREFIX = "storm.checksum.";
+
+  public static final long COPY_CHUNK_SIZE = 64L * 1024 * 1024;
+
+  final ExtendedAttributesHelper attrsHelper;
+
+  public LocalCopyEngine(ExtendedAttributesHelper attrsHelper) {
+    checkNotNull(attrsHelper);
+    this.attrsHelper = attrsHelper;
+  }
+
+  public long copyFile(Path source, Path dest) throws IOException {
+    return copyFile(source, dest, null);
+  }
+
+  static Path temporaryFileFor(Path dest) {
+    return dest.resolveSibling(format(".%s.%s.tmp", dest.getFileName(), UUID.randomUUID()));
+  }
+
+  public long copyFile(Path source, Path dest, LongConsumer progress) throws IOException {
+
+    long position = 0;
+
+    try (FileChannel in = FileChannel.open(source, READ)) {
+
+      final Path tmp = temporaryFileFor(dest);
+      boolean moved = false;
+
+      try {
+        try (FileChannel out = FileChannel.open(tmp, CREATE_NEW, WRITE)) {
+
+          final long size = in.size();
+
+          while (position < size) {
+            long count = in.transferTo(position, Math.min(COPY_CHUNK_SIZE, size - position), out);
+            if (count <= 0) {
+              break;
+            }
+            position += count;
+            if (progress != null) {
+              progress.accept(position);
+            }
+          }
+        }
+
+        copyChecksumAttributes(source, tmp);
+        Files.move(tmp, dest, ATOMIC_MOVE, REPLACE_EXISTING);
+        moved = true;
+
+      } finally {
+        if (!moved) {
+          deleteTemporaryFile(tmp);
+        }
+      }
+    }
+
+    return position;
+  }
+
+  private void deleteTemporaryFile(Path tmp) {
+    try {
+      Files.deleteIfExists(tmp);
+    } catch (IOException e) {
+      LOG.warn("Error removing temporary copy {}: {}", tmp, e.getMessage());
+    }
+  }
+
+  public void copyChecksumAttributes(Path source, Path dest) {
+
+    final File sourceFile = source.toFile();
+
+    try {
+      if (!attrsHelper.fileSupportsExtendedAttributes(sourceFile)) {
+        return;
+      }
+
+      for (String name : attrsHelper.getExtendedFileAttributeNames(sourceFile)) {
+        if (name.startsWith(CHECKSUM_ATTR_PREFIX)) {
+          attrsHelper.setExtendedFileAttribute(dest.toFile(), name,
+              attrsHelper.getExtendedFileAttributeValue(sourceFile, name));
+        }
+      }
+    } catch (IOException e) {
+      LOG.warn("Error copying checksum attributes from {} to {}: {}", source, dest,
+          e.getMessage());
+    }
+  }
+}
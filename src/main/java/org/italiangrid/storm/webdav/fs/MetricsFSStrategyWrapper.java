@@ -15,14 +15,18 @@
  */
 package org.italiangrid.storm.webdav.fs;
 
+import static com.codahale.metrics.MetricRegistry.name;
+import static org.italiangrid.storm.webdav.metrics.BucketedMetricRegistry.hdrTimer;
+
 import java.io.File;
 import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.italiangrid.storm.webdav.server.tracing.Span;
 
 import com.codahale.metrics.MetricRegistry;
 import com.codahale.metrics.Timer;
 
-import static com.codahale.metrics.MetricRegistry.name;
-
 public class MetricsFSStrategyWrapper implements FilesystemAccess {
 
   final FilesystemAccess delegate;
@@ -41,19 +45,24 @@ public class MetricsFSStrategyWrapper implements FilesystemAccess {
     this.delegate = delegate;
     this.registry = registry;
 
-    mkdirTimer = registry.timer(name(FilesystemAccess.class, "mkdir"));
-    rmTimer = registry.timer(name(FilesystemAccess.class, "rm"));
-    cpTimer = registry.timer(name(FilesystemAccess.class, "cp"));
-    lsTimer = registry.timer(name(FilesystemAccess.class, "ls"));
-    mvTimer = registry.timer(name(FilesystemAccess.class, "mv"));
-    createTimer = registry.timer(name(FilesystemAccess.class, "create"));
+    mkdirTimer = hdrTimer(registry, name(FilesystemAccess.class, "mkdir"));
+    rmTimer = hdrTimer(registry, name(FilesystemAccess.class, "rm"));
+    cpTimer = hdrTimer(registry, name(FilesystemAccess.class, "cp"));
+    lsTimer = hdrTimer(registry, name(FilesystemAccess.class, "ls"));
+    mvTimer = hdrTimer(registry, name(FilesystemAccess.class, "mv"));
+    createTimer = hdrTimer(registry, name(FilesystemAccess.class, "create"));
+
+  }
 
+  private static void record(Timer timer, String spanName, long start) {
+    timer.update(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    Span.record(spanName, start);
   }
 
   @Override
   public File mkdir(File parentDirectory, String dirName) {
 
-    final Timer.Context context = mkdirTimer.time();
+    final long start = System.nanoTime();
 
     try {
 
@@ -61,7 +70,7 @@ public class MetricsFSStrategyWrapper implements FilesystemAccess {
 
     } finally {
 
-      context.stop();
+      record(mkdirTimer, "fs.mkdir", start);
     }
 
   }
@@ -69,13 +78,13 @@ public class MetricsFSStrategyWrapper implements FilesystemAccess {
   @Override
   public boolean rm(File f) {
 
-    final Timer.Context context = rmTimer.time();
+    final long start = System.nanoTime();
 
     try {
       return delegate.rm(f);
 
     } finally {
-      context.stop();
+      record(rmTimer, "fs.rm", start);
     }
 
   }
@@ -83,13 +92,13 @@ public class MetricsFSStrategyWrapper implements FilesystemAccess {
   @Override
   public void mv(File source, File dest) {
 
-    final Timer.Context context = mvTimer.time();
+    final long start = System.nanoTime();
 
     try {
       delegate.mv(source, dest);
 
     } finally {
-      context.stop();
+      record(mvTimer, "fs.mv", start);
     }
 
   }
@@ -97,13 +106,13 @@ public class MetricsFSStrategyWrapper implements FilesystemAccess {
   @Override
   public void cp(File source, File dest) {
 
-    final Timer.Context context = cpTimer.time();
+    final long start = System.nanoTime();
     try {
 
       delegate.cp(source, dest);
 
     } finally {
-      context.stop();
+      record(cpTimer, "fs.cp", start);
     }
 
   }
@@ -111,24 +120,24 @@ public class MetricsFSStrategyWrapper implements FilesystemAccess {
   @Override
   public File[] ls(File dir, int limit) {
 
-    final Timer.Context context = lsTimer.time();
+    final long start = System.nanoTime();
     try {
       return delegate.ls(dir, limit);
     } finally {
 
-      context.stop();
+      record(lsTimer, "fs.ls", start);
     }
   }
 
   @Override
   public File create(File file, InputStream in) {
 
-    final Timer.Context context = createTimer.time();
+    final long start = System.nanoTime();
     try {
       return delegate.create(file, in);
     } finally {
 
-      context.stop();
+      record(createTimer, "fs.create", start);
     }
 
   }
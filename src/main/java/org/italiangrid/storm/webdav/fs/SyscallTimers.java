@@ -0,0 +1,75 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare, 2018.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.italiangrid.storm.webdav.fs;
+
+import static com.codahale.metrics.MetricRegistry.name;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+import org.italiangrid.storm.webdav.metrics.BucketedMetricRegistry;
+import org.italiangrid.storm.webdav.server.tracing.Span;
+
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+
+/**
+ * HdrHistogram backed timers for the individual filesystem calls issued while serving requests,
+ * to correlate request tail latency with the storage backend. Each call is also recorded as a
+ * span of the current trace, if any. Recording a call does not allocate for untraced requests:
+ * 
+ * <pre>
+ * final long start = System.nanoTime();
+ * try {
+ *   ...
+ * } finally {
+ *   timers.record(Syscall.STAT, start);
+ * }
+ * </pre>
+ */
+public class SyscallTimers {
+
+  public enum Syscall {
+    STAT, OPEN, RENAME, XATTR_READ, XATTR_WRITE;
+
+    public String metricName() {
+      return name().toLowerCase(Locale.ROOT).replace('_', '-');
+    }
+  }
+
+  private final Timer[] timers = new Timer[Syscall.values().length];
+  private final String[] spanNames = new String[Syscall.values().length];
+
+  public SyscallTimers(MetricRegistry registry) {
+    checkNotNull(registry);
+
+    for (Syscall s : Syscall.values()) {
+      timers[s.ordinal()] = BucketedMetricRegistry.hdrTimer(registry,
+          name(FilesystemAccess.class, "syscalls", s.metricName()));
+      spanNames[s.ordinal()] = "fs." + s.metricName();
+    }
+  }
+
+  public Timer timer(Syscall syscall) {
+    return timers[syscall.ordinal()];
+  }
+
+  public void record(Syscall syscall, long startNanos) {
+    timers[syscall.ordinal()].update(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    Span.record(spanNames[syscall.ordinal()], startNanos);
+  }
+}
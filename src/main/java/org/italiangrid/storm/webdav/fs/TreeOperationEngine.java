@@ -0,0 +1,397 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare, 2018.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.italiangrid.storm.webdav.fs;
+
+import static com.codahale.metrics.MetricRegistry.name;
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static java.nio.file.LinkOption.NOFOLLOW_LINKS;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileStore;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.Semaphore;
+
+import org.italiangrid.storm.webdav.error.SameFileError;
+import org.italiangrid.storm.webdav.error.StoRMWebDAVError;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+
+/**
+ * Recursive delete and copy of directory trees, run on a fork/join pool.
+ * 
+ * Each directory is handled by its own task, and the files of large directories are split in
+ * batches so that flat trees are processed in parallel too. The number of concurrent filesystem
+ * operations is bounded per {@link FileStore}, across all the tree operations in progress; workers
+ * waiting for a permit are managed blockers, so the pool can keep the other tasks running.
+ * Failures are collected per member, and do not stop the processing of the rest of the tree.
+ */
+public class TreeOperationEngine implements DisposableBean {
+
+  public static final Logger LOG = LoggerFactory.getLogger(TreeOperationEngine.class);
+
+  public static final int FILE_BATCH_SIZE = 256;
+
+  final ForkJoinPool pool;
+  final LocalCopyEngine copyEngine;
+  final int maxConcurrentOpsPerFilesystem;
+  final ConcurrentMap<FileStore, Semaphore> filesystemPermits = new ConcurrentHashMap<>();
+
+  final Counter activeOperations;
+  final Meter deletedEntries;
+  final Meter copiedEntries;
+  final Meter failedEntries;
+
+  public TreeOperationEngine(LocalCopyEngine copyEngine, MetricRegistry registry, int parallelism,
+      int maxConcurrentOpsPerFilesystem) {
+    checkNotNull(copyEngine);
+    checkNotNull(registry);
+    checkArgument(parallelism > 0, "parallelism must be > 0");
+    checkArgument(maxConcurrentOpsPerFilesystem > 0, "maxConcurrentOpsPerFilesystem must be > 0");
+
+    this.copyEngine = copyEngine;
+    this.maxConcurrentOpsPerFilesystem = maxConcurrentOpsPerFilesystem;
+    this.pool = new ForkJoinPool(parallelism);
+
+    activeOperations = registry.counter(name(TreeOperationEngine.class, "active"));
+    deletedEntries = registry.meter(name(TreeOperationEngine.class, "deleted"));
+    copiedEntries = registry.meter(name(TreeOperationEngine.class, "copied"));
+    failedEntries = registry.meter(name(TreeOperationEngine.class, "failures"));
+  }
+
+  private Semaphore permitsFor(Path p) throws IOException {
+    return filesystemPermits.computeIfAbsent(Files.getFileStore(p),
+        fs -> new Semaphore(maxConcurrentOpsPerFilesystem));
+  }
+
+  private TreeOperationResult run(TreeTask task) {
+    activeOperations.inc();
+    try {
+      pool.invoke(task);
+      return task.result;
+    } finally {
+      activeOperations.dec();
+    }
+  }
+
+  public TreeOperationResult deleteTree(Path root) {
+    TreeOperationResult result = new TreeOperationResult(root);
+    try {
+      return run(new DeleteDirectoryTask(result, permitsFor(root), root));
+    } catch (IOException e) {
+      throw new StoRMWebDAVError(e.getMessage(), e);
+    }
+  }
+
+  /**
+   * Resolves symbolic links in the part of the path that exists, so that a path that does not
+   * exist yet can be compared with a real path.
+   */
+  static Path realPath(Path p) throws IOException {
+    final Path normalized = p.toAbsolutePath().normalize();
+
+    Path existing = normalized;
+    while (existing != null && !Files.exists(existing)) {
+      existing = existing.getParent();
+    }
+
+    if (existing == null) {
+      return normalized;
+    }
+
+    return existing.toRealPath().resolve(existing.relativize(normalized));
+  }
+
+  public TreeOperationResult copyTree(Path source, Path dest) {
+    TreeOperationResult result = new TreeOperationResult(source);
+    try {
+      if (realPath(dest).startsWith(source.toRealPath())) {
+        throw new SameFileError(
+            String.format("Destination %s is inside the source collection %s", dest, source));
+      }
+
+      Files.createDirectories(dest);
+      return run(new CopyDirectoryTask(result, permitsFor(dest), source, dest));
+    } catch (IOException e) {
+      throw new StoRMWebDAVError(e.getMessage(), e);
+    }
+  }
+
+  @Override
+  public void destroy() throws Exception {
+    pool.shutdownNow();
+  }
+
+  private interface FileOperation {
+    void apply(Path p) throws IOException;
+  }
+
+  static class PermitBlocker implements ForkJoinPool.ManagedBlocker {
+
+    final Semaphore permits;
+    boolean acquired = false;
+
+    PermitBlocker(Semaphore permits) {
+      this.permits = permits;
+    }
+
+    @Override
+    public boolean block() throws InterruptedException {
+      if (!acquired) {
+        permits.acquire();
+        acquired = true;
+      }
+      return true;
+    }
+
+    @Override
+    public boolean isReleasable() {
+      if (!acquired) {
+        acquired = permits.tryAcquire();
+      }
+      return acquired;
+    }
+  }
+
+  abstract class TreeTask extends RecursiveTask<Boolean> {
+
+    private static final long serialVersionUID = 1L;
+
+    final TreeOperationResult result;
+    final Semaphore permits;
+
+    TreeTask(TreeOperationResult result, Semaphore permits) {
+      this.result = result;
+      this.permits = permits;
+    }
+
+    boolean apply(Path p, FileOperation op, Meter meter) {
+      try {
+        if (!permits.tryAcquire()) {
+          ForkJoinPool.managedBlock(new PermitBlocker(permits));
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        result.failed(p, new IOException("Interrupted"));
+        return false;
+      }
+
+      try {
+        op.apply(p);
+        result.processed();
+        meter.mark();
+        return true;
+      } catch (IOException e) {
+        LOG.debug("Tree operation failed on {}: {}", p, e.getMessage());
+        result.failed(p, e);
+        failedEntries.mark();
+        return false;
+      } finally {
+        permits.release();
+      }
+    }
+
+    boolean joinAll(List<? extends TreeTask> tasks) {
+      boolean success = true;
+      for (TreeTask t : tasks) {
+        success &= t.join();
+      }
+      return success;
+    }
+  }
+
+  class DeleteFilesTask extends TreeTask {
+
+    private static final long serialVersionUID = 1L;
+
+    final List<Path> files;
+
+    DeleteFilesTask(TreeOperationResult result, Semaphore permits, List<Path> files) {
+      super(result, permits);
+      this.files = files;
+    }
+
+    @Override
+    protected Boolean compute() {
+      boolean success = true;
+      for (Path f : files) {
+        success &= apply(f, Files::delete, deletedEntries);
+      }
+      return success;
+    }
+  }
+
+  class DeleteDirectoryTask extends TreeTask {
+
+    private static final long serialVersionUID = 1L;
+
+    final Path dir;
+
+    DeleteDirectoryTask(TreeOperationResult result, Semaphore permits, Path dir) {
+      super(result, permits);
+      this.dir = dir;
+    }
+
+    @Override
+    protected Boolean compute() {
+
+      List<TreeTask> subtasks = new ArrayList<>();
+      List<Path> files = new ArrayList<>();
+      boolean success = true;
+
+      try (DirectoryStream<Path> entries = Files.newDirectoryStream(dir)) {
+        for (Path p : entries) {
+          if (Files.isDirectory(p, NOFOLLOW_LINKS)) {
+            subtasks.add(forked(new DeleteDirectoryTask(result, permits, p)));
+          } else {
+            files.add(p);
+            if (files.size() == FILE_BATCH_SIZE) {
+              subtasks.add(forked(new DeleteFilesTask(result, permits, files)));
+              files = new ArrayList<>();
+            }
+          }
+        }
+      } catch (IOException e) {
+        result.failed(dir, e);
+        failedEntries.mark();
+        success = false;
+      }
+
+      if (!files.isEmpty()) {
+        success &= new DeleteFilesTask(result, permits, files).compute();
+      }
+
+      success &= joinAll(subtasks);
+
+      // A collection is removed only if all its members have been removed. The failure of
+      // a member is not reported again on its ancestors
+      if (success) {
+        success = apply(dir, Files::delete, deletedEntries);
+      }
+
+      return success;
+    }
+  }
+
+  class CopyFilesTask extends TreeTask {
+
+    private static final long serialVersionUID = 1L;
+
+    final Path sourceDir;
+    final Path destDir;
+    final List<Path> files;
+
+    CopyFilesTask(TreeOperationResult result, Semaphore permits, Path sourceDir, Path destDir,
+        List<Path> files) {
+      super(result, permits);
+      this.sourceDir = sourceDir;
+      this.destDir = destDir;
+      this.files = files;
+    }
+
+    private void copy(Path f) throws IOException {
+      Path target = destDir.resolve(sourceDir.relativize(f));
+      copyEngine.copyFile(f, target);
+      Files.setLastModifiedTime(target, Files.getLastModifiedTime(f));
+    }
+
+    @Override
+    protected Boolean compute() {
+      boolean success = true;
+      for (Path f : files) {
+        success &= apply(f, this::copy, copiedEntries);
+      }
+      return success;
+    }
+  }
+
+  class CopyDirectoryTask extends TreeTask {
+
+    private static final long serialVersionUID = 1L;
+
+    final Path sourceDir;
+    final Path destDir;
+
+    CopyDirectoryTask(TreeOperationResult result, Semaphore permits, Path sourceDir,
+        Path destDir) {
+      super(result, permits);
+      this.sourceDir = sourceDir;
+      this.destDir = destDir;
+    }
+
+    @Override
+    protected Boolean compute() {
+
+      List<TreeTask> subtasks = new ArrayList<>();
+      List<Path> files = new ArrayList<>();
+      boolean success = true;
+
+      try (DirectoryStream<Path> entries = Files.newDirectoryStream(sourceDir)) {
+        for (Path p : entries) {
+          BasicFileAttributes attrs =
+              Files.readAttributes(p, BasicFileAttributes.class, NOFOLLOW_LINKS);
+
+          if (attrs.isDirectory()) {
+            Path target = destDir.resolve(p.getFileName().toString());
+            if (apply(p, s -> Files.createDirectories(target), copiedEntries)) {
+              subtasks.add(forked(new CopyDirectoryTask(result, permits, p, target)));
+            } else {
+              success = false;
+            }
+          } else if (attrs.isRegularFile()
+              || (attrs.isSymbolicLink() && Files.isRegularFile(p))) {
+            files.add(p);
+            if (files.size() == FILE_BATCH_SIZE) {
+              subtasks.add(forked(new CopyFilesTask(result, permits, sourceDir, destDir, files)));
+              files = new ArrayList<>();
+            }
+          } else {
+            LOG.debug("Skipping {} during tree copy", p);
+          }
+        }
+      } catch (IOException e) {
+        result.failed(sourceDir, e);
+        failedEntries.mark();
+        success = false;
+      }
+
+      if (!files.isEmpty()) {
+        success &= new CopyFilesTask(result, permits, sourceDir, destDir, files).compute();
+      }
+
+      return success & joinAll(subtasks);
+    }
+  }
+
+  private static <T extends TreeTask> T forked(T task) {
+    task.fork();
+    return task;
+  }
+}
@@ -0,0 +1,88 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare, 2018.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.italiangrid.storm.webdav.fs;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class TreeOperationResult {
+
+  public static final int MAX_REPORTED_FAILURES = 1000;
+
+  public static class Failure {
+
+    final String relativePath;
+    final IOException cause;
+
+    Failure(String relativePath, IOException cause) {
+      this.relativePath = relativePath;
+      this.cause = cause;
+    }
+
+    public String getRelativePath() {
+      return relativePath;
+    }
+
+    public IOException getCause() {
+      return cause;
+    }
+  }
+
+  final Path root;
+  final AtomicLong processedCount = new AtomicLong();
+  final AtomicInteger failureCount = new AtomicInteger();
+  final Queue<Failure> failures = new ConcurrentLinkedQueue<>();
+
+  public TreeOperationResult(Path root) {
+    this.root = root;
+  }
+
+  void processed() {
+    processedCount.incrementAndGet();
+  }
+
+  void failed(Path p, IOException cause) {
+    if (failureCount.incrementAndGet() <= MAX_REPORTED_FAILURES) {
+      failures.add(new Failure(root.relativize(p).toString(), cause));
+    }
+  }
+
+  public Path getRoot() {
+    return root;
+  }
+
+  public long getProcessedCount() {
+    return processedCount.get();
+  }
+
+  public int getFailureCount() {
+    return failureCount.get();
+  }
+
+  public boolean hasFailures() {
+    return failureCount.get() > 0;
+  }
+
+  public List<Failure> getFailures() {
+    return new ArrayList<>(failures);
+  }
+}
@@ -0,0 +1,122 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare, 2018.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.italiangrid.storm.webdav.fs.attrs;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static org.italiangrid.storm.webdav.fs.SyscallTimers.Syscall.XATTR_READ;
+import static org.italiangrid.storm.webdav.fs.SyscallTimers.Syscall.XATTR_WRITE;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.italiangrid.storm.webdav.fs.SyscallTimers;
+
+public class MetricsExtendedAttributesHelper implements ExtendedAttributesHelper {
+
+  final ExtendedAttributesHelper delegate;
+  final SyscallTimers timers;
+
+  public MetricsExtendedAttributesHelper(ExtendedAttributesHelper delegate,
+      SyscallTimers timers) {
+    checkNotNull(delegate);
+    checkNotNull(timers);
+    this.delegate = delegate;
+    this.timers = timers;
+  }
+
+  @Override
+  public void setExtendedFileAttribute(File f, String attributeName, String attributeValue)
+      throws IOException {
+    final long start = System.nanoTime();
+    try {
+      delegate.setExtendedFileAttribute(f, attributeName, attributeValue);
+    } finally {
+      timers.record(XATTR_WRITE, start);
+    }
+  }
+
+  @Override
+  public String getExtendedFileAttributeValue(File f, String attributeName) throws IOException {
+    final long start = System.nanoTime();
+    try {
+      return delegate.getExtendedFileAttributeValue(f, attributeName);
+    } finally {
+      timers.record(XATTR_READ, start);
+    }
+  }
+
+  @Override
+  public List<String> getExtendedFileAttributeNames(File f) throws IOException {
+    final long start = System.nanoTime();
+    try {
+      return delegate.getExtendedFileAttributeNames(f);
+    } finally {
+      timers.record(XATTR_READ, start);
+    }
+  }
+
+  @Override
+  public void setChecksumAttribute(Path p, String checksumValue) throws IOException {
+    final long start = System.nanoTime();
+    try {
+      delegate.setChecksumAttribute(p, checksumValue);
+    } finally {
+      timers.record(XATTR_WRITE, start);
+    }
+  }
+
+  @Override
+  public void setChecksumAttribute(File f, String checksumValue) throws IOException {
+    final long start = System.nanoTime();
+    try {
+      delegate.setChecksumAttribute(f, checksumValue);
+    } finally {
+      timers.record(XATTR_WRITE, start);
+    }
+  }
+
+  @Override
+  public String getChecksumAttribute(File f) throws IOException {
+    final long start = System.nanoTime();
+    try {
+      return delegate.getChecksumAttribute(f);
+    } finally {
+      timers.record(XATTR_READ, start);
+    }
+  }
+
+  @Override
+  public String getChecksumAttribute(Path p) throws IOException {
+    final long start = System.nanoTime();
+    try {
+      return delegate.getChecksumAttribute(p);
+    } finally {
+      timers.record(XATTR_READ, start);
+    }
+  }
+
+  @Override
+  public boolean fileSupportsExtendedAttributes(File f) throws IOException {
+    final long start = System.nanoTime();
+    try {
+      return delegate.fileSupportsExtendedAttributes(f);
+    } finally {
+      timers.record(XATTR_READ, start);
+    }
+  }
+}
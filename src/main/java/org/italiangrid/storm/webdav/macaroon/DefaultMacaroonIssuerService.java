@@ -16,11 +16,14 @@
 package org.italiangrid.storm.webdav.macaroon;
 
 import static com.google.common.base.Strings.isNullOrEmpty;
+import static java.util.Objects.isNull;
+import static java.util.stream.Collectors.joining;
 
 import java.time.Clock;
 import java.time.Duration;
 import java.time.format.DateTimeParseException;
 
+import org.italiangrid.storm.webdav.authz.scope.StorageScope;
 import org.italiangrid.storm.webdav.oauth.authzserver.AccessTokenRequest;
 import org.italiangrid.storm.webdav.oauth.authzserver.jwt.SignedJwtTokenIssuer;
 import org.slf4j.Logger;
@@ -58,6 +61,31 @@ public class DefaultMacaroonIssuerService implements MacaroonIssuerService {
         LOG.warn("Invalid validity string: {}", request.getValidity());
       }
     }
+
+    MacaroonCaveats caveats = MacaroonCaveats.parse(request.getCaveats());
+
+    if (caveats.getBefore().isPresent()) {
+      final long secsToBefore =
+          Duration.between(clock.instant(), caveats.getBefore().get()).getSeconds();
+
+      if (secsToBefore <= 0) {
+        throw new InvalidCaveatError("The before caveat is in the past");
+      }
+
+      if (isNull(req.getLifetime()) || req.getLifetime() <= 0
+          || secsToBefore < req.getLifetime()) {
+        req.setLifetime(secsToBefore);
+      }
+    }
+
+    if (caveats.restrictsAccess()) {
+      req.setScope(caveats.toStorageScopes()
+        .stream()
+        .map(StorageScope::toString)
+        .collect(joining(" ")));
+    }
+
+    req.restrictToClientAddresses(caveats.getClientAddresses());
     return req;
   }
 
@@ -0,0 +1,212 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare, 2018.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.italiangrid.storm.webdav.macaroon;
+
+import static java.lang.String.format;
+
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+
+import org.italiangrid.storm.webdav.authz.ClientAddressAuthority;
+import org.italiangrid.storm.webdav.authz.scope.StorageScope;
+
+import com.google.common.base.Splitter;
+
+/**
+ * The caveats of a macaroon request, in the format used by dCache clients:
+ * <ul>
+ * <li><code>path:/some/path</code> restricts the macaroon to a path;</li>
+ * <li><code>activity:DOWNLOAD,LIST</code> restricts the allowed activities;</li>
+ * <li><code>before:2019-01-01T00:00:00Z</code> limits the macaroon validity;</li>
+ * <li><code>ip:192.168.1.0/24,::1</code> restricts the client addresses.</li>
+ * </ul>
+ * Repeated caveats restrict each other: paths and activities are intersected, the earliest
+ * <code>before</code> wins, and all the <code>ip</code> caveats must be satisfied.
+ *
+ * Path and activity caveats are turned into storage scopes, that are then checked against the
+ * permissions of the requester when the token is issued.
+ */
+public class MacaroonCaveats {
+
+  public enum Activity {
+    DOWNLOAD(StorageScope.Activity.READ),
+    LIST(StorageScope.Activity.READ),
+    READ_METADATA(StorageScope.Activity.READ),
+    UPLOAD(StorageScope.Activity.CREATE),
+    DELETE(StorageScope.Activity.MODIFY),
+    MANAGE(StorageScope.Activity.MODIFY),
+    UPDATE_METADATA(StorageScope.Activity.MODIFY);
+
+    private final StorageScope.Activity scopeActivity;
+
+    private Activity(StorageScope.Activity scopeActivity) {
+      this.scopeActivity = scopeActivity;
+    }
+
+    public StorageScope.Activity getScopeActivity() {
+      return scopeActivity;
+    }
+  }
+
+  public static final String PATH = "path";
+  public static final String ACTIVITY = "activity";
+  public static final String BEFORE = "before";
+  public static final String IP = "ip";
+
+  private static final Splitter LIST_SPLITTER = Splitter.on(',').trimResults().omitEmptyStrings();
+
+  private String path;
+  private Set<Activity> activities;
+  private Instant before;
+  private final List<String> clientAddresses = new ArrayList<>();
+
+  private MacaroonCaveats() {}
+
+  public static MacaroonCaveats parse(List<String> caveats) {
+    MacaroonCaveats result = new MacaroonCaveats();
+
+    if (caveats != null) {
+      caveats.forEach(result::addCaveat);
+    }
+
+    return result;
+  }
+
+  private void addCaveat(String caveat) {
+    final int idx = caveat == null ? -1 : caveat.indexOf(':');
+
+    if (idx < 0) {
+      throw new InvalidCaveatError(format("Invalid caveat: '%s'", caveat));
+    }
+
+    final String type = caveat.substring(0, idx).trim();
+    final String value = caveat.substring(idx + 1).trim();
+
+    if (PATH.equals(type)) {
+      addPath(value);
+    } else if (ACTIVITY.equals(type)) {
+      addActivities(value);
+    } else if (BEFORE.equals(type)) {
+      addBefore(value);
+    } else if (IP.equals(type)) {
+      addClientAddresses(value);
+    } else {
+      throw new InvalidCaveatError(format("Unsupported caveat: '%s'", caveat));
+    }
+  }
+
+  private void addPath(String value) {
+    // Parsed as a scope to reuse the path validation and normalization
+    final String p = StorageScope.parse(StorageScope.Activity.READ.getScopeName()
+        + StorageScope.SCOPE_PATH_SEPARATOR + value)
+      .orElseThrow(() -> new InvalidCaveatError(format("Invalid path caveat: '%s'", value)))
+      .getPath();
+
+    if (path == null || isSameOrBelow(p, path)) {
+      path = p;
+    } else if (!isSameOrBelow(path, p)) {
+      throw new InvalidCaveatError(format("Disjoint path caveats: '%s', '%s'", path, p));
+    }
+  }
+
+  private static boolean isSameOrBelow(String p, String prefix) {
+    return "/".equals(prefix) || p.equals(prefix) || p.startsWith(prefix + "/");
+  }
+
+  private void addActivities(String value) {
+    Set<Activity> requested = EnumSet.noneOf(Activity.class);
+
+    for (String a : LIST_SPLITTER.split(value)) {
+      try {
+        requested.add(Activity.valueOf(a));
+      } catch (IllegalArgumentException e) {
+        throw new InvalidCaveatError(format("Unsupported activity: '%s'", a), e);
+      }
+    }
+
+    if (activities == null) {
+      activities = requested;
+    } else {
+      activities.retainAll(requested);
+    }
+  }
+
+  private void addBefore(String value) {
+    try {
+      Instant b = Instant.parse(value);
+      if (before == null || b.isBefore(before)) {
+        before = b;
+      }
+    } catch (DateTimeParseException e) {
+      throw new InvalidCaveatError(format("Invalid before caveat: '%s'", value), e);
+    }
+  }
+
+  private void addClientAddresses(String value) {
+    try {
+      // Validate early, to report errors at issuance time
+      new ClientAddressAuthority(value);
+    } catch (IllegalArgumentException e) {
+      throw new InvalidCaveatError(format("Invalid ip caveat: '%s'", value), e);
+    }
+    clientAddresses.add(value);
+  }
+
+  public boolean restrictsAccess() {
+    return path != null || activities != null;
+  }
+
+  /**
+   * Returns the storage scopes implied by the path and activity caveats, or an empty list when
+   * there are no such caveats.
+   */
+  public List<StorageScope> toStorageScopes() {
+    if (!restrictsAccess()) {
+      return Collections.emptyList();
+    }
+
+    if (activities != null && activities.isEmpty()) {
+      throw new InvalidCaveatError("Activity caveats do not allow any activity");
+    }
+
+    final String scopePath = path == null ? "/" : path;
+    final Set<Activity> allowed = activities == null ? EnumSet.allOf(Activity.class) : activities;
+
+    Set<StorageScope> scopes = new LinkedHashSet<>();
+    allowed.forEach(a -> scopes.add(StorageScope.of(a.getScopeActivity(), scopePath)));
+
+    return new ArrayList<>(scopes);
+  }
+
+  public Optional<String> getPath() {
+    return Optional.ofNullable(path);
+  }
+
+  public Optional<Instant> getBefore() {
+    return Optional.ofNullable(before);
+  }
+
+  public List<String> getClientAddresses() {
+    return Collections.unmodifiableList(clientAddresses);
+  }
+}
@@ -15,10 +15,14 @@
  */
 package org.italiangrid.storm.webdav.macaroon;
 
+import java.util.List;
+
 public class MacaroonRequestDTO {
   
   String validity;
 
+  List<String> caveats;
+
   public String getValidity() {
     return validity;
   }
@@ -26,4 +30,12 @@ public class MacaroonRequestDTO {
   public void setValidity(String validity) {
     this.validity = validity;
   }
+
+  public List<String> getCaveats() {
+    return caveats;
+  }
+
+  public void setCaveats(List<String> caveats) {
+    this.caveats = caveats;
+  }
 }
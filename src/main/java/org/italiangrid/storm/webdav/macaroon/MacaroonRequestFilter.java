@@ -29,6 +29,7 @@ import javax.servlet.ServletResponse;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
+import org.italiangrid.storm.webdav.oauth.authzserver.error.InvalidScopeError;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.http.HttpMethod;
@@ -93,6 +94,9 @@ public class MacaroonRequestFilter implements Filter {
       httpResponse.sendError(SC_FORBIDDEN,
           "Access denied");
       
+    } catch (InvalidCaveatError | InvalidScopeError e) {
+      httpResponse.sendError(SC_BAD_REQUEST, e.getMessage());
+
     } catch (IOException e) {
       httpResponse.sendError(SC_BAD_REQUEST,
           "Invalid macaroon request");
@@ -0,0 +1,78 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare, 2018.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.italiangrid.storm.webdav.metrics;
+
+import java.util.concurrent.TimeUnit;
+
+import com.codahale.metrics.ExponentiallyDecayingReservoir;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+
+/**
+ * A {@link MetricRegistry} whose timers also keep histogram buckets, so that they can be exported
+ * as proper histograms rather than as snapshot quantiles. Timers are backed by an exponentially
+ * decaying reservoir, or by an HdrHistogram one when obtained with {@link #hdrTimer(String)}.
+ */
+public class BucketedMetricRegistry extends MetricRegistry {
+
+  public static final double[] DEFAULT_TIMER_BUCKETS_SECS = {0.0005, 0.001, 0.0025, 0.005, 0.01,
+      0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10, 30, 60, 300, 900, 3600};
+
+  private final long[] timerBucketsNanos;
+
+  public BucketedMetricRegistry() {
+    this(DEFAULT_TIMER_BUCKETS_SECS);
+  }
+
+  public BucketedMetricRegistry(double[] timerBucketsSecs) {
+    timerBucketsNanos = new long[timerBucketsSecs.length];
+
+    for (int i = 0; i < timerBucketsSecs.length; i++) {
+      timerBucketsNanos[i] = (long) (timerBucketsSecs[i] * TimeUnit.SECONDS.toNanos(1));
+    }
+  }
+
+  protected BucketedTimer newTimer() {
+    return new BucketedTimer(
+        new BucketedReservoir(new ExponentiallyDecayingReservoir(), timerBucketsNanos));
+  }
+
+  @Override
+  public Timer timer(String name) {
+    return timer(name, this::newTimer);
+  }
+
+  protected BucketedTimer newHdrTimer() {
+    return new BucketedTimer(
+        new BucketedReservoir(new HdrHistogramReservoir(), timerBucketsNanos));
+  }
+
+  /**
+   * Returns a timer whose quantiles are computed by a {@link HdrHistogramReservoir}, for
+   * latencies where the tail matters.
+   */
+  public Timer hdrTimer(String name) {
+    return timer(name, this::newHdrTimer);
+  }
+
+  public static Timer hdrTimer(MetricRegistry registry, String name) {
+    if (registry instanceof BucketedMetricRegistry) {
+      return ((BucketedMetricRegistry) registry).hdrTimer(name);
+    }
+
+    return registry.timer(name, () -> new Timer(new HdrHistogramReservoir()));
+  }
+}
@@ -0,0 +1,97 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare, 2018.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.italiangrid.storm.webdav.metrics;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.codahale.metrics.Reservoir;
+import com.codahale.metrics.Snapshot;
+
+/**
+ * A reservoir that, besides delegating to a sampling reservoir for quantiles, keeps cumulative
+ * counts for a fixed set of buckets and the sum of all recorded values. Bucket counts are never
+ * reset, so they can be exported as histogram buckets.
+ */
+public class BucketedReservoir implements Reservoir {
+
+  private final Reservoir delegate;
+  private final long[] upperBounds;
+  private final LongAdder[] counts;
+  private final LongAdder sum = new LongAdder();
+
+  public BucketedReservoir(Reservoir delegate, long[] upperBounds) {
+    checkNotNull(delegate);
+    checkNotNull(upperBounds);
+
+    for (int i = 1; i < upperBounds.length; i++) {
+      checkArgument(upperBounds[i] > upperBounds[i - 1], "Bucket bounds must be increasing");
+    }
+
+    this.delegate = delegate;
+    this.upperBounds = upperBounds.clone();
+    this.counts = new LongAdder[upperBounds.length + 1];
+
+    for (int i = 0; i < counts.length; i++) {
+      counts[i] = new LongAdder();
+    }
+  }
+
+  @Override
+  public int size() {
+    return delegate.size();
+  }
+
+  @Override
+  public void update(long value) {
+    int i = Arrays.binarySearch(upperBounds, value);
+    counts[i >= 0 ? i : -i - 1].increment();
+    sum.add(value);
+    delegate.update(value);
+  }
+
+  @Override
+  public Snapshot getSnapshot() {
+    return delegate.getSnapshot();
+  }
+
+  public long[] getUpperBounds() {
+    return upperBounds.clone();
+  }
+
+  /**
+   * @return the cumulative counts for each bucket, i.e. the number of values less than or equal
+   *         to each upper bound, followed by the total count
+   */
+  public long[] getCumulativeCounts() {
+    long[] cumulative = new long[counts.length];
+    long total = 0;
+
+    for (int i = 0; i < counts.length; i++) {
+      total += counts[i].sum();
+      cumulative[i] = total;
+    }
+
+    return cumulative;
+  }
+
+  public long getSum() {
+    return sum.sum();
+  }
+}
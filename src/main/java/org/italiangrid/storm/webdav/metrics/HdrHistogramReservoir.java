@@ -0,0 +1,124 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare, 2018.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.italiangrid.storm.webdav.metrics;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.concurrent.TimeUnit;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import com.codahale.metrics.Clock;
+import com.codahale.metrics.Reservoir;
+import com.codahale.metrics.Snapshot;
+
+/**
+ * A reservoir backed by an HdrHistogram {@link Recorder}, so that tail latencies are kept with a
+ * fixed relative precision instead of being sampled away. Recording a value is wait-free and does
+ * not allocate; values above the highest trackable value are clamped.
+ * 
+ * Snapshots cover the values recorded in the current and in the previous window, i.e. between one
+ * and two windows worth of values.
+ */
+public class HdrHistogramReservoir implements Reservoir {
+
+  public static final long DEFAULT_LOWEST_DISCERNIBLE_VALUE = TimeUnit.MICROSECONDS.toNanos(1);
+  public static final long DEFAULT_HIGHEST_TRACKABLE_VALUE = TimeUnit.HOURS.toNanos(1);
+  public static final int DEFAULT_SIGNIFICANT_DIGITS = 2;
+  public static final long DEFAULT_WINDOW_MSEC = TimeUnit.MINUTES.toMillis(1);
+
+  private final Recorder recorder;
+  private final long lowestDiscernibleValue;
+  private final long highestTrackableValue;
+  private final long windowMsec;
+  private final Clock clock;
+
+  private Histogram interval;
+  private Histogram current;
+  private Histogram previous;
+  private long windowStart;
+
+  public HdrHistogramReservoir() {
+    this(DEFAULT_LOWEST_DISCERNIBLE_VALUE, DEFAULT_HIGHEST_TRACKABLE_VALUE,
+        DEFAULT_SIGNIFICANT_DIGITS, DEFAULT_WINDOW_MSEC, Clock.defaultClock());
+  }
+
+  public HdrHistogramReservoir(long lowestDiscernibleValue, long highestTrackableValue,
+      int significantDigits, long windowMsec, Clock clock) {
+    checkArgument(lowestDiscernibleValue >= 1, "lowestDiscernibleValue must be >= 1");
+    checkArgument(highestTrackableValue >= 2 * lowestDiscernibleValue,
+        "highestTrackableValue must be >= 2 * lowestDiscernibleValue");
+    checkArgument(windowMsec > 0, "windowMsec must be > 0");
+    checkNotNull(clock);
+
+    this.lowestDiscernibleValue = lowestDiscernibleValue;
+    this.highestTrackableValue = highestTrackableValue;
+    this.windowMsec = windowMsec;
+    this.clock = clock;
+
+    recorder = new Recorder(lowestDiscernibleValue, highestTrackableValue, significantDigits);
+    current = new Histogram(lowestDiscernibleValue, highestTrackableValue, significantDigits);
+    previous = new Histogram(lowestDiscernibleValue, highestTrackableValue, significantDigits);
+    windowStart = clock.getTime();
+  }
+
+  @Override
+  public void update(long value) {
+    recorder.recordValue(Math.max(0, Math.min(value, highestTrackableValue)));
+  }
+
+  private void collect() {
+    interval = recorder.getIntervalHistogram(interval);
+    current.add(interval);
+
+    final long now = clock.getTime();
+
+    if (now - windowStart >= windowMsec) {
+      // Windows are rotated when the reservoir is read, so after an idle period the previous
+      // window holds whatever was recorded since the last rotation
+      Histogram h = previous;
+      previous = current;
+      current = h;
+      current.reset();
+      windowStart = now;
+    }
+  }
+
+  @Override
+  public synchronized int size() {
+    collect();
+    return (int) Math.min(Integer.MAX_VALUE, previous.getTotalCount() + current.getTotalCount());
+  }
+
+  @Override
+  public synchronized Snapshot getSnapshot() {
+    collect();
+
+    Histogram h = previous.copy();
+    h.add(current);
+    return new HdrHistogramSnapshot(h);
+  }
+
+  public long getLowestDiscernibleValue() {
+    return lowestDiscernibleValue;
+  }
+
+  public long getHighestTrackableValue() {
+    return highestTrackableValue;
+  }
+}
@@ -0,0 +1,103 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare, 2018.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.italiangrid.storm.webdav.metrics;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.HistogramIterationValue;
+
+import com.codahale.metrics.Snapshot;
+
+/**
+ * A {@link Snapshot} of the values recorded in an HdrHistogram.
+ */
+public class HdrHistogramSnapshot extends Snapshot {
+
+  private final Histogram histogram;
+
+  public HdrHistogramSnapshot(Histogram histogram) {
+    this.histogram = histogram;
+  }
+
+  @Override
+  public double getValue(double quantile) {
+    checkArgument(quantile >= 0.0 && quantile <= 1.0 && !Double.isNaN(quantile),
+        "%s is not in [0..1]", quantile);
+    return histogram.getValueAtPercentile(quantile * 100.0);
+  }
+
+  /**
+   * Expands the histogram into its recorded values. This is expensive for histograms holding many
+   * values, and meant only for debugging.
+   */
+  @Override
+  public long[] getValues() {
+    long[] values = new long[size()];
+    int i = 0;
+
+    for (HistogramIterationValue v : histogram.recordedValues()) {
+      for (long c = 0; c < v.getCountAtValueIteratedTo() && i < values.length; c++) {
+        values[i++] = v.getValueIteratedTo();
+      }
+    }
+
+    return values;
+  }
+
+  @Override
+  public int size() {
+    return (int) Math.min(Integer.MAX_VALUE, histogram.getTotalCount());
+  }
+
+  @Override
+  public long getMax() {
+    return histogram.getTotalCount() == 0 ? 0 : histogram.getMaxValue();
+  }
+
+  @Override
+  public double getMean() {
+    return histogram.getTotalCount() == 0 ? 0 : histogram.getMean();
+  }
+
+  @Override
+  public long getMin() {
+    return histogram.getTotalCount() == 0 ? 0 : histogram.getMinValue();
+  }
+
+  @Override
+  public double getStdDev() {
+    return histogram.getTotalCount() < 2 ? 0 : histogram.getStdDeviation();
+  }
+
+  /**
+   * Writes a line for each distinct recorded value, with the value and its count.
+   */
+  @Override
+  public void dump(OutputStream output) {
+    try (PrintWriter out = new PrintWriter(new OutputStreamWriter(output, UTF_8))) {
+      for (HistogramIterationValue v : histogram.recordedValues()) {
+        out.printf("%d %d%n", v.getValueIteratedTo(),
+            v.getCountAtValueIteratedTo());
+      }
+    }
+  }
+}
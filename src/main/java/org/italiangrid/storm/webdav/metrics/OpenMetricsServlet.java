@@ -0,0 +1,58 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare, 2018.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.italiangrid.storm.webdav.metrics;
+
+import java.io.IOException;
+import java.io.Writer;
+
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import com.codahale.metrics.MetricRegistry;
+
+/**
+ * Exposes the {@link MetricRegistry} for Prometheus scraping. The OpenMetrics format is used when
+ * the client asks for it in the Accept header, the Prometheus text format otherwise.
+ */
+public class OpenMetricsServlet extends HttpServlet {
+
+  private static final long serialVersionUID = 1L;
+
+  public static final String OPENMETRICS_MEDIA_TYPE = "application/openmetrics-text";
+
+  private final transient MetricRegistry registry;
+  private final transient OpenMetricsWriter metricsWriter;
+
+  public OpenMetricsServlet(MetricRegistry registry) {
+    this.registry = registry;
+    this.metricsWriter = new OpenMetricsWriter();
+  }
+
+  @Override
+  protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+    String accept = req.getHeader("Accept");
+    boolean openMetrics = accept != null && accept.contains(OPENMETRICS_MEDIA_TYPE);
+
+    resp.setStatus(HttpServletResponse.SC_OK);
+    resp.setHeader("Cache-Control", "must-revalidate,no-cache,no-store");
+    resp.setContentType(openMetrics ? OpenMetricsWriter.OPENMETRICS_CONTENT_TYPE
+        : OpenMetricsWriter.PROMETHEUS_CONTENT_TYPE);
+
+    Writer writer = resp.getWriter();
+    metricsWriter.write(registry, writer, openMetrics);
+  }
+}
@@ -0,0 +1,437 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare, 2018.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.italiangrid.storm.webdav.metrics;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.Metered;
+import com.codahale.metrics.Metric;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Sampling;
+import com.codahale.metrics.Snapshot;
+import com.codahale.metrics.Timer;
+
+/**
+ * Renders a {@link MetricRegistry} in the Prometheus text exposition format, or in the OpenMetrics
+ * format. Timers backed by a {@link BucketedReservoir} are rendered as histograms, in seconds;
+ * other timers and histograms as summaries, meters as counters, and counters and numeric gauges as
+ * gauges.
+ *
+ * Dropwizard metric names are turned into snake case metric families. Name segments that identify
+ * a dimension (e.g. <code>storage-areas.sa1</code>) become labels, so that per storage area
+ * metrics end up in the same family. When different metrics sanitize to clashing names, the
+ * family that comes later is suffixed with its type (e.g. <code>_gauge</code>), so that each name
+ * is declared only once.
+ */
+public class OpenMetricsWriter {
+
+  public static final String PROMETHEUS_CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+  public static final String OPENMETRICS_CONTENT_TYPE =
+      "application/openmetrics-text; version=1.0.0; charset=utf-8";
+
+  public static final String STRIPPED_PREFIX = "org.italiangrid.storm.webdav.";
+
+  static final double NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+  static final double[] SUMMARY_QUANTILES = {0.5, 0.75, 0.95, 0.98, 0.99, 0.999};
+  static final String[] SUMMARY_QUANTILE_LABELS = {"quantile=\"0.5\"", "quantile=\"0.75\"",
+      "quantile=\"0.95\"", "quantile=\"0.98\"", "quantile=\"0.99\"", "quantile=\"0.999\""};
+
+  private final Map<String, String> labelSegments;
+  private final Map<String, MetricName> names = new ConcurrentHashMap<>();
+  private final Map<Long, String> bucketLabels = new ConcurrentHashMap<>();
+
+  static class MetricName {
+    final String family;
+    final String labels;
+
+    MetricName(String family, String labels) {
+      this.family = family;
+      this.labels = labels;
+    }
+  }
+
+  static class Sample {
+    final MetricName name;
+    final Metric metric;
+
+    Sample(MetricName name, Metric metric) {
+      this.name = name;
+      this.metric = metric;
+    }
+  }
+
+  public static Map<String, String> defaultLabelSegments() {
+    Map<String, String> segments = new TreeMap<>();
+    segments.put("storage-areas", "storage_area");
+    segments.put("methods", "method");
+    return segments;
+  }
+
+  public OpenMetricsWriter() {
+    this(defaultLabelSegments());
+  }
+
+  public OpenMetricsWriter(Map<String, String> labelSegments) {
+    checkNotNull(labelSegments);
+    this.labelSegments = Collections.unmodifiableMap(new TreeMap<>(labelSegments));
+  }
+
+  static void appendSnakeCase(StringBuilder sb, String segment) {
+    char prev = '_';
+
+    for (int i = 0; i < segment.length(); i++) {
+      char c = segment.charAt(i);
+
+      if (Character.isUpperCase(c) && (Character.isLowerCase(prev) || Character.isDigit(prev))) {
+        sb.append('_');
+      }
+
+      if (Character.isLetterOrDigit(c) && c < 128) {
+        c = Character.toLowerCase(c);
+      } else {
+        c = '_';
+      }
+
+      if (c != '_' || (sb.length() > 0 && sb.charAt(sb.length() - 1) != '_')) {
+        sb.append(c);
+      }
+
+      prev = segment.charAt(i);
+    }
+  }
+
+  static void appendLabelValue(StringBuilder sb, String value) {
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      if (c == '\\' || c == '"') {
+        sb.append('\\').append(c);
+      } else if (c == '\n') {
+        sb.append("\\n");
+      } else {
+        sb.append(c);
+      }
+    }
+  }
+
+  MetricName parseName(String name) {
+    String n = name.startsWith(STRIPPED_PREFIX) ? name.substring(STRIPPED_PREFIX.length()) : name;
+    String[] segments = n.split("\\.");
+
+    StringBuilder family = new StringBuilder();
+    StringBuilder labels = new StringBuilder();
+
+    for (int i = 0; i < segments.length; i++) {
+      if (family.length() > 0 && family.charAt(family.length() - 1) != '_') {
+        family.append('_');
+      }
+
+      appendSnakeCase(family, segments[i]);
+
+      String label = labelSegments.get(segments[i]);
+
+      if (label != null && i + 1 < segments.length - 1) {
+        if (labels.length() > 0) {
+          labels.append(',');
+        }
+        labels.append(label).append("=\"");
+        appendLabelValue(labels, segments[++i]);
+        labels.append('"');
+      }
+    }
+
+    if (family.length() == 0 || Character.isDigit(family.charAt(0))) {
+      family.insert(0, '_');
+    }
+
+    if (family.charAt(family.length() - 1) == '_') {
+      family.setLength(family.length() - 1);
+    }
+
+    return new MetricName(family.toString(), labels.toString());
+  }
+
+  MetricName metricName(String name) {
+    return names.computeIfAbsent(name, this::parseName);
+  }
+
+  static String formatDouble(double d) {
+    if (Double.isNaN(d)) {
+      return "NaN";
+    }
+
+    if (Double.isInfinite(d)) {
+      return d > 0 ? "+Inf" : "-Inf";
+    }
+
+    return Double.toString(d);
+  }
+
+  String bucketLabel(long upperBoundNanos) {
+    return bucketLabels.computeIfAbsent(upperBoundNanos,
+        b -> "le=\"" + formatDouble(b / NANOS_PER_SECOND) + "\"");
+  }
+
+  private static void appendSample(StringBuilder sb, String family, String suffix, String labels,
+      String extraLabel, String value) {
+    sb.append(family).append(suffix);
+
+    boolean hasLabels = !labels.isEmpty();
+
+    if (hasLabels || extraLabel != null) {
+      sb.append('{').append(labels);
+      if (extraLabel != null) {
+        if (hasLabels) {
+          sb.append(',');
+        }
+        sb.append(extraLabel);
+      }
+      sb.append('}');
+    }
+
+    sb.append(' ').append(value).append('\n');
+  }
+
+  private static void appendType(StringBuilder sb, String family, String type) {
+    sb.append("# TYPE ").append(family).append(' ').append(type).append('\n');
+  }
+
+  private void appendHistogram(StringBuilder sb, String family, List<Sample> samples) {
+    appendType(sb, family, "histogram");
+
+    for (Sample s : samples) {
+      BucketedReservoir r = ((BucketedTimer) s.metric).getReservoir();
+      long[] bounds = r.getUpperBounds();
+      long[] counts = r.getCumulativeCounts();
+
+      for (int i = 0; i < bounds.length; i++) {
+        appendSample(sb, family, "_bucket", s.name.labels, bucketLabel(bounds[i]),
+            Long.toString(counts[i]));
+      }
+
+      appendSample(sb, family, "_bucket", s.name.labels, "le=\"+Inf\"",
+          Long.toString(counts[bounds.length]));
+      appendSample(sb, family, "_sum", s.name.labels, null,
+          formatDouble(r.getSum() / NANOS_PER_SECOND));
+      appendSample(sb, family, "_count", s.name.labels, null,
+          Long.toString(counts[bounds.length]));
+    }
+  }
+
+  private void appendSummary(StringBuilder sb, String family, List<Sample> samples) {
+    appendType(sb, family, "summary");
+
+    for (Sample s : samples) {
+      Snapshot snapshot = ((Sampling) s.metric).getSnapshot();
+      double scale = s.metric instanceof Timer ? NANOS_PER_SECOND : 1.0;
+
+      for (int i = 0; i < SUMMARY_QUANTILES.length; i++) {
+        appendSample(sb, family, "", s.name.labels, SUMMARY_QUANTILE_LABELS[i],
+            formatDouble(snapshot.getValue(SUMMARY_QUANTILES[i]) / scale));
+      }
+
+      long count = s.metric instanceof Timer ? ((Timer) s.metric).getCount()
+          : ((Histogram) s.metric).getCount();
+      appendSample(sb, family, "_count", s.name.labels, null, Long.toString(count));
+    }
+  }
+
+  private void appendCounter(StringBuilder sb, String family, List<Sample> samples,
+      boolean openMetrics) {
+    appendType(sb, openMetrics ? family : family + "_total", "counter");
+
+    for (Sample s : samples) {
+      appendSample(sb, family, "_total", s.name.labels, null,
+          Long.toString(((Metered) s.metric).getCount()));
+    }
+  }
+
+  private void appendGauge(StringBuilder sb, String family, List<Sample> samples) {
+    StringBuilder values = new StringBuilder();
+
+    for (Sample s : samples) {
+      String value = gaugeValue(s.metric);
+      if (value != null) {
+        appendSample(values, family, "", s.name.labels, null, value);
+      }
+    }
+
+    if (values.length() > 0) {
+      appendType(sb, family, "gauge");
+      sb.append(values);
+    }
+  }
+
+  static String gaugeValue(Metric metric) {
+    if (metric instanceof Counter) {
+      return Long.toString(((Counter) metric).getCount());
+    }
+
+    Object value;
+
+    try {
+      value = ((Gauge<?>) metric).getValue();
+    } catch (RuntimeException e) {
+      return null;
+    }
+
+    if (value instanceof Number) {
+      return formatDouble(((Number) value).doubleValue());
+    } else if (value instanceof Boolean) {
+      return ((Boolean) value) ? "1" : "0";
+    }
+
+    return null;
+  }
+
+  enum Kind {
+    HISTOGRAM,
+    SUMMARY,
+    COUNTER,
+    GAUGE
+  }
+
+  static Kind kindOf(Metric metric) {
+    if (metric instanceof BucketedTimer) {
+      return Kind.HISTOGRAM;
+    } else if (metric instanceof Timer || metric instanceof Histogram) {
+      return Kind.SUMMARY;
+    } else if (metric instanceof Meter) {
+      return Kind.COUNTER;
+    } else if (metric instanceof Counter || metric instanceof Gauge) {
+      return Kind.GAUGE;
+    }
+    return null;
+  }
+
+  static String[] reservedNames(String family, Kind kind) {
+    switch (kind) {
+      case HISTOGRAM:
+        return new String[] {family, family + "_bucket", family + "_sum", family + "_count"};
+      case SUMMARY:
+        return new String[] {family, family + "_sum", family + "_count"};
+      case COUNTER:
+        return new String[] {family, family + "_total"};
+      default:
+        return new String[] {family};
+    }
+  }
+
+  static boolean isReserved(Set<String> reserved, String family, Kind kind) {
+    for (String n : reservedNames(family, kind)) {
+      if (reserved.contains(n)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Returns the name under which a family is rendered, reserving the sample names it uses, or
+   * null when no unique name is available.
+   */
+  static String uniqueFamily(Set<String> reserved, String family, Kind kind) {
+    String name = family;
+
+    if (isReserved(reserved, name, kind)) {
+      name = family + '_' + kind.name().toLowerCase(Locale.ROOT);
+
+      if (isReserved(reserved, name, kind)) {
+        return null;
+      }
+    }
+
+    Collections.addAll(reserved, reservedNames(name, kind));
+    return name;
+  }
+
+  public void write(MetricRegistry registry, Writer writer, boolean openMetrics)
+      throws IOException {
+
+    Map<String, List<Sample>> families = new TreeMap<>();
+
+    for (Map.Entry<String, Metric> e : new TreeMap<>(registry.getMetrics()).entrySet()) {
+      Kind kind = kindOf(e.getValue());
+
+      if (kind == null) {
+        continue;
+      }
+
+      MetricName name = metricName(e.getKey());
+      String family = e.getValue() instanceof Timer ? name.family + "_seconds" : name.family;
+
+      // Metrics of different kinds never share a family
+      families.computeIfAbsent(family + ' ' + kind.name(), k -> new ArrayList<>())
+        .add(new Sample(name, e.getValue()));
+    }
+
+    StringBuilder sb = new StringBuilder(4096);
+    Set<String> reserved = new HashSet<>();
+
+    for (Map.Entry<String, List<Sample>> f : families.entrySet()) {
+      String key = f.getKey();
+      List<Sample> samples = f.getValue();
+      Kind kind = kindOf(samples.get(0).metric);
+      String family = uniqueFamily(reserved, key.substring(0, key.indexOf(' ')), kind);
+
+      if (family == null) {
+        continue;
+      }
+
+      switch (kind) {
+        case HISTOGRAM:
+          appendHistogram(sb, family, samples);
+          break;
+        case SUMMARY:
+          appendSummary(sb, family, samples);
+          break;
+        case COUNTER:
+          appendCounter(sb, family, samples, openMetrics);
+          break;
+        default:
+          appendGauge(sb, family, samples);
+      }
+
+      if (sb.length() > 65536) {
+        writer.write(sb.toString());
+        sb.setLength(0);
+      }
+    }
+
+    if (openMetrics) {
+      sb.append("# EOF\n");
+    }
+
+    writer.write(sb.toString());
+    writer.flush();
+  }
+}
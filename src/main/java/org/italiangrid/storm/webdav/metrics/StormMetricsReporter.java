@@ -15,37 +15,160 @@
  */
 package org.italiangrid.storm.webdav.metrics;
 
+import static com.google.common.base.Preconditions.checkNotNull;
+import static java.util.Objects.isNull;
+import static org.italiangrid.storm.webdav.server.logging.RequestLogEvent.appendString;
+
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.MemoryUsage;
+import java.time.Instant;
+import java.time.format.DateTimeFormatter;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
 import java.util.SortedMap;
 import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
-import org.apache.commons.io.FileUtils;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+import org.eclipse.jetty.util.thread.ThreadPool;
+import org.italiangrid.storm.webdav.server.servlet.AdmissionControlFilter;
+import org.italiangrid.storm.webdav.server.servlet.RequestMetricsFilter;
+import org.italiangrid.storm.webdav.tpc.http.HttpTransferClientMetricsWrapper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.codahale.metrics.Clock;
 import com.codahale.metrics.Counter;
+import com.codahale.metrics.Counting;
 import com.codahale.metrics.Gauge;
 import com.codahale.metrics.Histogram;
 import com.codahale.metrics.Meter;
+import com.codahale.metrics.Metric;
 import com.codahale.metrics.MetricFilter;
 import com.codahale.metrics.MetricRegistry;
 import com.codahale.metrics.ScheduledReporter;
-import com.codahale.metrics.Snapshot;
 import com.codahale.metrics.Timer;
 
+/**
+ * Periodically logs a summary of the service activity as a single JSON line, for nodes where
+ * metrics cannot be scraped: per storage area request rates, third-party transfer throughput,
+ * thread pool utilization, heap, buffer pools and garbage collection.
+ * 
+ * Counts are reported as deltas over the reporting interval. The metrics of interest are looked
+ * up by name at each report, so metrics that have not been registered (yet) are reported as
+ * zero; previous values are kept in a preallocated array, and the JSON line is rendered in a
+ * reused buffer.
+ */
 public class StormMetricsReporter extends ScheduledReporter {
 
   public static final String METRICS_LOGGER_NAME = "storm-metrics-LOG";
-  
-  private static final Logger logger = LoggerFactory
-    .getLogger(METRICS_LOGGER_NAME);
-  
-  private Long lastCountValue = null;
-  
-  private StormMetricsReporter(MetricRegistry registry, MetricFilter filter,
-    TimeUnit rateUnit, TimeUnit durationUnit) {
 
-    super(registry, "storm", filter, rateUnit,
-      durationUnit);
+  private static final Logger logger = LoggerFactory.getLogger(METRICS_LOGGER_NAME);
+
+  public static final String HANDLER_DISPATCHES_METRIC_NAME = "storm.http.handler.dispatches";
+  public static final String HANDLER_ACTIVE_REQUESTS_METRIC_NAME =
+      "storm.http.handler.active-requests";
+
+  static final String SERVER_ERRORS_STATUS_CLASS = "5xx";
+
+  // Slots of the previous values array
+  static final int DISPATCHES = 0;
+  static final int PULL_COUNT = 1;
+  static final int PULL_BYTES = 2;
+  static final int PUSH_COUNT = 3;
+  static final int PUSH_BYTES = 4;
+  static final int FIXED_SLOTS = 5;
+
+  static final int SA_REQUESTS = 0;
+  static final int SA_BYTES_IN = 1;
+  static final int SA_BYTES_OUT = 2;
+  static final int SA_SERVER_ERRORS = 3;
+  static final int SA_SLOTS = 4;
+
+  static final int GC_COUNT = 0;
+  static final int GC_TIME = 1;
+  static final int GC_SLOTS = 2;
+
+  private final MetricRegistry registry;
+  private final Clock clock;
+  private final Consumer<String> sink;
+  private final BooleanSupplier sinkEnabled;
+  private final Supplier<ThreadPool> threadPool;
+
+  private final String[] storageAreas;
+  private final String[][] requestsNames;
+  private final String[][] bytesInNames;
+  private final String[][] bytesOutNames;
+  private final String[][] serverErrorsNames;
+  private final String[] inFlightNames;
+  private final String[] queuedNames;
+
+  private final MemoryMXBean memory;
+  private final List<GarbageCollectorMXBean> collectors;
+  private final List<BufferPoolMXBean> bufferPools;
+
+  private final long[] previous;
+  private final int gcOffset;
+  private final StringBuilder buffer = new StringBuilder(2048);
+
+  private long lastReportTime;
+
+  private StormMetricsReporter(Builder builder) {
+
+    super(builder.registry, "storm", builder.filter, builder.rateUnit, builder.durationUnit);
+
+    this.registry = builder.registry;
+    this.clock = builder.clock;
+    this.sink = builder.sink;
+    this.sinkEnabled = builder.sinkEnabled;
+    this.threadPool = builder.threadPool;
+
+    storageAreas = builder.storageAreas.toArray(new String[0]);
+
+    final List<String> methods = RequestMetricsFilter.MONITORED_METHODS;
+    requestsNames = new String[storageAreas.length][methods.size()];
+    bytesInNames = new String[storageAreas.length][methods.size()];
+    bytesOutNames = new String[storageAreas.length][methods.size()];
+    serverErrorsNames = new String[storageAreas.length][methods.size()];
+    inFlightNames = new String[storageAreas.length];
+    queuedNames = new String[storageAreas.length];
+
+    for (int i = 0; i < storageAreas.length; i++) {
+      final String sa = storageAreas[i];
+
+      for (int j = 0; j < methods.size(); j++) {
+        final String m = methods.get(j);
+        requestsNames[i][j] = RequestMetricsFilter.metricName(sa, "methods", m, "requests");
+        bytesInNames[i][j] = RequestMetricsFilter.metricName(sa, "methods", m, "bytes-in");
+        bytesOutNames[i][j] = RequestMetricsFilter.metricName(sa, "methods", m, "bytes-out");
+        serverErrorsNames[i][j] = RequestMetricsFilter.metricName(sa, "methods", m, "statuses",
+            SERVER_ERRORS_STATUS_CLASS, "responses");
+      }
+
+      inFlightNames[i] = AdmissionControlFilter.metricName(sa, "in-flight");
+      queuedNames[i] = AdmissionControlFilter.metricName(sa, "queued");
+    }
+
+    memory = ManagementFactory.getMemoryMXBean();
+    collectors = ManagementFactory.getGarbageCollectorMXBeans();
+    bufferPools = ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class);
+
+    gcOffset = FIXED_SLOTS + storageAreas.length * SA_SLOTS;
+    previous = new long[gcOffset + collectors.size() * GC_SLOTS];
+
+    // Only report collections since the reporter has been started
+    for (int i = 0; i < collectors.size(); i++) {
+      previous[gcOffset + i * GC_SLOTS + GC_COUNT] = collectors.get(i).getCollectionCount();
+      previous[gcOffset + i * GC_SLOTS + GC_TIME] = collectors.get(i).getCollectionTime();
+    }
+
+    lastReportTime = clock.getTime();
   }
 
   public static Builder forRegistry(MetricRegistry registry) {
@@ -59,13 +182,23 @@ public class StormMetricsReporter extends ScheduledReporter {
     private MetricFilter filter;
     private TimeUnit rateUnit;
     private TimeUnit durationUnit;
+    private Clock clock;
+    private Consumer<String> sink;
+    private BooleanSupplier sinkEnabled;
+    private Supplier<ThreadPool> threadPool;
+    private List<String> storageAreas;
 
     private Builder(MetricRegistry r) {
 
-      this.registry = r;
+      this.registry = checkNotNull(r);
       filter = MetricFilter.ALL;
       rateUnit = TimeUnit.SECONDS;
       durationUnit = TimeUnit.MILLISECONDS;
+      clock = Clock.defaultClock();
+      sink = logger::info;
+      sinkEnabled = logger::isInfoEnabled;
+      threadPool = () -> null;
+      storageAreas = Collections.emptyList();
     }
 
     public Builder filter(MetricFilter filter) {
@@ -86,62 +219,276 @@ public class StormMetricsReporter extends ScheduledReporter {
       return this;
     }
 
+    public Builder withClock(Clock clock) {
+
+      this.clock = checkNotNull(clock);
+      return this;
+    }
+
+    public Builder outputTo(Consumer<String> sink) {
+
+      this.sink = checkNotNull(sink);
+      this.sinkEnabled = () -> true;
+      return this;
+    }
+
+    public Builder threadPool(Supplier<ThreadPool> threadPool) {
+
+      this.threadPool = checkNotNull(threadPool);
+      return this;
+    }
+
+    public Builder storageAreas(List<String> storageAreas) {
+
+      this.storageAreas = checkNotNull(storageAreas);
+      return this;
+    }
+
     public StormMetricsReporter build() {
 
-      return new StormMetricsReporter(registry, filter, rateUnit, durationUnit);
+      return new StormMetricsReporter(this);
+    }
+  }
+
+  static long count(Map<String, Metric> metrics, String name) {
+    Metric m = metrics.get(name);
+    return m instanceof Counting ? ((Counting) m).getCount() : 0;
+  }
+
+  static long gaugeValue(Map<String, Metric> metrics, String name) {
+    Metric m = metrics.get(name);
+
+    if (m instanceof Gauge) {
+      Object value = ((Gauge<?>) m).getValue();
+      if (value instanceof Number) {
+        return ((Number) value).longValue();
+      }
+    }
+
+    return 0;
+  }
+
+  long delta(int slot, long value) {
+    final long d = value - previous[slot];
+    previous[slot] = value;
+    // Counts only decrease if the metric has been replaced
+    return Math.max(0, d);
+  }
+
+  /**
+   * Appends value / intervalMsec, per second, with two decimal digits.
+   */
+  static void appendRate(StringBuilder sb, long value, long intervalMsec) {
+    final long interval = Math.max(1, intervalMsec);
+    // Split to avoid overflowing on large byte counts
+    final long centi = (value / interval) * 100_000 + ((value % interval) * 100_000) / interval;
+    sb.append(centi / 100).append('.');
+
+    final long decimals = centi % 100;
+    if (decimals < 10) {
+      sb.append('0');
+    }
+    sb.append(decimals);
+  }
+
+  static void appendKey(StringBuilder sb, String key) {
+    appendString(sb, key);
+    sb.append(':');
+  }
+
+  static void appendField(StringBuilder sb, String key, long value) {
+    sb.append(',');
+    appendKey(sb, key);
+    sb.append(value);
+  }
+
+  static void appendRateField(StringBuilder sb, String key, long value, long intervalMsec) {
+    sb.append(',');
+    appendKey(sb, key);
+    appendRate(sb, value, intervalMsec);
+  }
+
+  void appendStorageAreas(StringBuilder sb, Map<String, Metric> metrics, long intervalMsec) {
+    sb.append(",\"storage_areas\":{");
+
+    for (int i = 0; i < storageAreas.length; i++) {
+      long requests = 0;
+      long bytesIn = 0;
+      long bytesOut = 0;
+      long serverErrors = 0;
+
+      for (int j = 0; j < requestsNames[i].length; j++) {
+        requests += count(metrics, requestsNames[i][j]);
+        bytesIn += count(metrics, bytesInNames[i][j]);
+        bytesOut += count(metrics, bytesOutNames[i][j]);
+        serverErrors += count(metrics, serverErrorsNames[i][j]);
+      }
+
+      final int slot = FIXED_SLOTS + i * SA_SLOTS;
+
+      if (i > 0) {
+        sb.append(',');
+      }
+
+      appendKey(sb, storageAreas[i]);
+      final long requestsDelta = delta(slot + SA_REQUESTS, requests);
+      sb.append("{\"requests\":").append(requestsDelta);
+      appendRateField(sb, "rate", requestsDelta, intervalMsec);
+      appendField(sb, "bytes_in", delta(slot + SA_BYTES_IN, bytesIn));
+      appendField(sb, "bytes_out", delta(slot + SA_BYTES_OUT, bytesOut));
+      appendField(sb, "server_errors", delta(slot + SA_SERVER_ERRORS, serverErrors));
+      appendField(sb, "in_flight", gaugeValue(metrics, inFlightNames[i]));
+      appendField(sb, "queued", gaugeValue(metrics, queuedNames[i]));
+      sb.append('}');
+    }
+
+    sb.append('}');
+  }
+
+  void appendTransfers(StringBuilder sb, Map<String, Metric> metrics, long intervalMsec) {
+    final long pullBytes = delta(PULL_BYTES,
+        count(metrics, HttpTransferClientMetricsWrapper.PULL_BYTES_METRIC_NAME));
+    final long pushBytes = delta(PUSH_BYTES,
+        count(metrics, HttpTransferClientMetricsWrapper.PUSH_BYTES_METRIC_NAME));
+
+    sb.append(",\"tpc\":{\"active\":")
+      .append(count(metrics, HttpTransferClientMetricsWrapper.ACTIVE_TRANSFERS_METRIC_NAME));
+
+    sb.append(",\"pull\":{\"transfers\":").append(delta(PULL_COUNT,
+        count(metrics, HttpTransferClientMetricsWrapper.PULL_METRIC_NAME)));
+    appendField(sb, "bytes", pullBytes);
+    appendRateField(sb, "bytes_per_sec", pullBytes, intervalMsec);
+
+    sb.append("},\"push\":{\"transfers\":").append(delta(PUSH_COUNT,
+        count(metrics, HttpTransferClientMetricsWrapper.PUSH_METRIC_NAME)));
+    appendField(sb, "bytes", pushBytes);
+    appendRateField(sb, "bytes_per_sec", pushBytes, intervalMsec);
+    sb.append("}}");
+  }
+
+  void appendThreadPool(StringBuilder sb) {
+    final ThreadPool tp = threadPool.get();
+
+    if (isNull(tp)) {
+      return;
+    }
+
+    final int threads = tp.getThreads();
+    final int busy = threads - tp.getIdleThreads();
+
+    sb.append(",\"thread_pool\":{\"threads\":").append(threads);
+    appendField(sb, "busy", busy);
+
+    if (tp instanceof ThreadPool.SizedThreadPool) {
+      final int max = ((ThreadPool.SizedThreadPool) tp).getMaxThreads();
+      appendField(sb, "max", max);
+      // Utilization, in percent
+      appendField(sb, "utilization", max > 0 ? (busy * 100L) / max : 0);
+    }
 
+    if (tp instanceof QueuedThreadPool) {
+      appendField(sb, "queued", ((QueuedThreadPool) tp).getQueueSize());
     }
+
+    sb.append('}');
   }
 
-  public StormMetricsReporter(MetricRegistry registry, String name,
-    MetricFilter filter, TimeUnit rateUnit, TimeUnit durationUnit) {
+  void appendMemory(StringBuilder sb) {
+    final MemoryUsage heap = memory.getHeapMemoryUsage();
+
+    sb.append(",\"heap\":{\"used\":").append(heap.getUsed());
+    appendField(sb, "committed", heap.getCommitted());
+    appendField(sb, "max", heap.getMax());
+    sb.append('}');
+
+    sb.append(",\"buffer_pools\":{");
 
-    super(registry, name, filter, rateUnit, durationUnit);
+    for (int i = 0; i < bufferPools.size(); i++) {
+      final BufferPoolMXBean pool = bufferPools.get(i);
 
+      if (i > 0) {
+        sb.append(',');
+      }
+
+      appendKey(sb, pool.getName());
+      sb.append("{\"count\":").append(pool.getCount());
+      appendField(sb, "used", pool.getMemoryUsed());
+      appendField(sb, "capacity", pool.getTotalCapacity());
+      sb.append('}');
+    }
+
+    sb.append('}');
   }
 
-  @SuppressWarnings({ "rawtypes", "unchecked" })
+  void appendGarbageCollection(StringBuilder sb) {
+    sb.append(",\"gc\":{");
+
+    for (int i = 0; i < collectors.size(); i++) {
+      final GarbageCollectorMXBean gc = collectors.get(i);
+      final int slot = gcOffset + i * GC_SLOTS;
+
+      if (i > 0) {
+        sb.append(',');
+      }
+
+      appendKey(sb, gc.getName());
+      sb.append("{\"count\":").append(delta(slot + GC_COUNT, gc.getCollectionCount()));
+      appendField(sb, "time_msec", delta(slot + GC_TIME, gc.getCollectionTime()));
+      sb.append('}');
+    }
+
+    sb.append('}');
+  }
+
+  /**
+   * Renders the summary of the activity since the previous report.
+   */
+  synchronized String render() {
+    final long now = clock.getTime();
+    final long intervalMsec = now - lastReportTime;
+    lastReportTime = now;
+
+    final Map<String, Metric> metrics = registry.getMetrics();
+    final StringBuilder sb = buffer;
+    sb.setLength(0);
+
+    sb.append("{\"timestamp\":\"");
+    DateTimeFormatter.ISO_INSTANT.formatTo(Instant.ofEpochMilli(now), sb);
+    sb.append('"');
+    appendField(sb, "interval_msec", intervalMsec);
+
+    final long dispatches = delta(DISPATCHES, count(metrics, HANDLER_DISPATCHES_METRIC_NAME));
+    sb.append(",\"requests\":{\"count\":").append(dispatches);
+    appendRateField(sb, "rate", dispatches, intervalMsec);
+    appendField(sb, "active", count(metrics, HANDLER_ACTIVE_REQUESTS_METRIC_NAME));
+    sb.append('}');
+
+    appendStorageAreas(sb, metrics, intervalMsec);
+    appendTransfers(sb, metrics, intervalMsec);
+    appendThreadPool(sb);
+    appendMemory(sb);
+    appendGarbageCollection(sb);
+
+    sb.append('}');
+    return sb.toString();
+  }
+
+  /**
+   * Overridden to look up only the metrics of interest, instead of taking a sorted copy of the
+   * whole registry at each report.
+   */
   @Override
-  public void report(SortedMap<String, Gauge> gauges,
-    SortedMap<String, Counter> counters,
-    SortedMap<String, Histogram> histograms, SortedMap<String, Meter> meters,
-    SortedMap<String, Timer> timers) {
-
-    Gauge<Double> heapUsage = gauges.get("jvm.memory.heap.usage");
-    Gauge<Long> heapUsed = gauges.get("jvm.memory.heap.used");
-
-    Timer handlerDispatches = timers.get("storm.http.handler.dispatches");
-    final Snapshot snapshot = handlerDispatches.getSnapshot();
-    
-    Long lastMinuteCount = null;
-    
-    if (lastCountValue != null ){
-      lastMinuteCount = handlerDispatches.getCount() - lastCountValue;
-    }
-    
-    lastCountValue = handlerDispatches.getCount();
-    
-    logger
-      .info(
-        "Heap[usage={}, used={}] Requests[m1_count={}, count={}, max={}, min={}, mean={}, mean_rate={}, m1_rate={}, m5_rate={}, m15_rate={}] Duration_units={}, Rate_units={}",
-        heapUsage.getValue(),
-        FileUtils.byteCountToDisplaySize(heapUsed.getValue()),
-        lastMinuteCount,
-        handlerDispatches.getCount(), 
-        convertDuration(snapshot.getMax()),
-        convertDuration(snapshot.getMin()),
-        convertDuration(snapshot.getMean()),
-        convertRate(handlerDispatches.getMeanRate()),
-        convertRate(handlerDispatches.getOneMinuteRate()),
-        convertRate(handlerDispatches.getFiveMinuteRate()),
-        convertRate(handlerDispatches.getFifteenMinuteRate()), 
-        getDurationUnit(),
-        getRateUnit());
-
-  }
-  
-  public String getRateUnit(){
-    return "events/" + super.getRateUnit();
+  public void report() {
+    if (sinkEnabled.getAsBoolean()) {
+      sink.accept(render());
+    }
   }
 
+  @SuppressWarnings("rawtypes")
+  @Override
+  public void report(SortedMap<String, Gauge> gauges, SortedMap<String, Counter> counters,
+      SortedMap<String, Histogram> histograms, SortedMap<String, Meter> meters,
+      SortedMap<String, Timer> timers) {
+    report();
+  }
 }
@@ -23,18 +23,19 @@ import java.util.List;
 
 import org.italiangrid.storm.webdav.error.StoRMWebDAVError;
 
+import io.milton.http.Request;
 import io.milton.http.exceptions.BadRequestException;
 import io.milton.http.exceptions.ConflictException;
 import io.milton.http.exceptions.NotAuthorizedException;
 import io.milton.resource.CollectionResource;
 import io.milton.resource.CopyableResource;
-import io.milton.resource.DeletableResource;
+import io.milton.resource.DeletableCollectionResource;
 import io.milton.resource.MakeCollectionableResource;
 import io.milton.resource.PutableResource;
 import io.milton.resource.Resource;
 
-public class StoRMDirectoryResource extends StoRMResource
-    implements PutableResource, MakeCollectionableResource, DeletableResource, CopyableResource {
+public class StoRMDirectoryResource extends StoRMResource implements PutableResource,
+    MakeCollectionableResource, DeletableCollectionResource, CopyableResource {
 
   public StoRMDirectoryResource(StoRMResourceFactory factory, File f) {
 
@@ -96,6 +97,12 @@ public class StoRMDirectoryResource extends StoRMResource
 
   }
 
+  @Override
+  public boolean isLockedOutRecursive(Request request) {
+
+    return false;
+  }
+
   @Override
   public Resource createNew(String fileName, InputStream inputStream, Long length,
       String contentType)
@@ -17,6 +17,7 @@ package org.italiangrid.storm.webdav.milton;
 
 import static io.milton.property.PropertySource.PropertyAccessibility.READ_ONLY;
 import static java.util.Objects.isNull;
+import static org.italiangrid.storm.webdav.fs.SyscallTimers.Syscall.OPEN;
 
 import java.io.BufferedInputStream;
 import java.io.File;
@@ -37,6 +38,7 @@ import org.italiangrid.storm.webdav.checksum.Adler32ChecksumInputStream;
 import org.italiangrid.storm.webdav.error.DiskQuotaExceeded;
 import org.italiangrid.storm.webdav.error.ResourceNotFound;
 import org.italiangrid.storm.webdav.error.StoRMWebDAVError;
+import org.italiangrid.storm.webdav.fs.SyscallTimers;
 import org.italiangrid.storm.webdav.utils.RangeCopyHelper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -154,7 +156,8 @@ public class StoRMFileResource extends StoRMResource
     long rangeLength = rangeEnd - rangeStart;
 
     try {
-      RangeCopyHelper.rangeCopy(in, getFile(), rangeStart, rangeLength);
+      RangeCopyHelper.rangeCopy(in, getFile(), rangeStart, rangeLength,
+          getResourceFactory().getSyscallTimers());
     } catch (IOException e) {
 
       handleIOException(e);
@@ -165,9 +168,21 @@ public class StoRMFileResource extends StoRMResource
   }
 
 
+  private FileInputStream openForRead() throws IOException {
+    final SyscallTimers syscallTimers = getResourceFactory().getSyscallTimers();
+    final long start = System.nanoTime();
+    try {
+      return new FileInputStream(getFile());
+    } finally {
+      if (!isNull(syscallTimers)) {
+        syscallTimers.record(OPEN, start);
+      }
+    }
+  }
+
   protected void calculateChecksum() {
     try (Adler32ChecksumInputStream cis =
-        new Adler32ChecksumInputStream(new BufferedInputStream(new FileInputStream(getFile())))) {
+        new Adler32ChecksumInputStream(new BufferedInputStream(openForRead()))) {
 
       byte[] buffer = new byte[8192];
 
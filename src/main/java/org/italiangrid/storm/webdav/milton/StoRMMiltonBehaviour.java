@@ -15,9 +15,14 @@
  */
 package org.italiangrid.storm.webdav.milton;
 
+import java.io.IOException;
+import java.net.URI;
+
 import org.italiangrid.storm.webdav.error.DiskQuotaExceeded;
 import org.italiangrid.storm.webdav.error.ResourceNotFound;
 import org.italiangrid.storm.webdav.error.SameFileError;
+import org.italiangrid.storm.webdav.error.TreeOperationError;
+import org.italiangrid.storm.webdav.milton.util.MultiStatusResponseWriter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -34,6 +39,21 @@ public class StoRMMiltonBehaviour implements Filter {
 
   private static final Logger LOG = LoggerFactory.getLogger(StoRMMiltonBehaviour.class);
 
+  private void writeMultiStatus(Request request, Response response, TreeOperationError e) {
+
+    String collectionPath = request.getAbsolutePath();
+
+    if (request.getMethod() == Request.Method.COPY && request.getDestinationHeader() != null) {
+      collectionPath = URI.create(request.getDestinationHeader()).getPath();
+    }
+
+    try {
+      MultiStatusResponseWriter.write(collectionPath, e.getResult(), response);
+    } catch (IOException ioe) {
+      LOG.warn("Error writing multi-status response: {}", ioe.getMessage());
+    }
+  }
+
   @Override
   public void process(FilterChain chain, Request request, Response response) {
 
@@ -62,6 +82,9 @@ public class StoRMMiltonBehaviour implements Filter {
       responseHandler.respondNotFound(response, request);
     } catch (SameFileError e) {
       responseHandler.respondForbidden(null, response, request);
+    } catch (TreeOperationError e) {
+      LOG.warn(e.getMessage());
+      writeMultiStatus(request, response, e);
     } catch (Throwable t) {
       LOG.error(t.getMessage(), t);
       responseHandler.respondServerError(request, response, t.getMessage());
@@ -16,23 +16,36 @@
 package org.italiangrid.storm.webdav.milton;
 
 import java.io.File;
+import java.util.Set;
+
+import javax.servlet.http.HttpServletRequest;
 
 import org.italiangrid.storm.webdav.fs.FilesystemAccess;
+import org.italiangrid.storm.webdav.fs.SyscallTimers;
 import org.italiangrid.storm.webdav.fs.attrs.ExtendedAttributesHelper;
 import org.italiangrid.storm.webdav.milton.util.ReplaceContentStrategy;
 import org.italiangrid.storm.webdav.server.PathResolver;
+import org.italiangrid.storm.webdav.server.ResolvedResource;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.collect.ImmutableSet;
+
 import io.milton.http.ResourceFactory;
 import io.milton.http.exceptions.BadRequestException;
 import io.milton.http.exceptions.NotAuthorizedException;
 import io.milton.resource.Resource;
+import io.milton.servlet.MiltonServlet;
 
 public class StoRMResourceFactory implements ResourceFactory {
 
   public static final Logger LOG = LoggerFactory.getLogger(StoRMResourceFactory.class);
 
+  // Methods that do not modify the resource targeted by the request, for which the file
+  // attributes loaded earlier in the filter chain can be trusted
+  private static final Set<String> NON_MODIFYING_METHODS =
+      ImmutableSet.of("GET", "HEAD", "OPTIONS", "PROPFIND", "COPY");
+
   private final FilesystemAccess fs;
 
   private final ExtendedAttributesHelper attrsHelper;
@@ -41,13 +54,21 @@ public class StoRMResourceFactory implements ResourceFactory {
 
   private final ReplaceContentStrategy rcs;
 
+  private final SyscallTimers syscallTimers;
+
   public StoRMResourceFactory(FilesystemAccess fs, ExtendedAttributesHelper attrsHelper,
       PathResolver resolver, ReplaceContentStrategy rcs) {
+    this(fs, attrsHelper, resolver, rcs, null);
+  }
+
+  public StoRMResourceFactory(FilesystemAccess fs, ExtendedAttributesHelper attrsHelper,
+      PathResolver resolver, ReplaceContentStrategy rcs, SyscallTimers syscallTimers) {
 
     this.fs = fs;
     this.resolver = resolver;
     this.attrsHelper = attrsHelper;
     this.rcs = rcs;
+    this.syscallTimers = syscallTimers;
   }
 
 
@@ -55,6 +76,12 @@ public class StoRMResourceFactory implements ResourceFactory {
   public Resource getResource(String host, String path)
       throws NotAuthorizedException, BadRequestException {
 
+    ResolvedResource resource = currentResolvedResource(path);
+
+    if (resource != null) {
+      return getResource(resource);
+    }
+
     String resolvedPath = resolver.resolvePath(path);
 
     if (resolvedPath == null) {
@@ -79,6 +106,50 @@ public class StoRMResourceFactory implements ResourceFactory {
     return new StoRMFileResource(this, requestedFile);
   }
 
+  private ResolvedResource currentResolvedResource(String path) {
+    HttpServletRequest request = MiltonServlet.request();
+
+    if (request == null) {
+      return null;
+    }
+
+    ResolvedResource resource = ResolvedResource.fromRequest(request);
+
+    if (resource == null || !resource.matches(path)) {
+      return null;
+    }
+
+    if (!NON_MODIFYING_METHODS.contains(request.getMethod())) {
+      resource.invalidate();
+    }
+
+    return resource;
+  }
+
+  private Resource getResource(ResolvedResource resource) {
+    File requestedFile = resource.getFile();
+
+    if (requestedFile == null) {
+      return null;
+    }
+
+    LOG.debug("getResource: path={}, resolvedPath={}", resource.getPathInContext(),
+        requestedFile.getAbsolutePath());
+
+    if (!resource.exists()) {
+      LOG.debug(
+          "Requested file '{}' does not exists or user {} does not have the rights to read it.",
+          requestedFile, System.getProperty("user.name"));
+      return null;
+    }
+
+    if (resource.isDirectory()) {
+      return new StoRMDirectoryResource(this, requestedFile);
+    }
+
+    return new StoRMFileResource(this, requestedFile);
+  }
+
   public FilesystemAccess getFilesystemAccess() {
 
     return fs;
@@ -93,4 +164,11 @@ public class StoRMResourceFactory implements ResourceFactory {
     return rcs;
   }
 
+  /**
+   * @return the timers for the filesystem calls issued by resources, or null
+   */
+  public SyscallTimers getSyscallTimers() {
+    return syscallTimers;
+  }
+
 }
@@ -21,15 +21,22 @@ import java.io.InputStream;
 
 import org.italiangrid.storm.webdav.checksum.Adler32ChecksumInputStream;
 import org.italiangrid.storm.webdav.error.StoRMWebDAVError;
+import org.italiangrid.storm.webdav.fs.SyscallTimers;
 import org.italiangrid.storm.webdav.fs.attrs.ExtendedAttributesHelper;
 import org.italiangrid.storm.webdav.utils.RangeCopyHelper;
 
 public class EarlyChecksumStrategy implements ReplaceContentStrategy {
 
   private final ExtendedAttributesHelper attributesHelper;
+  private final SyscallTimers syscallTimers;
 
   public EarlyChecksumStrategy(ExtendedAttributesHelper ah) {
+    this(ah, null);
+  }
+
+  public EarlyChecksumStrategy(ExtendedAttributesHelper ah, SyscallTimers syscallTimers) {
     this.attributesHelper = ah;
+    this.syscallTimers = syscallTimers;
   }
 
 
@@ -37,7 +44,7 @@ public class EarlyChecksumStrategy implements ReplaceContentStrategy {
   public void replaceContent(InputStream in, Long length, File targetFile) throws IOException {
     Adler32ChecksumInputStream cis = new Adler32ChecksumInputStream(in);
 
-    if (RangeCopyHelper.rangeCopy(cis, targetFile, 0, length) != length) {
+    if (RangeCopyHelper.rangeCopy(cis, targetFile, 0, length, syscallTimers) != length) {
       throw new StoRMWebDAVError("Incomplete copy error!");
     }
 
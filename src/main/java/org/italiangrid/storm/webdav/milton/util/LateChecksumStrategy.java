@@ -15,6 +15,9 @@
  */
 package org.italiangrid.storm.webdav.milton.util;
 
+import static java.util.Objects.isNull;
+import static org.italiangrid.storm.webdav.fs.SyscallTimers.Syscall.OPEN;
+
 import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.FileInputStream;
@@ -23,31 +26,49 @@ import java.io.InputStream;
 
 import org.italiangrid.storm.webdav.checksum.Adler32ChecksumInputStream;
 import org.italiangrid.storm.webdav.error.StoRMWebDAVError;
+import org.italiangrid.storm.webdav.fs.SyscallTimers;
 import org.italiangrid.storm.webdav.fs.attrs.ExtendedAttributesHelper;
 import org.italiangrid.storm.webdav.utils.RangeCopyHelper;
 
 public class LateChecksumStrategy implements ReplaceContentStrategy {
 
   private final ExtendedAttributesHelper attributesHelper;
+  private final SyscallTimers syscallTimers;
 
   public LateChecksumStrategy(ExtendedAttributesHelper ah) {
+    this(ah, null);
+  }
+
+  public LateChecksumStrategy(ExtendedAttributesHelper ah, SyscallTimers syscallTimers) {
     this.attributesHelper = ah;
+    this.syscallTimers = syscallTimers;
   }
 
   @Override
   public void replaceContent(InputStream in, Long length, File targetFile) throws IOException {
 
-    if (RangeCopyHelper.rangeCopy(in, targetFile, 0, length) != length) {
+    if (RangeCopyHelper.rangeCopy(in, targetFile, 0, length, syscallTimers) != length) {
       throw new StoRMWebDAVError("Incomplete copy error!");
     }
     
     calculateChecksum(targetFile);
   }
 
+  private FileInputStream open(File targetFile) throws IOException {
+    final long start = System.nanoTime();
+    try {
+      return new FileInputStream(targetFile);
+    } finally {
+      if (!isNull(syscallTimers)) {
+        syscallTimers.record(OPEN, start);
+      }
+    }
+  }
+
   protected void calculateChecksum(File targetFile) {
 
     try (Adler32ChecksumInputStream cis =
-        new Adler32ChecksumInputStream(new BufferedInputStream(new FileInputStream(targetFile)))) {
+        new Adler32ChecksumInputStream(new BufferedInputStream(open(targetFile)))) {
 
       byte[] buffer = new byte[8192];
 
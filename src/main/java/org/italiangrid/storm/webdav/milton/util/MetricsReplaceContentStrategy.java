@@ -16,10 +16,12 @@
 package org.italiangrid.storm.webdav.milton.util;
 
 import static com.codahale.metrics.MetricRegistry.name;
+import static org.italiangrid.storm.webdav.metrics.BucketedMetricRegistry.hdrTimer;
 
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
 
 import com.codahale.metrics.MetricRegistry;
 import com.codahale.metrics.Timer;
@@ -30,18 +32,18 @@ public class MetricsReplaceContentStrategy implements ReplaceContentStrategy {
   final ReplaceContentStrategy delegate;
 
   public MetricsReplaceContentStrategy(MetricRegistry registry, ReplaceContentStrategy delegate) {
-    timer = registry.timer(name("storm.checksum-strategy"));
+    timer = hdrTimer(registry, name("storm.checksum-strategy"));
     this.delegate = delegate;
   }
 
   @Override
   public void replaceContent(InputStream in, Long length, File targetFile) throws IOException {
-    Timer.Context context = timer.time();
+    final long start = System.nanoTime();
 
     try {
       delegate.replaceContent(in, length, targetFile);
     } finally {
-      context.stop();
+      timer.update(System.nanoTime() - start, TimeUnit.NANOSECONDS);
     }
 
   }
@@ -0,0 +1,125 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare, 2018.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.italiangrid.storm.webdav.milton.util;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.file.AccessDeniedException;
+import java.nio.file.DirectoryNotEmptyException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.NoSuchFileException;
+
+import org.italiangrid.storm.webdav.fs.TreeOperationResult;
+import org.italiangrid.storm.webdav.fs.TreeOperationResult.Failure;
+import org.springframework.http.HttpStatus;
+
+import com.google.common.escape.Escaper;
+import com.google.common.net.UrlEscapers;
+import com.google.common.xml.XmlEscapers;
+
+import io.milton.http.Response;
+
+/**
+ * Writes a WebDAV 207 Multi-Status response listing the members of a collection that could not be
+ * processed by a tree operation.
+ */
+public class MultiStatusResponseWriter {
+
+  private static final Escaper PATH_SEGMENT_ESCAPER = UrlEscapers.urlPathSegmentEscaper();
+  private static final Escaper XML_ESCAPER = XmlEscapers.xmlContentEscaper();
+
+  private MultiStatusResponseWriter() {}
+
+  public static HttpStatus statusFor(IOException e) {
+
+    if (e instanceof AccessDeniedException) {
+      return HttpStatus.FORBIDDEN;
+    } else if (e instanceof NoSuchFileException) {
+      return HttpStatus.NOT_FOUND;
+    } else if (e instanceof DirectoryNotEmptyException) {
+      return HttpStatus.CONFLICT;
+    } else if (e instanceof FileAlreadyExistsException) {
+      return HttpStatus.PRECONDITION_FAILED;
+    } else if (e.getMessage() != null && (e.getMessage().contains("No space left on device")
+        || e.getMessage().contains("Disk quota exceeded"))) {
+      return HttpStatus.INSUFFICIENT_STORAGE;
+    }
+
+    return HttpStatus.INTERNAL_SERVER_ERROR;
+  }
+
+  static String memberHref(String collectionPath, String relativePath) {
+
+    StringBuilder href = new StringBuilder(collectionPath);
+
+    if (relativePath.isEmpty()) {
+      return href.toString();
+    }
+
+    if (href.length() == 0 || href.charAt(href.length() - 1) != '/') {
+      href.append('/');
+    }
+
+    String[] segments = relativePath.split("/");
+
+    for (int i = 0; i < segments.length; i++) {
+      if (i > 0) {
+        href.append('/');
+      }
+      href.append(PATH_SEGMENT_ESCAPER.escape(segments[i]));
+    }
+
+    return href.toString();
+  }
+
+  public static void write(String collectionPath, TreeOperationResult result, Response response)
+      throws IOException {
+
+    response.setStatus(Response.Status.SC_MULTI_STATUS);
+    response.setContentTypeHeader("application/xml; charset=utf-8");
+
+    Writer w = new OutputStreamWriter(response.getOutputStream(), UTF_8);
+
+    w.write("<?xml version=\"1.0\" encoding=\"utf-8\"?>\n");
+    w.write("<d:multistatus xmlns:d=\"DAV:\">\n");
+
+    for (Failure f : result.getFailures()) {
+      HttpStatus status = statusFor(f.getCause());
+
+      w.write("  <d:response>\n");
+      w.write("    <d:href>");
+      w.write(XML_ESCAPER.escape(memberHref(collectionPath, f.getRelativePath())));
+      w.write("</d:href>\n");
+      w.write("    <d:status>HTTP/1.1 ");
+      w.write(Integer.toString(status.value()));
+      w.write(' ');
+      w.write(status.getReasonPhrase());
+      w.write("</d:status>\n");
+      if (f.getCause().getMessage() != null) {
+        w.write("    <d:responsedescription>");
+        w.write(XML_ESCAPER.escape(f.getCause().getMessage()));
+        w.write("</d:responsedescription>\n");
+      }
+      w.write("  </d:response>\n");
+    }
+
+    w.write("</d:multistatus>\n");
+    w.flush();
+  }
+}
@@ -20,15 +20,25 @@ import java.io.IOException;
 import java.io.InputStream;
 
 import org.italiangrid.storm.webdav.error.StoRMWebDAVError;
+import org.italiangrid.storm.webdav.fs.SyscallTimers;
 import org.italiangrid.storm.webdav.utils.RangeCopyHelper;
 
 public class NoChecksumStrategy implements ReplaceContentStrategy {
 
+  private final SyscallTimers syscallTimers;
+
+  public NoChecksumStrategy() {
+    this(null);
+  }
+
+  public NoChecksumStrategy(SyscallTimers syscallTimers) {
+    this.syscallTimers = syscallTimers;
+  }
 
   @Override
   public void replaceContent(InputStream in, Long length, File targetFile) throws IOException {
     
-    if (RangeCopyHelper.rangeCopy(in, targetFile, 0, length) != length) {
+    if (RangeCopyHelper.rangeCopy(in, targetFile, 0, length, syscallTimers) != length) {
       throw new StoRMWebDAVError("Incomplete copy error!");
     }
   }
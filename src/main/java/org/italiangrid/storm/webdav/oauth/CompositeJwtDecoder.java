@@ -18,8 +18,10 @@ package org.italiangrid.storm.webdav.oauth;
 import static java.lang.String.format;
 
 import java.text.ParseException;
+import java.util.Optional;
 import java.util.concurrent.ExecutionException;
 
+import org.italiangrid.storm.webdav.server.tracing.Span;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.security.oauth2.jwt.Jwt;
@@ -38,9 +40,17 @@ public class CompositeJwtDecoder implements JwtDecoder {
   public static final Logger LOG = LoggerFactory.getLogger(CompositeJwtDecoder.class);
 
   final LoadingCache<String, JwtDecoder> decoders;
+
+  final Optional<VerifiedJwtCache> verifiedTokens;
   
   public CompositeJwtDecoder(LoadingCache<String, JwtDecoder> decoders) {
+    this(decoders, null);
+  }
+
+  public CompositeJwtDecoder(LoadingCache<String, JwtDecoder> decoders,
+      VerifiedJwtCache verifiedTokens) {
     this.decoders = decoders;
+    this.verifiedTokens = Optional.ofNullable(verifiedTokens);
   }
   
   protected JwtDecoder resolveDecoder(String token) {
@@ -59,6 +69,21 @@ public class CompositeJwtDecoder implements JwtDecoder {
   
   @Override
   public Jwt decode(String token) {
+    try (Span span = Span.start("authn.jwt")) {
+      try {
+        if (verifiedTokens.isPresent()) {
+          return verifiedTokens.get().getOrDecode(token, this::resolveAndDecode);
+        }
+
+        return resolveAndDecode(token);
+      } catch (RuntimeException e) {
+        span.setError(true);
+        throw e;
+      }
+    }
+  }
+
+  protected Jwt resolveAndDecode(String token) {
     JwtDecoder decoder = resolveDecoder(token);
     return decoder.decode(token);
   }
@@ -17,11 +17,21 @@ package org.italiangrid.storm.webdav.oauth;
 
 import static java.util.Objects.isNull;
 import static org.italiangrid.storm.webdav.oauth.authzserver.jwt.DefaultJwtTokenIssuer.CLAIM_AUTHORITIES;
+import static org.italiangrid.storm.webdav.oauth.authzserver.jwt.DefaultJwtTokenIssuer.CLAIM_CLIENT_ADDRESSES;
+import static org.italiangrid.storm.webdav.oauth.authzserver.jwt.DefaultJwtTokenIssuer.CLAIM_SCOPE;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
+import org.italiangrid.storm.webdav.authz.AuthoritiesCache;
+import org.italiangrid.storm.webdav.authz.ClientAddressAuthority;
 import org.italiangrid.storm.webdav.authz.SAPermission;
+import org.italiangrid.storm.webdav.authz.scope.PathScopeAuthority;
+import org.italiangrid.storm.webdav.authz.scope.StorageScope;
+import org.italiangrid.storm.webdav.authz.scope.StorageScope.Activity;
 import org.italiangrid.storm.webdav.config.ServiceConfigurationProperties;
 import org.italiangrid.storm.webdav.config.ServiceConfigurationProperties.AuthorizationServerProperties;
 import org.italiangrid.storm.webdav.config.StorageAreaConfiguration;
@@ -32,7 +42,11 @@ import org.springframework.security.oauth2.jwt.Jwt;
 import org.springframework.security.oauth2.server.resource.authentication.JwtAuthenticationConverter;
 import org.springframework.stereotype.Component;
 
+import com.google.common.base.Joiner;
 import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Multimap;
 import com.google.common.collect.Sets;
 
@@ -40,7 +54,11 @@ import com.google.common.collect.Sets;
 public class StormJwtAuthenticationConverter extends JwtAuthenticationConverter {
 
   final Multimap<String, GrantedAuthority> authzMap = ArrayListMultimap.create();
+  final Multimap<String, StorageAreaInfo> issuerStorageAreas = ArrayListMultimap.create();
+  final Map<String, Set<GrantedAuthority>> issuerAuthorities;
   final AuthorizationServerProperties authzServerProperties;
+  final Set<String> localIssuers;
+  final AuthoritiesCache authoritiesCache;
 
   protected void addSaGrantedAuthorities(String saName, String issuer,
       Boolean orgGrantsWriteAccess) {
@@ -55,34 +73,105 @@ public class StormJwtAuthenticationConverter extends JwtAuthenticationConverter
 
   @Autowired
   public StormJwtAuthenticationConverter(StorageAreaConfiguration conf,
-      ServiceConfigurationProperties props) {
+      ServiceConfigurationProperties props, AuthoritiesCache authoritiesCache) {
 
     authzServerProperties = props.getAuthzServer();
+    this.authoritiesCache = authoritiesCache;
+
+    // Peers of the local authorization server issue tokens with the same claims, so their
+    // authorities come from the token rather than from the storage area orgs
+    ImmutableSet.Builder<String> localIssuersBuilder = ImmutableSet.builder();
+    if (!isNull(authzServerProperties.getIssuer())) {
+      localIssuersBuilder.add(authzServerProperties.getIssuer());
+    }
+    if (!isNull(authzServerProperties.getPeerIssuers())) {
+      localIssuersBuilder.addAll(authzServerProperties.getPeerIssuers());
+    }
+    localIssuers = localIssuersBuilder.build();
+
     for (StorageAreaInfo sa : conf.getStorageAreaInfo()) {
       if (!isNull(sa.orgs())) {
         sa.orgs()
           .forEach(i -> addSaGrantedAuthorities(sa.name(), i, sa.orgsGrantWritePermission()));
+        sa.orgs().forEach(i -> issuerStorageAreas.put(i, sa));
       }
     }
+
+    ImmutableMap.Builder<String, Set<GrantedAuthority>> builder = ImmutableMap.builder();
+    authzMap.asMap().forEach((issuer, a) -> builder.put(issuer, ImmutableSet.copyOf(a)));
+    issuerAuthorities = builder.build();
   }
 
 
-  protected Collection<GrantedAuthority> extractAuthoritiesExternalAuthzServer(String issuer) {
-    return authzMap.get(issuer);
+  protected List<StorageScope> extractStorageScopes(Jwt jwt) {
+    Object scope = jwt.getClaims().get(CLAIM_SCOPE);
+
+    if (scope instanceof Collection) {
+      return StorageScope.parseScopes(Joiner.on(' ').join((Collection<?>) scope));
+    }
+
+    return StorageScope.parseScopes(isNull(scope) ? null : scope.toString());
   }
 
-  protected Collection<GrantedAuthority> extractAuthoritiesLocalAuthzServer(Jwt jwt) {
-    Set<GrantedAuthority> authorities = Sets.newHashSet();
+  /**
+   * Resolves the storage scopes found in a token issued by a trusted external issuer against the
+   * access points of the storage areas that trust the issuer. Scopes granting write activities are
+   * dropped for storage areas that grant only read access to the issuer.
+   */
+  protected Set<GrantedAuthority> resolveExternalScopes(String issuer, List<StorageScope> scopes) {
+    List<StorageScope> resolved = new ArrayList<>();
+
+    for (StorageAreaInfo sa : issuerStorageAreas.get(issuer)) {
+      for (StorageScope scope : scopes) {
+        if (Activity.READ != scope.getActivity() && !sa.orgsGrantWritePermission()) {
+          continue;
+        }
+        sa.accessPoints().forEach(ap -> resolved.add(scope.resolve(ap)));
+      }
+    }
 
-    jwt.getClaimAsStringList(CLAIM_AUTHORITIES)
-      .forEach(a -> authorities.add(SAPermission.fromString(a)));
+    if (resolved.isEmpty()) {
+      return ImmutableSet.of();
+    }
 
-    return authorities;
+    return ImmutableSet.of(new PathScopeAuthority(resolved));
+  }
+
+  protected Collection<GrantedAuthority> extractAuthoritiesExternalAuthzServer(Jwt jwt) {
+    String issuer = jwt.getIssuer().toString();
+    List<StorageScope> scopes = extractStorageScopes(jwt);
+
+    if (scopes.isEmpty()) {
+      return issuerAuthorities.getOrDefault(issuer, ImmutableSet.of());
+    }
+
+    return authoritiesCache.get(ImmutableList.of(issuer, CLAIM_SCOPE, scopes),
+        () -> resolveExternalScopes(issuer, scopes));
+  }
+
+  protected Collection<GrantedAuthority> extractAuthoritiesLocalAuthzServer(Jwt jwt) {
+    List<String> claim = jwt.getClaimAsStringList(CLAIM_AUTHORITIES);
+    List<StorageScope> scopes = extractStorageScopes(jwt);
+    List<String> clientAddresses = jwt.containsClaim(CLAIM_CLIENT_ADDRESSES)
+        ? jwt.getClaimAsStringList(CLAIM_CLIENT_ADDRESSES)
+        : ImmutableList.of();
+
+    return authoritiesCache.get(
+        ImmutableList.of(jwt.getIssuer().toString(), claim, scopes, clientAddresses), () -> {
+          Set<GrantedAuthority> authorities = Sets.newHashSet();
+          claim.forEach(a -> authorities.add(SAPermission.fromString(a)));
+          if (!scopes.isEmpty()) {
+            authorities.add(new PathScopeAuthority(scopes));
+          }
+          clientAddresses.forEach(a -> authorities.add(new ClientAddressAuthority(a)));
+          return authorities;
+        });
   }
 
   protected boolean isLocalAuthzServer(String issuer) {
-    return issuer.equals(authzServerProperties.getIssuer());
+    return localIssuers.contains(issuer);
   }
+
   @Override
   protected Collection<GrantedAuthority> extractAuthorities(Jwt jwt) {
 
@@ -92,6 +181,6 @@ public class StormJwtAuthenticationConverter extends JwtAuthenticationConverter
       return extractAuthoritiesLocalAuthzServer(jwt);
     }
 
-    return extractAuthoritiesExternalAuthzServer(issuer);
+    return extractAuthoritiesExternalAuthzServer(jwt);
   }
 }
@@ -0,0 +1,132 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare, 2018.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.italiangrid.storm.webdav.oauth;
+
+import static com.codahale.metrics.MetricRegistry.name;
+import static com.google.common.base.Preconditions.checkArgument;
+import static java.nio.charset.StandardCharsets.US_ASCII;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import org.springframework.security.oauth2.jwt.Jwt;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.RatioGauge;
+import com.codahale.metrics.Timer;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+
+/**
+ * A bounded cache of successfully decoded and verified tokens, keyed by the SHA-256 hash of the
+ * serialized token. A token is kept until shortly before its expiration time, and at most for the
+ * configured maximum time to live. Tokens without an expiration time are never cached.
+ */
+public class VerifiedJwtCache {
+
+  private static final HashFunction HASH_FUNCTION = Hashing.sha256();
+
+  private static class Entry {
+    final Jwt jwt;
+    final Instant validUntil;
+
+    Entry(Jwt jwt, Instant validUntil) {
+      this.jwt = jwt;
+      this.validUntil = validUntil;
+    }
+  }
+
+  private final Cache<HashCode, Entry> cache;
+  private final Clock clock;
+  private final Duration expirySkew;
+
+  private final Meter hits;
+  private final Meter misses;
+  private final Timer decodeTimer;
+
+  public VerifiedJwtCache(MetricRegistry registry, Clock clock, long maxSize, Duration maxTtl,
+      Duration expirySkew) {
+    checkArgument(maxSize > 0, "maxSize must be > 0");
+    checkArgument(!maxTtl.isNegative() && !maxTtl.isZero(), "maxTtl must be positive");
+    checkArgument(!expirySkew.isNegative(), "expirySkew must not be negative");
+
+    this.clock = clock;
+    this.expirySkew = expirySkew;
+    this.cache = CacheBuilder.newBuilder()
+      .maximumSize(maxSize)
+      .expireAfterWrite(maxTtl.toMillis(), TimeUnit.MILLISECONDS)
+      .build();
+
+    this.hits = registry.meter(name(VerifiedJwtCache.class, "hits"));
+    this.misses = registry.meter(name(VerifiedJwtCache.class, "misses"));
+    this.decodeTimer = registry.timer(name(VerifiedJwtCache.class, "decode"));
+
+    registry.gauge(name(VerifiedJwtCache.class, "hit-ratio"), () -> new RatioGauge() {
+      @Override
+      protected Ratio getRatio() {
+        return Ratio.of(hits.getOneMinuteRate(),
+            hits.getOneMinuteRate() + misses.getOneMinuteRate());
+      }
+    });
+    registry.gauge(name(VerifiedJwtCache.class, "size"), () -> cache::size);
+  }
+
+  public Jwt getOrDecode(String token, Function<String, Jwt> decoder) {
+    final HashCode key = HASH_FUNCTION.hashString(token, US_ASCII);
+    final Entry entry = cache.getIfPresent(key);
+
+    if (entry != null) {
+      if (clock.instant().isBefore(entry.validUntil)) {
+        hits.mark();
+        return entry.jwt;
+      }
+      cache.invalidate(key);
+    }
+
+    misses.mark();
+
+    final Jwt jwt;
+    try (Timer.Context c = decodeTimer.time()) {
+      jwt = decoder.apply(token);
+    }
+
+    final Instant expiresAt = jwt.getExpiresAt();
+
+    if (expiresAt != null) {
+      final Instant validUntil = expiresAt.minus(expirySkew);
+      if (clock.instant().isBefore(validUntil)) {
+        cache.put(key, new Entry(jwt, validUntil));
+      }
+    }
+
+    return jwt;
+  }
+
+  public long size() {
+    return cache.size();
+  }
+
+  public void invalidateAll() {
+    cache.invalidateAll();
+  }
+}
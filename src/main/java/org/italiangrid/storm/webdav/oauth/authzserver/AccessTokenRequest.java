@@ -15,6 +15,9 @@
  */
 package org.italiangrid.storm.webdav.oauth.authzserver;
 
+import java.util.Collections;
+import java.util.List;
+
 import javax.validation.constraints.NotNull;
 import javax.validation.constraints.Pattern;
 import javax.validation.constraints.Size;
@@ -40,6 +43,9 @@ public class AccessTokenRequest {
 
   private Long lifetime;
 
+  // Not a bean property, so that it cannot be bound from token endpoint request parameters
+  private List<String> clientAddresses = Collections.emptyList();
+
   public String getGrant_type() {
     return grant_type;
   }
@@ -63,4 +69,12 @@ public class AccessTokenRequest {
   public void setLifetime(Long lifetime) {
     this.lifetime = lifetime;
   }
+
+  public List<String> getClientAddresses() {
+    return clientAddresses;
+  }
+
+  public void restrictToClientAddresses(List<String> clientAddresses) {
+    this.clientAddresses = clientAddresses;
+  }
 }
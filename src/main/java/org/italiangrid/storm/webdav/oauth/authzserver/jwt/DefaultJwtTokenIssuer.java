@@ -16,28 +16,30 @@
 package org.italiangrid.storm.webdav.oauth.authzserver.jwt;
 
 import static java.util.Objects.isNull;
+import static java.util.stream.Collectors.joining;
 import static java.util.stream.Collectors.toList;
 
 import java.time.Clock;
 import java.time.Instant;
+import java.util.Collections;
 import java.util.Date;
+import java.util.List;
 import java.util.Optional;
 import java.util.Set;
 
 import org.italiangrid.storm.webdav.authz.AuthorizationPolicyService;
 import org.italiangrid.storm.webdav.authz.VOMSAuthenticationDetails;
+import org.italiangrid.storm.webdav.authz.scope.StorageScope;
+import org.italiangrid.storm.webdav.authz.scope.StorageScopeGrantPolicy;
 import org.italiangrid.storm.webdav.config.ServiceConfigurationProperties.AuthorizationServerProperties;
 import org.italiangrid.storm.webdav.oauth.authzserver.AccessTokenRequest;
 import org.italiangrid.storm.webdav.oauth.authzserver.TokenCreationError;
+import org.italiangrid.storm.webdav.oauth.authzserver.error.InvalidScopeError;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.GrantedAuthority;
 
 import com.nimbusds.jose.JOSEException;
 import com.nimbusds.jose.JWSAlgorithm;
-import com.nimbusds.jose.JWSHeader;
-import com.nimbusds.jose.JWSSigner;
-import com.nimbusds.jose.KeyLengthException;
-import com.nimbusds.jose.crypto.MACSigner;
 import com.nimbusds.jwt.JWTClaimsSet;
 import com.nimbusds.jwt.SignedJWT;
 
@@ -45,26 +47,36 @@ public class DefaultJwtTokenIssuer implements SignedJwtTokenIssuer {
 
   public static final JWSAlgorithm JWS_ALGO = JWSAlgorithm.HS256;
   public static final String CLAIM_AUTHORITIES = "authorities";
+  public static final String CLAIM_SCOPE = "scope";
+  public static final String CLAIM_CLIENT_ADDRESSES = "ip";
 
   final Clock clock;
 
   final AuthorizationServerProperties properties;
   final AuthorizationPolicyService policyService;
-  final JWSSigner signer;
+  final SigningKeyStore keyStore;
+  final StorageScopeGrantPolicy scopePolicy;
 
 
   public DefaultJwtTokenIssuer(Clock clock, AuthorizationServerProperties props,
       AuthorizationPolicyService ps) {
+    this(clock, props, ps, SigningKeyStore.fromSecret(props.getSecret()));
+  }
+
+  public DefaultJwtTokenIssuer(Clock clock, AuthorizationServerProperties props,
+      AuthorizationPolicyService ps, SigningKeyStore keyStore) {
+    this(clock, props, ps, keyStore, null);
+  }
+
+  public DefaultJwtTokenIssuer(Clock clock, AuthorizationServerProperties props,
+      AuthorizationPolicyService ps, SigningKeyStore keyStore,
+      StorageScopeGrantPolicy scopePolicy) {
 
     this.clock = clock;
     this.properties = props;
     this.policyService = ps;
-
-    try {
-      signer = new MACSigner(properties.getSecret());
-    } catch (KeyLengthException e) {
-      throw new IllegalArgumentException(e);
-    }
+    this.keyStore = keyStore;
+    this.scopePolicy = scopePolicy;
   }
 
   protected Optional<Instant> vomsAcExpiration(Authentication authentication) {
@@ -117,17 +129,34 @@ public class DefaultJwtTokenIssuer implements SignedJwtTokenIssuer {
     claimsSet.audience(properties.getIssuer());
     claimsSet.subject(authentication.getName());
     claimsSet.expirationTime(computeTokenExpirationTimestamp(request, authentication));
-    claimsSet.claim(CLAIM_AUTHORITIES,
-        authorities.stream().map(Object::toString).collect(toList()));
 
-    SignedJWT signedJWT = new SignedJWT(new JWSHeader(JWS_ALGO), claimsSet.build());
+    List<StorageScope> requestedScopes = StorageScope.parseScopes(request.getScope());
+
+    if (!isNull(scopePolicy) && !requestedScopes.isEmpty()) {
+      // Path-restricted token: access is granted only by the storage scopes
+      List<StorageScope> grantedScopes = scopePolicy.grantableScopes(requestedScopes, authorities);
+
+      if (grantedScopes.isEmpty()) {
+        throw new InvalidScopeError("None of the requested storage scopes can be granted");
+      }
+
+      claimsSet.claim(CLAIM_SCOPE,
+          grantedScopes.stream().map(Object::toString).collect(joining(" ")));
+      claimsSet.claim(CLAIM_AUTHORITIES, Collections.emptyList());
+    } else {
+      claimsSet.claim(CLAIM_AUTHORITIES,
+          authorities.stream().map(Object::toString).collect(toList()));
+    }
+
+    if (!isNull(request.getClientAddresses()) && !request.getClientAddresses().isEmpty()) {
+      claimsSet.claim(CLAIM_CLIENT_ADDRESSES, request.getClientAddresses());
+    }
 
     try {
-      signedJWT.sign(signer);
+      return keyStore.sign(claimsSet.build());
     } catch (JOSEException e) {
       throw new TokenCreationError(e);
     }
-    return signedJWT;
   }
 
 }
@@ -0,0 +1,294 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare, 2018.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.italiangrid.storm.webdav.oauth.authzserver.jwt;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Strings.isNullOrEmpty;
+
+import java.io.File;
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.interfaces.ECPrivateKey;
+import java.security.interfaces.ECPublicKey;
+import java.security.interfaces.RSAPrivateKey;
+import java.security.interfaces.RSAPublicKey;
+import java.security.spec.ECGenParameterSpec;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import org.italiangrid.storm.webdav.config.ServiceConfigurationProperties.AuthorizationServerProperties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.nimbusds.jose.JOSEException;
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.JWSHeader;
+import com.nimbusds.jose.JWSSigner;
+import com.nimbusds.jose.KeyLengthException;
+import com.nimbusds.jose.crypto.ECDSASigner;
+import com.nimbusds.jose.crypto.MACSigner;
+import com.nimbusds.jose.crypto.RSASSASigner;
+import com.nimbusds.jose.jwk.Curve;
+import com.nimbusds.jose.jwk.ECKey;
+import com.nimbusds.jose.jwk.JWK;
+import com.nimbusds.jose.jwk.JWKSet;
+import com.nimbusds.jose.jwk.KeyType;
+import com.nimbusds.jose.jwk.KeyUse;
+import com.nimbusds.jose.jwk.OctetSequenceKey;
+import com.nimbusds.jose.jwk.RSAKey;
+import com.nimbusds.jose.jwk.source.JWKSource;
+import com.nimbusds.jose.proc.SecurityContext;
+import com.nimbusds.jwt.JWTClaimsSet;
+import com.nimbusds.jwt.SignedJWT;
+
+/**
+ * The keys used to sign and verify locally issued tokens.
+ *
+ * With an HMAC algorithm, tokens are signed with the configured shared secret. With an RSA or EC
+ * algorithm, keys are loaded from a JWKS file (the first key is used for signing, the others are
+ * only used for verification) or, when no file is configured, generated at startup. Public keys
+ * are published on the JWKS endpoint, so that other nodes can verify the tokens issued by this
+ * one.
+ *
+ * On rotation, keys loaded from a file are reloaded, while generated keys are replaced by a new
+ * key. Retired keys are kept for verification, so the rotation period times the number of retired
+ * keys should exceed the max token lifetime.
+ */
+public class SigningKeyStore implements DisposableBean {
+
+  public static final Logger LOG = LoggerFactory.getLogger(SigningKeyStore.class);
+
+  public static final JWSAlgorithm DEFAULT_ALGORITHM = JWSAlgorithm.HS256;
+  public static final int RSA_KEY_SIZE = 2048;
+
+  private static class KeyState {
+    final JWK signingKey;
+    final JWSSigner signer;
+    final JWKSet verificationKeys;
+    final JWKSet publicKeys;
+
+    KeyState(JWK signingKey, JWSSigner signer, List<JWK> verificationKeys) {
+      this.signingKey = signingKey;
+      this.signer = signer;
+      this.verificationKeys = new JWKSet(verificationKeys);
+      this.publicKeys = this.verificationKeys.toPublicJWKSet();
+    }
+  }
+
+  private final JWSAlgorithm algorithm;
+  private final File jwksFile;
+  private final int retiredKeysToKeep;
+
+  private final LinkedList<JWK> retiredKeys = new LinkedList<>();
+
+  private volatile KeyState state;
+
+  private ScheduledExecutorService scheduler;
+
+  private SigningKeyStore(JWSAlgorithm algorithm, File jwksFile, int retiredKeysToKeep) {
+    this.algorithm = algorithm;
+    this.jwksFile = jwksFile;
+    this.retiredKeysToKeep = retiredKeysToKeep;
+  }
+
+  public static SigningKeyStore fromSecret(String secret) {
+    SigningKeyStore store = new SigningKeyStore(DEFAULT_ALGORITHM, null, 0);
+    OctetSequenceKey key = new OctetSequenceKey.Builder(secret.getBytes()).build();
+
+    try {
+      store.state = new KeyState(key, new MACSigner(secret), Collections.singletonList(key));
+    } catch (KeyLengthException e) {
+      throw new IllegalArgumentException(e);
+    }
+
+    return store;
+  }
+
+  public static SigningKeyStore fromProperties(AuthorizationServerProperties props) {
+
+    JWSAlgorithm algorithm = isNullOrEmpty(props.getSignatureAlgorithm()) ? DEFAULT_ALGORITHM
+        : JWSAlgorithm.parse(props.getSignatureAlgorithm());
+
+    if (JWSAlgorithm.Family.HMAC_SHA.contains(algorithm)) {
+      checkArgument(DEFAULT_ALGORITHM.equals(algorithm),
+          "Unsupported HMAC signature algorithm: " + algorithm);
+      return fromSecret(props.getSecret());
+    }
+
+    checkArgument(
+        JWSAlgorithm.Family.RSA.contains(algorithm) || JWSAlgorithm.ES256.equals(algorithm),
+        "Unsupported signature algorithm: " + algorithm);
+
+    File jwksFile = isNullOrEmpty(props.getJwksPath()) ? null : new File(props.getJwksPath());
+
+    SigningKeyStore store =
+        new SigningKeyStore(algorithm, jwksFile, props.getRetiredSigningKeysToKeep());
+    store.rotate();
+
+    if (props.getKeyRotationPeriodSec() > 0) {
+      store.scheduleRotation(props.getKeyRotationPeriodSec());
+    }
+
+    return store;
+  }
+
+  public JWSAlgorithm getAlgorithm() {
+    return algorithm;
+  }
+
+  public boolean isAsymmetric() {
+    return !JWSAlgorithm.Family.HMAC_SHA.contains(algorithm);
+  }
+
+  public JWK getSigningKey() {
+    return state.signingKey;
+  }
+
+  /**
+   * Signs the claims with the current signing key. The key state is read once, so that the key id
+   * in the header always names the key that produced the signature, even across a rotation.
+   */
+  public SignedJWT sign(JWTClaimsSet claims) throws JOSEException {
+    final KeyState current = state;
+
+    JWSHeader header =
+        new JWSHeader.Builder(algorithm).keyID(current.signingKey.getKeyID()).build();
+    SignedJWT jwt = new SignedJWT(header, claims);
+    jwt.sign(current.signer);
+    return jwt;
+  }
+
+  public JWKSet getPublicKeys() {
+    return state.publicKeys;
+  }
+
+  public JWKSource<SecurityContext> verificationKeySource() {
+    return (selector, context) -> selector.select(state.verificationKeys);
+  }
+
+  public synchronized void rotate() {
+    try {
+      if (jwksFile != null) {
+        loadKeys();
+      } else {
+        generateKey();
+      }
+    } catch (IOException | ParseException | GeneralSecurityException | JOSEException
+        | IllegalArgumentException e) {
+      if (state == null) {
+        throw new IllegalStateException("Error initializing token signing keys: " + e.getMessage(),
+            e);
+      }
+      LOG.error("Error rotating token signing keys, keeping current keys: {}", e.getMessage(), e);
+    }
+  }
+
+  private void loadKeys() throws IOException, ParseException, JOSEException {
+    List<JWK> keys = JWKSet.load(jwksFile)
+      .getKeys()
+      .stream()
+      .filter(k -> k.getKeyType().equals(keyType()))
+      .collect(Collectors.toList());
+
+    checkArgument(!keys.isEmpty(), "No " + keyType() + " keys found in " + jwksFile);
+    checkArgument(keys.get(0).isPrivate(),
+        "The first key in " + jwksFile + " must include the private key");
+
+    state = new KeyState(keys.get(0), signer(keys.get(0)), keys);
+    LOG.info("Loaded {} token signing keys from {}, signing key id: {}", keys.size(), jwksFile,
+        keys.get(0).getKeyID());
+  }
+
+  private void generateKey() throws GeneralSecurityException, JOSEException {
+    JWK key = newKey();
+
+    if (state != null) {
+      retiredKeys.addFirst(state.signingKey);
+      while (retiredKeys.size() > retiredKeysToKeep) {
+        retiredKeys.removeLast();
+      }
+    }
+
+    List<JWK> keys = new ArrayList<>();
+    keys.add(key);
+    keys.addAll(retiredKeys);
+
+    state = new KeyState(key, signer(key), keys);
+    LOG.info("Generated new {} token signing key with id: {}", algorithm, key.getKeyID());
+  }
+
+  private KeyType keyType() {
+    return JWSAlgorithm.ES256.equals(algorithm) ? KeyType.EC : KeyType.RSA;
+  }
+
+  private JWK newKey() throws GeneralSecurityException {
+    final String keyId = UUID.randomUUID().toString();
+
+    if (JWSAlgorithm.ES256.equals(algorithm)) {
+      KeyPairGenerator gen = KeyPairGenerator.getInstance("EC");
+      gen.initialize(new ECGenParameterSpec("secp256r1"));
+      KeyPair kp = gen.generateKeyPair();
+      return new ECKey.Builder(Curve.P_256, (ECPublicKey) kp.getPublic())
+        .privateKey((ECPrivateKey) kp.getPrivate())
+        .keyUse(KeyUse.SIGNATURE)
+        .algorithm(algorithm)
+        .keyID(keyId)
+        .build();
+    }
+
+    KeyPairGenerator gen = KeyPairGenerator.getInstance("RSA");
+    gen.initialize(RSA_KEY_SIZE);
+    KeyPair kp = gen.generateKeyPair();
+    return new RSAKey.Builder((RSAPublicKey) kp.getPublic())
+      .privateKey((RSAPrivateKey) kp.getPrivate())
+      .keyUse(KeyUse.SIGNATURE)
+      .algorithm(algorithm)
+      .keyID(keyId)
+      .build();
+  }
+
+  private JWSSigner signer(JWK key) throws JOSEException {
+    if (key instanceof ECKey) {
+      return new ECDSASigner((ECKey) key);
+    }
+    return new RSASSASigner((RSAKey) key);
+  }
+
+  private void scheduleRotation(long periodSec) {
+    scheduler = Executors.newSingleThreadScheduledExecutor(
+        new ThreadFactoryBuilder().setNameFormat("signing-key-rotation").setDaemon(true).build());
+    scheduler.scheduleWithFixedDelay(this::rotate, periodSec, periodSec, TimeUnit.SECONDS);
+  }
+
+  @Override
+  public void destroy() {
+    if (scheduler != null) {
+      scheduler.shutdownNow();
+    }
+  }
+}
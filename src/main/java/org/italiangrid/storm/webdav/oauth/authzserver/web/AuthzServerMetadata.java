@@ -30,6 +30,7 @@ public class AuthzServerMetadata {
 
   private String issuer;
   private String tokenEndpoint;
+  private String jwksUri;
 
   private final List<String> responseTypesSupported;
 
@@ -59,6 +60,14 @@ public class AuthzServerMetadata {
     this.tokenEndpoint = tokenEndpoint;
   }
 
+  public String getJwksUri() {
+    return jwksUri;
+  }
+
+  public void setJwksUri(String jwksUri) {
+    this.jwksUri = jwksUri;
+  }
+
   public List<String> getResponseTypesSupported() {
     return responseTypesSupported;
   }
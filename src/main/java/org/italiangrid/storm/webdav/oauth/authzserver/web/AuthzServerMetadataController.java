@@ -15,6 +15,9 @@
  */
 package org.italiangrid.storm.webdav.oauth.authzserver.web;
 
+import java.util.Map;
+
+import org.italiangrid.storm.webdav.oauth.authzserver.jwt.SigningKeyStore;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RestController;
@@ -23,10 +26,12 @@ import org.springframework.web.bind.annotation.RestController;
 public class AuthzServerMetadataController {
 
   private final AuthzServerMetadata metadata;
+  private final SigningKeyStore keyStore;
 
   @Autowired
-  public AuthzServerMetadataController(AuthzServerMetadata md) {
+  public AuthzServerMetadataController(AuthzServerMetadata md, SigningKeyStore keyStore) {
     this.metadata = md;
+    this.keyStore = keyStore;
   }
 
   @GetMapping({".well-known/oauth-authorization-server", ".well-known/openid-configuration"})
@@ -34,4 +39,9 @@ public class AuthzServerMetadataController {
     return metadata;
   }
 
+  @GetMapping(".well-known/jwks.json")
+  public Map<String, Object> getKeys() {
+    return keyStore.getPublicKeys().toJSONObject();
+  }
+
 }
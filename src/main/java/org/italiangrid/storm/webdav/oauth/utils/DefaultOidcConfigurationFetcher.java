@@ -18,8 +18,10 @@ package org.italiangrid.storm.webdav.oauth.utils;
 import static java.lang.String.format;
 
 import java.net.URI;
+import java.time.Duration;
 import java.util.Map;
 
+import org.italiangrid.storm.webdav.config.OAuthProperties;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -44,8 +46,11 @@ public class DefaultOidcConfigurationFetcher implements OidcConfigurationFetcher
   final RestTemplateBuilder restBuilder;
 
   @Autowired
-  public DefaultOidcConfigurationFetcher(RestTemplateBuilder restBuilder) {
-    this.restBuilder = restBuilder;
+  public DefaultOidcConfigurationFetcher(RestTemplateBuilder restBuilder,
+      OAuthProperties oauthProperties) {
+    // Bound each fetch, so that an unresponsive issuer cannot hold a refresh thread indefinitely
+    final Duration timeout = Duration.ofSeconds(oauthProperties.getJwksFetchTimeoutSecs());
+    this.restBuilder = restBuilder.setConnectTimeout(timeout).setReadTimeout(timeout);
   }
 
   private void metadataChecks(String issuer, Map<String, Object> oidcConfiguration) {
@@ -95,4 +100,24 @@ public class DefaultOidcConfigurationFetcher implements OidcConfigurationFetcher
     }
   }
 
+  @Override
+  public String loadJWKSourceForURL(URI uri) {
+    LOG.debug("Fetching JWK set from {}", uri);
+
+    RestTemplate rest = restBuilder.build();
+
+    try {
+      return rest.getForObject(uri, String.class);
+    } catch (RuntimeException e) {
+      final String errorMsg =
+          format("Unable to fetch JWK set from '%s': %s", uri, e.getMessage());
+
+      if (LOG.isDebugEnabled()) {
+        LOG.error(errorMsg, e);
+      }
+
+      throw new OidcConfigurationResolutionError(errorMsg, e);
+    }
+  }
+
 }
@@ -0,0 +1,278 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare, 2018.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.italiangrid.storm.webdav.oauth.utils;
+
+import static com.codahale.metrics.MetricRegistry.name;
+import static java.lang.String.format;
+
+import java.net.URI;
+import java.text.ParseException;
+import java.time.Clock;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.italiangrid.storm.webdav.config.OAuthProperties;
+import org.italiangrid.storm.webdav.config.OAuthProperties.AuthorizationServer;
+import org.italiangrid.storm.webdav.oauth.UnknownTokenIssuerError;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.base.Strings;
+import com.nimbusds.jose.KeySourceException;
+import com.nimbusds.jose.jwk.JWK;
+import com.nimbusds.jose.jwk.JWKSet;
+import com.nimbusds.jose.jwk.source.JWKSource;
+import com.nimbusds.jose.proc.SecurityContext;
+
+/**
+ * Keeps the JWK sets of the trusted OAuth issuers up to date.
+ *
+ * Keys are fetched in the background at startup and then refreshed periodically; failed fetches
+ * are retried with an exponential backoff, while the last known keys keep being used to verify
+ * tokens. When a token is signed with a key that is not in the current set (e.g. after a key
+ * rotation on the issuer side), the key set is refetched on the request thread, at most once per
+ * configured interval for each issuer.
+ *
+ * Tokens of an issuer whose keys have never been fetched are rejected right away: the request
+ * thread never waits for a first fetch, which is instead started in the background (subject to
+ * the same per issuer interval).
+ */
+public class TrustedIssuerKeyManager implements DisposableBean {
+
+  public static final Logger LOG = LoggerFactory.getLogger(TrustedIssuerKeyManager.class);
+
+  public static final String JWKS_URI_KEY = "jwks_uri";
+
+  private class IssuerKeys {
+
+    final String issuer;
+    final String configuredJwkUri;
+
+    final AtomicLong lastOnDemandFetchMsec = new AtomicLong(Long.MIN_VALUE);
+    final AtomicBoolean backgroundFetchPending = new AtomicBoolean(false);
+
+    final Meter fetchSuccesses;
+    final Meter fetchFailures;
+    final Meter unknownKeyFetches;
+
+    volatile JWKSet keys;
+    volatile long lastSuccessMsec = -1;
+    volatile int consecutiveFailures = 0;
+
+    IssuerKeys(String issuer, String configuredJwkUri) {
+      this.issuer = issuer;
+      this.configuredJwkUri = configuredJwkUri;
+
+      fetchSuccesses = registry.meter(metricName(issuer, "fetch-successes"));
+      fetchFailures = registry.meter(metricName(issuer, "fetch-failures"));
+      unknownKeyFetches = registry.meter(metricName(issuer, "unknown-key-fetches"));
+
+      registry.gauge(metricName(issuer, "healthy"),
+          () -> () -> keys != null && consecutiveFailures == 0 ? 1 : 0);
+      registry.gauge(metricName(issuer, "keys"),
+          () -> () -> keys == null ? 0 : keys.getKeys().size());
+      registry.gauge(metricName(issuer, "consecutive-failures"), () -> () -> consecutiveFailures);
+      registry.gauge(metricName(issuer, "seconds-since-last-success"),
+          () -> () -> lastSuccessMsec < 0 ? -1
+              : TimeUnit.MILLISECONDS.toSeconds(clock.millis() - lastSuccessMsec));
+    }
+  }
+
+  final OidcConfigurationFetcher fetcher;
+  final ScheduledExecutorService scheduler;
+  final MetricRegistry registry;
+  final Clock clock;
+
+  final long refreshPeriodMsec;
+  final long minBackoffMsec;
+  final long maxBackoffMsec;
+  final long unknownKeyRefetchIntervalMsec;
+
+  final Map<String, IssuerKeys> issuers = new ConcurrentHashMap<>();
+
+  public TrustedIssuerKeyManager(OAuthProperties props, OidcConfigurationFetcher fetcher,
+      ScheduledExecutorService scheduler, MetricRegistry registry, Clock clock) {
+    this.fetcher = fetcher;
+    this.scheduler = scheduler;
+    this.registry = registry;
+    this.clock = clock;
+
+    refreshPeriodMsec = TimeUnit.MINUTES.toMillis(props.getRefreshPeriodMinutes());
+    minBackoffMsec = TimeUnit.SECONDS.toMillis(props.getJwksMinBackoffSecs());
+    maxBackoffMsec =
+        Math.max(minBackoffMsec, TimeUnit.SECONDS.toMillis(props.getJwksMaxBackoffSecs()));
+    unknownKeyRefetchIntervalMsec =
+        TimeUnit.SECONDS.toMillis(props.getUnknownKeyRefetchMinIntervalSecs());
+
+    List<AuthorizationServer> trusted =
+        props.getIssuers() == null ? Collections.emptyList() : props.getIssuers();
+
+    for (AuthorizationServer as : trusted) {
+      issuers.put(as.getIssuer(), new IssuerKeys(as.getIssuer(), as.getJwkUri()));
+    }
+  }
+
+  private static String metricName(String issuer, String metric) {
+    return name(TrustedIssuerKeyManager.class, "issuers", issuer, metric);
+  }
+
+  public Set<String> getTrustedIssuers() {
+    return Collections.unmodifiableSet(issuers.keySet());
+  }
+
+  public boolean isTrusted(String issuer) {
+    return issuers.containsKey(issuer);
+  }
+
+  public void start() {
+    for (IssuerKeys k : issuers.values()) {
+      LOG.info("Scheduling JWK set prefetch for trusted issuer: {}", k.issuer);
+      scheduler.execute(() -> refreshAndReschedule(k));
+    }
+  }
+
+  private void refreshAndReschedule(IssuerKeys k) {
+    long delayMsec = refresh(k) ? refreshPeriodMsec : backoffMsec(k.consecutiveFailures);
+    if (!scheduler.isShutdown()) {
+      scheduler.schedule(() -> refreshAndReschedule(k), delayMsec, TimeUnit.MILLISECONDS);
+    }
+  }
+
+  public long backoffMsec(int failures) {
+    long delay = minBackoffMsec;
+    for (int i = 1; i < failures && delay < maxBackoffMsec; i++) {
+      delay *= 2;
+    }
+    return Math.min(delay, maxBackoffMsec);
+  }
+
+  private URI resolveJwksUri(IssuerKeys k) {
+    if (!Strings.isNullOrEmpty(k.configuredJwkUri)) {
+      return URI.create(k.configuredJwkUri);
+    }
+
+    Map<String, Object> conf = fetcher.loadConfigurationForIssuer(k.issuer);
+    return URI.create(conf.get(JWKS_URI_KEY).toString());
+  }
+
+  private boolean refresh(IssuerKeys k) {
+    try {
+      JWKSet keys = JWKSet.parse(fetcher.loadJWKSourceForURL(resolveJwksUri(k)));
+      k.keys = keys;
+      k.lastSuccessMsec = clock.millis();
+      k.consecutiveFailures = 0;
+      k.fetchSuccesses.mark();
+      LOG.debug("Fetched {} keys for trusted issuer {}", keys.getKeys().size(), k.issuer);
+      return true;
+    } catch (RuntimeException | ParseException e) {
+      k.consecutiveFailures++;
+      k.fetchFailures.mark();
+      LOG.warn("Error fetching JWK set for trusted issuer {} ({} consecutive failures): {}",
+          k.issuer, k.consecutiveFailures, e.getMessage());
+      return false;
+    }
+  }
+
+  /**
+   * Fetches the keys of the given issuer on the calling thread.
+   *
+   * @return {@code true} if the keys were fetched successfully
+   */
+  public boolean refresh(String issuer) {
+    return refresh(issuerKeys(issuer));
+  }
+
+  private IssuerKeys issuerKeys(String issuer) {
+    IssuerKeys k = issuers.get(issuer);
+    if (k == null) {
+      throw new UnknownTokenIssuerError(issuer);
+    }
+    return k;
+  }
+
+  private boolean acquireOnDemandFetch(IssuerKeys k) {
+    final long now = clock.millis();
+    final long last = k.lastOnDemandFetchMsec.get();
+
+    if (last != Long.MIN_VALUE && now - last < unknownKeyRefetchIntervalMsec) {
+      return false;
+    }
+
+    return k.lastOnDemandFetchMsec.compareAndSet(last, now);
+  }
+
+  private void scheduleBackgroundFetch(IssuerKeys k) {
+    if (!k.backgroundFetchPending.compareAndSet(false, true)) {
+      return;
+    }
+
+    try {
+      scheduler.execute(() -> {
+        try {
+          refresh(k);
+        } finally {
+          k.backgroundFetchPending.set(false);
+        }
+      });
+    } catch (RejectedExecutionException e) {
+      k.backgroundFetchPending.set(false);
+      LOG.debug("JWK set fetch for trusted issuer {} rejected: {}", k.issuer, e.getMessage());
+    }
+  }
+
+  public JWKSource<SecurityContext> keySource(String issuer) {
+    final IssuerKeys k = issuerKeys(issuer);
+
+    return (selector, context) -> {
+      JWKSet keys = k.keys;
+
+      if (keys == null) {
+        if (acquireOnDemandFetch(k)) {
+          scheduleBackgroundFetch(k);
+        }
+        throw new KeySourceException(format("No keys available for trusted issuer '%s'", issuer));
+      }
+
+      List<JWK> matches = selector.select(keys);
+
+      if (matches.isEmpty() && acquireOnDemandFetch(k)) {
+        LOG.debug("No matching key for trusted issuer {}, refetching its JWK set", issuer);
+        k.unknownKeyFetches.mark();
+        if (refresh(k)) {
+          matches = selector.select(k.keys);
+        }
+      }
+
+      return matches;
+    };
+  }
+
+  @Override
+  public void destroy() {
+    scheduler.shutdownNow();
+  }
+}
@@ -15,86 +15,75 @@
  */
 package org.italiangrid.storm.webdav.oauth.utils;
 
+import java.util.Collections;
 import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.ExecutorService;
-import java.util.stream.Collectors;
 
-import org.italiangrid.storm.webdav.config.OAuthProperties;
-import org.italiangrid.storm.webdav.config.OAuthProperties.AuthorizationServer;
-import org.italiangrid.storm.webdav.config.ServiceConfigurationProperties;
 import org.italiangrid.storm.webdav.oauth.UnknownTokenIssuerError;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.boot.web.client.RestTemplateBuilder;
-import org.springframework.security.oauth2.core.OAuth2TokenValidator;
-import org.springframework.security.oauth2.jwt.Jwt;
 import org.springframework.security.oauth2.jwt.JwtDecoder;
-import org.springframework.security.oauth2.jwt.JwtValidators;
-import org.springframework.security.oauth2.jwt.NimbusJwtDecoderJwkSupport;
 
 import com.google.common.cache.CacheLoader;
-import com.google.common.util.concurrent.Futures;
-import com.google.common.util.concurrent.ListenableFuture;
-import com.google.common.util.concurrent.ListenableFutureTask;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.jwk.source.JWKSource;
+import com.nimbusds.jose.proc.JWSKeySelector;
+import com.nimbusds.jose.proc.JWSVerificationKeySelector;
+import com.nimbusds.jose.proc.SecurityContext;
 
+/**
+ * Builds the decoders for trusted issuers. Decoders do not fetch keys on their own, but use the
+ * keys kept up to date in the background by the {@link TrustedIssuerKeyManager}, so loading a
+ * decoder never blocks on the network.
+ */
 public class TrustedJwtDecoderCacheLoader extends CacheLoader<String, JwtDecoder> {
 
   public static final Logger LOG = LoggerFactory.getLogger(TrustedJwtDecoderCacheLoader.class);
 
-  final ServiceConfigurationProperties properties;
-  final Set<String> trustedIssuers;
-  final RestTemplateBuilder builder;
-  final OidcConfigurationFetcher fetcher;
-  final ExecutorService executor;
+  /**
+   * The algorithms accepted for tokens of trusted issuers. ES256 is accepted so that the tokens
+   * signed by peer StoRM WebDAV nodes configured with an EC key can be verified.
+   */
+  public static final Set<JWSAlgorithm> TRUSTED_ISSUER_JWS_ALGOS =
+      ImmutableSet.of(JWSAlgorithm.RS256, JWSAlgorithm.ES256);
+
+  final TrustedIssuerKeyManager keyManager;
 
   @Autowired
-  public TrustedJwtDecoderCacheLoader(ServiceConfigurationProperties properties,
-      OAuthProperties oauthProperties, RestTemplateBuilder builder,
-      OidcConfigurationFetcher fetcher, ExecutorService executor) {
-    this.properties = properties;
-    this.builder = builder;
-    this.fetcher = fetcher;
-    this.executor = executor;
-    trustedIssuers = oauthProperties.getIssuers()
-      .stream()
-      .map(AuthorizationServer::getIssuer)
-      .collect(Collectors.toSet());
+  public TrustedJwtDecoderCacheLoader(TrustedIssuerKeyManager keyManager) {
+    this.keyManager = keyManager;
   }
 
-
   @Override
   public JwtDecoder load(String issuer) throws Exception {
-    if (!trustedIssuers.contains(issuer)) {
+    if (!keyManager.isTrusted(issuer)) {
       throw new UnknownTokenIssuerError(issuer);
     }
 
-    Map<String, Object> oidcConfiguration = fetcher.loadConfigurationForIssuer(issuer);
-
-    OAuth2TokenValidator<Jwt> jwtValidator = JwtValidators.createDefaultWithIssuer(issuer);
-
-    NimbusJwtDecoderJwkSupport jwtDecoder =
-        new NimbusJwtDecoderJwkSupport(oidcConfiguration.get("jwks_uri").toString());
-    jwtDecoder.setJwtValidator(jwtValidator);
-
-    return jwtDecoder;
+    return new KeySelectorJwtDecoder(issuer, keySelector(keyManager.keySource(issuer)));
   }
 
-  private boolean localTokenIssuer(String issuer) {
-    return properties.getAuthzServer().isEnabled()
-        && issuer.equals(properties.getAuthzServer().getIssuer());
-  }
-
-  @Override
-  public ListenableFuture<JwtDecoder> reload(String issuer, JwtDecoder oldValue) throws Exception {
-    if (localTokenIssuer(issuer)) {
-      return Futures.immediateFuture(oldValue);
-    }
-
-    ListenableFutureTask<JwtDecoder> task = ListenableFutureTask.create(() -> load(issuer));
-    executor.execute(task);
-
-    return task;
+  /**
+   * Selects the verification keys matching the algorithm in the token header, among the accepted
+   * ones. Tokens signed with any other algorithm get no keys, and are rejected.
+   */
+  public static JWSKeySelector<SecurityContext> keySelector(JWKSource<SecurityContext> source) {
+    ImmutableMap.Builder<JWSAlgorithm, JWSKeySelector<SecurityContext>> builder =
+        ImmutableMap.builder();
+    TRUSTED_ISSUER_JWS_ALGOS
+      .forEach(alg -> builder.put(alg, new JWSVerificationKeySelector<>(alg, source)));
+
+    final Map<JWSAlgorithm, JWSKeySelector<SecurityContext>> selectors = builder.build();
+
+    return (header, context) -> {
+      JWSKeySelector<SecurityContext> selector = selectors.get(header.getAlgorithm());
+      if (selector == null) {
+        return Collections.emptyList();
+      }
+      return selector.selectJWSKeys(header, context);
+    };
   }
 }
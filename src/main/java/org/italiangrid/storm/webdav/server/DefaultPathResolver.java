@@ -27,6 +27,7 @@ import java.util.TreeMap;
 
 import org.italiangrid.storm.webdav.config.StorageAreaConfiguration;
 import org.italiangrid.storm.webdav.config.StorageAreaInfo;
+import org.italiangrid.storm.webdav.server.tracing.Span;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -66,6 +67,12 @@ public class DefaultPathResolver implements PathResolver {
 
   @Override
   public String resolvePath(String pathInContext) {
+    try (Span span = Span.start("resolve-path")) {
+      return doResolvePath(pathInContext);
+    }
+  }
+
+  protected String doResolvePath(String pathInContext) {
 
     if (isNull(pathInContext)) {
       return null;
@@ -92,6 +99,12 @@ public class DefaultPathResolver implements PathResolver {
 
   @Override
   public StorageAreaInfo resolveStorageArea(String pathInContext) {
+    try (Span span = Span.start("resolve-storage-area")) {
+      return doResolveStorageArea(pathInContext);
+    }
+  }
+
+  protected StorageAreaInfo doResolveStorageArea(String pathInContext) {
 
     for (Map.Entry<String, StorageAreaInfo> e : contextMap.descendingMap().entrySet()) {
 
@@ -0,0 +1,79 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare, 2018.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.italiangrid.storm.webdav.server;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import org.eclipse.jetty.http2.BufferingFlowControlStrategy;
+import org.eclipse.jetty.http2.FlowControlStrategy;
+import org.eclipse.jetty.http2.SimpleFlowControlStrategy;
+import org.eclipse.jetty.http2.server.AbstractHTTP2ServerConnectionFactory;
+import org.eclipse.jetty.server.ConnectionFactory;
+import org.eclipse.jetty.server.Connector;
+import org.italiangrid.storm.webdav.config.Http2Properties;
+
+/**
+ * Applies {@link Http2Properties} to the HTTP/2 connection factories of a connector.
+ */
+public class Http2ConnectorTuning {
+
+  private Http2ConnectorTuning() {
+    // empty constructor
+  }
+
+  public static FlowControlStrategy.Factory flowControlStrategyFactory(Http2Properties props) {
+    switch (props.getFlowControlStrategy()) {
+      case SIMPLE:
+        return SimpleFlowControlStrategy::new;
+      case BUFFERING:
+        final float ratio = props.getBufferingFlowControlRatio();
+        return () -> new BufferingFlowControlStrategy(ratio);
+      default:
+        throw new IllegalArgumentException(
+            "Unsupported flow control strategy: " + props.getFlowControlStrategy());
+    }
+  }
+
+  public static void configure(AbstractHTTP2ServerConnectionFactory factory,
+      Http2Properties props) {
+    checkNotNull(factory);
+    checkNotNull(props);
+    checkArgument(props.getInitialStreamRecvWindow() <= props.getInitialSessionRecvWindow(),
+        "initialStreamRecvWindow must be <= initialSessionRecvWindow");
+
+    factory.setMaxConcurrentStreams(props.getMaxConcurrentStreams());
+    factory.setInitialSessionRecvWindow(props.getInitialSessionRecvWindow());
+    factory.setInitialStreamRecvWindow(props.getInitialStreamRecvWindow());
+    factory.setFlowControlStrategyFactory(flowControlStrategyFactory(props));
+  }
+
+  /**
+   * @return <code>true</code> if the connector speaks HTTP/2 and has been configured
+   */
+  public static boolean configure(Connector connector, Http2Properties props) {
+    boolean configured = false;
+
+    for (ConnectionFactory f : connector.getConnectionFactories()) {
+      if (f instanceof AbstractHTTP2ServerConnectionFactory) {
+        configure((AbstractHTTP2ServerConnectionFactory) f, props);
+        configured = true;
+      }
+    }
+
+    return configured;
+  }
+}
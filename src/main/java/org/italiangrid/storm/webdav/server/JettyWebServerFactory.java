@@ -15,7 +15,10 @@
  */
 package org.italiangrid.storm.webdav.server;
 
+import static com.codahale.metrics.MetricRegistry.name;
 import static com.google.common.base.Strings.isNullOrEmpty;
+import static org.italiangrid.storm.webdav.config.ServiceConfiguration.ThreadMode.PLATFORM;
+import static org.italiangrid.storm.webdav.config.ServiceConfiguration.ThreadMode.VIRTUAL;
 
 import java.io.File;
 import java.io.IOException;
@@ -27,6 +30,7 @@ import java.util.Collection;
 
 import javax.annotation.PostConstruct;
 
+import org.eclipse.jetty.io.ArrayByteBufferPool;
 import org.eclipse.jetty.rewrite.handler.RewriteHandler;
 import org.eclipse.jetty.rewrite.handler.RewriteRegexRule;
 import org.eclipse.jetty.server.HttpConfiguration;
@@ -38,7 +42,9 @@ import org.eclipse.jetty.servlet.ErrorPageErrorHandler;
 import org.eclipse.jetty.util.thread.ThreadPool;
 import org.eclipse.jetty.webapp.WebAppContext;
 import org.italiangrid.storm.webdav.config.ConfigurationLogger;
+import org.italiangrid.storm.webdav.config.Http2Properties;
 import org.italiangrid.storm.webdav.config.ServiceConfiguration;
+import org.italiangrid.storm.webdav.config.ServiceConfiguration.ThreadMode;
 import org.italiangrid.storm.webdav.config.StorageAreaConfiguration;
 import org.italiangrid.storm.webdav.error.StoRMWebDAVError;
 import org.italiangrid.utils.jetty.TLSServerConnectorBuilder;
@@ -52,6 +58,7 @@ import org.springframework.boot.web.embedded.jetty.JettyServletWebServerFactory;
 import org.springframework.boot.web.server.ErrorPage;
 import org.springframework.stereotype.Component;
 
+import com.codahale.metrics.Gauge;
 import com.codahale.metrics.MetricRegistry;
 import com.codahale.metrics.jetty9.InstrumentedConnectionFactory;
 import com.codahale.metrics.jetty9.InstrumentedHandler;
@@ -73,13 +80,11 @@ public class JettyWebServerFactory extends JettyServletWebServerFactory
 
   final ServiceConfiguration configuration;
   final StorageAreaConfiguration saConf;
+  final MetricRegistry metricRegistry;
 
   @Autowired
   ServerProperties serverProperties;
 
-  @Autowired
-  MetricRegistry metricRegistry;
-
   @Autowired
   ConfigurationLogger confLogger;
 
@@ -94,6 +99,8 @@ public class JettyWebServerFactory extends JettyServletWebServerFactory
 
     connectorBuilder.httpConfiguration().setSendServerVersion(false);
     connectorBuilder.httpConfiguration().setSendDateHeader(false);
+    connectorBuilder.httpConfiguration()
+      .setOutputBufferSize(configuration.getConnectorOutputBufferSize());
 
     ServerConnector connector = connectorBuilder.withPort(configuration.getHTTPSPort())
       .withWantClientAuth(true)
@@ -108,6 +115,16 @@ public class JettyWebServerFactory extends JettyServletWebServerFactory
       .withTlsProtocol("TLS")
       .build();
 
+    if (configuration.enableHttp2()
+        && Http2ConnectorTuning.configure(connector, configuration.getHttp2())) {
+      Http2Properties http2 = configuration.getHttp2();
+      LOG.info(
+          "HTTP/2 max concurrent streams: {}, session recv window: {}, stream recv window: {}, "
+              + "flow control: {}",
+          http2.getMaxConcurrentStreams(), http2.getInitialSessionRecvWindow(),
+          http2.getInitialStreamRecvWindow(), http2.getFlowControlStrategy());
+    }
+
     connector.setName(HTTPS_CONNECTOR_NAME);
     server.addConnector(connector);
     LOG.info("Configured TLS connector on port: {}. Conscrypt enabled: {}. HTTP/2 enabled: {}",
@@ -121,6 +138,7 @@ public class JettyWebServerFactory extends JettyServletWebServerFactory
     plainConnectorConfig.setSendServerVersion(false);
 
     plainConnectorConfig.setIdleTimeout(configuration.getConnectorMaxIdleTimeInMsec());
+    plainConnectorConfig.setOutputBufferSize(configuration.getConnectorOutputBufferSize());
 
     InstrumentedConnectionFactory connFactory =
         new InstrumentedConnectionFactory(new HttpConnectionFactory(plainConnectorConfig),
@@ -162,20 +180,49 @@ public class JettyWebServerFactory extends JettyServletWebServerFactory
   }
 
   private ThreadPool configureThreadPool() {
-    return ThreadPoolBuilder.instance()
-      .withMaxRequestQueueSize(configuration.getMaxQueueSize())
-      .withMaxThreads(configuration.getMaxConnections())
-      .withMinThreads(5)
-      .registry(metricRegistry)
-      .build();
+
+    ThreadMode threadMode = configuration.getThreadMode();
+
+    if (VIRTUAL.equals(threadMode) && !VirtualThreadPool.isSupported()) {
+      LOG.warn("Virtual threads are not supported by this JVM, falling back to platform threads");
+      threadMode = PLATFORM;
+    }
+
+    final String threadModeName = threadMode.name();
+    metricRegistry.register(name(HTTP_CONNECTOR_NAME, "thread-mode"),
+        (Gauge<String>) () -> threadModeName);
+
+    final ThreadPool pool;
+
+    if (VIRTUAL.equals(threadMode)) {
+      // The virtual pool has no thread cap, concurrency is bounded by the admission control
+      // filter, which is always enabled in this mode
+      LOG.info("Requests will be served by virtual threads");
+      pool = new VirtualThreadPool(HTTP_CONNECTOR_NAME, metricRegistry);
+    } else {
+      pool = ThreadPoolBuilder.instance()
+        .withMaxRequestQueueSize(configuration.getMaxQueueSize())
+        .withMaxThreads(configuration.getMaxConnections())
+        .withMinThreads(5)
+        .registry(metricRegistry)
+        .build();
+    }
+
+    // Same name in both modes, so that the modes can be compared; request latency and active
+    // requests are recorded by the storm.http.handler instrumented handler in both modes
+    metricRegistry.register(name(HTTP_CONNECTOR_NAME, "threads", "busy"),
+        (Gauge<Integer>) () -> pool.getThreads() - pool.getIdleThreads());
+
+    return pool;
   }
 
   @Autowired
   public JettyWebServerFactory(ServiceConfiguration serviceConfiguration,
-      StorageAreaConfiguration saConf) {
+      StorageAreaConfiguration saConf, MetricRegistry metricRegistry) {
     super(serviceConfiguration.getHTTPPort());
     this.configuration = serviceConfiguration;
     this.saConf = saConf;
+    this.metricRegistry = metricRegistry;
     this.addServerCustomizers(this);
     setRegisterDefaultServlet(false);
     setThreadPool(configureThreadPool());
@@ -236,9 +283,17 @@ public class JettyWebServerFactory extends JettyServletWebServerFactory
 
   }
 
+  private void configureByteBufferPool(Server server) {
+    // Connectors pick up the pool registered as a server bean
+    server.addBean(new ArrayByteBufferPool(0, 1024,
+        configuration.getConnectorBufferPoolMaxCapacity(),
+        configuration.getConnectorBufferPoolMaxQueueLength()));
+  }
+
   @Override
   public void customize(Server server) {
     server.setConnectors(null);
+    configureByteBufferPool(server);
     configurePlainConnector(server);
     try {
       configureTLSConnector(server);
@@ -0,0 +1,194 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare, 2018.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.italiangrid.storm.webdav.server;
+
+import static java.util.Objects.isNull;
+import static org.italiangrid.storm.webdav.fs.SyscallTimers.Syscall.STAT;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+
+import javax.servlet.ServletRequest;
+import javax.servlet.http.HttpServletRequest;
+
+import org.italiangrid.storm.webdav.config.StorageAreaInfo;
+import org.italiangrid.storm.webdav.fs.SyscallTimers;
+import org.italiangrid.storm.webdav.fs.attrs.ExtendedAttributesHelper;
+
+/**
+ * The resolution of the resource targeted by a request, shared by all the stages that handle the
+ * request. The storage area, the local path, the file attributes and the checksum are computed
+ * lazily, and at most once.
+ * 
+ * Instances are bound to a single request, and are not thread safe.
+ */
+public class ResolvedResource {
+
+  public static final String RESOLVED_RESOURCE_ATTRIBUTE_NAME = "storm.resolvedResource";
+
+  private final PathResolver resolver;
+  private final String pathInContext;
+  private final SyscallTimers syscallTimers;
+
+  private boolean storageAreaResolved = false;
+  private StorageAreaInfo storageArea;
+
+  private boolean pathResolved = false;
+  private Path resolvedPath;
+
+  private boolean attributesLoaded = false;
+  private BasicFileAttributes attributes;
+
+  private boolean checksumLoaded = false;
+  private String checksum;
+
+  public ResolvedResource(PathResolver resolver, String pathInContext) {
+    this(resolver, pathInContext, null);
+  }
+
+  public ResolvedResource(PathResolver resolver, String pathInContext,
+      SyscallTimers syscallTimers) {
+    this.resolver = resolver;
+    this.pathInContext = pathInContext;
+    this.syscallTimers = syscallTimers;
+  }
+
+  public static String pathInContext(HttpServletRequest request) {
+    String servletPath = request.getServletPath();
+    String pathInfo = request.getPathInfo();
+
+    if (isNull(pathInfo)) {
+      return servletPath;
+    }
+
+    if (isNull(servletPath)) {
+      return pathInfo;
+    }
+
+    return servletPath.concat(pathInfo);
+  }
+
+  public static ResolvedResource fromRequest(ServletRequest request) {
+    return (ResolvedResource) request.getAttribute(RESOLVED_RESOURCE_ATTRIBUTE_NAME);
+  }
+
+  public static ResolvedResource forRequest(HttpServletRequest request, PathResolver resolver) {
+    return forRequest(request, resolver, null);
+  }
+
+  public static ResolvedResource forRequest(HttpServletRequest request, PathResolver resolver,
+      SyscallTimers syscallTimers) {
+    ResolvedResource rr = fromRequest(request);
+
+    if (isNull(rr)) {
+      rr = new ResolvedResource(resolver, pathInContext(request), syscallTimers);
+      request.setAttribute(RESOLVED_RESOURCE_ATTRIBUTE_NAME, rr);
+    }
+
+    return rr;
+  }
+
+  public String getPathInContext() {
+    return pathInContext;
+  }
+
+  public boolean matches(String path) {
+    return pathInContext != null && pathInContext.equals(path);
+  }
+
+  public StorageAreaInfo getStorageArea() {
+    if (!storageAreaResolved) {
+      storageArea = isNull(pathInContext) ? null : resolver.resolveStorageArea(pathInContext);
+      storageAreaResolved = true;
+    }
+    return storageArea;
+  }
+
+  public Path getResolvedPath() {
+    if (!pathResolved) {
+      String p = resolver.resolvePath(pathInContext);
+      resolvedPath = isNull(p) ? null : Paths.get(p);
+      pathResolved = true;
+    }
+    return resolvedPath;
+  }
+
+  public File getFile() {
+    Path p = getResolvedPath();
+    return isNull(p) ? null : p.toFile();
+  }
+
+  public BasicFileAttributes getAttributes() {
+    if (!attributesLoaded) {
+      Path p = getResolvedPath();
+      if (!isNull(p)) {
+        final long start = System.nanoTime();
+        try {
+          attributes = Files.readAttributes(p, BasicFileAttributes.class);
+        } catch (IOException e) {
+          attributes = null;
+        } finally {
+          if (!isNull(syscallTimers)) {
+            syscallTimers.record(STAT, start);
+          }
+        }
+      }
+      attributesLoaded = true;
+    }
+    return attributes;
+  }
+
+  public boolean exists() {
+    return !isNull(getAttributes());
+  }
+
+  public boolean isDirectory() {
+    return exists() && attributes.isDirectory();
+  }
+
+  public boolean isRegularFile() {
+    return exists() && attributes.isRegularFile();
+  }
+
+  public String getChecksumAttribute(ExtendedAttributesHelper helper) throws IOException {
+    if (!checksumLoaded) {
+      checksum = isRegularFile() ? helper.getChecksumAttribute(getFile()) : null;
+      checksumLoaded = true;
+    }
+    return checksum;
+  }
+
+  /**
+   * Drops the file attributes and checksum loaded so far, e.g. after the resource has been
+   * modified. The path resolution is kept.
+   */
+  public void invalidate() {
+    attributesLoaded = false;
+    attributes = null;
+    checksumLoaded = false;
+    checksum = null;
+  }
+
+  @Override
+  public String toString() {
+    return "ResolvedResource [pathInContext=" + pathInContext + ", resolvedPath=" + resolvedPath
+        + "]";
+  }
+}
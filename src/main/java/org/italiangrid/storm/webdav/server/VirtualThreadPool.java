@@ -0,0 +1,140 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare, 2018.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.italiangrid.storm.webdav.server;
+
+import static com.codahale.metrics.MetricRegistry.name;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.jetty.util.component.AbstractLifeCycle;
+import org.eclipse.jetty.util.component.LifeCycle;
+import org.eclipse.jetty.util.thread.ThreadPool;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+
+/**
+ * A Jetty {@link ThreadPool} that runs each task on a new virtual thread. There is no thread cap:
+ * concurrency is bounded per storage area by the
+ * {@link org.italiangrid.storm.webdav.server.servlet.AdmissionControlFilter}.
+ *
+ * Virtual threads are looked up reflectively, since the service is still built for Java 8; use
+ * {@link #isSupported()} before creating an instance.
+ */
+public class VirtualThreadPool extends AbstractLifeCycle implements ThreadPool {
+
+  public static final Logger LOG = LoggerFactory.getLogger(VirtualThreadPool.class);
+
+  private final String poolName;
+  private final ThreadFactory factory;
+  private final AtomicInteger activeThreads = new AtomicInteger();
+  private final Meter startedThreads;
+
+  public VirtualThreadPool(String poolName, MetricRegistry registry) {
+    checkNotNull(poolName);
+    checkNotNull(registry);
+    this.poolName = poolName;
+    this.factory = virtualThreadFactory(poolName + "-");
+    this.startedThreads = registry.meter(name(poolName, "virtual-threads", "started"));
+    registry.register(name(poolName, "virtual-threads", "active"),
+        (Gauge<Integer>) activeThreads::get);
+
+    addLifeCycleListener(new AbstractLifeCycleListener() {
+      @Override
+      public void lifeCycleStopped(LifeCycle event) {
+        synchronized (VirtualThreadPool.this) {
+          VirtualThreadPool.this.notifyAll();
+        }
+      }
+    });
+  }
+
+  static ThreadFactory virtualThreadFactory(String prefix) {
+    try {
+      Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+      Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+      Method nameMethod = builderClass.getMethod("name", String.class, long.class);
+      builder = nameMethod.invoke(builder, prefix, 0L);
+      return (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+    } catch (ReflectiveOperationException | ClassCastException e) {
+      throw new UnsupportedOperationException("Virtual threads are not available on this JVM",
+          e);
+    }
+  }
+
+  public static boolean isSupported() {
+    try {
+      virtualThreadFactory("probe-");
+      return true;
+    } catch (UnsupportedOperationException e) {
+      LOG.debug("Virtual threads not supported: {}", e.getCause().toString());
+      return false;
+    }
+  }
+
+  @Override
+  public void execute(Runnable task) {
+    if (!isRunning()) {
+      throw new RejectedExecutionException(
+          String.format("Thread pool %s is not running", poolName));
+    }
+
+    Thread t = factory.newThread(() -> {
+      activeThreads.incrementAndGet();
+      try {
+        task.run();
+      } finally {
+        activeThreads.decrementAndGet();
+      }
+    });
+
+    startedThreads.mark();
+    t.start();
+  }
+
+  @Override
+  public synchronized void join() throws InterruptedException {
+    while (!isStopped()) {
+      wait();
+    }
+  }
+
+  @Override
+  public int getThreads() {
+    return activeThreads.get();
+  }
+
+  @Override
+  public int getIdleThreads() {
+    return 0;
+  }
+
+  @Override
+  public boolean isLowOnThreads() {
+    return false;
+  }
+
+  public String getName() {
+    return poolName;
+  }
+}
@@ -0,0 +1,194 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare, 2018.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.italiangrid.storm.webdav.server.logging;
+
+import static com.codahale.metrics.MetricRegistry.name;
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+
+/**
+ * A structured request log. Request threads fill preallocated {@link RequestLogEvent}s held in a
+ * bounded ring buffer; a background thread drains the buffer and writes each event as a JSON
+ * line, by default to the {@value #REQUEST_LOG_LOGGER_NAME} logger.
+ * 
+ * Request threads never block on the log: when the buffer is full, events are dropped and
+ * counted. When the sink is disabled (e.g. the logger is not enabled at INFO level) no event is
+ * claimed at all.
+ */
+public class RequestLog {
+
+  public static final Logger LOG = LoggerFactory.getLogger(RequestLog.class);
+
+  public static final String REQUEST_LOG_LOGGER_NAME = "storm-webdav.request-log";
+
+  public static final Logger REQUEST_LOG = LoggerFactory.getLogger(REQUEST_LOG_LOGGER_NAME);
+
+  static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(5);
+
+  private final RequestLogEvent[] events;
+  private final AtomicLongArray published;
+  private final int mask;
+
+  private final AtomicLong head = new AtomicLong();
+  private volatile long tail = 0;
+
+  private final Consumer<String> sink;
+  private final BooleanSupplier sinkEnabled;
+  private final Meter dropped;
+
+  private final StringBuilder buffer = new StringBuilder(512);
+
+  private volatile boolean running = false;
+  private Thread writer;
+
+  public RequestLog(int capacity, MetricRegistry registry) {
+    this(capacity, REQUEST_LOG::info, REQUEST_LOG::isInfoEnabled, registry);
+  }
+
+  public RequestLog(int capacity, Consumer<String> sink, BooleanSupplier sinkEnabled,
+      MetricRegistry registry) {
+    checkArgument(capacity > 0 && Integer.bitCount(capacity) == 1,
+        "capacity must be a power of two");
+    checkNotNull(sink);
+    checkNotNull(sinkEnabled);
+    checkNotNull(registry);
+
+    this.sink = sink;
+    this.sinkEnabled = sinkEnabled;
+    this.mask = capacity - 1;
+
+    events = new RequestLogEvent[capacity];
+    published = new AtomicLongArray(capacity);
+
+    for (int i = 0; i < capacity; i++) {
+      events[i] = new RequestLogEvent();
+      published.set(i, -1);
+    }
+
+    dropped = registry.meter(name(RequestLog.class, "dropped"));
+    registry.register(name(RequestLog.class, "queued"), (Gauge<Long>) () -> head.get() - tail);
+  }
+
+  public boolean isEnabled() {
+    return running && sinkEnabled.getAsBoolean();
+  }
+
+  /**
+   * Claims an event to be filled by the caller, which must then {@link #publish} it.
+   * 
+   * @return the event, or null if the log is disabled or the buffer is full
+   */
+  public RequestLogEvent claim() {
+    if (!isEnabled()) {
+      return null;
+    }
+
+    long h;
+
+    do {
+      h = head.get();
+      if (h - tail >= events.length) {
+        dropped.mark();
+        return null;
+      }
+    } while (!head.compareAndSet(h, h + 1));
+
+    RequestLogEvent e = events[(int) (h & mask)];
+    e.reset();
+    e.sequence = h;
+    return e;
+  }
+
+  public void publish(RequestLogEvent event) {
+    published.lazySet((int) (event.sequence & mask), event.sequence);
+  }
+
+  /**
+   * Writes out the published events, in order, stopping at the first one that has been claimed
+   * but not yet published.
+   * 
+   * @return the number of events written
+   */
+  int drain() {
+    int count = 0;
+    long t = tail;
+
+    while (published.get((int) (t & mask)) == t) {
+      buffer.setLength(0);
+      events[(int) (t & mask)].appendJson(buffer);
+      tail = ++t;
+
+      try {
+        sink.accept(buffer.toString());
+      } catch (RuntimeException e) {
+        LOG.warn("Error writing request log event: {}", e.getMessage(), e);
+      }
+
+      count++;
+    }
+
+    return count;
+  }
+
+  public synchronized void start() {
+    if (running) {
+      return;
+    }
+
+    running = true;
+    writer = new Thread(() -> {
+      while (running) {
+        if (drain() == 0) {
+          LockSupport.parkNanos(IDLE_PARK_NANOS);
+        }
+      }
+      drain();
+    }, "request-log-writer");
+
+    writer.setDaemon(true);
+    writer.start();
+    LOG.info("Request log started, buffer capacity: {} events", events.length);
+  }
+
+  public synchronized void stop() {
+    if (!running) {
+      return;
+    }
+
+    running = false;
+    LockSupport.unpark(writer);
+
+    try {
+      writer.join(TimeUnit.SECONDS.toMillis(5));
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
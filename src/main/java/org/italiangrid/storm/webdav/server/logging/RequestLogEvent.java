@@ -0,0 +1,192 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare, 2018.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.italiangrid.storm.webdav.server.logging;
+
+import java.time.Instant;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * A request log entry. Events are preallocated by the {@link RequestLog} and reused, so request
+ * threads only store references and primitive values; the JSON rendering happens on the writer
+ * thread.
+ */
+public class RequestLogEvent {
+
+  long sequence;
+
+  long timestamp;
+  String requestId;
+  String remoteAddr;
+  String method;
+  String path;
+  String storageArea;
+  String principal;
+  int status;
+  long bytesIn;
+  long bytesOut;
+  long durationUsec;
+
+  String tpcMode;
+  String tpcRemote;
+  long tpcBytes = -1;
+
+  void reset() {
+    timestamp = 0;
+    requestId = null;
+    remoteAddr = null;
+    method = null;
+    path = null;
+    storageArea = null;
+    principal = null;
+    status = 0;
+    bytesIn = 0;
+    bytesOut = 0;
+    durationUsec = 0;
+    tpcMode = null;
+    tpcRemote = null;
+    tpcBytes = -1;
+  }
+
+  public RequestLogEvent timestamp(long timestamp) {
+    this.timestamp = timestamp;
+    return this;
+  }
+
+  public RequestLogEvent requestId(String requestId) {
+    this.requestId = requestId;
+    return this;
+  }
+
+  public RequestLogEvent remoteAddr(String remoteAddr) {
+    this.remoteAddr = remoteAddr;
+    return this;
+  }
+
+  public RequestLogEvent method(String method) {
+    this.method = method;
+    return this;
+  }
+
+  public RequestLogEvent path(String path) {
+    this.path = path;
+    return this;
+  }
+
+  public RequestLogEvent storageArea(String storageArea) {
+    this.storageArea = storageArea;
+    return this;
+  }
+
+  public RequestLogEvent principal(String principal) {
+    this.principal = principal;
+    return this;
+  }
+
+  public RequestLogEvent status(int status) {
+    this.status = status;
+    return this;
+  }
+
+  public RequestLogEvent bytes(long bytesIn, long bytesOut) {
+    this.bytesIn = bytesIn;
+    this.bytesOut = bytesOut;
+    return this;
+  }
+
+  public RequestLogEvent durationUsec(long durationUsec) {
+    this.durationUsec = durationUsec;
+    return this;
+  }
+
+  public RequestLogEvent tpc(String mode, String remote, long bytes) {
+    this.tpcMode = mode;
+    this.tpcRemote = remote;
+    this.tpcBytes = bytes;
+    return this;
+  }
+
+  public static void appendString(StringBuilder sb, String value) {
+    sb.append('"');
+
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+
+      switch (c) {
+        case '"':
+          sb.append("\\\"");
+          break;
+        case '\\':
+          sb.append("\\\\");
+          break;
+        case '\n':
+          sb.append("\\n");
+          break;
+        case '\r':
+          sb.append("\\r");
+          break;
+        case '\t':
+          sb.append("\\t");
+          break;
+        default:
+          if (c < 0x20) {
+            sb.append(String.format("\\u%04x", (int) c));
+          } else {
+            sb.append(c);
+          }
+      }
+    }
+
+    sb.append('"');
+  }
+
+  static void appendField(StringBuilder sb, String name, String value) {
+    if (value != null) {
+      sb.append(",\"").append(name).append("\":");
+      appendString(sb, value);
+    }
+  }
+
+  static void appendField(StringBuilder sb, String name, long value) {
+    sb.append(",\"").append(name).append("\":").append(value);
+  }
+
+  public void appendJson(StringBuilder sb) {
+    sb.append("{\"timestamp\":\"");
+    DateTimeFormatter.ISO_INSTANT.formatTo(Instant.ofEpochMilli(timestamp), sb);
+    sb.append('"');
+
+    appendField(sb, "request_id", requestId);
+    appendField(sb, "remote_addr", remoteAddr);
+    appendField(sb, "method", method);
+    appendField(sb, "path", path);
+    appendField(sb, "storage_area", storageArea);
+    appendField(sb, "principal", principal);
+    appendField(sb, "status", status);
+    appendField(sb, "bytes_in", bytesIn);
+    appendField(sb, "bytes_out", bytesOut);
+    appendField(sb, "duration_usec", durationUsec);
+
+    if (tpcMode != null) {
+      appendField(sb, "tpc_mode", tpcMode);
+      appendField(sb, "tpc_remote", tpcRemote);
+      if (tpcBytes >= 0) {
+        appendField(sb, "tpc_bytes", tpcBytes);
+      }
+    }
+
+    sb.append('}');
+  }
+}
@@ -0,0 +1,214 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare, 2018.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.italiangrid.storm.webdav.server.servlet;
+
+import static com.codahale.metrics.MetricRegistry.name;
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static java.util.Objects.isNull;
+import static org.italiangrid.storm.webdav.server.servlet.RequestCompletion.runOnCompletion;
+
+import java.io.IOException;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.italiangrid.storm.webdav.config.ServiceConfigurationProperties.AdmissionControlProperties;
+import org.italiangrid.storm.webdav.config.StorageAreaConfiguration;
+import org.italiangrid.storm.webdav.config.StorageAreaInfo;
+import org.italiangrid.storm.webdav.server.ResolvedResource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+
+/**
+ * Per storage area admission control. Each storage area has its own concurrency limit, optionally
+ * narrowed for specific methods, so that a slow filesystem or a flood of batch requests only
+ * affects the storage area it targets. Requests exceeding a limit are queued up to a deadline;
+ * when the queue is full or the deadline expires, the request is rejected with a 503 and a
+ * Retry-After header.
+ */
+public class AdmissionControlFilter implements Filter {
+
+  public static final Logger LOG = LoggerFactory.getLogger(AdmissionControlFilter.class);
+
+  public static final String RETRY_AFTER_HEADER = "Retry-After";
+
+  private final int maxQueuedRequests;
+  private final long maxQueueWaitNanos;
+  private final String retryAfter;
+
+  private final Map<String, StorageAreaLimiter> limiters = new ConcurrentHashMap<>();
+
+  private static class StorageAreaLimiter {
+
+    final Semaphore permits;
+    final Map<String, Semaphore> methodPermits = new ConcurrentHashMap<>();
+    final AtomicInteger queued = new AtomicInteger();
+    final Timer wait;
+    final Meter rejected;
+
+    StorageAreaLimiter(String saName, int maxConcurrentRequests, Map<String, Integer> methodLimits,
+        MetricRegistry registry) {
+
+      permits = new Semaphore(maxConcurrentRequests, true);
+      wait = registry.timer(metricName(saName, "wait"));
+      rejected = registry.meter(metricName(saName, "rejected"));
+
+      registry.register(metricName(saName, "in-flight"),
+          (Gauge<Integer>) () -> maxConcurrentRequests - permits.availablePermits());
+      registry.register(metricName(saName, "queued"), (Gauge<Integer>) queued::get);
+
+      methodLimits.forEach((method, limit) -> {
+        final Semaphore s = new Semaphore(limit, true);
+        methodPermits.put(method, s);
+        registry.register(metricName(saName, "methods", method, "in-flight"),
+            (Gauge<Integer>) () -> limit - s.availablePermits());
+      });
+    }
+  }
+
+  public AdmissionControlFilter(StorageAreaConfiguration saConfig, int maxConcurrentRequests,
+      AdmissionControlProperties props, MetricRegistry registry) {
+    checkNotNull(saConfig);
+    checkNotNull(props);
+    checkNotNull(registry);
+    checkArgument(maxConcurrentRequests > 0, "maxConcurrentRequests must be > 0");
+    checkArgument(props.getMaxQueuedRequestsPerSa() >= 0, "maxQueuedRequestsPerSa must be >= 0");
+    checkArgument(props.getMaxQueueWaitMsec() > 0, "maxQueueWaitMsec must be > 0");
+
+    this.maxQueuedRequests = props.getMaxQueuedRequestsPerSa();
+    this.maxQueueWaitNanos = TimeUnit.MILLISECONDS.toNanos(props.getMaxQueueWaitMsec());
+    this.retryAfter = String.valueOf(props.getRetryAfterSecs());
+
+    Map<String, Integer> methodLimits = new ConcurrentHashMap<>();
+    props.getMethodLimits().forEach((method, limit) -> {
+      checkArgument(limit > 0, "Invalid limit for method %s: %s", method, limit);
+      methodLimits.put(method.toUpperCase(Locale.ROOT), Math.min(limit, maxConcurrentRequests));
+    });
+
+    for (StorageAreaInfo sa : saConfig.getStorageAreaInfo()) {
+      limiters.put(sa.name(),
+          new StorageAreaLimiter(sa.name(), maxConcurrentRequests, methodLimits, registry));
+    }
+  }
+
+  public static String metricName(String saName, String... names) {
+    return name(name(AdmissionControlFilter.class, "storage-areas", saName), names);
+  }
+
+  private boolean acquire(StorageAreaLimiter limiter, Semaphore s, long deadline)
+      throws InterruptedException {
+
+    if (s.tryAcquire()) {
+      return true;
+    }
+
+    if (limiter.queued.incrementAndGet() > maxQueuedRequests) {
+      limiter.queued.decrementAndGet();
+      return false;
+    }
+
+    try {
+      return s.tryAcquire(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+    } finally {
+      limiter.queued.decrementAndGet();
+    }
+  }
+
+  private void reject(StorageAreaLimiter limiter, StorageAreaInfo sa, HttpServletRequest request,
+      HttpServletResponse response) throws IOException {
+    limiter.rejected.mark();
+    LOG.debug("Rejecting {} {}: storage area {} is overloaded", request.getMethod(),
+        request.getRequestURI(), sa.name());
+    response.setHeader(RETRY_AFTER_HEADER, retryAfter);
+    response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+  }
+
+  @Override
+  public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain)
+      throws IOException, ServletException {
+
+    ResolvedResource rr = ResolvedResource.fromRequest(request);
+    StorageAreaInfo sa = isNull(rr) ? null : rr.getStorageArea();
+    StorageAreaLimiter limiter = isNull(sa) ? null : limiters.get(sa.name());
+
+    if (isNull(limiter)) {
+      chain.doFilter(request, response);
+      return;
+    }
+
+    HttpServletRequest req = (HttpServletRequest) request;
+    HttpServletResponse res = (HttpServletResponse) response;
+
+    final Semaphore methodPermits = limiter.methodPermits.get(req.getMethod());
+    final long deadline = System.nanoTime() + maxQueueWaitNanos;
+    final Timer.Context waitContext = limiter.wait.time();
+
+    boolean methodAdmitted = false;
+    boolean admitted = false;
+
+    try {
+      // Acquire the method permit first, so that a flood of requests for a limited method
+      // does not hold storage area permits while waiting
+      methodAdmitted = isNull(methodPermits) || acquire(limiter, methodPermits, deadline);
+      admitted = methodAdmitted && acquire(limiter, limiter.permits, deadline);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } finally {
+      waitContext.stop();
+    }
+
+    if (!admitted) {
+      if (methodAdmitted && !isNull(methodPermits)) {
+        methodPermits.release();
+      }
+      reject(limiter, sa, req, res);
+      return;
+    }
+
+    try {
+      chain.doFilter(request, response);
+    } catch (Throwable t) {
+      release(limiter, methodPermits);
+      throw t;
+    }
+
+    runOnCompletion(request, () -> release(limiter, methodPermits));
+  }
+
+  private static void release(StorageAreaLimiter limiter, Semaphore methodPermits) {
+    limiter.permits.release();
+    if (!isNull(methodPermits)) {
+      methodPermits.release();
+    }
+  }
+}
@@ -0,0 +1,189 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare, 2018.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.italiangrid.storm.webdav.server.servlet;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Adler32;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.ReadListener;
+import javax.servlet.ServletInputStream;
+import javax.servlet.http.HttpServletResponse;
+
+import org.italiangrid.storm.webdav.checksum.Adler32ChecksumInputStream;
+import org.italiangrid.storm.webdav.config.ServiceConfigurationProperties.ChecksumStrategy;
+import org.italiangrid.storm.webdav.fs.attrs.ExtendedAttributesHelper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.codahale.metrics.Timer;
+
+/**
+ * Receives a request body with non-blocking servlet I/O and writes it to a {@link FileChannel}.
+ * Data is only read (and written to disk) when it is available on the connection, so no thread is
+ * held while waiting on a slow client.
+ */
+public class AsyncFileReceiver implements ReadListener {
+
+  public static final Logger LOG = LoggerFactory.getLogger(AsyncFileReceiver.class);
+
+  private final AsyncContext context;
+  private final ServletInputStream in;
+  private final FileChannel channel;
+  private final Path target;
+  private final boolean created;
+  private final long expectedLength;
+  private final ChecksumStrategy checksumStrategy;
+  private final ExtendedAttributesHelper attrsHelper;
+  private final byte[] buffer;
+  private final Adler32 checksum = new Adler32();
+  private final Timer timer;
+  private final long startTime;
+
+  private long received = 0;
+  private boolean done = false;
+
+  AsyncFileReceiver(AsyncContext context, ServletInputStream in, FileChannel channel, Path target,
+      boolean created, long expectedLength, ChecksumStrategy checksumStrategy,
+      ExtendedAttributesHelper attrsHelper, int bufferSize, Timer timer, long startTime) {
+    this.context = context;
+    this.in = in;
+    this.channel = channel;
+    this.target = target;
+    this.created = created;
+    this.expectedLength = expectedLength;
+    this.checksumStrategy = checksumStrategy;
+    this.attrsHelper = attrsHelper;
+    this.buffer = new byte[bufferSize];
+    this.timer = timer;
+    this.startTime = startTime;
+  }
+
+  @Override
+  public void onDataAvailable() throws IOException {
+    while (in.isReady()) {
+      int n = in.read(buffer);
+
+      if (n < 0) {
+        return;
+      }
+
+      if (n > 0) {
+        write(n);
+      }
+    }
+  }
+
+  private void write(int n) throws IOException {
+    if (received + n > expectedLength) {
+      throw new IOException("Request body exceeds declared content length");
+    }
+
+    ByteBuffer bb = ByteBuffer.wrap(buffer, 0, n);
+
+    while (bb.hasRemaining()) {
+      channel.write(bb);
+    }
+
+    if (created || ChecksumStrategy.EARLY.equals(checksumStrategy)) {
+      checksum.update(buffer, 0, n);
+    }
+
+    received += n;
+  }
+
+  @Override
+  public void onAllDataRead() throws IOException {
+    if (received != expectedLength) {
+      fail(HttpServletResponse.SC_BAD_REQUEST,
+          String.format("Incomplete request body: %d of %d bytes", received, expectedLength));
+      return;
+    }
+
+    try {
+      channel.close();
+      storeChecksum();
+    } catch (IOException e) {
+      LOG.error("Error finalizing {}: {}", target, e.getMessage());
+      fail(HttpServletResponse.SC_INTERNAL_SERVER_ERROR, e.getMessage());
+      return;
+    }
+
+    HttpServletResponse response = (HttpServletResponse) context.getResponse();
+    response.setStatus(created ? HttpServletResponse.SC_CREATED
+        : HttpServletResponse.SC_NO_CONTENT);
+    complete();
+  }
+
+  @Override
+  public void onError(Throwable t) {
+    LOG.debug("Error receiving {}: {}", target, t.getMessage());
+    fail(HttpServletResponse.SC_INTERNAL_SERVER_ERROR, t.getMessage());
+  }
+
+  private void storeChecksum() throws IOException {
+    // New files always get a checksum, as in FilesystemAccess.create
+    if (created || ChecksumStrategy.EARLY.equals(checksumStrategy)) {
+      attrsHelper.setChecksumAttribute(target, Long.toHexString(checksum.getValue()));
+    } else if (ChecksumStrategy.LATE.equals(checksumStrategy)) {
+      try (Adler32ChecksumInputStream cis =
+          new Adler32ChecksumInputStream(Files.newInputStream(target))) {
+        while (cis.read(buffer) != -1) {
+          // do nothing, just read
+        }
+        attrsHelper.setChecksumAttribute(target, cis.getChecksumValue());
+      }
+    }
+  }
+
+  private void fail(int status, String message) {
+    try {
+      channel.close();
+      if (created) {
+        Files.deleteIfExists(target);
+      }
+    } catch (IOException e) {
+      LOG.warn("Error cleaning up {}: {}", target, e.getMessage());
+    }
+
+    HttpServletResponse response = (HttpServletResponse) context.getResponse();
+
+    if (!response.isCommitted()) {
+      try {
+        response.sendError(status, message);
+      } catch (IOException | IllegalStateException e) {
+        LOG.debug("Error sending error response: {}", e.getMessage());
+      }
+    }
+
+    complete();
+  }
+
+  private synchronized void complete() {
+    if (!done) {
+      done = true;
+      if (timer != null) {
+        timer.update(System.nanoTime() - startTime, TimeUnit.NANOSECONDS);
+      }
+      context.complete();
+    }
+  }
+}
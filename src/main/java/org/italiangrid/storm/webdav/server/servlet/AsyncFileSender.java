@@ -0,0 +1,140 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare, 2018.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.italiangrid.storm.webdav.server.servlet;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static java.util.Objects.isNull;
+import static org.italiangrid.storm.webdav.fs.SyscallTimers.Syscall.OPEN;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.italiangrid.storm.webdav.fs.SyscallTimers;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Streams a file to the client with non-blocking servlet I/O. File content is read from a
+ * {@link FileChannel} only when the output stream can accept more data, so no thread is held
+ * while waiting on a slow client.
+ */
+public class AsyncFileSender implements WriteListener {
+
+  public static final Logger LOG = LoggerFactory.getLogger(AsyncFileSender.class);
+
+  private final AsyncContext context;
+  private final ServletOutputStream out;
+  private final FileChannel channel;
+  private final ByteBuffer buffer;
+
+  private long remaining;
+  private boolean done = false;
+
+  AsyncFileSender(AsyncContext context, ServletOutputStream out, FileChannel channel,
+      long length, int bufferSize) {
+    this.context = context;
+    this.out = out;
+    this.channel = channel;
+    this.remaining = length;
+    this.buffer = ByteBuffer.allocate(bufferSize);
+  }
+
+  public static void send(HttpServletRequest request, HttpServletResponse response, Path file,
+      long length, int bufferSize) throws IOException {
+    send(request, response, file, length, bufferSize, null);
+  }
+
+  public static void send(HttpServletRequest request, HttpServletResponse response, Path file,
+      long length, int bufferSize, SyscallTimers syscallTimers) throws IOException {
+    checkNotNull(file);
+    checkArgument(length >= 0, "length must be >= 0");
+    checkArgument(bufferSize > 0, "bufferSize must be > 0");
+
+    FileChannel channel;
+    final long start = System.nanoTime();
+    try {
+      channel = FileChannel.open(file, StandardOpenOption.READ);
+    } finally {
+      if (!isNull(syscallTimers)) {
+        syscallTimers.record(OPEN, start);
+      }
+    }
+
+    try {
+      ServletOutputStream out = response.getOutputStream();
+      AsyncContext context = request.startAsync();
+      context.setTimeout(0);
+      out.setWriteListener(new AsyncFileSender(context, out, channel, length, bufferSize));
+    } catch (IOException | RuntimeException e) {
+      channel.close();
+      throw e;
+    }
+  }
+
+  @Override
+  public void onWritePossible() throws IOException {
+    while (out.isReady()) {
+      if (remaining == 0) {
+        complete();
+        return;
+      }
+
+      buffer.clear();
+      buffer.limit((int) Math.min(buffer.capacity(), remaining));
+
+      if (channel.read(buffer) < 0) {
+        throw new EOFException(String.format("File truncated with %d bytes left to send",
+            remaining));
+      }
+
+      remaining -= buffer.position();
+      out.write(buffer.array(), 0, buffer.position());
+    }
+  }
+
+  @Override
+  public void onError(Throwable t) {
+    LOG.debug("Error sending file: {}", t.getMessage());
+    complete();
+  }
+
+  private synchronized void complete() {
+    if (done) {
+      return;
+    }
+
+    done = true;
+
+    try {
+      channel.close();
+    } catch (IOException e) {
+      LOG.warn("Error closing file channel: {}", e.getMessage());
+    }
+
+    context.complete();
+  }
+}
@@ -0,0 +1,151 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare, 2018.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.italiangrid.storm.webdav.server.servlet;
+
+import static com.codahale.metrics.MetricRegistry.name;
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static java.util.Objects.isNull;
+import static org.italiangrid.storm.webdav.fs.SyscallTimers.Syscall.OPEN;
+import static org.italiangrid.storm.webdav.metrics.BucketedMetricRegistry.hdrTimer;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.DispatcherType;
+import javax.servlet.ServletInputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.italiangrid.storm.webdav.config.ServiceConfigurationProperties.ChecksumStrategy;
+import org.italiangrid.storm.webdav.fs.FilesystemAccess;
+import org.italiangrid.storm.webdav.fs.SyscallTimers;
+import org.italiangrid.storm.webdav.fs.attrs.ExtendedAttributesHelper;
+import org.italiangrid.storm.webdav.server.ResolvedResource;
+
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+
+/**
+ * Handles plain PUT requests with non-blocking servlet I/O. Only unconditional, full-content
+ * uploads of a file whose parent directory exists are handled here; everything else (partial
+ * PUTs, lock tokens, conditional requests, chunked bodies) is left to Milton.
+ *
+ * Uploads are timed like the Milton path: new files by the {@link FilesystemAccess} create timer,
+ * replaced files by the checksum strategy timer.
+ */
+public class AsyncPutHandler {
+
+  static final String[] UNSUPPORTED_HEADERS = {"Content-Range", "If", "If-Match", "If-None-Match",
+      "If-Modified-Since", "If-Unmodified-Since", "Lock-Token"};
+
+  private final ExtendedAttributesHelper attrsHelper;
+  private final ChecksumStrategy checksumStrategy;
+  private final int bufferSize;
+  private final SyscallTimers syscallTimers;
+  private final Timer createTimer;
+  private final Timer replaceTimer;
+
+  public AsyncPutHandler(ExtendedAttributesHelper attrsHelper, ChecksumStrategy checksumStrategy,
+      int bufferSize) {
+    this(attrsHelper, checksumStrategy, bufferSize, null);
+  }
+
+  public AsyncPutHandler(ExtendedAttributesHelper attrsHelper, ChecksumStrategy checksumStrategy,
+      int bufferSize, SyscallTimers syscallTimers) {
+    this(attrsHelper, checksumStrategy, bufferSize, syscallTimers, null);
+  }
+
+  public AsyncPutHandler(ExtendedAttributesHelper attrsHelper, ChecksumStrategy checksumStrategy,
+      int bufferSize, SyscallTimers syscallTimers, MetricRegistry registry) {
+    checkNotNull(attrsHelper);
+    checkNotNull(checksumStrategy);
+    checkArgument(bufferSize > 0, "bufferSize must be > 0");
+    this.attrsHelper = attrsHelper;
+    this.checksumStrategy = checksumStrategy;
+    this.bufferSize = bufferSize;
+    this.syscallTimers = syscallTimers;
+
+    if (isNull(registry)) {
+      createTimer = null;
+      replaceTimer = null;
+    } else {
+      createTimer = hdrTimer(registry, name(FilesystemAccess.class, "create"));
+      replaceTimer = hdrTimer(registry, name("storm.checksum-strategy"));
+    }
+  }
+
+  public boolean canHandle(HttpServletRequest request) {
+    if (!"PUT".equals(request.getMethod()) || !request.isAsyncSupported()
+        || !DispatcherType.REQUEST.equals(request.getDispatcherType())
+        || request.getContentLengthLong() < 0) {
+      return false;
+    }
+
+    for (String h : UNSUPPORTED_HEADERS) {
+      if (!isNull(request.getHeader(h))) {
+        return false;
+      }
+    }
+
+    ResolvedResource resource = ResolvedResource.fromRequest(request);
+
+    if (isNull(resource) || isNull(resource.getResolvedPath())) {
+      return false;
+    }
+
+    Path parent = resource.getResolvedPath().getParent();
+
+    return !resource.isDirectory() && !isNull(parent) && Files.isDirectory(parent);
+  }
+
+  public void handle(HttpServletRequest request, HttpServletResponse response)
+      throws IOException {
+
+    ResolvedResource resource = ResolvedResource.fromRequest(request);
+    Path target = resource.getResolvedPath();
+    boolean created = !resource.exists();
+
+    FileChannel channel;
+    final long start = System.nanoTime();
+    try {
+      channel = FileChannel.open(target, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+          StandardOpenOption.TRUNCATE_EXISTING);
+    } finally {
+      if (!isNull(syscallTimers)) {
+        syscallTimers.record(OPEN, start);
+      }
+    }
+
+    resource.invalidate();
+
+    try {
+      ServletInputStream in = request.getInputStream();
+      AsyncContext context = request.startAsync();
+      context.setTimeout(0);
+      in.setReadListener(new AsyncFileReceiver(context, in, channel, target, created,
+          request.getContentLengthLong(), checksumStrategy, attrsHelper, bufferSize,
+          created ? createTimer : replaceTimer, start));
+    } catch (IOException | RuntimeException e) {
+      channel.close();
+      throw e;
+    }
+  }
+}
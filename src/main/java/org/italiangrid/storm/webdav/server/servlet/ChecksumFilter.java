@@ -16,9 +16,7 @@
 package org.italiangrid.storm.webdav.server.servlet;
 
 import static com.google.common.base.Strings.isNullOrEmpty;
-import static java.lang.String.format;
 
-import java.io.File;
 import java.io.IOException;
 
 import javax.servlet.Filter;
@@ -32,6 +30,7 @@ import javax.servlet.http.HttpServletResponse;
 
 import org.italiangrid.storm.webdav.fs.attrs.ExtendedAttributesHelper;
 import org.italiangrid.storm.webdav.server.PathResolver;
+import org.italiangrid.storm.webdav.server.ResolvedResource;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -87,25 +86,21 @@ public class ChecksumFilter implements Filter {
     }
     
     logger.debug("Retrieving checksum value ...");
-    String requestPath = format("%s%s", request.getServletPath(), request.getPathInfo());
+    ResolvedResource resource = ResolvedResource.forRequest(request, resolver);
 
-    String pathResolved = resolver.resolvePath(requestPath);
-      
-    if (pathResolved == null) {
-      logger.debug("Unable to resolve path {} to a local file", requestPath);
+    if (resource.getResolvedPath() == null) {
+      logger.debug("Unable to resolve path {} to a local file", resource.getPathInContext());
       return;
     }
 
-    File f = new File(pathResolved);
-    
-    if (!f.exists()) {
-      logger.debug("File {} doesn't exist", f);
+    if (!resource.exists()) {
+      logger.debug("File {} doesn't exist", resource.getResolvedPath());
       return;
       
     }
 
-    if (f.isDirectory()) {
-      logger.debug("{} is a directory: no checksum value to retrieve", f);
+    if (resource.isDirectory()) {
+      logger.debug("{} is a directory: no checksum value to retrieve", resource.getResolvedPath());
       return;
     }
     
@@ -113,12 +108,12 @@ public class ChecksumFilter implements Filter {
 
     try {
 
-      checksumValue = attributeHelper.getChecksumAttribute(f);
+      checksumValue = resource.getChecksumAttribute(attributeHelper);
 
     } catch (IOException e) {
 
       logger.error("Error retrieving checksum value for path '{}': {}",
-          pathResolved,e.getMessage());
+          resource.getResolvedPath(),e.getMessage());
       
       if (logger.isDebugEnabled()) {
         logger.error(e.getMessage(), e);
@@ -127,7 +122,7 @@ public class ChecksumFilter implements Filter {
     }
 
     if (isNullOrEmpty(checksumValue)) {
-      logger.warn("Null or empty checksum value for path: {}", pathResolved);
+      logger.warn("Null or empty checksum value for path: {}", resource.getResolvedPath());
       return;
     }
 
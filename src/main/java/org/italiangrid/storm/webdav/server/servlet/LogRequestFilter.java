@@ -15,8 +15,13 @@
  */
 package org.italiangrid.storm.webdav.server.servlet;
 
+import static java.util.Objects.isNull;
+import static org.italiangrid.storm.webdav.server.servlet.RequestCompletion.runOnCompletion;
+import static org.italiangrid.storm.webdav.server.servlet.RequestMetricsFilter.bytesIn;
+import static org.italiangrid.storm.webdav.server.servlet.RequestMetricsFilter.bytesOut;
+
 import java.io.IOException;
-import java.util.Optional;
+import java.util.concurrent.TimeUnit;
 
 import javax.servlet.Filter;
 import javax.servlet.FilterChain;
@@ -27,6 +32,14 @@ import javax.servlet.ServletResponse;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
+import org.italiangrid.storm.webdav.config.StorageAreaInfo;
+import org.italiangrid.storm.webdav.server.ResolvedResource;
+import org.italiangrid.storm.webdav.server.logging.RequestLog;
+import org.italiangrid.storm.webdav.server.logging.RequestLogEvent;
+import org.italiangrid.storm.webdav.server.tracing.RequestIdFilter;
+import org.italiangrid.storm.webdav.tpc.TransferFilter;
+import org.italiangrid.storm.webdav.tpc.transfer.GetTransferRequest;
+import org.italiangrid.storm.webdav.tpc.transfer.TransferRequest;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.security.core.Authentication;
@@ -37,31 +50,102 @@ public class LogRequestFilter implements Filter {
 
   public static final Logger log = LoggerFactory.getLogger(LogRequestFilter.class);
 
+  private final RequestLog requestLog;
+
+  public LogRequestFilter() {
+    this(null);
+  }
+
+  /**
+   * @param requestLog the structured request log events are published to, or null
+   */
+  public LogRequestFilter(RequestLog requestLog) {
+    this.requestLog = requestLog;
+  }
+
   @Override
   public void destroy() {}
 
+  private static Authentication currentAuthentication() {
+    SecurityContext ctxt = SecurityContextHolder.getContext();
+    return isNull(ctxt) ? null : ctxt.getAuthentication();
+  }
+
   @Override
   public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain)
       throws IOException, ServletException {
 
-    chain.doFilter(request, response);
+    if (!log.isDebugEnabled() && (isNull(requestLog) || !requestLog.isEnabled())) {
+      chain.doFilter(request, response);
+      return;
+    }
+
+    final HttpServletRequest req = (HttpServletRequest) request;
+    final HttpServletResponse res = (HttpServletResponse) response;
+    final long startTime = System.nanoTime();
+
+    // The security context is not available on the thread completing an async request
+    final Authentication authn = currentAuthentication();
 
-    Optional<SecurityContext> ctxt = Optional.ofNullable(SecurityContextHolder.getContext());
-    Optional<Authentication> authn = Optional.empty();
+    try {
+      chain.doFilter(request, response);
+    } catch (Throwable t) {
+      // The container turns the exception into a server error, after this filter has returned
+      logRequest(req, res, authn, startTime, HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+      throw t;
+    }
+
+    runOnCompletion(request, () -> logRequest(req, res, authn, startTime));
+  }
+
+  void logRequest(HttpServletRequest req, HttpServletResponse res, Authentication authn,
+      long startTime) {
+    logRequest(req, res, authn, startTime, res.getStatus());
+  }
+
+  void logRequest(HttpServletRequest req, HttpServletResponse res, Authentication authn,
+      long startTime, int status) {
 
-    if (ctxt.isPresent()) {
-      authn = Optional.ofNullable(ctxt.get().getAuthentication());
+    if (log.isDebugEnabled()) {
+      log.debug("{} {} {} {} [user:<{}>, authorities:<{}>]", req.getRemoteAddr(),
+          req.getMethod(), req.getRequestURI(), status,
+          isNull(authn) ? null : authn.getName(), isNull(authn) ? null : authn.getAuthorities());
     }
 
-    HttpServletRequest req = (HttpServletRequest) request;
-    HttpServletResponse res = (HttpServletResponse) response;
+    RequestLogEvent event = isNull(requestLog) ? null : requestLog.claim();
 
-    String resMsg = String.format("%s %s %s %d [user:<%s>, authorities:<%s>]", req.getRemoteAddr(),
-        req.getMethod(), req.getRequestURI(), res.getStatus(),
-        authn.isPresent() ? authn.get().getName() : null,
-        authn.isPresent() ? authn.get().getAuthorities() : null);
+    if (isNull(event)) {
+      return;
+    }
+
+    try {
+      ResolvedResource rr = ResolvedResource.fromRequest(req);
+      StorageAreaInfo sa = isNull(rr) ? null : rr.getStorageArea();
+
+      event.timestamp(System.currentTimeMillis())
+        .durationUsec(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - startTime))
+        .requestId((String) req.getAttribute(RequestIdFilter.REQUEST_ID_ATTRIBUTE_NAME))
+        .remoteAddr(req.getRemoteAddr())
+        .method(req.getMethod())
+        .path(req.getRequestURI())
+        .storageArea(isNull(sa) ? null : sa.name())
+        .principal(isNull(authn) ? null : authn.getName())
+        .status(status)
+        .bytes(bytesIn(req), bytesOut(req, res));
 
-    log.debug(resMsg);
+      TransferRequest xfer =
+          (TransferRequest) req.getAttribute(TransferFilter.TRANSFER_REQUEST_ATTRIBUTE_NAME);
+
+      if (!isNull(xfer)) {
+        event.tpc(xfer instanceof GetTransferRequest ? "pull" : "push",
+            xfer.remoteURI().toString(),
+            xfer.lastTransferStatus().isPresent()
+                ? xfer.lastTransferStatus().get().getTransferByteCount()
+                : -1);
+      }
+    } finally {
+      requestLog.publish(event);
+    }
   }
 
   @Override
@@ -30,12 +30,14 @@ import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
 import org.italiangrid.storm.webdav.fs.FilesystemAccess;
+import org.italiangrid.storm.webdav.fs.SyscallTimers;
 import org.italiangrid.storm.webdav.fs.attrs.ExtendedAttributesHelper;
 import org.italiangrid.storm.webdav.milton.StoRMHTTPManagerBuilder;
 import org.italiangrid.storm.webdav.milton.StoRMMiltonRequest;
 import org.italiangrid.storm.webdav.milton.StoRMResourceFactory;
 import org.italiangrid.storm.webdav.milton.util.ReplaceContentStrategy;
 import org.italiangrid.storm.webdav.server.PathResolver;
+import org.italiangrid.storm.webdav.server.tracing.Span;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -70,14 +72,26 @@ public class MiltonFilter implements Filter {
 
   private final ReplaceContentStrategy rcs;
 
+  private final AsyncPutHandler asyncPutHandler;
+
+  private final SyscallTimers syscallTimers;
+
   @Autowired
   public MiltonFilter(FilesystemAccess fsAccess, ExtendedAttributesHelper attrsHelper,
       PathResolver resolver, ReplaceContentStrategy rcs) {
+    this(fsAccess, attrsHelper, resolver, rcs, null, null);
+  }
+
+  public MiltonFilter(FilesystemAccess fsAccess, ExtendedAttributesHelper attrsHelper,
+      PathResolver resolver, ReplaceContentStrategy rcs, AsyncPutHandler asyncPutHandler,
+      SyscallTimers syscallTimers) {
 
     this.filesystemAccess = fsAccess;
     this.attrsHelper = attrsHelper;
     this.resolver = resolver;
     this.rcs = rcs;
+    this.asyncPutHandler = asyncPutHandler;
+    this.syscallTimers = syscallTimers;
   }
 
   private void initMiltonHTTPManager(ServletContext context) {
@@ -85,7 +99,7 @@ public class MiltonFilter implements Filter {
     final StoRMHTTPManagerBuilder builder = new StoRMHTTPManagerBuilder();
 
     final StoRMResourceFactory resourceFactory =
-        new StoRMResourceFactory(filesystemAccess, attrsHelper, resolver, rcs);
+        new StoRMResourceFactory(filesystemAccess, attrsHelper, resolver, rcs, syscallTimers);
 
     builder.setResourceFactory(resourceFactory);
 
@@ -110,7 +124,9 @@ public class MiltonFilter implements Filter {
   public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain)
       throws IOException, ServletException {
 
-    if (isWebDAVMethod(request)) {
+    if (asyncPutHandler != null && asyncPutHandler.canHandle((HttpServletRequest) request)) {
+      asyncPutHandler.handle((HttpServletRequest) request, (HttpServletResponse) response);
+    } else if (isWebDAVMethod(request)) {
       doMilton((HttpServletRequest) request, (HttpServletResponse) response);
     } else
       chain.doFilter(request, response);
@@ -128,7 +144,10 @@ public class MiltonFilter implements Filter {
       Request miltonReq = new StoRMMiltonRequest(request, servletContext);
 
       Response miltonRes = new io.milton.servlet.ServletResponse(response);
-      miltonHTTPManager.process(miltonReq, miltonRes);
+
+      try (Span span = Span.start("milton")) {
+        miltonHTTPManager.process(miltonReq, miltonRes);
+      }
 
     } finally {
 
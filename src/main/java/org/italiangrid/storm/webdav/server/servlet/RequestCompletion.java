@@ -0,0 +1,91 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare, 2018.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.italiangrid.storm.webdav.server.servlet;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static java.util.Objects.isNull;
+
+import java.io.IOException;
+
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.ServletRequest;
+
+/**
+ * Runs the bookkeeping of a filter once a request has been processed: right away for a request
+ * served on the filter thread, or when the async context completes for a request that started
+ * async processing.
+ */
+public class RequestCompletion {
+
+  private RequestCompletion() {}
+
+  public static void runOnCompletion(ServletRequest request, Runnable action) {
+    runOnCompletion(request, action, null);
+  }
+
+  /**
+   * @param onAsyncFailure run when async processing times out or fails, before the action; may be
+   *        null
+   */
+  public static void runOnCompletion(ServletRequest request, Runnable action,
+      Runnable onAsyncFailure) {
+    checkNotNull(action);
+
+    if (request.isAsyncStarted()) {
+      request.getAsyncContext().addListener(new CompletionListener(action, onAsyncFailure));
+    } else {
+      action.run();
+    }
+  }
+
+  private static class CompletionListener implements AsyncListener {
+
+    final Runnable action;
+    final Runnable onAsyncFailure;
+
+    CompletionListener(Runnable action, Runnable onAsyncFailure) {
+      this.action = action;
+      this.onAsyncFailure = onAsyncFailure;
+    }
+
+    @Override
+    public void onComplete(AsyncEvent event) throws IOException {
+      action.run();
+    }
+
+    @Override
+    public void onTimeout(AsyncEvent event) throws IOException {
+      // onComplete is always called after a timeout
+      if (!isNull(onAsyncFailure)) {
+        onAsyncFailure.run();
+      }
+    }
+
+    @Override
+    public void onError(AsyncEvent event) throws IOException {
+      // onComplete is always called after an error
+      if (!isNull(onAsyncFailure)) {
+        onAsyncFailure.run();
+      }
+    }
+
+    @Override
+    public void onStartAsync(AsyncEvent event) throws IOException {
+      event.getAsyncContext().addListener(this);
+    }
+  }
+}
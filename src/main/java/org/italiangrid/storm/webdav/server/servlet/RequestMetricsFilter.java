@@ -0,0 +1,267 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare, 2018.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.italiangrid.storm.webdav.server.servlet;
+
+import static com.codahale.metrics.MetricRegistry.name;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static java.util.Objects.isNull;
+import static org.italiangrid.storm.webdav.metrics.BucketedMetricRegistry.hdrTimer;
+import static org.italiangrid.storm.webdav.server.servlet.RequestCompletion.runOnCompletion;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.eclipse.jetty.server.Request;
+import org.italiangrid.storm.webdav.config.StorageAreaConfiguration;
+import org.italiangrid.storm.webdav.config.StorageAreaInfo;
+import org.italiangrid.storm.webdav.server.ResolvedResource;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+
+/**
+ * Records request latency, bytes in/out and responses by status class for each storage area and
+ * method, and latency by response size class for each storage area.
+ * 
+ * Cardinality is bounded: storage areas come from the configuration, and methods other than the
+ * HTTP and WebDAV ones are accounted as <code>OTHER</code>. Metrics for a storage area and method
+ * are registered on first use; afterwards, recording a request served on the filter thread does
+ * not allocate. Latencies are kept in HDR histogram reservoirs, which do not allocate on update.
+ */
+public class RequestMetricsFilter implements Filter {
+
+  public static final String OTHER_METHOD = "OTHER";
+
+  static final String[] METHODS;
+  public static final List<String> MONITORED_METHODS;
+  static final Map<String, Integer> METHOD_INDEX = new HashMap<>();
+
+  static final String[] STATUS_CLASSES = {"1xx", "2xx", "3xx", "4xx", "5xx"};
+
+  static final long[] SIZE_CLASS_UPPER_BOUNDS =
+      {1024L * 1024, 100L * 1024 * 1024, 1024L * 1024 * 1024, Long.MAX_VALUE};
+  static final String[] SIZE_CLASSES = {"small", "medium", "large", "huge"};
+
+  static {
+    WebDAVMethod[] davMethods = WebDAVMethod.values();
+    String[] httpMethods = {"GET", "HEAD", "POST"};
+
+    METHODS = new String[davMethods.length + httpMethods.length + 1];
+
+    int i = 0;
+    for (String m : httpMethods) {
+      METHODS[i++] = m;
+    }
+
+    for (WebDAVMethod m : davMethods) {
+      METHODS[i++] = m.name();
+    }
+
+    METHODS[i] = OTHER_METHOD;
+
+    MONITORED_METHODS = Collections.unmodifiableList(Arrays.asList(METHODS));
+
+    for (int j = 0; j < METHODS.length; j++) {
+      METHOD_INDEX.put(METHODS[j], j);
+    }
+  }
+
+  private final MetricRegistry registry;
+  private final Map<String, StorageAreaMetrics> storageAreaMetrics = new HashMap<>();
+
+  static class MethodMetrics {
+
+    final Timer requests;
+    final Meter bytesIn;
+    final Meter bytesOut;
+    final Meter[] responses = new Meter[STATUS_CLASSES.length];
+
+    MethodMetrics(MetricRegistry registry, String saName, String method) {
+      requests = hdrTimer(registry, metricName(saName, "methods", method, "requests"));
+      bytesIn = registry.meter(metricName(saName, "methods", method, "bytes-in"));
+      bytesOut = registry.meter(metricName(saName, "methods", method, "bytes-out"));
+
+      for (int i = 0; i < STATUS_CLASSES.length; i++) {
+        responses[i] = registry
+          .meter(metricName(saName, "methods", method, "statuses", STATUS_CLASSES[i], "responses"));
+      }
+    }
+  }
+
+  class StorageAreaMetrics {
+
+    final String saName;
+    final AtomicReferenceArray<MethodMetrics> methods =
+        new AtomicReferenceArray<>(METHODS.length);
+    final Timer[] sizeClasses = new Timer[SIZE_CLASSES.length];
+
+    StorageAreaMetrics(String saName) {
+      this.saName = saName;
+
+      for (int i = 0; i < SIZE_CLASSES.length; i++) {
+        sizeClasses[i] =
+            hdrTimer(registry, metricName(saName, "size-classes", SIZE_CLASSES[i], "requests"));
+      }
+    }
+
+    MethodMetrics forMethod(int index) {
+      MethodMetrics m = methods.get(index);
+
+      if (isNull(m)) {
+        methods.compareAndSet(index, null, new MethodMetrics(registry, saName, METHODS[index]));
+        m = methods.get(index);
+      }
+
+      return m;
+    }
+  }
+
+  public RequestMetricsFilter(StorageAreaConfiguration saConfig, MetricRegistry registry) {
+    checkNotNull(saConfig);
+    checkNotNull(registry);
+    this.registry = registry;
+
+    for (StorageAreaInfo sa : saConfig.getStorageAreaInfo()) {
+      storageAreaMetrics.put(sa.name(), new StorageAreaMetrics(sa.name()));
+    }
+  }
+
+  public static String metricName(String saName, String... names) {
+    return name(name(RequestMetricsFilter.class, "storage-areas", saName), names);
+  }
+
+  static int methodIndex(String method) {
+    Integer index = isNull(method) ? null : METHOD_INDEX.get(method);
+    return isNull(index) ? METHODS.length - 1 : index;
+  }
+
+  static int statusClassIndex(int status) {
+    return Math.min(Math.max(status / 100, 1), STATUS_CLASSES.length) - 1;
+  }
+
+  static int sizeClassIndex(long bytes) {
+    int i = 0;
+    while (bytes >= SIZE_CLASS_UPPER_BOUNDS[i]) {
+      i++;
+    }
+    return i;
+  }
+
+  static long bytesIn(HttpServletRequest request) {
+    Request baseRequest = Request.getBaseRequest(request);
+
+    if (!isNull(baseRequest)) {
+      return baseRequest.getHttpInput().getContentConsumed();
+    }
+
+    return Math.max(0, request.getContentLengthLong());
+  }
+
+  static long bytesOut(HttpServletRequest request, HttpServletResponse response) {
+    Request baseRequest = Request.getBaseRequest(request);
+
+    if (!isNull(baseRequest)) {
+      return baseRequest.getHttpChannel().getBytesWritten();
+    }
+
+    String contentLength = response.getHeader("Content-Length");
+
+    if (isNull(contentLength)) {
+      return 0;
+    }
+
+    try {
+      return Long.parseLong(contentLength);
+    } catch (NumberFormatException e) {
+      return 0;
+    }
+  }
+
+  void record(StorageAreaMetrics saMetrics, MethodMetrics metrics, HttpServletRequest request,
+      HttpServletResponse response, long startTime) {
+    record(saMetrics, metrics, request, response, startTime, response.getStatus());
+  }
+
+  void record(StorageAreaMetrics saMetrics, MethodMetrics metrics, HttpServletRequest request,
+      HttpServletResponse response, long startTime, int status) {
+
+    final long elapsed = System.nanoTime() - startTime;
+    final long in = bytesIn(request);
+    final long out = bytesOut(request, response);
+
+    metrics.requests.update(elapsed, TimeUnit.NANOSECONDS);
+    metrics.responses[statusClassIndex(status)].mark();
+
+    if (in > 0) {
+      metrics.bytesIn.mark(in);
+    }
+
+    if (out > 0) {
+      metrics.bytesOut.mark(out);
+    }
+
+    saMetrics.sizeClasses[sizeClassIndex(Math.max(in, out))].update(elapsed,
+        TimeUnit.NANOSECONDS);
+  }
+
+  @Override
+  public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain)
+      throws IOException, ServletException {
+
+    ResolvedResource rr = ResolvedResource.fromRequest(request);
+    StorageAreaInfo sa = isNull(rr) ? null : rr.getStorageArea();
+    StorageAreaMetrics saMetrics = isNull(sa) ? null : storageAreaMetrics.get(sa.name());
+
+    if (isNull(saMetrics)) {
+      chain.doFilter(request, response);
+      return;
+    }
+
+    final HttpServletRequest req = (HttpServletRequest) request;
+    final HttpServletResponse res = (HttpServletResponse) response;
+    final MethodMetrics metrics = saMetrics.forMethod(methodIndex(req.getMethod()));
+    final long startTime = System.nanoTime();
+
+    try {
+      chain.doFilter(request, response);
+    } catch (Throwable t) {
+      // The container turns the exception into a server error, after this filter has returned
+      record(saMetrics, metrics, req, res, startTime, HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+      throw t;
+    }
+
+    if (request.isAsyncStarted()) {
+      runOnCompletion(request, () -> record(saMetrics, metrics, req, res, startTime));
+    } else {
+      record(saMetrics, metrics, req, res, startTime);
+    }
+  }
+}
@@ -0,0 +1,53 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare, 2018.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.italiangrid.storm.webdav.server.servlet;
+
+import java.io.IOException;
+
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+
+import org.italiangrid.storm.webdav.fs.SyscallTimers;
+import org.italiangrid.storm.webdav.server.PathResolver;
+import org.italiangrid.storm.webdav.server.ResolvedResource;
+
+public class ResolvedResourceFilter implements Filter {
+
+  private final PathResolver resolver;
+  private final SyscallTimers syscallTimers;
+
+  public ResolvedResourceFilter(PathResolver resolver) {
+    this(resolver, null);
+  }
+
+  public ResolvedResourceFilter(PathResolver resolver, SyscallTimers syscallTimers) {
+    this.resolver = resolver;
+    this.syscallTimers = syscallTimers;
+  }
+
+  @Override
+  public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain)
+      throws IOException, ServletException {
+
+    ResolvedResource.forRequest((HttpServletRequest) request, resolver, syscallTimers);
+    chain.doFilter(request, response);
+  }
+
+}
@@ -17,14 +17,19 @@ package org.italiangrid.storm.webdav.server.servlet;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.attribute.BasicFileAttributes;
 
+import javax.servlet.DispatcherType;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
+import org.eclipse.jetty.http.HttpHeader;
 import org.eclipse.jetty.servlet.DefaultServlet;
 import org.eclipse.jetty.util.resource.Resource;
+import org.italiangrid.storm.webdav.fs.SyscallTimers;
 import org.italiangrid.storm.webdav.server.PathResolver;
+import org.italiangrid.storm.webdav.server.ResolvedResource;
 
 public class StoRMServlet extends DefaultServlet {
 
@@ -33,18 +38,105 @@ public class StoRMServlet extends DefaultServlet {
    */
   private static final long serialVersionUID = 4204673943980786498L;
   
+  private static final ThreadLocal<ResolvedResource> CURRENT_RESOURCE = new ThreadLocal<>();
+
+  static final String[] ASYNC_GET_UNSUPPORTED_HEADERS = {"Range", "If-Range", "If-Match",
+      "If-None-Match", "If-Modified-Since", "If-Unmodified-Since"};
+
   final PathResolver pathResolver;
-  
+
+  final int asyncIoBufferSize;
+
+  final SyscallTimers syscallTimers;
+
   public StoRMServlet(PathResolver resolver) {
+    this(resolver, 0);
+  }
+
+  public StoRMServlet(PathResolver resolver, int asyncIoBufferSize) {
+    this(resolver, asyncIoBufferSize, null);
+  }
+
+  /**
+   * @param asyncIoBufferSize the buffer size used to send files with non-blocking I/O, or 0 to
+   *        always use the blocking {@link DefaultServlet} implementation
+   * @param syscallTimers the timers for the files opened with non-blocking I/O, or null
+   */
+  public StoRMServlet(PathResolver resolver, int asyncIoBufferSize, SyscallTimers syscallTimers) {
     pathResolver = resolver;
-    
+    this.asyncIoBufferSize = asyncIoBufferSize;
+    this.syscallTimers = syscallTimers;
   }
   
+  @Override
+  protected void service(HttpServletRequest req, HttpServletResponse resp)
+      throws ServletException, IOException {
+    // DefaultServlet.getResource does not see the request, so the resolved resource
+    // is handed over via a thread local
+    CURRENT_RESOURCE.set(ResolvedResource.fromRequest(req));
+    try {
+      super.service(req, resp);
+    } finally {
+      CURRENT_RESOURCE.remove();
+    }
+  }
+
+  private boolean canSendAsync(HttpServletRequest req, HttpServletResponse resp,
+      ResolvedResource resource) {
+
+    if (asyncIoBufferSize <= 0 || !"GET".equals(req.getMethod()) || !req.isAsyncSupported()
+        || !DispatcherType.REQUEST.equals(req.getDispatcherType()) || resource == null
+        || resource.getResolvedPath() == null || !resource.isRegularFile()) {
+      return false;
+    }
+
+    for (String h : ASYNC_GET_UNSUPPORTED_HEADERS) {
+      if (req.getHeader(h) != null) {
+        return false;
+      }
+    }
+
+    // Small files fit in the response buffer anyway
+    return resource.getAttributes().size() > resp.getBufferSize();
+  }
+
+  @Override
+  protected void doGet(HttpServletRequest req, HttpServletResponse resp)
+      throws ServletException, IOException {
+
+    ResolvedResource resource = CURRENT_RESOURCE.get();
+
+    if (!canSendAsync(req, resp, resource)) {
+      super.doGet(req, resp);
+      return;
+    }
+
+    BasicFileAttributes attrs = resource.getAttributes();
+    String contentType = getServletContext().getMimeType(resource.getFile().getName());
+
+    resp.setStatus(HttpServletResponse.SC_OK);
+    if (contentType != null) {
+      resp.setContentType(contentType);
+    }
+    resp.setContentLengthLong(attrs.size());
+    resp.setDateHeader(HttpHeader.LAST_MODIFIED.asString(), attrs.lastModifiedTime().toMillis());
+    resp.setHeader(HttpHeader.ACCEPT_RANGES.asString(), "bytes");
+
+    AsyncFileSender.send(req, resp, resource.getResolvedPath(), attrs.size(), asyncIoBufferSize,
+        syscallTimers);
+  }
 
   @Override
   public Resource getResource(String pathInContext) {
     
-    
+    ResolvedResource resource = CURRENT_RESOURCE.get();
+
+    if (resource != null && resource.matches(pathInContext)) {
+      if (!resource.exists()) {
+        return null;
+      }
+      return Resource.newResource(resource.getFile());
+    }
     
     String resolvedPath = pathResolver.resolvePath(pathInContext);
 
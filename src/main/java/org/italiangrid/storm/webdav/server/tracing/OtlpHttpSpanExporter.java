@@ -0,0 +1,248 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare, 2018.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.italiangrid.storm.webdav.server.tracing;
+
+import static com.codahale.metrics.MetricRegistry.name;
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.italiangrid.storm.webdav.server.logging.RequestLogEvent.appendString;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+
+/**
+ * Exports spans to an OpenTelemetry collector, using the OTLP/HTTP protocol with JSON encoding.
+ * 
+ * Ended spans are queued in a bounded queue, and a background thread periodically posts them in
+ * batches. Spans are dropped (and counted) when the queue is full or the collector cannot be
+ * reached: tracing must never slow down request processing.
+ */
+public class OtlpHttpSpanExporter implements SpanExporter {
+
+  public static final Logger LOG = LoggerFactory.getLogger(OtlpHttpSpanExporter.class);
+
+  public static final String SERVICE_NAME = "storm-webdav";
+  public static final String SCOPE_NAME = "org.italiangrid.storm.webdav";
+
+  static final int CONNECT_TIMEOUT_MSEC = 1000;
+  static final int READ_TIMEOUT_MSEC = 5000;
+
+  private final URL endpoint;
+  private final long exportIntervalMsec;
+  private final int maxBatchSize;
+  private final BlockingQueue<Span> queue;
+
+  private final Meter exported;
+  private final Meter dropped;
+
+  private ScheduledExecutorService executor;
+
+  public OtlpHttpSpanExporter(URL endpoint, long exportIntervalMsec, int maxQueuedSpans,
+      int maxBatchSize, MetricRegistry registry) {
+    checkNotNull(endpoint);
+    checkArgument(exportIntervalMsec > 0, "exportIntervalMsec must be > 0");
+    checkArgument(maxQueuedSpans > 0, "maxQueuedSpans must be > 0");
+    checkArgument(maxBatchSize > 0, "maxBatchSize must be > 0");
+    checkNotNull(registry);
+
+    this.endpoint = endpoint;
+    this.exportIntervalMsec = exportIntervalMsec;
+    this.maxBatchSize = maxBatchSize;
+    this.queue = new ArrayBlockingQueue<>(maxQueuedSpans);
+
+    exported = registry.meter(name(OtlpHttpSpanExporter.class, "exported"));
+    dropped = registry.meter(name(OtlpHttpSpanExporter.class, "dropped"));
+  }
+
+  @Override
+  public void export(Span span) {
+    if (!queue.offer(span)) {
+      dropped.mark();
+    }
+  }
+
+  static void appendAttribute(StringBuilder sb, String key, Object value) {
+    sb.append("{\"key\":");
+    appendString(sb, key);
+    sb.append(",\"value\":{");
+
+    if (value instanceof Long) {
+      // int64 values are encoded as strings in OTLP/JSON
+      sb.append("\"intValue\":\"").append(value).append('"');
+    } else {
+      sb.append("\"stringValue\":");
+      appendString(sb, String.valueOf(value));
+    }
+
+    sb.append("}}");
+  }
+
+  static void appendSpan(StringBuilder sb, Span span) {
+    sb.append("{\"traceId\":\"");
+    Span.appendHex(sb, span.getTraceIdHigh());
+    Span.appendHex(sb, span.getTraceIdLow());
+    sb.append("\",\"spanId\":\"");
+    Span.appendHex(sb, span.getSpanId());
+    sb.append('"');
+
+    if (span.getParentSpanId() != 0) {
+      sb.append(",\"parentSpanId\":\"");
+      Span.appendHex(sb, span.getParentSpanId());
+      sb.append('"');
+    }
+
+    sb.append(",\"name\":");
+    appendString(sb, span.getName());
+    sb.append(",\"kind\":").append(span.getKind().otlpValue());
+    sb.append(",\"startTimeUnixNano\":\"").append(span.getStartEpochNanos()).append('"');
+    sb.append(",\"endTimeUnixNano\":\"").append(span.getEndEpochNanos()).append('"');
+
+    List<Object> attributes = span.getAttributes();
+    sb.append(",\"attributes\":[");
+    for (int i = 0; i < attributes.size(); i += 2) {
+      if (i > 0) {
+        sb.append(',');
+      }
+      appendAttribute(sb, (String) attributes.get(i), attributes.get(i + 1));
+    }
+    sb.append(']');
+
+    if (span.isError()) {
+      // STATUS_CODE_ERROR
+      sb.append(",\"status\":{\"code\":2}");
+    }
+
+    sb.append('}');
+  }
+
+  public static String toJson(List<Span> spans) {
+    StringBuilder sb = new StringBuilder(256 * spans.size() + 256);
+
+    sb.append("{\"resourceSpans\":[{\"resource\":{\"attributes\":[");
+    appendAttribute(sb, "service.name", SERVICE_NAME);
+    sb.append("]},\"scopeSpans\":[{\"scope\":{\"name\":");
+    appendString(sb, SCOPE_NAME);
+    sb.append("},\"spans\":[");
+
+    for (int i = 0; i < spans.size(); i++) {
+      if (i > 0) {
+        sb.append(',');
+      }
+      appendSpan(sb, spans.get(i));
+    }
+
+    sb.append("]}]}]}");
+    return sb.toString();
+  }
+
+  void post(String body) throws IOException {
+    HttpURLConnection conn = (HttpURLConnection) endpoint.openConnection();
+
+    try {
+      conn.setRequestMethod("POST");
+      conn.setConnectTimeout(CONNECT_TIMEOUT_MSEC);
+      conn.setReadTimeout(READ_TIMEOUT_MSEC);
+      conn.setDoOutput(true);
+      conn.setRequestProperty("Content-Type", "application/json");
+
+      try (OutputStream os = conn.getOutputStream()) {
+        os.write(body.getBytes(UTF_8));
+      }
+
+      int status = conn.getResponseCode();
+
+      if (status / 100 != 2) {
+        throw new IOException("collector returned status " + status);
+      }
+    } finally {
+      conn.disconnect();
+    }
+  }
+
+  /**
+   * Exports all the queued spans.
+   */
+  void flush() {
+    List<Span> batch = new ArrayList<>(maxBatchSize);
+
+    while (queue.drainTo(batch, maxBatchSize) > 0) {
+      try {
+        post(toJson(batch));
+        exported.mark(batch.size());
+      } catch (IOException | RuntimeException e) {
+        dropped.mark(batch.size());
+        LOG.warn("Error exporting {} spans to {}: {}", batch.size(), endpoint, e.getMessage());
+        LOG.debug(e.getMessage(), e);
+      }
+      batch.clear();
+    }
+  }
+
+  public synchronized void start() {
+    if (executor != null) {
+      return;
+    }
+
+    executor = Executors.newSingleThreadScheduledExecutor(r -> {
+      Thread t = new Thread(r, "span-exporter");
+      t.setDaemon(true);
+      return t;
+    });
+
+    executor.scheduleWithFixedDelay(this::flush, exportIntervalMsec, exportIntervalMsec,
+        TimeUnit.MILLISECONDS);
+
+    LOG.info("Exporting trace spans to {} every {} msec", endpoint, exportIntervalMsec);
+  }
+
+  @Override
+  public void shutdown() {
+    stop();
+  }
+
+  public synchronized void stop() {
+    if (executor == null) {
+      return;
+    }
+
+    executor.shutdown();
+
+    try {
+      executor.awaitTermination(5, TimeUnit.SECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+
+    flush();
+    executor = null;
+  }
+}
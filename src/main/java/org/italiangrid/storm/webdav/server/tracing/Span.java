@@ -0,0 +1,276 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare, 2018.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.italiangrid.storm.webdav.server.tracing;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A timed operation within a traced request. The current span is tracked per thread, as the
+ * request id in {@link RequestIdHolder}, so instrumented code just opens a child span:
+ * 
+ * <pre>
+ * try (Span s = Span.start("authz")) {
+ *   ...
+ * }
+ * </pre>
+ * 
+ * or records one after the fact, from a start time taken with {@link System#nanoTime()}. When
+ * the request is not sampled, {@link #start(String)} returns a shared no-op span and nothing is
+ * allocated.
+ */
+public class Span implements AutoCloseable {
+
+  public enum Kind {
+    INTERNAL(1), SERVER(2), CLIENT(3);
+
+    private final int otlpValue;
+
+    Kind(int otlpValue) {
+      this.otlpValue = otlpValue;
+    }
+
+    public int otlpValue() {
+      return otlpValue;
+    }
+  }
+
+  public static final Span NOOP = new Span();
+
+  private static final ThreadLocal<Span> CURRENT = new ThreadLocal<>();
+
+  private static final long EPOCH_ANCHOR_NANOS =
+      TimeUnit.MILLISECONDS.toNanos(System.currentTimeMillis());
+  private static final long NANO_TIME_ANCHOR = System.nanoTime();
+
+  private final SpanExporter exporter;
+  private final Span parent;
+  private final long traceIdHigh;
+  private final long traceIdLow;
+  private final long spanId;
+  private final long parentSpanId;
+  private final String name;
+  private final Kind kind;
+  private final long startNanos;
+
+  private long endNanos;
+  private volatile boolean error;
+  private List<Object> attributes;
+
+  private Span() {
+    this(null, null, 0, 0, 0, null, Kind.INTERNAL, 0);
+  }
+
+  Span(SpanExporter exporter, Span parent, long traceIdHigh, long traceIdLow, long parentSpanId,
+      String name, Kind kind, long startNanos) {
+    this.exporter = exporter;
+    this.parent = parent;
+    this.traceIdHigh = traceIdHigh;
+    this.traceIdLow = traceIdLow;
+    this.spanId = exporter == null ? 0 : randomNonZeroId();
+    this.parentSpanId = parentSpanId;
+    this.name = name;
+    this.kind = kind;
+    this.startNanos = startNanos;
+  }
+
+  static long randomNonZeroId() {
+    long id;
+    do {
+      id = ThreadLocalRandom.current().nextLong();
+    } while (id == 0);
+    return id;
+  }
+
+  static long toEpochNanos(long nanoTime) {
+    return EPOCH_ANCHOR_NANOS + (nanoTime - NANO_TIME_ANCHOR);
+  }
+
+  /**
+   * @return the span active on this thread, or {@link #NOOP}
+   */
+  public static Span current() {
+    Span s = CURRENT.get();
+    return s == null ? NOOP : s;
+  }
+
+  static void setCurrent(Span span) {
+    if (span == null || span == NOOP) {
+      CURRENT.remove();
+    } else {
+      CURRENT.set(span);
+    }
+  }
+
+  private Span newChild(String childName, Kind childKind, long childStartNanos) {
+    return new Span(exporter, this, traceIdHigh, traceIdLow, spanId, childName, childKind,
+        childStartNanos);
+  }
+
+  /**
+   * Starts a child of the current span and makes it current, until closed.
+   */
+  public static Span start(String name) {
+    return start(name, Kind.INTERNAL);
+  }
+
+  public static Span start(String name, Kind kind) {
+    Span parent = current();
+
+    if (!parent.isSampled()) {
+      return NOOP;
+    }
+
+    Span s = parent.newChild(name, kind, System.nanoTime());
+    CURRENT.set(s);
+    return s;
+  }
+
+  /**
+   * Records a child of the current span, started at startNanos and ending now.
+   */
+  public static void record(String name, long startNanos) {
+    Span parent = current();
+
+    if (parent.isSampled()) {
+      parent.newChild(name, Kind.INTERNAL, startNanos).end(System.nanoTime());
+    }
+  }
+
+  public boolean isSampled() {
+    return exporter != null;
+  }
+
+  public Span setAttribute(String key, String value) {
+    if (isSampled() && value != null) {
+      addAttribute(key, value);
+    }
+    return this;
+  }
+
+  public Span setAttribute(String key, long value) {
+    if (isSampled()) {
+      addAttribute(key, value);
+    }
+    return this;
+  }
+
+  private synchronized void addAttribute(String key, Object value) {
+    if (attributes == null) {
+      attributes = new ArrayList<>(8);
+    }
+    attributes.add(key);
+    attributes.add(value);
+  }
+
+  public Span setError(boolean error) {
+    if (isSampled()) {
+      this.error = error;
+    }
+    return this;
+  }
+
+  /**
+   * @return the W3C trace context header value identifying this span, or null if not sampled
+   */
+  public String traceparent() {
+    if (!isSampled()) {
+      return null;
+    }
+
+    StringBuilder sb = new StringBuilder(55);
+    sb.append("00-");
+    appendHex(sb, traceIdHigh);
+    appendHex(sb, traceIdLow);
+    sb.append('-');
+    appendHex(sb, spanId);
+    sb.append("-01");
+    return sb.toString();
+  }
+
+  static void appendHex(StringBuilder sb, long value) {
+    for (int shift = 60; shift >= 0; shift -= 4) {
+      sb.append(Character.forDigit((int) ((value >>> shift) & 0xf), 16));
+    }
+  }
+
+  private synchronized boolean end(long nanoTime) {
+    if (endNanos != 0) {
+      return false;
+    }
+
+    endNanos = nanoTime;
+    exporter.export(this);
+    return true;
+  }
+
+  @Override
+  public void close() {
+    if (!isSampled()) {
+      return;
+    }
+
+    if (end(System.nanoTime()) && CURRENT.get() == this) {
+      setCurrent(parent);
+    }
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public Kind getKind() {
+    return kind;
+  }
+
+  public long getTraceIdHigh() {
+    return traceIdHigh;
+  }
+
+  public long getTraceIdLow() {
+    return traceIdLow;
+  }
+
+  public long getSpanId() {
+    return spanId;
+  }
+
+  public long getParentSpanId() {
+    return parentSpanId;
+  }
+
+  public long getStartEpochNanos() {
+    return toEpochNanos(startNanos);
+  }
+
+  public synchronized long getEndEpochNanos() {
+    return toEpochNanos(endNanos);
+  }
+
+  public boolean isError() {
+    return error;
+  }
+
+  /**
+   * @return the attributes, as a flat list of keys followed by their value
+   */
+  public synchronized List<Object> getAttributes() {
+    return attributes == null ? Collections.emptyList() : new ArrayList<>(attributes);
+  }
+}
@@ -0,0 +1,33 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare, 2018.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.italiangrid.storm.webdav.server.tracing;
+
+@FunctionalInterface
+public interface SpanExporter {
+
+  /**
+   * Called when a sampled span ends. Implementations must not block.
+   */
+  void export(Span span);
+
+  /**
+   * Exports any pending span and releases the exporter resources.
+   */
+  default void shutdown() {
+    // nothing to do by default
+  }
+
+}
@@ -0,0 +1,159 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare, 2018.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.italiangrid.storm.webdav.server.tracing;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static java.util.Objects.isNull;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Starts the root span of a request. The sampling decision is taken here: requests are sampled
+ * with the configured ratio, so that clients cannot force tracing on every request. A request
+ * carrying a W3C <code>traceparent</code> header joins the trace of its parent; it follows the
+ * sampling decision of the parent only when incoming sampling decisions are trusted, e.g. when
+ * all clients are services of the same deployment.
+ */
+public class Tracer {
+
+  public static final String TRACEPARENT_HEADER = "traceparent";
+
+  private final double samplingRatio;
+  private final boolean trustIncomingSampling;
+  private final SpanExporter exporter;
+
+  static class ParentContext {
+    final long traceIdHigh;
+    final long traceIdLow;
+    final long spanId;
+    final boolean sampled;
+
+    ParentContext(long traceIdHigh, long traceIdLow, long spanId, boolean sampled) {
+      this.traceIdHigh = traceIdHigh;
+      this.traceIdLow = traceIdLow;
+      this.spanId = spanId;
+      this.sampled = sampled;
+    }
+  }
+
+  public Tracer(double samplingRatio, SpanExporter exporter) {
+    this(samplingRatio, false, exporter);
+  }
+
+  public Tracer(double samplingRatio, boolean trustIncomingSampling, SpanExporter exporter) {
+    checkArgument(samplingRatio >= 0 && samplingRatio <= 1, "samplingRatio must be in [0..1]");
+    this.samplingRatio = samplingRatio;
+    this.trustIncomingSampling = trustIncomingSampling;
+    this.exporter = exporter;
+  }
+
+  public static Tracer disabled() {
+    return new Tracer(0, null);
+  }
+
+  public boolean isEnabled() {
+    return !isNull(exporter);
+  }
+
+  static long parseHex(String s, int begin, int end) {
+    long value = 0;
+
+    for (int i = begin; i < end; i++) {
+      int d = Character.digit(s.charAt(i), 16);
+      if (d < 0) {
+        throw new NumberFormatException(s);
+      }
+      value = (value << 4) | d;
+    }
+
+    return value;
+  }
+
+  static ParentContext parseTraceparent(String header) {
+    // version "-" trace-id "-" parent-id "-" trace-flags, e.g.
+    // 00-4bf92f3577b34da6a3ce929d0e0e4736-00f067aa0ba902b7-01
+    if (isNull(header) || header.length() < 55 || header.charAt(2) != '-'
+        || header.charAt(35) != '-' || header.charAt(52) != '-') {
+      return null;
+    }
+
+    try {
+      if (parseHex(header, 0, 2) == 0xff) {
+        return null;
+      }
+
+      long hi = parseHex(header, 3, 19);
+      long lo = parseHex(header, 19, 35);
+      long spanId = parseHex(header, 36, 52);
+      long flags = parseHex(header, 53, 55);
+
+      if ((hi == 0 && lo == 0) || spanId == 0) {
+        return null;
+      }
+
+      return new ParentContext(hi, lo, spanId, (flags & 1) == 1);
+    } catch (NumberFormatException e) {
+      return null;
+    }
+  }
+
+  /**
+   * Starts the root span of a request and makes it current on this thread.
+   * 
+   * @param traceparent the incoming <code>traceparent</code> header, or null
+   * @return the span, or {@link Span#NOOP} if the request is not sampled
+   */
+  public Span startRootSpan(String name, String traceparent) {
+    if (!isEnabled()) {
+      return Span.NOOP;
+    }
+
+    ParentContext parent = parseTraceparent(traceparent);
+    boolean sampled = (trustIncomingSampling && !isNull(parent)) ? parent.sampled
+        : ThreadLocalRandom.current().nextDouble() < samplingRatio;
+
+    if (!sampled) {
+      return Span.NOOP;
+    }
+
+    Span span;
+
+    if (isNull(parent)) {
+      span = new Span(exporter, null, Span.randomNonZeroId(), Span.randomNonZeroId(), 0, name,
+          Span.Kind.SERVER, System.nanoTime());
+    } else {
+      span = new Span(exporter, null, parent.traceIdHigh, parent.traceIdLow, parent.spanId, name,
+          Span.Kind.SERVER, System.nanoTime());
+    }
+
+    Span.setCurrent(span);
+    return span;
+  }
+
+  /**
+   * Detaches the current span from this thread, e.g. once a request thread is done with the
+   * request, even if the request is completed asynchronously.
+   */
+  public void clearCurrentSpan() {
+    Span.setCurrent(null);
+  }
+
+  public void stop() {
+    if (isEnabled()) {
+      exporter.shutdown();
+    }
+  }
+}
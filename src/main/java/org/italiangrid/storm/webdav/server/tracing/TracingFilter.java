@@ -0,0 +1,104 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare, 2018.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.italiangrid.storm.webdav.server.tracing;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static java.util.Objects.isNull;
+import static org.italiangrid.storm.webdav.server.servlet.RequestCompletion.runOnCompletion;
+
+import java.io.IOException;
+
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.italiangrid.storm.webdav.config.StorageAreaInfo;
+import org.italiangrid.storm.webdav.server.ResolvedResource;
+
+/**
+ * Starts the root span of each sampled request. The filter must come before the security filter
+ * chain, so that authentication and authorization are traced too.
+ */
+public class TracingFilter implements Filter {
+
+  private final Tracer tracer;
+
+  public TracingFilter(Tracer tracer) {
+    checkNotNull(tracer);
+    this.tracer = tracer;
+  }
+
+  @Override
+  public void init(FilterConfig filterConfig) throws ServletException {}
+
+  @Override
+  public void destroy() {}
+
+  @Override
+  public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain)
+      throws IOException, ServletException {
+
+    final HttpServletRequest req = (HttpServletRequest) request;
+    final HttpServletResponse res = (HttpServletResponse) response;
+
+    final Span span = tracer.startRootSpan("HTTP " + req.getMethod(),
+        req.getHeader(Tracer.TRACEPARENT_HEADER));
+
+    if (!span.isSampled()) {
+      chain.doFilter(request, response);
+      return;
+    }
+
+    try {
+      chain.doFilter(request, response);
+    } catch (Throwable t) {
+      // The container turns the exception into a server error, after this filter has returned
+      endSpan(span, req, res, HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+      throw t;
+    } finally {
+      tracer.clearCurrentSpan();
+    }
+
+    runOnCompletion(request, () -> endSpan(span, req, res), () -> span.setError(true));
+  }
+
+  static void endSpan(Span span, HttpServletRequest req, HttpServletResponse res) {
+    endSpan(span, req, res, res.getStatus());
+  }
+
+  static void endSpan(Span span, HttpServletRequest req, HttpServletResponse res, int status) {
+    ResolvedResource rr = ResolvedResource.fromRequest(req);
+    StorageAreaInfo sa = isNull(rr) ? null : rr.getStorageArea();
+
+    span.setAttribute("http.method", req.getMethod())
+      .setAttribute("http.target", req.getRequestURI())
+      .setAttribute("http.status_code", status)
+      .setAttribute("storm.request_id",
+          (String) req.getAttribute(RequestIdFilter.REQUEST_ID_ATTRIBUTE_NAME))
+      .setAttribute("storm.storage_area", isNull(sa) ? null : sa.name());
+
+    if (status >= 500) {
+      span.setError(true);
+    }
+
+    span.close();
+  }
+}
@@ -16,6 +16,7 @@
 package org.italiangrid.storm.webdav.spring;
 
 import static java.util.Objects.isNull;
+import static java.util.stream.Collectors.toList;
 import static org.italiangrid.utils.jetty.TLSServerConnectorBuilder.CONSCRYPT_PROVIDER;
 
 import java.io.IOException;
@@ -26,7 +27,7 @@ import java.security.NoSuchProviderException;
 import java.security.Security;
 import java.security.cert.CertificateException;
 import java.time.Clock;
-import java.util.concurrent.ExecutorService;
+import java.time.Duration;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
@@ -47,45 +48,60 @@ import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.http.impl.client.HttpClients;
 import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
 import org.conscrypt.OpenSSLProvider;
+import org.italiangrid.storm.webdav.authz.AuthoritiesCache;
 import org.italiangrid.storm.webdav.authz.AuthorizationPolicyService;
+import org.italiangrid.storm.webdav.authz.scope.StorageScopeGrantPolicy;
 import org.italiangrid.storm.webdav.config.OAuthProperties;
-import org.italiangrid.storm.webdav.config.OAuthProperties.AuthorizationServer;
 import org.italiangrid.storm.webdav.config.SAConfigurationParser;
 import org.italiangrid.storm.webdav.config.ServiceConfiguration;
 import org.italiangrid.storm.webdav.config.ServiceConfigurationProperties;
 import org.italiangrid.storm.webdav.config.StorageAreaConfiguration;
+import org.italiangrid.storm.webdav.config.StorageAreaInfo;
 import org.italiangrid.storm.webdav.config.ThirdPartyCopyProperties;
 import org.italiangrid.storm.webdav.fs.DefaultFSStrategy;
 import org.italiangrid.storm.webdav.fs.FilesystemAccess;
+import org.italiangrid.storm.webdav.fs.LocalCopyEngine;
 import org.italiangrid.storm.webdav.fs.MetricsFSStrategyWrapper;
+import org.italiangrid.storm.webdav.fs.SyscallTimers;
+import org.italiangrid.storm.webdav.fs.TreeOperationEngine;
 import org.italiangrid.storm.webdav.fs.attrs.DefaultExtendedFileAttributesHelper;
 import org.italiangrid.storm.webdav.fs.attrs.ExtendedAttributesHelper;
+import org.italiangrid.storm.webdav.fs.attrs.MetricsExtendedAttributesHelper;
+import org.italiangrid.storm.webdav.metrics.BucketedMetricRegistry;
+import org.italiangrid.storm.webdav.metrics.StormMetricsReporter;
 import org.italiangrid.storm.webdav.milton.util.EarlyChecksumStrategy;
 import org.italiangrid.storm.webdav.milton.util.LateChecksumStrategy;
 import org.italiangrid.storm.webdav.milton.util.MetricsReplaceContentStrategy;
 import org.italiangrid.storm.webdav.milton.util.NoChecksumStrategy;
 import org.italiangrid.storm.webdav.milton.util.ReplaceContentStrategy;
 import org.italiangrid.storm.webdav.oauth.CompositeJwtDecoder;
+import org.italiangrid.storm.webdav.oauth.VerifiedJwtCache;
 import org.italiangrid.storm.webdav.oauth.authzserver.DefaultTokenIssuerService;
 import org.italiangrid.storm.webdav.oauth.authzserver.TokenIssuerService;
 import org.italiangrid.storm.webdav.oauth.authzserver.jwt.DefaultJwtTokenIssuer;
 import org.italiangrid.storm.webdav.oauth.authzserver.jwt.LocallyIssuedJwtDecoder;
 import org.italiangrid.storm.webdav.oauth.authzserver.jwt.SignedJwtTokenIssuer;
+import org.italiangrid.storm.webdav.oauth.authzserver.jwt.SigningKeyStore;
 import org.italiangrid.storm.webdav.oauth.authzserver.web.AuthzServerMetadata;
 import org.italiangrid.storm.webdav.oauth.utils.OidcConfigurationFetcher;
+import org.italiangrid.storm.webdav.oauth.utils.TrustedIssuerKeyManager;
 import org.italiangrid.storm.webdav.oauth.utils.TrustedJwtDecoderCacheLoader;
 import org.italiangrid.storm.webdav.server.DefaultPathResolver;
+import org.italiangrid.storm.webdav.server.JettyWebServerFactory;
 import org.italiangrid.storm.webdav.server.PathResolver;
 import org.italiangrid.storm.webdav.server.util.CANLListener;
+import org.italiangrid.storm.webdav.tpc.LocalCopyURLService;
 import org.italiangrid.storm.webdav.tpc.LocalURLService;
 import org.italiangrid.storm.webdav.tpc.StaticHostListLocalURLService;
+import org.italiangrid.storm.webdav.tpc.StaticPeerListLocalCopyURLService;
 import org.italiangrid.storm.webdav.tpc.TransferConstants;
 import org.italiangrid.storm.webdav.tpc.http.SuperLaxRedirectStrategy;
+import org.italiangrid.storm.webdav.tpc.http.TraceparentRequestInterceptor;
 import org.italiangrid.voms.util.CertificateValidatorBuilder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
-import org.springframework.boot.web.client.RestTemplateBuilder;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Primary;
@@ -95,6 +111,7 @@ import com.codahale.metrics.MetricRegistry;
 import com.codahale.metrics.health.HealthCheckRegistry;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.LoadingCache;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
 import eu.emi.security.authn.x509.CrlCheckingMode;
 import eu.emi.security.authn.x509.NamespaceCheckingMode;
@@ -113,10 +130,19 @@ public class AppConfig implements TransferConstants {
     return Clock.systemDefaultZone();
   }
 
+  @Bean
+  public SigningKeyStore signingKeyStore(ServiceConfigurationProperties props) {
+    LOG.info("Local token signature algorithm: {}",
+        props.getAuthzServer().getSignatureAlgorithm());
+    return SigningKeyStore.fromProperties(props.getAuthzServer());
+  }
+
   @Bean
   public SignedJwtTokenIssuer tokenIssuer(ServiceConfigurationProperties props,
-      AuthorizationPolicyService policyService, Clock clock) {
-    return new DefaultJwtTokenIssuer(clock, props.getAuthzServer(), policyService);
+      AuthorizationPolicyService policyService, Clock clock, SigningKeyStore keyStore,
+      StorageAreaConfiguration saConfig) {
+    return new DefaultJwtTokenIssuer(clock, props.getAuthzServer(), policyService, keyStore,
+        new StorageScopeGrantPolicy(saConfig));
   }
 
   @Bean
@@ -139,17 +165,37 @@ public class AppConfig implements TransferConstants {
   }
 
 
+  @Bean
+  public SyscallTimers syscallTimers() {
+    return new SyscallTimers(metricRegistry());
+  }
+
   @Bean
   public ExtendedAttributesHelper extendedAttributesHelper() {
 
-    return new DefaultExtendedFileAttributesHelper();
+    return new MetricsExtendedAttributesHelper(new DefaultExtendedFileAttributesHelper(),
+        syscallTimers());
+  }
+
+  @Bean
+  public LocalCopyEngine localCopyEngine() {
+    return new LocalCopyEngine(extendedAttributesHelper());
+  }
+
+  @Bean
+  public TreeOperationEngine treeOperationEngine(ServiceConfigurationProperties props) {
+    return new TreeOperationEngine(localCopyEngine(), metricRegistry(),
+        props.getFsOperations().getParallelism(),
+        props.getFsOperations().getMaxConcurrentOpsPerFilesystem());
   }
 
   @Bean
   @Primary
-  public FilesystemAccess filesystemAccess() {
+  public FilesystemAccess filesystemAccess(TreeOperationEngine treeEngine) {
 
-    return new MetricsFSStrategyWrapper(new DefaultFSStrategy(extendedAttributesHelper()),
+    return new MetricsFSStrategyWrapper(
+        new DefaultFSStrategy(extendedAttributesHelper(), localCopyEngine(), treeEngine,
+            syscallTimers()),
         metricRegistry());
 
   }
@@ -157,7 +203,7 @@ public class AppConfig implements TransferConstants {
   @Bean
   public MetricRegistry metricRegistry() {
 
-    return new MetricRegistry();
+    return new BucketedMetricRegistry();
   }
 
   @Bean
@@ -166,6 +212,29 @@ public class AppConfig implements TransferConstants {
     return new HealthCheckRegistry();
   }
 
+  @Bean(destroyMethod = "stop")
+  @ConditionalOnProperty(name = "storm.metrics-reporter.enabled", havingValue = "true",
+      matchIfMissing = true)
+  public StormMetricsReporter metricsReporter(ServiceConfigurationProperties props,
+      ServiceConfiguration conf, ObjectProvider<JettyWebServerFactory> webServerFactory) {
+
+    StormMetricsReporter reporter = StormMetricsReporter.forRegistry(metricRegistry())
+      .storageAreas(storageAreaConfiguration(conf).getStorageAreaInfo()
+        .stream()
+        .map(StorageAreaInfo::name)
+        .collect(toList()))
+      .threadPool(() -> {
+        JettyWebServerFactory f = webServerFactory.getIfAvailable();
+        return isNull(f) ? null : f.getThreadPool();
+      })
+      .build();
+
+    final int period = props.getMetricsReporter().getReportingPeriodSecs();
+    reporter.start(period, TimeUnit.SECONDS);
+    LOG.info("Metrics reporter enabled, reporting period: {} seconds", period);
+    return reporter;
+  }
+
 
 
   @Bean
@@ -242,42 +311,66 @@ public class AppConfig implements TransferConstants {
       .setConnectionManager(cm)
       .setDefaultConnectionConfig(connectionConfig)
       .setRedirectStrategy(SuperLaxRedirectStrategy.INSTANCE)
+      .addInterceptorLast(TraceparentRequestInterceptor.INSTANCE)
       .build();
   }
 
 
+  @Bean
+  public AuthoritiesCache authoritiesCache(ServiceConfigurationProperties props,
+      MetricRegistry registry) {
+    if (props.getAuthz().isAuthoritiesCacheEnabled()) {
+      return new AuthoritiesCache(registry, props.getAuthz().getAuthoritiesCacheMaxSize());
+    }
+    return AuthoritiesCache.disabled();
+  }
+
+  @Bean
+  public TrustedIssuerKeyManager trustedIssuerKeyManager(OAuthProperties props,
+      OidcConfigurationFetcher fetcher, MetricRegistry registry, Clock clock) {
+
+    // A slow issuer only holds one of the threads, so the others keep being refreshed
+    final int issuerCount = props.getIssuers() == null ? 0 : props.getIssuers().size();
+    final int threads = Math.max(1, Math.min(props.getJwksRefreshThreads(), issuerCount));
+
+    ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(threads,
+        new ThreadFactoryBuilder().setNameFormat("jwks-refresh-%d").setDaemon(true).build());
+
+    TrustedIssuerKeyManager keyManager =
+        new TrustedIssuerKeyManager(props, fetcher, scheduler, registry, clock);
+    keyManager.start();
+    return keyManager;
+  }
+
   @Bean
   public JwtDecoder jwtDecoder(OAuthProperties props, ServiceConfigurationProperties sProps,
-      RestTemplateBuilder builder, OidcConfigurationFetcher fetcher) {
+      TrustedIssuerKeyManager keyManager, MetricRegistry registry, Clock clock,
+      SigningKeyStore keyStore) {
 
-    ExecutorService executor = Executors.newSingleThreadExecutor();
+    TrustedJwtDecoderCacheLoader loader = new TrustedJwtDecoderCacheLoader(keyManager);
 
-    TrustedJwtDecoderCacheLoader loader =
-        new TrustedJwtDecoderCacheLoader(sProps, props, builder, fetcher, executor);
-    
-    
-    LoadingCache<String, JwtDecoder> decoders =
-        CacheBuilder.newBuilder().refreshAfterWrite(props.getRefreshPeriodMinutes(), TimeUnit.MINUTES).build(loader);
+    LoadingCache<String, JwtDecoder> decoders = CacheBuilder.newBuilder().build(loader);
 
-    
-    for (AuthorizationServer as: props.getIssuers()) {
-      LOG.info("Initializing OAuth trusted issuer: {}", as.getIssuer());
-      try {
-        decoders.put(as.getIssuer(), loader.load(as.getIssuer()));
-      } catch (Exception e) {
-        LOG.warn("Error initializing trusted issuer: {}", e.getMessage());
-        if (LOG.isDebugEnabled()) {
-          LOG.warn("Error initializing trusted issuer: {}", e.getMessage(),e);
-        }
-      }
+    for (String issuer : keyManager.getTrustedIssuers()) {
+      LOG.info("Initializing OAuth trusted issuer: {}", issuer);
+      decoders.getUnchecked(issuer);
     }
-    
+
     if (sProps.getAuthzServer().isEnabled()) {
       LOG.info("Initializing local JWT token issuer with issuer: {}", sProps.getAuthzServer().getIssuer());
-      LocallyIssuedJwtDecoder d = new LocallyIssuedJwtDecoder(sProps.getAuthzServer());
+      LocallyIssuedJwtDecoder d = new LocallyIssuedJwtDecoder(sProps.getAuthzServer(), keyStore);
       decoders.put(sProps.getAuthzServer().getIssuer(), d);
     }
 
+    if (props.isEnableVerifiedTokenCache()) {
+      LOG.info("Verified token cache enabled, max size: {}", props.getVerifiedTokenCacheSize());
+      VerifiedJwtCache verifiedTokens = new VerifiedJwtCache(registry, clock,
+          props.getVerifiedTokenCacheSize(),
+          Duration.ofSeconds(props.getVerifiedTokenCacheMaxTtlSecs()),
+          Duration.ofSeconds(props.getVerifiedTokenCacheExpirySkewSecs()));
+      return new CompositeJwtDecoder(decoders, verifiedTokens);
+    }
+
     return new CompositeJwtDecoder(decoders);
   }
 
@@ -288,11 +381,22 @@ public class AppConfig implements TransferConstants {
   }
 
   @Bean
-  public AuthzServerMetadata metadata(ServiceConfigurationProperties props) {
+  public LocalCopyURLService localCopyUrlService(ServiceConfigurationProperties props,
+      ThirdPartyCopyProperties tpcProps, PathResolver resolver) {
+    return new StaticPeerListLocalCopyURLService(props.getHostnames(),
+        tpcProps.getSharedFilesystemPeers(), resolver);
+  }
+
+  @Bean
+  public AuthzServerMetadata metadata(ServiceConfigurationProperties props,
+      SigningKeyStore keyStore) {
     AuthzServerMetadata md = new AuthzServerMetadata();
     md.setIssuer(props.getAuthzServer().getIssuer());
     String tokenEndpoint = String.format("%s/oauth/token", props.getAuthzServer().getIssuer());
     md.setTokenEndpoint(tokenEndpoint);
+    if (keyStore.isAsymmetric()) {
+      md.setJwksUri(String.format("%s/.well-known/jwks.json", props.getAuthzServer().getIssuer()));
+    }
     return md;
   }
 
@@ -301,7 +405,8 @@ public class AppConfig implements TransferConstants {
   public ReplaceContentStrategy earlyChecksumStrategy(MetricRegistry registry,
       ExtendedAttributesHelper ah) {
     LOG.info("Checksum strategy: early");
-    return new MetricsReplaceContentStrategy(registry, new EarlyChecksumStrategy(ah));
+    return new MetricsReplaceContentStrategy(registry,
+        new EarlyChecksumStrategy(ah, syscallTimers()));
   }
 
   @Bean
@@ -309,13 +414,15 @@ public class AppConfig implements TransferConstants {
   public ReplaceContentStrategy lateChecksumStrategy(MetricRegistry registry,
       ExtendedAttributesHelper ah) {
     LOG.info("Checksum strategy: late");
-    return new MetricsReplaceContentStrategy(registry, new LateChecksumStrategy(ah));
+    return new MetricsReplaceContentStrategy(registry,
+        new LateChecksumStrategy(ah, syscallTimers()));
   }
 
   @Bean
   @ConditionalOnProperty(name = "storm.checksum-strategy", havingValue = "NO_CHECKSUM")
   public ReplaceContentStrategy noChecksumStrategy(MetricRegistry registry) {
     LOG.warn("Checksum strategy: no checksum");
-    return new MetricsReplaceContentStrategy(registry, new NoChecksumStrategy());
+    return new MetricsReplaceContentStrategy(registry,
+        new NoChecksumStrategy(syscallTimers()));
   }
 }
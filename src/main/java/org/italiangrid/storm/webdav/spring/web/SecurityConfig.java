@@ -21,11 +21,13 @@ import java.util.List;
 import javax.servlet.ServletContext;
 
 import org.italiangrid.storm.webdav.authn.ErrorPageAuthenticationEntryPoint;
+import org.italiangrid.storm.webdav.authz.ClientAddressAuthzVoter;
 import org.italiangrid.storm.webdav.authz.CopyMoveAuthzVoter;
 import org.italiangrid.storm.webdav.authz.SAPermission;
+import org.italiangrid.storm.webdav.authz.StorageAreaAuthzVoter;
+import org.italiangrid.storm.webdav.authz.TracingAccessDecisionManager;
 import org.italiangrid.storm.webdav.authz.VOMSAuthenticationFilter;
 import org.italiangrid.storm.webdav.authz.VOMSAuthenticationProvider;
-import org.italiangrid.storm.webdav.authz.util.ReadonlyHTTPMethodMatcher;
 import org.italiangrid.storm.webdav.config.OAuthProperties;
 import org.italiangrid.storm.webdav.config.ServiceConfiguration;
 import org.italiangrid.storm.webdav.config.StorageAreaConfiguration;
@@ -128,35 +130,33 @@ public class SecurityConfig extends WebSecurityConfigurerAdapter implements Serv
     return new CopyMoveAuthzVoter(saConfiguration, pathResolver, localURLService);
   }
 
+  @Bean
+  public StorageAreaAuthzVoter storageAreaAuthzVoter() {
+
+    return new StorageAreaAuthzVoter(saConfiguration, pathResolver);
+  }
+
   @Bean
   public AccessDecisionManager accessDecisionManager() {
 
     List<AccessDecisionVoter<?>> voters = new ArrayList<>();
 
     voters.add(new WebExpressionVoter());
+    voters.add(new ClientAddressAuthzVoter());
+    voters.add(storageAreaAuthzVoter());
     voters.add(customVoter());
 
-    return new UnanimousBased(voters);
+    return new TracingAccessDecisionManager(new UnanimousBased(voters));
   }
 
 
   protected void addAccessRules(HttpSecurity http) throws Exception {
 
-    for (StorageAreaInfo sa : saConfiguration.getStorageAreaInfo()) {
-
-      for (String ap : sa.accessPoints()) {
-
-        String writeAccessRule = String.format("hasAuthority('%s') and hasAuthority('%s')",
-            SAPermission.canRead(sa.name()).getAuthority(),
-            SAPermission.canWrite(sa.name()).getAuthority());
-
-        http.authorizeRequests()
-          .requestMatchers(new ReadonlyHTTPMethodMatcher(ap + "/**"))
-          .hasAuthority(SAPermission.canRead(sa.name()).getAuthority());
-
-        http.authorizeRequests().antMatchers(ap + "/**").access(writeAccessRule);
-      }
-    }
+    // Per storage area read/write checks are done by the storage area voter,
+    // which must be reached by all requests targeting an access point
+    http.authorizeRequests()
+      .requestMatchers(storageAreaAuthzVoter().storageAreaRequestMatcher())
+      .permitAll();
   }
 
   @Override
@@ -196,7 +196,7 @@ public class SecurityConfig extends WebSecurityConfigurerAdapter implements Serv
     http.authorizeRequests().antMatchers(HttpMethod.GET, "/errors/**").permitAll();
     http.authorizeRequests()
       .antMatchers(HttpMethod.GET, "/.well-known/oauth-authorization-server",
-          "/.well-known/openid-configuration")
+          "/.well-known/openid-configuration", "/.well-known/jwks.json")
       .permitAll();
     http.exceptionHandling().accessDeniedPage("/errors/403");
     http.exceptionHandling().authenticationEntryPoint(new ErrorPageAuthenticationEntryPoint());
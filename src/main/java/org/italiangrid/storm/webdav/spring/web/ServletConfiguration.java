@@ -16,27 +16,50 @@
 package org.italiangrid.storm.webdav.spring.web;
 
 import static org.springframework.boot.autoconfigure.security.SecurityProperties.DEFAULT_FILTER_ORDER;
+import static org.springframework.security.access.AccessDecisionVoter.ACCESS_GRANTED;
 
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.concurrent.ScheduledExecutorService;
+
+import org.italiangrid.storm.webdav.authz.StorageAreaAuthzVoter;
+import org.italiangrid.storm.webdav.config.ServiceConfigurationProperties;
 import org.italiangrid.storm.webdav.config.StorageAreaConfiguration;
+import org.italiangrid.storm.webdav.config.ServiceConfigurationProperties.TracingProperties;
 import org.italiangrid.storm.webdav.config.ThirdPartyCopyProperties;
 import org.italiangrid.storm.webdav.fs.FilesystemAccess;
+import org.italiangrid.storm.webdav.fs.LocalCopyEngine;
+import org.italiangrid.storm.webdav.fs.SyscallTimers;
 import org.italiangrid.storm.webdav.fs.attrs.ExtendedAttributesHelper;
 import org.italiangrid.storm.webdav.macaroon.MacaroonIssuerService;
 import org.italiangrid.storm.webdav.macaroon.MacaroonRequestFilter;
+import org.italiangrid.storm.webdav.metrics.OpenMetricsServlet;
 import org.italiangrid.storm.webdav.milton.util.ReplaceContentStrategy;
 import org.italiangrid.storm.webdav.server.PathResolver;
+import org.italiangrid.storm.webdav.server.logging.RequestLog;
+import org.italiangrid.storm.webdav.server.servlet.AdmissionControlFilter;
+import org.italiangrid.storm.webdav.server.servlet.AsyncPutHandler;
 import org.italiangrid.storm.webdav.server.servlet.ChecksumFilter;
 import org.italiangrid.storm.webdav.server.servlet.LogRequestFilter;
 import org.italiangrid.storm.webdav.server.servlet.MiltonFilter;
+import org.italiangrid.storm.webdav.server.servlet.RequestMetricsFilter;
+import org.italiangrid.storm.webdav.server.servlet.ResolvedResourceFilter;
 import org.italiangrid.storm.webdav.server.servlet.SAIndexServlet;
 import org.italiangrid.storm.webdav.server.servlet.StoRMServlet;
+import org.italiangrid.storm.webdav.server.tracing.OtlpHttpSpanExporter;
 import org.italiangrid.storm.webdav.server.tracing.RequestIdFilter;
+import org.italiangrid.storm.webdav.server.tracing.Tracer;
+import org.italiangrid.storm.webdav.server.tracing.TracingFilter;
+import org.italiangrid.storm.webdav.tpc.LocalCopyURLService;
 import org.italiangrid.storm.webdav.tpc.LocalURLService;
 import org.italiangrid.storm.webdav.tpc.TransferFilter;
 import org.italiangrid.storm.webdav.tpc.http.HttpTransferClientMetricsWrapper;
+import org.italiangrid.storm.webdav.tpc.local.LocalCopyTransferClient;
+import org.italiangrid.storm.webdav.tpc.local.LocalCopyTransferClient.PathAuthorizer;
 import org.italiangrid.storm.webdav.tpc.transfer.TransferClient;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.boot.web.servlet.FilterRegistrationBean;
@@ -56,13 +79,44 @@ public class ServletConfiguration {
   
   public static final Logger LOG = LoggerFactory.getLogger(ServletConfiguration.class);
 
+  // Before the security filter chain, to trace authentication and authorization
+  static final int TRACING_FILTER_ORDER = DEFAULT_FILTER_ORDER - 1;
   static final int REQUEST_ID_FILTER_ORDER = DEFAULT_FILTER_ORDER + 1000;
-  static final int LOG_REQ_FILTER_ORDER = DEFAULT_FILTER_ORDER + 1001;
-  static final int CHECKSUM_FILTER_ORDER = DEFAULT_FILTER_ORDER + 1002;
-  static final int MACAROON_REQ_FILTER_ORDER = DEFAULT_FILTER_ORDER + 1003;
-  static final int TPC_FILTER_ORDER = DEFAULT_FILTER_ORDER + 1004;
-  static final int MILTON_FILTER_ORDER = DEFAULT_FILTER_ORDER + 1005;
+  static final int RESOLVED_RESOURCE_FILTER_ORDER = DEFAULT_FILTER_ORDER + 1001;
+  static final int LOG_REQ_FILTER_ORDER = DEFAULT_FILTER_ORDER + 1002;
+  static final int REQUEST_METRICS_FILTER_ORDER = DEFAULT_FILTER_ORDER + 1003;
+  static final int ADMISSION_CONTROL_FILTER_ORDER = DEFAULT_FILTER_ORDER + 1004;
+  static final int CHECKSUM_FILTER_ORDER = DEFAULT_FILTER_ORDER + 1005;
+  static final int MACAROON_REQ_FILTER_ORDER = DEFAULT_FILTER_ORDER + 1006;
+  static final int TPC_FILTER_ORDER = DEFAULT_FILTER_ORDER + 1007;
+  static final int MILTON_FILTER_ORDER = DEFAULT_FILTER_ORDER + 1008;
+
+  @Bean(destroyMethod = "stop")
+  @ConditionalOnProperty(name = "storm.tracing.enabled", havingValue = "true")
+  Tracer tracer(ServiceConfigurationProperties serviceConfig, MetricRegistry registry)
+      throws MalformedURLException {
+    TracingProperties props = serviceConfig.getTracing();
+
+    OtlpHttpSpanExporter exporter = new OtlpHttpSpanExporter(new URL(props.getEndpoint()),
+        props.getExportIntervalMsec(), props.getMaxQueuedSpans(), props.getMaxBatchSize(),
+        registry);
+    exporter.start();
+
+    LOG.info("Request tracing enabled, sampling ratio: {}, trust incoming sampling: {}",
+        props.getSamplingRatio(), props.isTrustIncomingSampling());
+    return new Tracer(props.getSamplingRatio(), props.isTrustIncomingSampling(), exporter);
+  }
+
+  @Bean
+  @ConditionalOnProperty(name = "storm.tracing.enabled", havingValue = "true")
+  FilterRegistrationBean<TracingFilter> tracingFilter(Tracer tracer) {
+    FilterRegistrationBean<TracingFilter> filter =
+        new FilterRegistrationBean<>(new TracingFilter(tracer));
 
+    filter.addUrlPatterns("/*");
+    filter.setOrder(TRACING_FILTER_ORDER);
+    return filter;
+  }
 
   @Bean
   FilterRegistrationBean<RequestIdFilter> requestIdFilter() {
@@ -77,15 +131,74 @@ public class ServletConfiguration {
 
 
   @Bean
-  FilterRegistrationBean<LogRequestFilter> logRequestFilter() {
+  FilterRegistrationBean<ResolvedResourceFilter> resolvedResourceFilter(PathResolver resolver,
+      SyscallTimers syscallTimers) {
+    FilterRegistrationBean<ResolvedResourceFilter> filter =
+        new FilterRegistrationBean<>(new ResolvedResourceFilter(resolver, syscallTimers));
+
+    filter.addUrlPatterns("/*");
+    filter.setOrder(RESOLVED_RESOURCE_FILTER_ORDER);
+    return filter;
+  }
+
+  @Bean(initMethod = "start", destroyMethod = "stop")
+  @ConditionalOnProperty(name = "storm.request-log.enabled", havingValue = "true")
+  RequestLog requestLog(ServiceConfigurationProperties serviceConfig, MetricRegistry registry) {
+    LOG.info("Structured request log enabled");
+    return new RequestLog(serviceConfig.getRequestLog().getBufferSize(), registry);
+  }
+
+  @Bean
+  FilterRegistrationBean<LogRequestFilter> logRequestFilter(
+      ObjectProvider<RequestLog> requestLog) {
     FilterRegistrationBean<LogRequestFilter> logRequestFilter =
-        new FilterRegistrationBean<>(new LogRequestFilter());
+        new FilterRegistrationBean<>(new LogRequestFilter(requestLog.getIfAvailable()));
 
     logRequestFilter.addUrlPatterns("/*");
     logRequestFilter.setOrder(LOG_REQ_FILTER_ORDER);
     return logRequestFilter;
   }
 
+  @Bean
+  @ConditionalOnProperty(name = "storm.request-metrics.enabled", havingValue = "true",
+      matchIfMissing = true)
+  FilterRegistrationBean<RequestMetricsFilter> requestMetricsFilter(
+      StorageAreaConfiguration saConfig, MetricRegistry registry) {
+    FilterRegistrationBean<RequestMetricsFilter> filter =
+        new FilterRegistrationBean<>(new RequestMetricsFilter(saConfig, registry));
+
+    filter.addUrlPatterns("/*");
+    filter.setOrder(REQUEST_METRICS_FILTER_ORDER);
+    return filter;
+  }
+
+  @Bean
+  @ConditionalOnExpression("${storm.admission-control.enabled:false} or "
+      + "${storm.connector.maxConcurrentRequestsPerSa:0} > 0 or "
+      + "'${storm.connector.threadMode:platform}'.equalsIgnoreCase('virtual')")
+  FilterRegistrationBean<AdmissionControlFilter> admissionControlFilter(
+      ServiceConfigurationProperties serviceConfig, StorageAreaConfiguration saConfig,
+      MetricRegistry registry) {
+
+    int maxConcurrentRequests = serviceConfig.getMaxConcurrentRequestsPerStorageArea();
+
+    if (maxConcurrentRequests == 0) {
+      // No explicit limit, bound each storage area by the connector limit
+      maxConcurrentRequests = serviceConfig.getMaxConnections();
+    }
+
+    LOG.info("Admission control filter enabled, storage area concurrency limit: {} requests",
+        maxConcurrentRequests);
+
+    FilterRegistrationBean<AdmissionControlFilter> filter =
+        new FilterRegistrationBean<>(new AdmissionControlFilter(saConfig, maxConcurrentRequests,
+            serviceConfig.getAdmissionControl(), registry));
+
+    filter.addUrlPatterns("/*");
+    filter.setOrder(ADMISSION_CONTROL_FILTER_ORDER);
+    return filter;
+  }
+
   @Bean
   @ConditionalOnProperty(name = "storm.checksum-filter.enabled", havingValue = "true")
   FilterRegistrationBean<ChecksumFilter> checksumFilter(ExtendedAttributesHelper helper,
@@ -113,9 +226,20 @@ public class ServletConfiguration {
 
   @Bean
   FilterRegistrationBean<MiltonFilter> miltonFilter(FilesystemAccess fsAccess,
-      ExtendedAttributesHelper attrsHelper, PathResolver resolver, ReplaceContentStrategy rcs) {
-    FilterRegistrationBean<MiltonFilter> miltonFilter =
-        new FilterRegistrationBean<>(new MiltonFilter(fsAccess, attrsHelper, resolver, rcs));
+      ExtendedAttributesHelper attrsHelper, PathResolver resolver, ReplaceContentStrategy rcs,
+      ServiceConfigurationProperties serviceConfig, SyscallTimers syscallTimers,
+      MetricRegistry registry) {
+
+    AsyncPutHandler asyncPutHandler = null;
+
+    if (serviceConfig.getAsyncIo().isEnabled()) {
+      asyncPutHandler = new AsyncPutHandler(attrsHelper, serviceConfig.getChecksumStrategy(),
+          serviceConfig.getAsyncIo().getBufferSize(), syscallTimers, registry);
+    }
+
+    FilterRegistrationBean<MiltonFilter> miltonFilter = new FilterRegistrationBean<>(
+        new MiltonFilter(fsAccess, attrsHelper, resolver, rcs, asyncPutHandler,
+            syscallTimers));
     miltonFilter.addUrlPatterns("/*");
     miltonFilter.setOrder(MILTON_FILTER_ORDER);
     return miltonFilter;
@@ -125,9 +249,26 @@ public class ServletConfiguration {
   @Bean
   FilterRegistrationBean<TransferFilter> tpcFilter(FilesystemAccess fs,
       ExtendedAttributesHelper attrsHelper, PathResolver resolver, TransferClient client,
-      ThirdPartyCopyProperties props, LocalURLService lus, MetricRegistry registry) {
+      ThirdPartyCopyProperties props, LocalURLService lus, LocalCopyURLService lcus,
+      LocalCopyEngine copyEngine, ScheduledExecutorService es, MetricRegistry registry,
+      ServiceConfigurationProperties serviceConfig, StorageAreaAuthzVoter saVoter) {
+
+    TransferClient xferClient = client;
+
+    if (props.isEnableLocalCopy()) {
+      LOG.info("Local copy enabled for third-party transfers to/from shared storage");
+
+      PathAuthorizer authorizer = (authn, path, method) -> true;
+
+      if (!serviceConfig.isAuthorizationDisabled()) {
+        authorizer = (authn, path, method) -> saVoter.vote(authn, path, method) == ACCESS_GRANTED;
+      }
 
-    TransferClient metricsClient = new HttpTransferClientMetricsWrapper(registry, client);
+      xferClient =
+          new LocalCopyTransferClient(client, lcus, authorizer, resolver, copyEngine, es, props);
+    }
+
+    TransferClient metricsClient = new HttpTransferClientMetricsWrapper(registry, xferClient);
 
     FilterRegistrationBean<TransferFilter> tpcFilter = new FilterRegistrationBean<>(
         new TransferFilter(metricsClient, resolver, lus, props.isVerifyChecksum()));
@@ -144,12 +285,25 @@ public class ServletConfiguration {
     return metricsServlet;
   }
 
+  @Bean
+  ServletRegistrationBean<OpenMetricsServlet> openMetricsServlet(MetricRegistry registry) {
+    ServletRegistrationBean<OpenMetricsServlet> servlet =
+        new ServletRegistrationBean<>(new OpenMetricsServlet(registry), "/status/prometheus");
+    servlet.setAsyncSupported(false);
+    return servlet;
+  }
+
   @Bean
   ServletRegistrationBean<StoRMServlet> stormServlet(StorageAreaConfiguration saConfig,
-      PathResolver pathResolver) {
+      PathResolver pathResolver, ServiceConfigurationProperties serviceConfig,
+      SyscallTimers syscallTimers) {
+
+    int asyncIoBufferSize =
+        serviceConfig.getAsyncIo().isEnabled() ? serviceConfig.getAsyncIo().getBufferSize() : 0;
 
     ServletRegistrationBean<StoRMServlet> stormServlet =
-        new ServletRegistrationBean<>(new StoRMServlet(pathResolver));
+        new ServletRegistrationBean<>(
+            new StoRMServlet(pathResolver, asyncIoBufferSize, syscallTimers));
 
     stormServlet.addInitParameter("acceptRanges", "true");
     stormServlet.addInitParameter("dirAllowed", "true");
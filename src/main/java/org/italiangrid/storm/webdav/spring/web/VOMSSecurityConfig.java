@@ -15,13 +15,17 @@
  */
 package org.italiangrid.storm.webdav.spring.web;
 
+import java.time.Clock;
+import java.time.Duration;
 import java.util.Arrays;
 import java.util.concurrent.TimeUnit;
 
+import org.italiangrid.storm.webdav.authz.AuthoritiesCache;
 import org.italiangrid.storm.webdav.authz.AuthorizationPolicyService;
 import org.italiangrid.storm.webdav.authz.VOMSAuthenticationFilter;
 import org.italiangrid.storm.webdav.authz.VOMSAuthenticationProvider;
 import org.italiangrid.storm.webdav.authz.VOMSPreAuthDetailsSource;
+import org.italiangrid.storm.webdav.authz.VOMSValidationCache;
 import org.italiangrid.storm.webdav.authz.vomap.VOMapDetailServiceBuilder;
 import org.italiangrid.storm.webdav.config.ServiceConfigurationProperties;
 import org.italiangrid.storm.webdav.server.util.VOMSListener;
@@ -35,6 +39,8 @@ import org.springframework.boot.web.servlet.FilterRegistrationBean;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
+import com.codahale.metrics.MetricRegistry;
+
 import eu.emi.security.authn.x509.X509CertChainValidatorExt;
 
 @Configuration
@@ -71,8 +77,20 @@ public class VOMSSecurityConfig {
 
   @Bean
   VOMSPreAuthDetailsSource vomsDetailsSource(VOMSACValidator validator,
-      AuthorizationPolicyService ps, VOMapDetailServiceBuilder builder) {
-    return new VOMSPreAuthDetailsSource(validator, ps, builder.build());
+      AuthorizationPolicyService ps, VOMapDetailServiceBuilder builder,
+      AuthoritiesCache authoritiesCache, ServiceConfigurationProperties props,
+      MetricRegistry registry, Clock clock) {
+
+    VOMSValidationCache validationCache = null;
+
+    if (props.getVoms().getCache().isEnabled()) {
+      validationCache = new VOMSValidationCache(registry, clock,
+          props.getVoms().getCache().getMaxEntries(),
+          Duration.ofSeconds(props.getVoms().getCache().getEntryLifetimeSec()));
+    }
+
+    return new VOMSPreAuthDetailsSource(validator, ps, builder.build(), authoritiesCache,
+        validationCache);
   }
 
   @Bean
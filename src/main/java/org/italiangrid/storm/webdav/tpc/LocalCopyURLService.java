@@ -0,0 +1,33 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare, 2018.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.italiangrid.storm.webdav.tpc;
+
+import java.net.URI;
+import java.util.Optional;
+
+public interface LocalCopyURLService {
+
+  /**
+   * Resolves a URI pointing to a storage area that is reachable on a locally mounted filesystem,
+   * e.g. through a service alias or a cluster peer that shares the same storage.
+   * 
+   * @param uri the URI to resolve
+   * @return the local filesystem path for the URI, or an empty optional if the URI cannot be
+   *         served with a local copy
+   */
+  Optional<String> resolveLocalPath(URI uri);
+
+}
@@ -0,0 +1,67 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare, 2018.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.italiangrid.storm.webdav.tpc;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static java.util.Objects.isNull;
+
+import java.io.File;
+import java.net.URI;
+import java.util.Collection;
+import java.util.Optional;
+import java.util.Set;
+
+import org.italiangrid.storm.webdav.config.StorageAreaInfo;
+import org.italiangrid.storm.webdav.server.PathResolver;
+
+import com.google.common.collect.Sets;
+
+public class StaticPeerListLocalCopyURLService implements LocalCopyURLService, TransferConstants {
+
+  private final Set<String> sharedStorageHosts;
+  private final PathResolver resolver;
+
+  public StaticPeerListLocalCopyURLService(Collection<String> serviceAliases,
+      Collection<String> sharedFilesystemPeers, PathResolver resolver) {
+    checkNotNull(serviceAliases, "serviceAliases must be non-null");
+    checkNotNull(sharedFilesystemPeers, "sharedFilesystemPeers must be non-null");
+    checkNotNull(resolver, "resolver must be non-null");
+
+    this.sharedStorageHosts = Sets.newHashSet(serviceAliases);
+    this.sharedStorageHosts.addAll(sharedFilesystemPeers);
+    this.sharedStorageHosts.removeIf(String::isEmpty);
+    this.resolver = resolver;
+  }
+
+  @Override
+  public Optional<String> resolveLocalPath(URI uri) {
+
+    if (isNull(uri) || isNull(uri.getHost()) || isNull(uri.getPath())
+        || !SUPPORTED_PROTOCOLS.contains(uri.getScheme())
+        || !sharedStorageHosts.contains(uri.getHost())) {
+      return Optional.empty();
+    }
+
+    StorageAreaInfo sa = resolver.resolveStorageArea(uri.getPath());
+
+    if (isNull(sa) || !new File(sa.rootPath()).isDirectory()) {
+      return Optional.empty();
+    }
+
+    return Optional.ofNullable(resolver.resolvePath(uri.getPath()));
+  }
+
+}
@@ -35,10 +35,10 @@ import org.italiangrid.storm.webdav.server.PathResolver;
 import org.italiangrid.storm.webdav.server.tracing.RequestIdHolder;
 import org.italiangrid.storm.webdav.tpc.transfer.GetTransferRequest;
 import org.italiangrid.storm.webdav.tpc.transfer.GetTransferRequestBuilder;
+import org.italiangrid.storm.webdav.tpc.transfer.PerfMarkerWriter;
 import org.italiangrid.storm.webdav.tpc.transfer.PutTransferRequest;
 import org.italiangrid.storm.webdav.tpc.transfer.PutTransferRequestBuilder;
 import org.italiangrid.storm.webdav.tpc.transfer.TransferClient;
-import org.italiangrid.storm.webdav.tpc.transfer.TransferRequest;
 import org.italiangrid.storm.webdav.tpc.transfer.TransferStatus;
 import org.italiangrid.storm.webdav.tpc.transfer.error.ChecksumVerificationError;
 import org.italiangrid.storm.webdav.tpc.transfer.error.TransferError;
@@ -51,6 +51,8 @@ public class TransferFilter extends TransferFilterSupport implements Filter {
 
   public static final String XFER_ID_KEY = "tpc.xferId";
 
+  public static final String TRANSFER_REQUEST_ATTRIBUTE_NAME = "storm.tpc.transferRequest";
+
   public static final Logger LOG = LoggerFactory.getLogger(TransferFilter.class);
 
   final TransferClient client;
@@ -117,10 +119,10 @@ public class TransferFilter extends TransferFilterSupport implements Filter {
   }
 
 
-  protected void reportProgress(TransferRequest request, TransferStatus s, HttpServletResponse r) {
+  protected void reportProgress(PerfMarkerWriter markerWriter, TransferStatus s,
+      HttpServletResponse r) {
     try {
-      r.getWriter().write(s.asPerfMarker());
-      r.getWriter().flush();
+      markerWriter.write(s, r.getWriter());
     } catch (IOException e) {
       LOG.warn("I/O error writing perf marker: {}. Swallowing it", e.getMessage(), e);
     }
@@ -177,12 +179,14 @@ public class TransferFilter extends TransferFilterSupport implements Filter {
       .overwrite(overwriteRequested(request))
       .build();
 
+    request.setAttribute(TRANSFER_REQUEST_ATTRIBUTE_NAME, xferRequest);
     logTransferStart(xferRequest);
 
     try {
 
+      PerfMarkerWriter markerWriter = new PerfMarkerWriter();
       response.setStatus(SC_ACCEPTED);
-      client.handle(xferRequest, (r, s) -> reportProgress(xferRequest, s, response));
+      client.handle(xferRequest, (r, s) -> reportProgress(markerWriter, s, response));
 
     } catch (ChecksumVerificationError e) {
       logTransferException(e);
@@ -215,12 +219,14 @@ public class TransferFilter extends TransferFilterSupport implements Filter {
       .overwrite(overwriteRequested(request))
       .build();
 
+    request.setAttribute(TRANSFER_REQUEST_ATTRIBUTE_NAME, xferRequest);
     logTransferStart(xferRequest);
 
     try {
 
+      PerfMarkerWriter markerWriter = new PerfMarkerWriter();
       response.setStatus(SC_ACCEPTED);
-      client.handle(xferRequest, (r, s) -> reportProgress(xferRequest, s, response));
+      client.handle(xferRequest, (r, s) -> reportProgress(markerWriter, s, response));
 
     } catch (ChecksumVerificationError e) {
       logTransferException(e);
@@ -36,6 +36,7 @@ import javax.servlet.http.HttpServletResponse;
 import org.apache.http.client.ClientProtocolException;
 import org.apache.http.client.HttpResponseException;
 import org.italiangrid.storm.webdav.server.PathResolver;
+import org.italiangrid.storm.webdav.server.ResolvedResource;
 import org.italiangrid.storm.webdav.tpc.transfer.TransferRequest;
 import org.italiangrid.storm.webdav.tpc.transfer.error.ChecksumVerificationError;
 import org.italiangrid.storm.webdav.tpc.transfer.error.TransferError;
@@ -66,6 +67,16 @@ public class TransferFilterSupport implements TransferConstants {
     return Paths.get(request.getServletPath(), request.getPathInfo()).toString();
   }
 
+  protected boolean localPathExists(HttpServletRequest request, String localPath) {
+    ResolvedResource resource = ResolvedResource.fromRequest(request);
+
+    if (!isNull(resource) && resource.matches(localPath)) {
+      return resource.exists();
+    }
+
+    return resolver.pathExists(localPath);
+  }
+
   protected boolean hasRemoteSourceOrDestinationHeader(HttpServletRequest request) {
 
     Optional<String> source = Optional.ofNullable(request.getHeader(SOURCE_HEADER));
@@ -192,7 +203,7 @@ public class TransferFilterSupport implements TransferConstants {
 
     Path localPath = Paths.get(servletPath, pathInfo.get());
 
-    if (!resolver.pathExists(localPath.toString())) {
+    if (!localPathExists(request, localPath.toString())) {
       notFound(response, "Local source path not found: " + localPath.toString());
       return false;
     }
@@ -222,7 +233,7 @@ public class TransferFilterSupport implements TransferConstants {
     Path localPath = Paths.get(servletPath, pathInfo.get());
     final boolean overwriteRequested = overwriteRequested(request);
 
-    if (!overwriteRequested && resolver.pathExists(localPath.toString())) {
+    if (!overwriteRequested && localPathExists(request, localPath.toString())) {
       preconditionFailed(response, "Target file exists and Overwrite is false");
       return false;
     }
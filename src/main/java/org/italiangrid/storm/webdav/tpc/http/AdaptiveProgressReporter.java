@@ -0,0 +1,134 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare, 2018.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.italiangrid.storm.webdav.tpc.http;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static org.italiangrid.storm.webdav.tpc.transfer.TransferStatus.inProgress;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import org.italiangrid.storm.webdav.tpc.transfer.TransferStatus;
+import org.italiangrid.storm.webdav.tpc.utils.Countable;
+
+/**
+ * Periodically reports the progress of a transfer. When adaptive, the delay between reports
+ * doubles while the transfer makes progress (up to a maximum), and goes back to the minimum
+ * delay as soon as the transfer stalls.
+ */
+public class AdaptiveProgressReporter implements Runnable {
+
+  final ScheduledExecutorService executorService;
+  final Countable counter;
+  final Consumer<TransferStatus> callback;
+  final long minDelayMsec;
+  final long maxDelayMsec;
+  final boolean adaptive;
+  final long expectedSize;
+
+  private long lastCount = 0;
+  private long lastReportMsec;
+  private long currentDelayMsec;
+
+  private boolean cancelled = false;
+  private ScheduledFuture<?> future;
+
+  public AdaptiveProgressReporter(ScheduledExecutorService es, Countable counter,
+      Consumer<TransferStatus> callback, long minDelayMsec, long maxDelayMsec, boolean adaptive,
+      long expectedSize) {
+    checkNotNull(es);
+    checkNotNull(counter);
+    checkNotNull(callback);
+    checkArgument(minDelayMsec > 0, "minDelayMsec must be > 0");
+    checkArgument(maxDelayMsec >= minDelayMsec, "maxDelayMsec must be >= minDelayMsec");
+
+    this.executorService = es;
+    this.counter = counter;
+    this.callback = callback;
+    this.minDelayMsec = minDelayMsec;
+    this.maxDelayMsec = maxDelayMsec;
+    this.adaptive = adaptive;
+    this.expectedSize = expectedSize;
+  }
+
+  public synchronized void start(boolean reportStart) {
+    lastReportMsec = System.currentTimeMillis();
+    currentDelayMsec = minDelayMsec;
+
+    if (reportStart) {
+      callback.accept(inProgress(0, 0));
+    }
+
+    schedule();
+  }
+
+  public synchronized void cancel() {
+    cancelled = true;
+    if (future != null) {
+      future.cancel(false);
+    }
+  }
+
+  @Override
+  public synchronized void run() {
+    if (cancelled) {
+      return;
+    }
+
+    final long now = System.currentTimeMillis();
+    final long count = counter.getCount();
+    final long elapsedMsec = Math.max(1, now - lastReportMsec);
+    final long rate = ((count - lastCount) * 1000) / elapsedMsec;
+
+    callback.accept(inProgress(count, rate));
+
+    lastCount = count;
+    lastReportMsec = now;
+    currentDelayMsec = nextDelayMsec(count, rate);
+
+    schedule();
+  }
+
+  long nextDelayMsec(long count, long rate) {
+    if (!adaptive || rate <= 0) {
+      return minDelayMsec;
+    }
+
+    long delay = Math.min(currentDelayMsec * 2, maxDelayMsec);
+
+    if (expectedSize > 0 && count < expectedSize) {
+      // Do not sleep past the expected end of the transfer, so that the last marker
+      // is close to the final byte count
+      final long remainingMsec = ((expectedSize - count) * 1000) / rate;
+      delay = Math.max(minDelayMsec, Math.min(delay, remainingMsec));
+    }
+
+    return delay;
+  }
+
+  private void schedule() {
+    if (!cancelled) {
+      future = executorService.schedule(this, currentDelayMsec, TimeUnit.MILLISECONDS);
+    }
+  }
+
+  public synchronized long getCurrentDelayMsec() {
+    return currentDelayMsec;
+  }
+}
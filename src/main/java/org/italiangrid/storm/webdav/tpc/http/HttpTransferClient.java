@@ -19,7 +19,6 @@ import static com.google.common.base.Preconditions.checkNotNull;
 import static java.lang.String.format;
 import static org.italiangrid.storm.webdav.tpc.transfer.TransferStatus.done;
 import static org.italiangrid.storm.webdav.tpc.transfer.TransferStatus.error;
-import static org.italiangrid.storm.webdav.tpc.transfer.TransferStatus.inProgress;
 
 import java.io.BufferedOutputStream;
 import java.io.File;
@@ -30,26 +29,30 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.Map;
 import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 
 import org.apache.http.HttpEntity;
+import org.apache.http.HttpInetConnection;
 import org.apache.http.client.ClientProtocolException;
 import org.apache.http.client.HttpResponseException;
 import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpHead;
 import org.apache.http.client.methods.HttpPut;
+import org.apache.http.client.protocol.HttpClientContext;
 import org.apache.http.impl.client.CloseableHttpClient;
 import org.italiangrid.storm.webdav.fs.attrs.ExtendedAttributesHelper;
 import org.italiangrid.storm.webdav.server.PathResolver;
+import org.italiangrid.storm.webdav.server.tracing.Span;
 import org.italiangrid.storm.webdav.tpc.transfer.GetTransferRequest;
+import org.italiangrid.storm.webdav.tpc.transfer.PerfMarkerWriter;
 import org.italiangrid.storm.webdav.tpc.transfer.PutTransferRequest;
 import org.italiangrid.storm.webdav.tpc.transfer.TransferClient;
 import org.italiangrid.storm.webdav.tpc.transfer.TransferRequest;
 import org.italiangrid.storm.webdav.tpc.transfer.TransferStatus;
 import org.italiangrid.storm.webdav.tpc.transfer.TransferStatusCallback;
 import org.italiangrid.storm.webdav.tpc.transfer.error.TransferError;
+import org.italiangrid.storm.webdav.tpc.utils.Countable;
 import org.italiangrid.storm.webdav.tpc.utils.CountingFileEntity;
 import org.italiangrid.storm.webdav.tpc.utils.StormCountingOutputStream;
 import org.slf4j.Logger;
@@ -70,6 +73,9 @@ public class HttpTransferClient implements TransferClient, DisposableBean {
   final CloseableHttpClient httpClient;
   final ScheduledExecutorService executorService;
   final int reportDelaySec;
+  final int maxReportDelaySec;
+  final boolean adaptiveReportDelay;
+  final boolean suppressSubSecondPerfMarkers;
   final int localFileBufferSize;
 
   private void reportStatus(TransferStatusCallback cb, TransferRequest req, TransferStatus s) {
@@ -77,19 +83,70 @@ public class HttpTransferClient implements TransferClient, DisposableBean {
     cb.reportStatus(req, s);
   }
 
+  private static void endSpan(Span span, TransferRequest req, long byteCount) {
+    span.setAttribute("http.url", req.remoteURI().toString())
+      .setAttribute("storm.tpc.bytes", byteCount)
+      .setError(req.lastTransferStatus()
+        .map(s -> s.getStatus() == TransferStatus.Status.ERROR)
+        .orElse(false))
+      .close();
+  }
+
   @Autowired
   public HttpTransferClient(CloseableHttpClient client, PathResolver pr,
       ExtendedAttributesHelper ah, ScheduledExecutorService es,
       @Value("${tpc.reportDelaySecs}") int reportDelaySeconds,
+      @Value("${tpc.maxReportDelaySecs:10}") int maxReportDelaySeconds,
+      @Value("${tpc.adaptiveReportDelay:true}") boolean adaptiveReportDelay,
+      @Value("${tpc.suppressSubSecondPerfMarkers:true}") boolean suppressSubSecondPerfMarkers,
       @Value("${tpc.localFileBufferSize}") int lfbs) {
     httpClient = client;
     resolver = pr;
     attributesHelper = ah;
     executorService = es;
     reportDelaySec = reportDelaySeconds;
+    maxReportDelaySec = Math.max(reportDelaySeconds, maxReportDelaySeconds);
+    this.adaptiveReportDelay = adaptiveReportDelay;
+    this.suppressSubSecondPerfMarkers = suppressSubSecondPerfMarkers;
     localFileBufferSize = lfbs;
   }
 
+  public HttpTransferClient(CloseableHttpClient client, PathResolver pr,
+      ExtendedAttributesHelper ah, ScheduledExecutorService es, int reportDelaySeconds,
+      int lfbs) {
+    this(client, pr, ah, es, reportDelaySeconds, reportDelaySeconds, false, true, lfbs);
+  }
+
+
+  /**
+   * Returns the address of the peer the transfer connection is established to, or null when there
+   * is no connection yet (or it has already been released).
+   */
+  static String remoteConnections(HttpClientContext context) {
+    try {
+      HttpInetConnection conn = context.getConnection(HttpInetConnection.class);
+      if (conn == null || !conn.isOpen()) {
+        return null;
+      }
+      return PerfMarkerWriter.remoteConnectionsString(conn.getRemoteAddress(),
+          conn.getRemotePort());
+    } catch (RuntimeException e) {
+      // The pooled connection proxy throws when it has been detached from its connection
+      return null;
+    }
+  }
+
+  AdaptiveProgressReporter startProgressReporter(TransferStatusCallback cb,
+      TransferRequest request, Countable counter, long expectedSize, HttpClientContext context) {
+
+    AdaptiveProgressReporter reporter = new AdaptiveProgressReporter(executorService, counter,
+        s -> reportStatus(cb, request, s.withRemoteConnections(remoteConnections(context))),
+        TimeUnit.SECONDS.toMillis(reportDelaySec),
+        TimeUnit.SECONDS.toMillis(maxReportDelaySec), adaptiveReportDelay, expectedSize);
+
+    reporter.start(!suppressSubSecondPerfMarkers);
+    return reporter;
+  }
 
   @Override
   public void destroy() throws Exception {
@@ -154,16 +211,17 @@ public class HttpTransferClient implements TransferClient, DisposableBean {
     StormCountingOutputStream os = prepareOutputStream(resolver.resolvePath(request.path()));
     HttpGet get = prepareRequest(request);
 
-    ScheduledFuture<?> reportTask = executorService.scheduleAtFixedRate(() -> {
-      reportStatus(cb, request, inProgress(os.getCount()));
-    }, reportDelaySec, reportDelaySec, TimeUnit.SECONDS);
+    HttpClientContext context = HttpClientContext.create();
+    AdaptiveProgressReporter reportTask = startProgressReporter(cb, request, os, -1, context);
+    Span span = Span.start("tpc.pull", Span.Kind.CLIENT);
 
     try {
 
       httpClient.execute(get,
-          new GetResponseHandler(request, os, attributesHelper, MDC.getCopyOfContextMap()));
+          new GetResponseHandler(request, os, attributesHelper, MDC.getCopyOfContextMap()),
+          context);
 
-      reportTask.cancel(true);
+      reportTask.cancel();
       reportStatus(cb, request, done(os.getCount()));
 
     } catch (HttpResponseException e) {
@@ -181,9 +239,8 @@ public class HttpTransferClient implements TransferClient, DisposableBean {
       reportStatus(cb, request, error(format("%s while fetching %s: %s",
           e.getClass().getSimpleName(), request.remoteURI().toString(), e.getMessage())));
     } finally {
-      if (!reportTask.isCancelled()) {
-        reportTask.cancel(true);
-      }
+      reportTask.cancel();
+      endSpan(span, request, os.getCount());
     }
   }
 
@@ -193,7 +250,11 @@ public class HttpTransferClient implements TransferClient, DisposableBean {
       for (Map.Entry<String, String> h : request.transferHeaders().entries()) {
         head.addHeader(h.getKey(), h.getValue());
       }
-      CloseableHttpResponse response = httpClient.execute(head);
+      CloseableHttpResponse response;
+      try (Span span = Span.start("tpc.push.head", Span.Kind.CLIENT)) {
+        response = httpClient.execute(head);
+        span.setAttribute("http.status_code", response.getStatusLine().getStatusCode());
+      }
       if (response.getStatusLine().getStatusCode() == 200) {
         throw new TransferError("Remote file exists and overwrite is false");
       } else if (response.getStatusLine().getStatusCode() != 404) {
@@ -218,14 +279,15 @@ public class HttpTransferClient implements TransferClient, DisposableBean {
           error(format("Error pushing %s: %s", request.remoteURI().toString(), e.getMessage())));
     }
 
-    ScheduledFuture<?> reportTask = executorService.scheduleAtFixedRate(
-        () -> reportStatus(cb, request, inProgress(cfe.getCount())), reportDelaySec, reportDelaySec,
-        TimeUnit.SECONDS);
+    HttpClientContext context = HttpClientContext.create();
+    AdaptiveProgressReporter reportTask =
+        startProgressReporter(cb, request, cfe, cfe.getContentLength(), context);
+    Span span = Span.start("tpc.push", Span.Kind.CLIENT);
 
     try {
       checkOverwrite(request);
-      httpClient.execute(put, new PutResponseHandler(MDC.getCopyOfContextMap()));
-      reportTask.cancel(true);
+      httpClient.execute(put, new PutResponseHandler(MDC.getCopyOfContextMap()), context);
+      reportTask.cancel();
       reportStatus(cb, request, done(cfe.getCount()));
     } catch (HttpResponseException e) {
       logException(e);
@@ -240,9 +302,8 @@ public class HttpTransferClient implements TransferClient, DisposableBean {
       reportStatus(cb, request, error(format("%s while pushing %s: %s",
           e.getClass().getSimpleName(), request.remoteURI().toString(), e.getMessage())));
     } finally {
-      if (!reportTask.isCancelled()) {
-        reportTask.cancel(true);
-      }
+      reportTask.cancel();
+      endSpan(span, request, cfe.getCount());
     }
   }
 
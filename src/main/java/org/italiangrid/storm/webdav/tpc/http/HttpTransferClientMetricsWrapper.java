@@ -21,24 +21,45 @@ import org.apache.http.client.ClientProtocolException;
 import org.italiangrid.storm.webdav.tpc.transfer.GetTransferRequest;
 import org.italiangrid.storm.webdav.tpc.transfer.PutTransferRequest;
 import org.italiangrid.storm.webdav.tpc.transfer.TransferClient;
+import org.italiangrid.storm.webdav.tpc.transfer.TransferRequest;
 import org.italiangrid.storm.webdav.tpc.transfer.TransferStatusCallback;
 
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Meter;
 import com.codahale.metrics.MetricRegistry;
 import com.codahale.metrics.Timer;
 
 public class HttpTransferClientMetricsWrapper implements TransferClient {
 
+  public static final String ACTIVE_TRANSFERS_METRIC_NAME = name(TransferClient.class, "active");
+  public static final String PULL_METRIC_NAME = name(TransferClient.class, "pull");
+  public static final String PUSH_METRIC_NAME = name(TransferClient.class, "push");
+  public static final String PULL_BYTES_METRIC_NAME = name(PULL_METRIC_NAME, "bytes");
+  public static final String PUSH_BYTES_METRIC_NAME = name(PUSH_METRIC_NAME, "bytes");
+
   final MetricRegistry registry;
   final TransferClient delegate;
 
   final Timer pullTimer;
   final Timer pushTimer;
+  final Meter pullBytes;
+  final Meter pushBytes;
+  final Counter activeTransfers;
   
   public HttpTransferClientMetricsWrapper(MetricRegistry registry, TransferClient delegate) {
     this.registry = registry;
     this.delegate = delegate;
-    pullTimer = registry.timer(name(TransferClient.class, "pull"));
-    pushTimer = registry.timer(name(TransferClient.class, "push"));
+    pullTimer = registry.timer(PULL_METRIC_NAME);
+    pushTimer = registry.timer(PUSH_METRIC_NAME);
+    pullBytes = registry.meter(PULL_BYTES_METRIC_NAME);
+    pushBytes = registry.meter(PUSH_BYTES_METRIC_NAME);
+    activeTransfers = registry.counter(ACTIVE_TRANSFERS_METRIC_NAME);
+  }
+
+  private static void markTransferredBytes(Meter meter, TransferRequest request) {
+    if (request.lastTransferStatus().isPresent()) {
+      meter.mark(Math.max(0, request.lastTransferStatus().get().getTransferByteCount()));
+    }
   }
 
  
@@ -48,11 +69,14 @@ public class HttpTransferClientMetricsWrapper implements TransferClient {
       throws ClientProtocolException {
 
     final Timer.Context context = pullTimer.time();
+    activeTransfers.inc();
 
     try {
       delegate.handle(request, status);
     } finally {
       context.stop();
+      activeTransfers.dec();
+      markTransferredBytes(pullBytes, request);
     }
 
   }
@@ -62,11 +86,14 @@ public class HttpTransferClientMetricsWrapper implements TransferClient {
       throws ClientProtocolException {
 
     final Timer.Context context = pushTimer.time();
-    
+    activeTransfers.inc();
+
     try {
       delegate.handle(request, status);
     } finally {
       context.stop();
+      activeTransfers.dec();
+      markTransferredBytes(pushBytes, request);
     }
   }
 
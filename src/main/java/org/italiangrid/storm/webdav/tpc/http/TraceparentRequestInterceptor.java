@@ -0,0 +1,45 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare, 2018.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.italiangrid.storm.webdav.tpc.http;
+
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpRequestInterceptor;
+import org.apache.http.protocol.HttpContext;
+import org.italiangrid.storm.webdav.server.tracing.Span;
+import org.italiangrid.storm.webdav.server.tracing.Tracer;
+
+/**
+ * Propagates the current trace to the remote endpoint of a third-party transfer, with the W3C
+ * <code>traceparent</code> header.
+ */
+public class TraceparentRequestInterceptor implements HttpRequestInterceptor {
+
+  public static final TraceparentRequestInterceptor INSTANCE =
+      new TraceparentRequestInterceptor();
+
+  private TraceparentRequestInterceptor() {
+    // empty ctor
+  }
+
+  @Override
+  public void process(HttpRequest request, HttpContext context) {
+    String traceparent = Span.current().traceparent();
+
+    if (traceparent != null) {
+      request.setHeader(Tracer.TRACEPARENT_HEADER, traceparent);
+    }
+  }
+}
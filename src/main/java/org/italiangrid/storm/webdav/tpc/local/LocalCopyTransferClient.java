@@ -0,0 +1,184 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare, 2018.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.italiangrid.storm.webdav.tpc.local;
+
+import static java.lang.String.format;
+import static org.italiangrid.storm.webdav.tpc.transfer.TransferStatus.done;
+import static org.italiangrid.storm.webdav.tpc.transfer.TransferStatus.error;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Optional;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.http.client.ClientProtocolException;
+import org.italiangrid.storm.webdav.config.ThirdPartyCopyProperties;
+import org.italiangrid.storm.webdav.fs.LocalCopyEngine;
+import org.italiangrid.storm.webdav.server.PathResolver;
+import org.italiangrid.storm.webdav.tpc.LocalCopyURLService;
+import org.italiangrid.storm.webdav.tpc.http.AdaptiveProgressReporter;
+import org.italiangrid.storm.webdav.tpc.transfer.GetTransferRequest;
+import org.italiangrid.storm.webdav.tpc.transfer.PutTransferRequest;
+import org.italiangrid.storm.webdav.tpc.transfer.TransferClient;
+import org.italiangrid.storm.webdav.tpc.transfer.TransferRequest;
+import org.italiangrid.storm.webdav.tpc.transfer.TransferStatus;
+import org.italiangrid.storm.webdav.tpc.transfer.TransferStatusCallback;
+import org.italiangrid.storm.webdav.tpc.transfer.error.TransferError;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpMethod;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+/**
+ * A {@link TransferClient} that serves transfers whose remote endpoint resolves to a locally
+ * mounted storage area with a server-side file copy, and delegates all other transfers.
+ *
+ * The local side of the transfer has already been authorized with the TPC request, while the
+ * remote side would be authorized by the peer. Before copying, the remote path is authorized
+ * locally for the principal of the TPC request: read access for a pull, write access for a push.
+ * When access is not granted the transfer is delegated, and the peer decides.
+ */
+public class LocalCopyTransferClient implements TransferClient {
+
+  public static final Logger LOG = LoggerFactory.getLogger(LocalCopyTransferClient.class);
+
+  @FunctionalInterface
+  public interface PathAuthorizer {
+    boolean isAllowed(Authentication authentication, String path, String method);
+  }
+
+  final TransferClient delegate;
+  final LocalCopyURLService urlService;
+  final PathResolver resolver;
+  final LocalCopyEngine copyEngine;
+  final ScheduledExecutorService executorService;
+  final ThirdPartyCopyProperties props;
+  final PathAuthorizer authorizer;
+
+  public LocalCopyTransferClient(TransferClient delegate, LocalCopyURLService urlService,
+      PathAuthorizer authorizer, PathResolver resolver, LocalCopyEngine copyEngine,
+      ScheduledExecutorService es, ThirdPartyCopyProperties props) {
+    this.delegate = delegate;
+    this.urlService = urlService;
+    this.authorizer = authorizer;
+    this.resolver = resolver;
+    this.copyEngine = copyEngine;
+    this.executorService = es;
+    this.props = props;
+  }
+
+  private void reportStatus(TransferStatusCallback cb, TransferRequest req, TransferStatus s) {
+    req.setTransferStatus(s);
+    cb.reportStatus(req, s);
+  }
+
+  private boolean remoteAccessAllowed(TransferRequest request, HttpMethod method) {
+    final Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+    final String path = request.remoteURI().getPath();
+
+    if (authorizer.isAllowed(authentication, path, method.name())) {
+      return true;
+    }
+
+    LOG.debug("Local {} access to {} not granted for transfer {}, using HTTP", method, path,
+        request.uuid());
+    return false;
+  }
+
+  @Override
+  public void handle(GetTransferRequest request, TransferStatusCallback cb)
+      throws ClientProtocolException {
+
+    Optional<String> source = urlService.resolveLocalPath(request.remoteURI());
+
+    if (!source.isPresent() || !remoteAccessAllowed(request, HttpMethod.GET)) {
+      delegate.handle(request, cb);
+      return;
+    }
+
+    Path destination = Paths.get(resolver.resolvePath(request.path()));
+    localCopy(request, cb, Paths.get(source.get()), destination);
+  }
+
+  @Override
+  public void handle(PutTransferRequest request, TransferStatusCallback cb)
+      throws ClientProtocolException {
+
+    Optional<String> destination = urlService.resolveLocalPath(request.remoteURI());
+
+    if (!destination.isPresent() || !remoteAccessAllowed(request, HttpMethod.PUT)) {
+      delegate.handle(request, cb);
+      return;
+    }
+
+    Path destinationPath = Paths.get(destination.get());
+
+    if (!request.overwrite() && Files.exists(destinationPath)) {
+      reportStatus(cb, request, error("Remote file exists and overwrite is false"));
+      return;
+    }
+
+    localCopy(request, cb, Paths.get(resolver.resolvePath(request.path())), destinationPath);
+  }
+
+  protected void localCopy(TransferRequest request, TransferStatusCallback cb, Path source,
+      Path destination) {
+
+    LOG.debug("Serving transfer {} with a local copy: {} -> {}", request.uuid(), source,
+        destination);
+
+    AtomicLong copiedBytes = new AtomicLong();
+
+    final long minDelayMsec = TimeUnit.SECONDS.toMillis(props.getReportDelaySecs());
+    final long maxDelayMsec =
+        Math.max(minDelayMsec, TimeUnit.SECONDS.toMillis(props.getMaxReportDelaySecs()));
+
+    AdaptiveProgressReporter reportTask = new AdaptiveProgressReporter(executorService,
+        copiedBytes::get, s -> reportStatus(cb, request, s), minDelayMsec, maxDelayMsec,
+        props.isAdaptiveReportDelay(), source.toFile().length());
+
+    try {
+
+      if (!Files.isRegularFile(source)) {
+        throw new TransferError(format("Local copy source is not a regular file: %s", source));
+      }
+
+      if (Files.exists(destination) && Files.isSameFile(source, destination)) {
+        throw new TransferError("Source and destination resolve to the same file");
+      }
+
+      reportTask.start(!props.isSuppressSubSecondPerfMarkers());
+
+      copyEngine.copyFile(source, destination, copiedBytes::set);
+
+      reportTask.cancel();
+      reportStatus(cb, request, done(copiedBytes.get()));
+
+    } catch (Throwable e) {
+      if (LOG.isDebugEnabled()) {
+        LOG.error(e.getMessage(), e);
+      }
+      reportStatus(cb, request, error(format("%s during local copy for %s: %s",
+          e.getClass().getSimpleName(), request.remoteURI().toString(), e.getMessage())));
+    } finally {
+      reportTask.cancel();
+    }
+  }
+}
@@ -0,0 +1,98 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare, 2018.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.italiangrid.storm.webdav.tpc.transfer;
+
+import static org.italiangrid.storm.webdav.tpc.transfer.TransferStatus.Status.DONE;
+import static org.italiangrid.storm.webdav.tpc.transfer.TransferStatus.Status.ERROR;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.net.Inet6Address;
+import java.net.InetAddress;
+
+/**
+ * Renders transfer status reports as perf markers. An instance is meant to be used for a single
+ * transfer, and reuses its buffers across reports.
+ */
+public class PerfMarkerWriter {
+
+  public static final int DEFAULT_STRIPE_INDEX = 0;
+  public static final int DEFAULT_STRIPE_COUNT = 1;
+
+  private final StringBuilder builder = new StringBuilder(256);
+
+  private char[] buffer = new char[256];
+
+  public synchronized void write(TransferStatus status, Writer w) throws IOException {
+    builder.setLength(0);
+    appendPerfMarker(builder, status);
+
+    final int len = builder.length();
+    if (buffer.length < len) {
+      buffer = new char[len];
+    }
+
+    builder.getChars(0, len, buffer, 0);
+    w.write(buffer, 0, len);
+    w.flush();
+  }
+
+  /**
+   * Formats a peer address in the tcp:&lt;ip&gt;:&lt;port&gt; form used by the RemoteConnections
+   * perf marker field. IPv6 addresses are enclosed in brackets.
+   */
+  public static String remoteConnectionsString(InetAddress address, int port) {
+    if (address == null || port <= 0) {
+      return null;
+    }
+
+    StringBuilder builder = new StringBuilder().append("tcp:");
+
+    if (address instanceof Inet6Address) {
+      builder.append('[').append(address.getHostAddress()).append(']');
+    } else {
+      builder.append(address.getHostAddress());
+    }
+
+    return builder.append(':').append(port).toString();
+  }
+
+  public static void appendPerfMarker(StringBuilder builder, TransferStatus status) {
+
+    if (status.getStatus() == DONE) {
+      builder.append("success: Created");
+    } else if (status.getStatus() == ERROR) {
+      builder.append("failure: ").append(status.getErrorMessage().orElse(""));
+    } else {
+      builder.append("Perf Marker\n");
+      builder.append("Timestamp: ").append(status.epochSecond()).append('\n');
+      builder.append("Stripe Index: ").append(DEFAULT_STRIPE_INDEX).append('\n');
+      builder.append("Stripe Bytes Transferred: ")
+        .append(status.getTransferByteCount())
+        .append('\n');
+      if (status.getInstantaneousRate() >= 0) {
+        builder.append("Stripe Transfer Rate: ").append(status.getInstantaneousRate()).append('\n');
+      }
+      builder.append("Total Stripe Count: ").append(DEFAULT_STRIPE_COUNT).append('\n');
+      if (status.getRemoteConnections().isPresent()) {
+        builder.append("RemoteConnections: ")
+          .append(status.getRemoteConnections().get())
+          .append('\n');
+      }
+      builder.append("End\n");
+    }
+  }
+}
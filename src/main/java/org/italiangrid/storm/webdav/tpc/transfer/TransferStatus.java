@@ -15,11 +15,6 @@
  */
 package org.italiangrid.storm.webdav.tpc.transfer;
 
-import static java.lang.String.format;
-import static org.italiangrid.storm.webdav.tpc.transfer.TransferStatus.Status.DONE;
-import static org.italiangrid.storm.webdav.tpc.transfer.TransferStatus.Status.ERROR;
-
-import java.time.Instant;
 import java.util.Optional;
 
 public class TransferStatus {
@@ -32,21 +27,36 @@ public class TransferStatus {
 
   final Status status;
   final long transferByteCount;
+  final long instantaneousRate;
   final Optional<String> errorMessage;
   final long epochSecond;
+  final Optional<String> remoteConnections;
 
-  private TransferStatus(Status s, long bc) {
+  private TransferStatus(Status s, long bc, long rate) {
     this.status = s;
     this.transferByteCount = bc;
+    this.instantaneousRate = rate;
     this.errorMessage = Optional.empty();
-    this.epochSecond = Instant.now().getEpochSecond();
+    this.epochSecond = System.currentTimeMillis() / 1000;
+    this.remoteConnections = Optional.empty();
+  }
+
+  private TransferStatus(TransferStatus other, String remoteConnections) {
+    this.status = other.status;
+    this.transferByteCount = other.transferByteCount;
+    this.instantaneousRate = other.instantaneousRate;
+    this.errorMessage = other.errorMessage;
+    this.epochSecond = other.epochSecond;
+    this.remoteConnections = Optional.ofNullable(remoteConnections);
   }
 
   private TransferStatus(String errorMessage) {
     this.status = Status.ERROR;
     this.transferByteCount = 0;
+    this.instantaneousRate = -1;
     this.errorMessage = Optional.of(errorMessage);
-    this.epochSecond = Instant.now().getEpochSecond();
+    this.epochSecond = System.currentTimeMillis() / 1000;
+    this.remoteConnections = Optional.empty();
   }
 
 
@@ -60,16 +70,40 @@ public class TransferStatus {
   }
 
 
+  /**
+   * @return the transfer rate (bytes/sec) measured since the previous status report, or -1 if
+   *         unknown
+   */
+  public long getInstantaneousRate() {
+    return instantaneousRate;
+  }
+
   public Optional<String> getErrorMessage() {
     return errorMessage;
   }
 
+  /**
+   * @return the connection to the remote endpoint, in the tcp:&lt;ip&gt;:&lt;port&gt; form expected
+   *         by perf marker consumers, if known
+   */
+  public Optional<String> getRemoteConnections() {
+    return remoteConnections;
+  }
+
+  public TransferStatus withRemoteConnections(String remoteConnections) {
+    return new TransferStatus(this, remoteConnections);
+  }
+
   public static TransferStatus inProgress(long byteCount) {
-    return new TransferStatus(Status.STARTED, byteCount);
+    return new TransferStatus(Status.STARTED, byteCount, -1);
+  }
+
+  public static TransferStatus inProgress(long byteCount, long instantaneousRate) {
+    return new TransferStatus(Status.STARTED, byteCount, instantaneousRate);
   }
 
   public static TransferStatus done(long byteCount) {
-    return new TransferStatus(Status.DONE, byteCount);
+    return new TransferStatus(Status.DONE, byteCount, -1);
   }
 
   public static TransferStatus error(String errorMessage) {
@@ -79,20 +113,7 @@ public class TransferStatus {
   public String asPerfMarker() {
 
     StringBuilder builder = new StringBuilder();
-
-    if (status == DONE) {
-      builder.append("success: Created");
-    } else if (status == ERROR) {
-      builder.append(String.format("failure: %s", getErrorMessage().orElse("")));
-    } else {
-      builder.append("Perf Marker\n");
-      builder.append(format("Timestamp: %d\n", epochSecond));
-      builder.append("Stripe Index: 0\n");
-      builder.append(format("Stripe Bytes Transferred: %d\n", getTransferByteCount()));
-      builder.append("Total Stripe Count: 1\n");
-      builder.append("End\n");
-    }
-
+    PerfMarkerWriter.appendPerfMarker(builder, this);
     return builder.toString();
   }
   
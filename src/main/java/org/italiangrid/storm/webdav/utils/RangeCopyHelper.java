@@ -17,6 +17,8 @@ package org.italiangrid.storm.webdav.utils;
 
 import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
+import static java.util.Objects.isNull;
+import static org.italiangrid.storm.webdav.fs.SyscallTimers.Syscall.OPEN;
 
 import java.io.File;
 import java.io.IOException;
@@ -26,9 +28,30 @@ import java.nio.channels.Channels;
 import java.nio.channels.FileChannel;
 import java.nio.channels.ReadableByteChannel;
 
+import org.italiangrid.storm.webdav.fs.SyscallTimers;
+
 public class RangeCopyHelper {
 
   public static long rangeCopy(InputStream is, File f, long rangeStart, long rangeCount) throws IOException {
+    return rangeCopy(is, f, rangeStart, rangeCount, null);
+  }
+
+  private static RandomAccessFile open(File f, SyscallTimers syscallTimers) throws IOException {
+    final long start = System.nanoTime();
+    try {
+      return new RandomAccessFile(f, "rw");
+    } finally {
+      if (!isNull(syscallTimers)) {
+        syscallTimers.record(OPEN, start);
+      }
+    }
+  }
+
+  /**
+   * @param syscallTimers the timers the file open is recorded to, or null
+   */
+  public static long rangeCopy(InputStream is, File f, long rangeStart, long rangeCount,
+      SyscallTimers syscallTimers) throws IOException {
 
     checkNotNull(is);
     checkNotNull(f);
@@ -37,7 +60,7 @@ public class RangeCopyHelper {
 
     ReadableByteChannel src = Channels.newChannel(is);
     
-    try (RandomAccessFile raf = new RandomAccessFile(f, "rw")) {
+    try (RandomAccessFile raf = open(f, syscallTimers)) {
       
       FileChannel fc = raf.getChannel();
       
@@ -0,0 +1,83 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare, 2018.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.italiangrid.storm.webdav.test.authz;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.italiangrid.storm.webdav.authz.AuthoritiesCache;
+import org.italiangrid.storm.webdav.authz.SAPermission;
+import org.italiangrid.storm.webdav.authz.VOMSVOMapAuthority;
+import org.junit.Test;
+import org.springframework.security.core.GrantedAuthority;
+
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Sets;
+
+public class AuthoritiesCacheTest {
+
+  AuthoritiesCache cache = new AuthoritiesCache(new MetricRegistry(), 10);
+
+  AtomicInteger loads = new AtomicInteger();
+
+  private Set<GrantedAuthority> load() {
+    loads.incrementAndGet();
+    return Sets.newHashSet(SAPermission.canRead("test"), new VOMSVOMapAuthority("test.vo"));
+  }
+
+  @Test
+  public void testAuthoritiesAreComputedOncePerCredential() {
+    Set<GrantedAuthority> first = cache.get(ImmutableList.of("voms", "vo:test.vo"), this::load);
+    Set<GrantedAuthority> second = cache.get(ImmutableList.of("voms", "vo:test.vo"), this::load);
+
+    assertThat(second, sameInstance(first));
+    assertThat(first.size(), is(2));
+    assertThat(loads.get(), is(1));
+
+    cache.get(ImmutableList.of("voms", "vo:other.vo"), this::load);
+    assertThat(loads.get(), is(2));
+  }
+
+  @Test
+  public void testInvalidateAllForcesRecomputation() {
+    cache.get("key", this::load);
+    cache.invalidateAll();
+    cache.get("key", this::load);
+
+    assertThat(loads.get(), is(2));
+  }
+
+  @Test(expected = UnsupportedOperationException.class)
+  public void testCachedAuthoritiesAreImmutable() {
+    cache.get("key", this::load).add(SAPermission.canWrite("test"));
+  }
+
+  @Test
+  public void testDisabledCacheAlwaysComputes() {
+    AuthoritiesCache disabled = AuthoritiesCache.disabled();
+    disabled.get("key", this::load);
+    disabled.get("key", this::load);
+
+    assertThat(loads.get(), is(2));
+    assertThat(disabled.get("key", Collections::emptySet).isEmpty(), is(true));
+  }
+}
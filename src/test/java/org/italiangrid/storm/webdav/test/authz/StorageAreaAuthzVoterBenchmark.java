@@ -0,0 +1,151 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare, 2018.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.italiangrid.storm.webdav.test.authz;
+
+import static org.italiangrid.storm.webdav.test.authz.StorageAreaAuthzVoterTest.authn;
+import static org.italiangrid.storm.webdav.test.authz.StorageAreaAuthzVoterTest.request;
+import static org.italiangrid.storm.webdav.test.authz.StorageAreaAuthzVoterTest.saConfiguration;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.italiangrid.storm.webdav.authz.SAPermission;
+import org.italiangrid.storm.webdav.authz.StorageAreaAuthzVoter;
+import org.italiangrid.storm.webdav.authz.util.ReadonlyHTTPMethodMatcher;
+import org.italiangrid.storm.webdav.config.StorageAreaConfiguration;
+import org.italiangrid.storm.webdav.config.StorageAreaInfo;
+import org.springframework.expression.EvaluationContext;
+import org.springframework.expression.Expression;
+import org.springframework.security.access.expression.ExpressionUtils;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.web.FilterInvocation;
+import org.springframework.security.web.access.expression.DefaultWebSecurityExpressionHandler;
+import org.springframework.security.web.util.matcher.AntPathRequestMatcher;
+import org.springframework.security.web.util.matcher.RequestMatcher;
+
+import com.google.common.collect.Lists;
+
+/**
+ * Compares the storage area voter with the matcher chain it replaces, i.e. a read-only matcher
+ * and an ant matcher with a SpEL expression per access point, on 500 storage areas.
+ *
+ * Not run as part of the test suite; run the main method from the IDE or with exec:java.
+ */
+public class StorageAreaAuthzVoterBenchmark {
+
+  static final int NUM_SA = 500;
+  static final int WARMUP_ITERATIONS = 200_000;
+  static final int ITERATIONS = 1_000_000;
+
+  static class Rule {
+    final RequestMatcher matcher;
+    final Expression expression;
+
+    Rule(RequestMatcher matcher, Expression expression) {
+      this.matcher = matcher;
+      this.expression = expression;
+    }
+  }
+
+  final DefaultWebSecurityExpressionHandler handler = new DefaultWebSecurityExpressionHandler();
+  final List<Rule> rules = Lists.newArrayList();
+  final StorageAreaAuthzVoter voter;
+
+  final Authentication authn;
+  final FilterInvocation[] requests;
+
+  StorageAreaAuthzVoterBenchmark() {
+    StorageAreaConfiguration config = saConfiguration(NUM_SA);
+
+    for (StorageAreaInfo sa : config.getStorageAreaInfo()) {
+      String read = SAPermission.canRead(sa.name()).getAuthority();
+      String write = SAPermission.canWrite(sa.name()).getAuthority();
+      for (String ap : sa.accessPoints()) {
+        rules.add(new Rule(new ReadonlyHTTPMethodMatcher(ap + "/**"), handler.getExpressionParser()
+          .parseExpression(String.format("hasAuthority('%s')", read))));
+        rules.add(new Rule(new AntPathRequestMatcher(ap + "/**"), handler.getExpressionParser()
+          .parseExpression(
+              String.format("hasAuthority('%s') and hasAuthority('%s')", read, write))));
+      }
+    }
+
+    voter = new StorageAreaAuthzVoter(config);
+
+    authn = authn(SAPermission.canRead("sa10"), SAPermission.canWrite("sa10"),
+        SAPermission.canRead("sa250"), SAPermission.canRead("sa499"),
+        SAPermission.canWrite("sa499"));
+
+    requests = new FilterInvocation[] {request("GET", "/sa10/file"),
+        request("PUT", "/sa250/dir/file"), request("PROPFIND", "/sa499/dir/"),
+        request("DELETE", "/alias/sa499/file")};
+  }
+
+  boolean matcherChain(FilterInvocation fi) {
+    for (Rule r : rules) {
+      if (r.matcher.matches(fi.getRequest())) {
+        EvaluationContext ctx = handler.createEvaluationContext(authn, fi);
+        return ExpressionUtils.evaluateAsBoolean(r.expression, ctx);
+      }
+    }
+    return true;
+  }
+
+  boolean storageAreaVoter(FilterInvocation fi) {
+    return voter.vote(authn, fi, Collections.emptyList()) != StorageAreaAuthzVoter.ACCESS_DENIED;
+  }
+
+  long runMatcherChain(int iterations) {
+    long granted = 0;
+    for (int i = 0; i < iterations; i++) {
+      if (matcherChain(requests[i % requests.length])) {
+        granted++;
+      }
+    }
+    return granted;
+  }
+
+  long runVoter(int iterations) {
+    long granted = 0;
+    for (int i = 0; i < iterations; i++) {
+      if (storageAreaVoter(requests[i % requests.length])) {
+        granted++;
+      }
+    }
+    return granted;
+  }
+
+  static void report(String name, long startNanos, long granted) {
+    long elapsed = System.nanoTime() - startNanos;
+    System.out.printf("%-20s %8d ns/op (%d granted, %d ms total)%n", name, elapsed / ITERATIONS,
+        granted, TimeUnit.NANOSECONDS.toMillis(elapsed));
+  }
+
+  public static void main(String[] args) {
+    StorageAreaAuthzVoterBenchmark b = new StorageAreaAuthzVoterBenchmark();
+
+    b.runMatcherChain(WARMUP_ITERATIONS);
+    b.runVoter(WARMUP_ITERATIONS);
+
+    long start = System.nanoTime();
+    long granted = b.runMatcherChain(ITERATIONS);
+    report("matcher chain", start, granted);
+
+    start = System.nanoTime();
+    granted = b.runVoter(ITERATIONS);
+    report("storage area voter", start, granted);
+  }
+}
@@ -0,0 +1,180 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare, 2018.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.italiangrid.storm.webdav.test.authz;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.springframework.security.access.AccessDecisionVoter.ACCESS_ABSTAIN;
+import static org.springframework.security.access.AccessDecisionVoter.ACCESS_DENIED;
+import static org.springframework.security.access.AccessDecisionVoter.ACCESS_GRANTED;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.List;
+
+import org.italiangrid.storm.webdav.authz.SAPermission;
+import org.italiangrid.storm.webdav.authz.StorageAreaAuthzVoter;
+import org.italiangrid.storm.webdav.authz.scope.PathScopeAuthority;
+import org.italiangrid.storm.webdav.authz.scope.StorageScope;
+import org.italiangrid.storm.webdav.config.StorageAreaConfiguration;
+import org.italiangrid.storm.webdav.config.StorageAreaInfo;
+import org.italiangrid.storm.webdav.server.PathResolver;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.authentication.TestingAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.web.FilterInvocation;
+
+import com.google.common.collect.Lists;
+
+public class StorageAreaAuthzVoterTest {
+
+  public static final int NUM_SA = 500;
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  StorageAreaAuthzVoter voter;
+
+  public static StorageAreaConfiguration saConfiguration(int numSa) {
+    List<StorageAreaInfo> sas = Lists.newArrayList();
+
+    for (int i = 0; i < numSa; i++) {
+      StorageAreaInfo sa = mock(StorageAreaInfo.class);
+      when(sa.name()).thenReturn("sa" + i);
+      when(sa.accessPoints()).thenReturn(Lists.newArrayList("/sa" + i, "/alias/sa" + i));
+      sas.add(sa);
+    }
+
+    StorageAreaConfiguration config = mock(StorageAreaConfiguration.class);
+    when(config.getStorageAreaInfo()).thenReturn(sas);
+    return config;
+  }
+
+  public static FilterInvocation request(String method, String path) {
+    MockHttpServletRequest req = new MockHttpServletRequest(method, path);
+    req.setServletPath(path);
+    return new FilterInvocation(req, new MockHttpServletResponse(), new MockFilterChain());
+  }
+
+  public static Authentication authn(GrantedAuthority... authorities) {
+    return new TestingAuthenticationToken("test", "", Lists.newArrayList(authorities));
+  }
+
+  @Before
+  public void setup() {
+    voter = new StorageAreaAuthzVoter(saConfiguration(NUM_SA));
+  }
+
+  private int vote(Authentication authn, String method, String path) {
+    return voter.vote(authn, request(method, path), Collections.emptyList());
+  }
+
+  @Test
+  public void testVoterAbstainsOutsideStorageAreas() {
+    Authentication authn = authn(SAPermission.canRead("sa1"));
+
+    assertThat(vote(authn, "GET", "/errors/403"), is(ACCESS_ABSTAIN));
+    assertThat(vote(authn, "GET", "/sa1000/file"), is(ACCESS_ABSTAIN));
+    assertThat(vote(authn, "GET", "/sa1file"), is(ACCESS_ABSTAIN));
+  }
+
+  @Test
+  public void testReadPermissionGrantsReadonlyMethods() {
+    Authentication authn = authn(SAPermission.canRead("sa499"));
+
+    assertThat(vote(authn, "GET", "/sa499"), is(ACCESS_GRANTED));
+    assertThat(vote(authn, "PROPFIND", "/sa499/dir/"), is(ACCESS_GRANTED));
+    assertThat(vote(authn, "HEAD", "/alias/sa499/file"), is(ACCESS_GRANTED));
+    assertThat(vote(authn, "PUT", "/sa499/file"), is(ACCESS_DENIED));
+    assertThat(vote(authn, "GET", "/sa498/file"), is(ACCESS_DENIED));
+  }
+
+  @Test
+  public void testWriteRequiresReadAndWritePermission() {
+    assertThat(vote(authn(SAPermission.canWrite("sa3")), "PUT", "/sa3/file"), is(ACCESS_DENIED));
+    assertThat(vote(authn(SAPermission.canRead("sa3"), SAPermission.canWrite("sa3")), "DELETE",
+        "/sa3/file"), is(ACCESS_GRANTED));
+  }
+
+  @Test
+  public void testPathScopesGrantAccessBelowScopePath() {
+    Authentication authn = authn(new PathScopeAuthority(
+        Lists.newArrayList(StorageScope.parse("storage.read:/sa7/data").get(),
+            StorageScope.parse("storage.modify:/sa7/data/out").get())));
+
+    assertThat(vote(authn, "GET", "/sa7/data/file"), is(ACCESS_GRANTED));
+    assertThat(vote(authn, "PUT", "/sa7/data/file"), is(ACCESS_DENIED));
+    assertThat(vote(authn, "PUT", "/sa7/data/out/file"), is(ACCESS_GRANTED));
+    assertThat(vote(authn, "DELETE", "/sa7/data/out/file"), is(ACCESS_GRANTED));
+    assertThat(vote(authn, "GET", "/sa7/other"), is(ACCESS_DENIED));
+    assertThat(vote(authn, "GET", "/sa7/database"), is(ACCESS_DENIED));
+  }
+
+  @Test
+  public void testCreateScopeDoesNotAllowOverwriting() throws Exception {
+    File existing = folder.newFile("existing");
+    PathResolver resolver = mock(PathResolver.class);
+    when(resolver.resolvePath("/sa7/in/existing")).thenReturn(existing.getAbsolutePath());
+    when(resolver.resolvePath("/sa7/in/new"))
+      .thenReturn(new File(folder.getRoot(), "new").getAbsolutePath());
+
+    voter = new StorageAreaAuthzVoter(saConfiguration(NUM_SA), resolver);
+
+    Authentication create =
+        authn(new PathScopeAuthority(StorageScope.parseScopes("storage.create:/sa7/in")));
+    Authentication modify =
+        authn(new PathScopeAuthority(StorageScope.parseScopes("storage.modify:/sa7/in")));
+
+    assertThat(vote(create, "PUT", "/sa7/in/new"), is(ACCESS_GRANTED));
+    assertThat(vote(create, "PUT", "/sa7/in/existing"), is(ACCESS_DENIED));
+    assertThat(voter.vote(create, "/sa7/in/existing", "PUT"), is(ACCESS_DENIED));
+    assertThat(vote(modify, "PUT", "/sa7/in/existing"), is(ACCESS_GRANTED));
+  }
+
+  @Test
+  public void testCreateScopeWithoutResolverAssumesTargetExists() {
+    Authentication create =
+        authn(new PathScopeAuthority(StorageScope.parseScopes("storage.create:/sa7/in")));
+
+    assertThat(vote(create, "PUT", "/sa7/in/file"), is(ACCESS_DENIED));
+    assertThat(vote(create, "MKCOL", "/sa7/in/dir"), is(ACCESS_GRANTED));
+  }
+
+  @Test
+  public void testPathVoteAppliesRequestRules() {
+    Authentication authn = authn(SAPermission.canRead("sa5"));
+
+    assertThat(voter.vote(authn, "/sa5/file", "GET"), is(ACCESS_GRANTED));
+    assertThat(voter.vote(authn, "/sa5/file", "PUT"), is(ACCESS_DENIED));
+    assertThat(voter.vote(authn, "/sa6/file", "GET"), is(ACCESS_DENIED));
+    assertThat(voter.vote(authn, "/unknown/file", "GET"), is(ACCESS_ABSTAIN));
+    assertThat(voter.vote(null, "/sa5/file", "GET"), is(ACCESS_DENIED));
+  }
+
+  @Test
+  public void testNoAuthoritiesIsDenied() {
+    assertThat(vote(authn(), "GET", "/sa0/file"), is(ACCESS_DENIED));
+  }
+}
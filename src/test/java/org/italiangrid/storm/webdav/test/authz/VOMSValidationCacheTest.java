@@ -0,0 +1,96 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare, 2018.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.italiangrid.storm.webdav.test.authz;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.security.cert.CertificateEncodingException;
+import java.security.cert.X509Certificate;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Date;
+import java.util.List;
+import java.util.function.Function;
+
+import org.italiangrid.storm.webdav.authz.VOMSValidationCache;
+import org.italiangrid.voms.VOMSAttribute;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.collect.Lists;
+
+@RunWith(MockitoJUnitRunner.class)
+public class VOMSValidationCacheTest {
+
+  public static final Instant NOW = Instant.parse("2019-01-01T00:00:00.00Z");
+
+  @Mock
+  Clock clock;
+
+  @Mock
+  X509Certificate leaf;
+
+  @Mock
+  VOMSAttribute attribute;
+
+  @Mock
+  Function<X509Certificate[], List<VOMSAttribute>> validator;
+
+  X509Certificate[] chain;
+
+  VOMSValidationCache cache;
+
+  @Before
+  public void setup() throws CertificateEncodingException {
+    chain = new X509Certificate[] {leaf};
+    cache = new VOMSValidationCache(new MetricRegistry(), clock, 10, Duration.ofMinutes(5));
+
+    when(leaf.getEncoded()).thenReturn(new byte[] {1, 2, 3});
+    when(leaf.getNotAfter()).thenReturn(Date.from(NOW.plusSeconds(3600)));
+    when(validator.apply(chain)).thenReturn(Lists.newArrayList(attribute));
+  }
+
+  @Test
+  public void testChainIsValidatedOnce() {
+    when(attribute.getNotAfter()).thenReturn(Date.from(NOW.plusSeconds(600)));
+    when(clock.instant()).thenReturn(NOW);
+
+    assertThat(cache.validate(chain, validator).size(), is(1));
+    assertThat(cache.validate(chain, validator).size(), is(1));
+
+    verify(validator, times(1)).apply(chain);
+  }
+
+  @Test
+  public void testExpiredAttributesAreValidatedAgain() {
+    when(attribute.getNotAfter()).thenReturn(Date.from(NOW.plusSeconds(60)));
+    when(clock.instant()).thenReturn(NOW, NOW.plusSeconds(61));
+
+    cache.validate(chain, validator);
+    cache.validate(chain, validator);
+
+    verify(validator, times(2)).apply(chain);
+  }
+}
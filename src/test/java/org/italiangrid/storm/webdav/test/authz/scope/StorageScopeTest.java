@@ -0,0 +1,142 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare, 2018.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.italiangrid.storm.webdav.test.authz.scope;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.List;
+import java.util.Optional;
+
+import org.italiangrid.storm.webdav.authz.SAPermission;
+import org.italiangrid.storm.webdav.authz.scope.PathScopeAuthority;
+import org.italiangrid.storm.webdav.authz.scope.StorageScope;
+import org.italiangrid.storm.webdav.authz.scope.StorageScope.Activity;
+import org.italiangrid.storm.webdav.authz.scope.StorageScopeGrantPolicy;
+import org.italiangrid.storm.webdav.config.StorageAreaConfiguration;
+import org.italiangrid.storm.webdav.config.StorageAreaInfo;
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+
+public class StorageScopeTest {
+
+  private static StorageAreaInfo sa(String name, String accessPoint) {
+    StorageAreaInfo sa = mock(StorageAreaInfo.class);
+    when(sa.name()).thenReturn(name);
+    when(sa.accessPoints()).thenReturn(Lists.newArrayList(accessPoint));
+    return sa;
+  }
+
+  @Test
+  public void testScopeParsing() {
+    Optional<StorageScope> scope = StorageScope.parse("storage.modify:/data//out/");
+
+    assertThat(scope.isPresent(), is(true));
+    assertThat(scope.get().getActivity(), is(Activity.MODIFY));
+    assertThat(scope.get().getPath(), is("/data/out"));
+    assertThat(StorageScope.parse("storage.read").get().getPath(), is("/"));
+
+    assertThat(StorageScope.parse("openid").isPresent(), is(false));
+    assertThat(StorageScope.parse("storage.read:data").isPresent(), is(false));
+    assertThat(StorageScope.parse("storage.read:/data/../etc").isPresent(), is(false));
+    assertThat(StorageScope.parse("storage.write:/data").isPresent(), is(false));
+  }
+
+  @Test
+  public void testScopeListParsingKeepsOnlyStorageScopes() {
+    List<StorageScope> scopes =
+        StorageScope.parseScopes("openid storage.read:/  profile storage.create:/out");
+
+    assertThat(scopes.size(), is(2));
+    assertThat(scopes.get(1).toString(), is("storage.create:/out"));
+  }
+
+  @Test
+  public void testScopeResolution() {
+    assertThat(StorageScope.parse("storage.read:/").get().resolve("/sa").getPath(), is("/sa"));
+    assertThat(StorageScope.parse("storage.read:/data").get().resolve("/sa").getPath(),
+        is("/sa/data"));
+  }
+
+  @Test
+  public void testActivitiesAccumulateAlongPath() {
+    PathScopeAuthority authority = new PathScopeAuthority(
+        StorageScope.parseScopes("storage.read:/sa storage.create:/sa/in storage.stage:/sa/in/x"));
+
+    assertThat(authority.activities("/sa/in/x/file"),
+        is(Activity.READ.mask() | Activity.CREATE.mask() | Activity.STAGE.mask()));
+    assertThat(authority.allows("/sa/out", Activity.CREATE), is(false));
+    assertThat(authority.allowsMethod("/sa/in/file", "PUT", () -> false), is(true));
+    assertThat(authority.allowsMethod("/sa/in/file", "DELETE", () -> false), is(false));
+    assertThat(authority.allowsMethod("/other", "GET", () -> true), is(false));
+  }
+
+  @Test
+  public void testCreateDoesNotAllowOverwriting() {
+    PathScopeAuthority create =
+        new PathScopeAuthority(StorageScope.parseScopes("storage.create:/sa"));
+    PathScopeAuthority modify =
+        new PathScopeAuthority(StorageScope.parseScopes("storage.modify:/sa"));
+
+    assertThat(create.allowsMethod("/sa/file", "PUT", () -> false), is(true));
+    assertThat(create.allowsMethod("/sa/file", "PUT", () -> true), is(false));
+    assertThat(create.allowsWrite("/sa/file", () -> false), is(true));
+    assertThat(create.allowsWrite("/sa/file", () -> true), is(false));
+    assertThat(create.allowsMethod("/sa/dir", "MKCOL", () -> false), is(true));
+    assertThat(modify.allowsMethod("/sa/file", "PUT", () -> true), is(true));
+    assertThat(modify.allowsWrite("/sa/file", () -> true), is(true));
+  }
+
+  @Test
+  public void testGrantPolicyRequiresPermissionsOnTouchedStorageAreas() {
+    List<StorageAreaInfo> sas = Lists.newArrayList(sa("test", "/test"), sa("nested", "/test/nested"));
+    StorageAreaConfiguration config = mock(StorageAreaConfiguration.class);
+    when(config.getStorageAreaInfo()).thenReturn(sas);
+
+    StorageScopeGrantPolicy policy = new StorageScopeGrantPolicy(config);
+    List<SAPermission> perms = Lists.newArrayList(SAPermission.canRead("test"),
+        SAPermission.canWrite("test"), SAPermission.canRead("nested"));
+
+    assertThat(policy.canGrant(StorageScope.parse("storage.modify:/test/data").get(), perms),
+        is(true));
+    assertThat(policy.canGrant(StorageScope.parse("storage.read:/test").get(), perms), is(true));
+    assertThat(policy.canGrant(StorageScope.parse("storage.modify:/test").get(), perms),
+        is(false));
+    assertThat(policy.canGrant(StorageScope.parse("storage.read:/testfile").get(), perms),
+        is(false));
+    assertThat(policy.canGrant(StorageScope.parse("storage.read:/").get(), perms), is(true));
+    assertThat(policy.canGrant(StorageScope.parse("storage.read:/other").get(), perms), is(false));
+  }
+
+  @Test
+  public void testGrantPolicyNarrowsScopesToStorageAreas() {
+    List<StorageAreaInfo> sas = Lists.newArrayList(sa("test", "/test"), sa("other", "/other"));
+    StorageAreaConfiguration config = mock(StorageAreaConfiguration.class);
+    when(config.getStorageAreaInfo()).thenReturn(sas);
+
+    StorageScopeGrantPolicy policy = new StorageScopeGrantPolicy(config);
+
+    List<StorageScope> granted = policy.grantableScopes(
+        StorageScope.parseScopes("storage.read:/ storage.modify:/other/data"),
+        Lists.newArrayList(SAPermission.canRead("test")));
+
+    assertThat(granted.size(), is(1));
+    assertThat(granted.get(0).toString(), is("storage.read:/test"));
+  }
+}
@@ -0,0 +1,70 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare, 2018.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.italiangrid.storm.webdav.test.authz.vomap;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.junit.Assert.assertThat;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.italiangrid.storm.webdav.authz.vomap.MapfileVOMembershipSource;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class MapfileVOMembershipSourceTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private File mapfile(String content) throws IOException {
+    File f = folder.newFile("test.vomap");
+    Files.write(f.toPath(), content.getBytes(StandardCharsets.UTF_8));
+    return f;
+  }
+
+  @Test
+  public void testInvalidRecordsAreSkipped() throws IOException {
+    File f = mapfile("\"/C=IT/O=INFN/CN=Alice\"\n" + "\"CN=Invalid\"\n"
+        + "\"/C=IT/O=INFN/CN=Bob\",\"/test\"\n");
+
+    MapfileVOMembershipSource source = new MapfileVOMembershipSource("test", f);
+
+    assertThat(source.getVOMembers(), containsInAnyOrder("CN=Alice,O=INFN,C=IT",
+        "CN=Bob,O=INFN,C=IT"));
+  }
+
+  @Test
+  public void testChangesAreDetected() throws IOException {
+    File f = mapfile("\"/C=IT/O=INFN/CN=Alice\"\n");
+
+    MapfileVOMembershipSource source = new MapfileVOMembershipSource("test", f);
+    assertThat(source.hasChanged(), is(true));
+
+    source.getVOMembers();
+    assertThat(source.hasChanged(), is(false));
+
+    Files.write(f.toPath(),
+        "\"/C=IT/O=INFN/CN=Alice\"\n\"/C=IT/O=INFN/CN=Bob\"\n".getBytes(StandardCharsets.UTF_8));
+    assertThat(source.hasChanged(), is(true));
+    assertThat(source.getVOMembers().size(), is(2));
+    assertThat(source.hasChanged(), is(false));
+  }
+}
@@ -0,0 +1,71 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare, 2018.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.italiangrid.storm.webdav.test.authz.vomap;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.empty;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.when;
+
+import org.italiangrid.storm.webdav.authz.vomap.VOMembershipIndex;
+import org.italiangrid.storm.webdav.authz.vomap.VOMembershipProvider;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+
+@RunWith(MockitoJUnitRunner.class)
+public class VOMembershipIndexTest {
+
+  @Mock
+  VOMembershipProvider atlas;
+
+  @Mock
+  VOMembershipProvider cms;
+
+  @Test
+  public void testSubjectVOsAreIndexed() {
+    when(atlas.getVOName()).thenReturn("atlas");
+    when(atlas.getMembers()).thenReturn(Sets.newHashSet("CN=alice", "CN=bob", "CN=carol"));
+    when(cms.getVOName()).thenReturn("cms");
+    when(cms.getMembers()).thenReturn(Sets.newHashSet("CN=bob", "CN=carol", "CN=dave"));
+
+    VOMembershipIndex index = VOMembershipIndex.build(Lists.newArrayList(atlas, cms));
+
+    assertThat(index.getVOCount(), is(2));
+    assertThat(index.getSubjectCount(), is(4));
+    assertThat(index.getSubjectVOs("CN=alice"), containsInAnyOrder("atlas"));
+    assertThat(index.getSubjectVOs("CN=bob"), containsInAnyOrder("atlas", "cms"));
+    assertThat(index.getSubjectVOs("CN=dave"), containsInAnyOrder("cms"));
+    assertThat(index.getSubjectVOs("CN=eve"), empty());
+
+    // Subjects with the same memberships share the VO set
+    assertThat(index.getSubjectVOs("CN=carol"), sameInstance(index.getSubjectVOs("CN=bob")));
+  }
+
+  @Test
+  public void testEmptyIndex() {
+    VOMembershipIndex index = VOMembershipIndex.build(Lists.newArrayList());
+
+    assertThat(index.getSubjectCount(), is(0));
+    assertThat(index.getSubjectVOs("CN=alice"), empty());
+  }
+}
@@ -0,0 +1,105 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare, 2018.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.italiangrid.storm.webdav.test.fs;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+
+import org.italiangrid.storm.webdav.fs.LocalCopyEngine;
+import org.italiangrid.storm.webdav.fs.attrs.ExtendedAttributesHelper;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+@RunWith(MockitoJUnitRunner.class)
+public class LocalCopyEngineTest {
+
+  @Rule
+  public TemporaryFolder storage = new TemporaryFolder();
+
+  @Mock
+  ExtendedAttributesHelper attrsHelper;
+
+  LocalCopyEngine engine;
+
+  @Before
+  public void setup() {
+    engine = new LocalCopyEngine(attrsHelper);
+  }
+
+  private Path createFile(Path p, String content) throws IOException {
+    Files.createDirectories(p.getParent());
+    return Files.write(p, content.getBytes(StandardCharsets.UTF_8));
+  }
+
+  private String content(Path p) throws IOException {
+    return new String(Files.readAllBytes(p), StandardCharsets.UTF_8);
+  }
+
+  @Test
+  public void testFileCopyOverwritesDestination() throws IOException {
+    Path source = createFile(storage.getRoot().toPath().resolve("source"), "new content");
+    Path dest = createFile(storage.getRoot().toPath().resolve("dest"), "old and longer content");
+
+    assertThat(engine.copyFile(source, dest), is(11L));
+    assertThat(content(dest), is("new content"));
+    assertThat(storage.getRoot().list().length, is(2));
+  }
+
+  @Test
+  public void testMissingSourceLeavesDestinationUntouched() throws IOException {
+    Path source = storage.getRoot().toPath().resolve("missing");
+    Path dest = createFile(storage.getRoot().toPath().resolve("dest"), "old content");
+
+    try {
+      engine.copyFile(source, dest);
+      fail("Expected NoSuchFileException");
+    } catch (NoSuchFileException e) {
+      // expected
+    }
+
+    assertThat(content(dest), is("old content"));
+    assertThat(storage.getRoot().list().length, is(1));
+  }
+
+  @Test
+  public void testFailedReplaceRemovesTemporaryFile() throws IOException {
+    Path source = createFile(storage.getRoot().toPath().resolve("source"), "content");
+    Path dest = storage.getRoot().toPath().resolve("dest");
+    createFile(dest.resolve("member"), "member content");
+
+    try {
+      engine.copyFile(source, dest);
+      fail("Expected IOException");
+    } catch (IOException e) {
+      // expected
+    }
+
+    assertThat(content(dest.resolve("member")), is("member content"));
+    assertThat(storage.getRoot().list().length, is(2));
+  }
+}
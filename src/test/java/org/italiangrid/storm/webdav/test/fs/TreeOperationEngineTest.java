@@ -0,0 +1,184 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare, 2018.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.italiangrid.storm.webdav.test.fs;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.italiangrid.storm.webdav.error.SameFileError;
+import org.italiangrid.storm.webdav.fs.LocalCopyEngine;
+import org.italiangrid.storm.webdav.fs.TreeOperationEngine;
+import org.italiangrid.storm.webdav.fs.TreeOperationResult;
+import org.italiangrid.storm.webdav.fs.attrs.ExtendedAttributesHelper;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import com.codahale.metrics.MetricRegistry;
+
+@RunWith(MockitoJUnitRunner.class)
+public class TreeOperationEngineTest {
+
+  @Rule
+  public TemporaryFolder storage = new TemporaryFolder();
+
+  @Mock
+  ExtendedAttributesHelper attrsHelper;
+
+  MetricRegistry registry;
+
+  TreeOperationEngine engine;
+
+  @Before
+  public void setup() {
+    registry = new MetricRegistry();
+    engine = new TreeOperationEngine(new LocalCopyEngine(attrsHelper), registry, 4, 2);
+  }
+
+  @After
+  public void teardown() throws Exception {
+    engine.destroy();
+  }
+
+  private void createFile(Path p, String content) throws IOException {
+    Files.createDirectories(p.getParent());
+    Files.write(p, content.getBytes(StandardCharsets.UTF_8));
+  }
+
+  private String content(Path p) throws IOException {
+    return new String(Files.readAllBytes(p), StandardCharsets.UTF_8);
+  }
+
+  private Path populate(String name) throws IOException {
+    Path root = storage.newFolder(name).toPath();
+
+    // More files than a single batch, to exercise batch splitting
+    for (int i = 0; i < 600; i++) {
+      createFile(root.resolve("file" + i), "file" + i);
+    }
+
+    for (int i = 0; i < 10; i++) {
+      createFile(root.resolve("sub").resolve("nested" + i).resolve("file"), "nested" + i);
+    }
+
+    Files.createDirectories(root.resolve("empty"));
+    return root;
+  }
+
+  @Test
+  public void testDeleteTree() throws IOException {
+    Path root = populate("delete");
+
+    TreeOperationResult result = engine.deleteTree(root);
+
+    assertThat(result.hasFailures(), is(false));
+    assertThat(Files.exists(root), is(false));
+    // 600 files, 10 nested files, 10 nested dirs, sub, empty and the root itself
+    assertThat(result.getProcessedCount(), is(623L));
+    assertThat(registry.meter(MetricRegistry.name(TreeOperationEngine.class, "deleted"))
+      .getCount(), is(623L));
+  }
+
+  @Test
+  public void testDeleteTreeRemovesDanglingLinks() throws IOException {
+    Path root = storage.getRoot().toPath().resolve("links");
+    Files.createDirectories(root);
+    Path dangling = root.resolve("dangling");
+    Files.createSymbolicLink(dangling, root.resolve("nowhere"));
+
+    TreeOperationResult result = engine.deleteTree(root);
+
+    assertThat(result.hasFailures(), is(false));
+    assertThat(Files.exists(root), is(false));
+  }
+
+  @Test
+  public void testCopyTree() throws IOException {
+    Path source = populate("source");
+    Path dest = storage.getRoot().toPath().resolve("dest");
+
+    TreeOperationResult result = engine.copyTree(source, dest);
+
+    assertThat(result.hasFailures(), is(false));
+    assertThat(Files.isDirectory(dest.resolve("empty")), is(true));
+
+    for (int i = 0; i < 600; i++) {
+      assertThat(content(dest.resolve("file" + i)), is("file" + i));
+    }
+
+    for (int i = 0; i < 10; i++) {
+      assertThat(content(dest.resolve("sub").resolve("nested" + i).resolve("file")),
+          is("nested" + i));
+    }
+  }
+
+  @Test
+  public void testCopyTreeIntoItselfIsRejected() throws IOException {
+    Path source = storage.newFolder("nested-source").toPath();
+    createFile(source.resolve("file"), "file");
+    Path dest = source.resolve("sub").resolve("copy");
+
+    try {
+      engine.copyTree(source, dest);
+      fail("Expected SameFileError");
+    } catch (SameFileError e) {
+      // expected
+    }
+
+    assertThat(Files.exists(source.resolve("sub")), is(false));
+  }
+
+  @Test
+  public void testCopyTreeIntoItselfThroughLinkIsRejected() throws IOException {
+    Path source = storage.newFolder("linked-source").toPath();
+    Path link = storage.getRoot().toPath().resolve("link");
+    Files.createSymbolicLink(link, source);
+
+    try {
+      engine.copyTree(source, link.resolve("copy"));
+      fail("Expected SameFileError");
+    } catch (SameFileError e) {
+      // expected
+    }
+
+    assertThat(Files.exists(source.resolve("copy")), is(false));
+  }
+
+  @Test
+  public void testCopyTreeWithSingleFilesystemPermit() throws Exception {
+    engine.destroy();
+    engine = new TreeOperationEngine(new LocalCopyEngine(attrsHelper), registry, 4, 1);
+
+    Path source = populate("single-permit-source");
+    Path dest = storage.getRoot().toPath().resolve("single-permit-dest");
+
+    TreeOperationResult result = engine.copyTree(source, dest);
+
+    assertThat(result.hasFailures(), is(false));
+    assertThat(content(dest.resolve("file599")), is("file599"));
+  }
+}
@@ -0,0 +1,110 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare, 2018.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.italiangrid.storm.webdav.test.macaroon;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.italiangrid.storm.webdav.authz.ClientAddressAuthority;
+import org.italiangrid.storm.webdav.authz.scope.StorageScope;
+import org.italiangrid.storm.webdav.macaroon.InvalidCaveatError;
+import org.italiangrid.storm.webdav.macaroon.MacaroonCaveats;
+import org.junit.Test;
+
+public class MacaroonCaveatsTest {
+
+  private static List<String> scopes(String... caveats) {
+    return MacaroonCaveats.parse(Arrays.asList(caveats))
+      .toStorageScopes()
+      .stream()
+      .map(StorageScope::toString)
+      .collect(Collectors.toList());
+  }
+
+  @Test
+  public void noCaveatsMeansNoRestrictions() {
+    MacaroonCaveats caveats = MacaroonCaveats.parse(null);
+
+    assertThat(caveats.restrictsAccess(), is(false));
+    assertThat(caveats.toStorageScopes().isEmpty(), is(true));
+    assertThat(caveats.getClientAddresses().isEmpty(), is(true));
+  }
+
+  @Test
+  public void pathAndActivityCaveatsBecomeScopes() {
+    assertThat(scopes("path:/test/data", "activity:DOWNLOAD,LIST"),
+        is(Arrays.asList("storage.read:/test/data")));
+    assertThat(scopes("activity:UPLOAD,DELETE", "path:/test/out"),
+        is(Arrays.asList("storage.create:/test/out", "storage.modify:/test/out")));
+    assertThat(scopes("activity:DOWNLOAD"), is(Arrays.asList("storage.read:/")));
+  }
+
+  @Test
+  public void repeatedCaveatsAreIntersected() {
+    assertThat(scopes("path:/test", "path:/test/data", "activity:DOWNLOAD,UPLOAD",
+        "activity:DOWNLOAD,DELETE"), is(Arrays.asList("storage.read:/test/data")));
+  }
+
+  @Test(expected = InvalidCaveatError.class)
+  public void disjointPathsAreRejected() {
+    MacaroonCaveats.parse(Arrays.asList("path:/test/a", "path:/test/b"));
+  }
+
+  @Test(expected = InvalidCaveatError.class)
+  public void emptyActivityIntersectionIsRejected() {
+    scopes("activity:DOWNLOAD", "activity:UPLOAD");
+  }
+
+  @Test(expected = InvalidCaveatError.class)
+  public void unknownCaveatsAreRejected() {
+    MacaroonCaveats.parse(Arrays.asList("home:/test"));
+  }
+
+  @Test(expected = InvalidCaveatError.class)
+  public void pathTraversalIsRejected() {
+    MacaroonCaveats.parse(Arrays.asList("path:/test/../other"));
+  }
+
+  @Test(expected = InvalidCaveatError.class)
+  public void hostNamesAreRejectedInIpCaveats() {
+    MacaroonCaveats.parse(Arrays.asList("ip:www.example.org"));
+  }
+
+  @Test
+  public void earliestBeforeWins() {
+    MacaroonCaveats caveats = MacaroonCaveats
+      .parse(Arrays.asList("before:2019-01-02T00:00:00Z", "before:2019-01-01T00:00:00Z"));
+
+    assertThat(caveats.getBefore().get(), is(Instant.parse("2019-01-01T00:00:00Z")));
+  }
+
+  @Test
+  public void ipCaveatsAreMatchedAgainstClientAddress() {
+    MacaroonCaveats caveats = MacaroonCaveats.parse(Arrays.asList("ip:192.168.1.0/24,::1"));
+    ClientAddressAuthority authority =
+        new ClientAddressAuthority(caveats.getClientAddresses().get(0));
+
+    assertThat(authority.matches("192.168.1.17"), is(true));
+    assertThat(authority.matches("::1"), is(true));
+    assertThat(authority.matches("192.168.2.1"), is(false));
+    assertThat(authority.matches(null), is(false));
+  }
+}
@@ -0,0 +1,144 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare, 2018.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.italiangrid.storm.webdav.test.metrics;
+
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.hamcrest.Matchers.closeTo;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.junit.Assert.assertThat;
+
+import java.util.concurrent.TimeUnit;
+
+import org.italiangrid.storm.webdav.metrics.BucketedMetricRegistry;
+import org.italiangrid.storm.webdav.metrics.BucketedTimer;
+import org.italiangrid.storm.webdav.metrics.HdrHistogramReservoir;
+import org.junit.Test;
+
+import com.codahale.metrics.Clock;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Snapshot;
+import com.codahale.metrics.Timer;
+
+public class HdrHistogramReservoirTest {
+
+  static final long HIGHEST_TRACKABLE_VALUE = TimeUnit.HOURS.toNanos(1);
+  static final long WINDOW_MSEC = 60000;
+
+  static class ManualClock extends Clock {
+
+    long time = 0;
+
+    @Override
+    public long getTick() {
+      return TimeUnit.MILLISECONDS.toNanos(time);
+    }
+
+    @Override
+    public long getTime() {
+      return time;
+    }
+  }
+
+  ManualClock clock = new ManualClock();
+
+  HdrHistogramReservoir reservoir =
+      new HdrHistogramReservoir(1, HIGHEST_TRACKABLE_VALUE, 3, WINDOW_MSEC, clock);
+
+  @Test
+  public void testQuantilesKeepTheTail() {
+    for (long i = 1; i <= 1000; i++) {
+      reservoir.update(i);
+    }
+
+    Snapshot s = reservoir.getSnapshot();
+
+    assertThat(s.size(), is(1000));
+    assertThat(s.getMin(), is(1L));
+    assertThat(s.getMax(), is(1000L));
+    assertThat(s.getMedian(), closeTo(500, 1));
+    assertThat(s.get999thPercentile(), closeTo(999, 1));
+    assertThat(s.getMean(), closeTo(500.5, 0.5));
+  }
+
+  @Test
+  public void testOutOfRangeValuesAreClamped() {
+    reservoir.update(-1);
+    reservoir.update(HIGHEST_TRACKABLE_VALUE * 10);
+
+    Snapshot s = reservoir.getSnapshot();
+
+    assertThat(s.size(), is(2));
+    assertThat(s.getMin(), is(0L));
+    assertThat(s.getMax(), greaterThanOrEqualTo(HIGHEST_TRACKABLE_VALUE));
+    assertThat(s.getMax(),
+        lessThanOrEqualTo(HIGHEST_TRACKABLE_VALUE + HIGHEST_TRACKABLE_VALUE / 100));
+  }
+
+  @Test
+  public void testSnapshotsCoverAtMostTwoWindows() {
+    for (int i = 0; i < 100; i++) {
+      reservoir.update(10);
+    }
+
+    assertThat(reservoir.getSnapshot().size(), is(100));
+
+    clock.time += WINDOW_MSEC;
+    reservoir.update(20);
+    assertThat(reservoir.getSnapshot().size(), is(101));
+
+    clock.time += WINDOW_MSEC;
+    reservoir.update(30);
+
+    Snapshot s = reservoir.getSnapshot();
+    assertThat(s.size(), is(1));
+    assertThat(s.getMin(), is(30L));
+
+    clock.time += 3 * WINDOW_MSEC;
+    assertThat(reservoir.getSnapshot().size(), is(0));
+  }
+
+  @Test
+  public void testValuesRecordedBeforeAnIdlePeriodAreKeptForOneRotation() {
+    reservoir.update(10);
+    assertThat(reservoir.getSnapshot().size(), is(1));
+
+    clock.time += 5 * WINDOW_MSEC;
+    reservoir.update(20);
+    assertThat(reservoir.getSnapshot().size(), is(2));
+
+    clock.time += WINDOW_MSEC;
+    assertThat(reservoir.getSnapshot().size(), is(0));
+  }
+
+  @Test
+  public void testHdrTimers() {
+    MetricRegistry plainRegistry = new MetricRegistry();
+    BucketedMetricRegistry bucketedRegistry = new BucketedMetricRegistry();
+
+    Timer t = BucketedMetricRegistry.hdrTimer(plainRegistry, "fs.stat");
+    assertThat(BucketedMetricRegistry.hdrTimer(plainRegistry, "fs.stat"), sameInstance(t));
+
+    Timer bt = BucketedMetricRegistry.hdrTimer(bucketedRegistry, "fs.stat");
+    assertThat(bt, instanceOf(BucketedTimer.class));
+
+    bt.update(5, TimeUnit.MILLISECONDS);
+    assertThat(bt.getSnapshot().getMax(), greaterThanOrEqualTo(TimeUnit.MILLISECONDS.toNanos(5)));
+    assertThat(((BucketedTimer) bt).getReservoir().getCumulativeCounts()[0], is(0L));
+  }
+}
@@ -0,0 +1,143 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare, 2018.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.italiangrid.storm.webdav.test.metrics;
+
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.endsWith;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.junit.Assert.assertThat;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.concurrent.TimeUnit;
+
+import org.italiangrid.storm.webdav.metrics.BucketedMetricRegistry;
+import org.italiangrid.storm.webdav.metrics.BucketedReservoir;
+import org.italiangrid.storm.webdav.metrics.BucketedTimer;
+import org.italiangrid.storm.webdav.metrics.OpenMetricsWriter;
+import org.junit.Test;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.UniformReservoir;
+
+public class OpenMetricsWriterTest {
+
+  MetricRegistry registry = new BucketedMetricRegistry(new double[] {0.01, 0.1, 1});
+  OpenMetricsWriter writer = new OpenMetricsWriter();
+
+  String render(boolean openMetrics) throws IOException {
+    StringWriter sw = new StringWriter();
+    writer.write(registry, sw, openMetrics);
+    return sw.toString();
+  }
+
+  @Test
+  public void testBucketCountsAreCumulative() {
+    BucketedReservoir r = new BucketedReservoir(new UniformReservoir(), new long[] {10, 100});
+
+    r.update(5);
+    r.update(10);
+    r.update(50);
+    r.update(1000);
+
+    assertThat(r.getCumulativeCounts(), is(new long[] {2, 3, 4}));
+    assertThat(r.getSum(), is(1065L));
+  }
+
+  @Test
+  public void testTimersAreRenderedAsHistograms() throws IOException {
+    assertThat(registry.timer("org.italiangrid.storm.webdav.fs.FilesystemAccess.mkdir")
+      instanceof BucketedTimer, is(true));
+
+    registry.timer("org.italiangrid.storm.webdav.fs.FilesystemAccess.mkdir")
+      .update(50, TimeUnit.MILLISECONDS);
+    registry.timer("org.italiangrid.storm.webdav.fs.FilesystemAccess.mkdir")
+      .update(2, TimeUnit.SECONDS);
+
+    String out = render(false);
+
+    assertThat(out, containsString("# TYPE fs_filesystem_access_mkdir_seconds histogram\n"));
+    assertThat(out, containsString("fs_filesystem_access_mkdir_seconds_bucket{le=\"0.01\"} 0\n"));
+    assertThat(out, containsString("fs_filesystem_access_mkdir_seconds_bucket{le=\"0.1\"} 1\n"));
+    assertThat(out, containsString("fs_filesystem_access_mkdir_seconds_bucket{le=\"1.0\"} 1\n"));
+    assertThat(out, containsString("fs_filesystem_access_mkdir_seconds_bucket{le=\"+Inf\"} 2\n"));
+    assertThat(out, containsString("fs_filesystem_access_mkdir_seconds_sum 2.05\n"));
+    assertThat(out, containsString("fs_filesystem_access_mkdir_seconds_count 2\n"));
+  }
+
+  @Test
+  public void testStorageAreaSegmentsBecomeLabels() throws IOException {
+    registry.meter("org.italiangrid.storm.webdav.server.servlet.AdmissionControlFilter"
+        + ".storage-areas.sa1.rejected").mark(3);
+    registry.meter("org.italiangrid.storm.webdav.server.servlet.AdmissionControlFilter"
+        + ".storage-areas.sa2.rejected").mark();
+    registry.register("server.storage-areas.sa1.methods.PUT.in-flight", (Gauge<Integer>) () -> 7);
+
+    String out = render(false);
+
+    assertThat(out, containsString(
+        "# TYPE server_servlet_admission_control_filter_storage_areas_rejected_total counter\n"
+            + "server_servlet_admission_control_filter_storage_areas_rejected_total"
+            + "{storage_area=\"sa1\"} 3\n"
+            + "server_servlet_admission_control_filter_storage_areas_rejected_total"
+            + "{storage_area=\"sa2\"} 1\n"));
+    assertThat(out, containsString(
+        "server_storage_areas_methods_in_flight{storage_area=\"sa1\",method=\"PUT\"} 7.0\n"));
+  }
+
+  @Test
+  public void testOpenMetricsFormat() throws IOException {
+    registry.meter("storm-http.requests").mark();
+    registry.register("jvm.thread-mode", (Gauge<String>) () -> "VIRTUAL");
+
+    String out = render(true);
+
+    assertThat(out, containsString("# TYPE storm_http_requests counter\n"));
+    assertThat(out, containsString("storm_http_requests_total 1\n"));
+    assertThat(out, not(containsString("thread_mode")));
+    assertThat(out, endsWith("# EOF\n"));
+  }
+
+  private static int occurrences(String s, String substring) {
+    int count = 0;
+    for (int i = s.indexOf(substring); i >= 0; i = s.indexOf(substring, i + 1)) {
+      count++;
+    }
+    return count;
+  }
+
+  @Test
+  public void testClashingFamiliesAreDeclaredOnce() throws IOException {
+    registry.timer("storm.copy").update(50, TimeUnit.MILLISECONDS);
+    registry.meter("storm.copy.seconds").mark(2);
+    registry.meter("storm.moves").mark();
+    registry.register("storm_moves", (Gauge<Integer>) () -> 3);
+
+    String out = render(true);
+
+    assertThat(occurrences(out, "# TYPE storm_copy_seconds "), is(1));
+    assertThat(out, containsString("# TYPE storm_copy_seconds counter\n"));
+    assertThat(out, containsString("storm_copy_seconds_total 2\n"));
+    assertThat(out, containsString("# TYPE storm_copy_seconds_histogram histogram\n"));
+    assertThat(out, containsString("storm_copy_seconds_histogram_count 1\n"));
+
+    assertThat(occurrences(out, "# TYPE storm_moves "), is(1));
+    assertThat(out, containsString("# TYPE storm_moves_gauge gauge\n"));
+    assertThat(out, containsString("storm_moves_gauge 3.0\n"));
+  }
+}
@@ -0,0 +1,170 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare, 2018.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.italiangrid.storm.webdav.test.metrics;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.italiangrid.storm.webdav.server.servlet.RequestMetricsFilter.metricName;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+import org.italiangrid.storm.webdav.metrics.StormMetricsReporter;
+import org.italiangrid.storm.webdav.tpc.http.HttpTransferClientMetricsWrapper;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import com.codahale.metrics.Clock;
+import com.codahale.metrics.MetricRegistry;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+@RunWith(MockitoJUnitRunner.class)
+public class StormMetricsReporterTest {
+
+  static class TestClock extends Clock {
+
+    long time = 0;
+
+    @Override
+    public long getTick() {
+      return TimeUnit.MILLISECONDS.toNanos(time);
+    }
+
+    @Override
+    public long getTime() {
+      return time;
+    }
+  }
+
+  @Mock
+  QueuedThreadPool threadPool;
+
+  final ObjectMapper mapper = new ObjectMapper();
+  final MetricRegistry registry = new MetricRegistry();
+  final TestClock clock = new TestClock();
+  final List<String> lines = new CopyOnWriteArrayList<>();
+
+  StormMetricsReporter reporter;
+
+  @Before
+  public void setup() {
+    reporter = StormMetricsReporter.forRegistry(registry)
+      .storageAreas(Arrays.asList("sa1", "sa2"))
+      .withClock(clock)
+      .outputTo(lines::add)
+      .build();
+  }
+
+  JsonNode report() throws IOException {
+    reporter.report();
+    return mapper.readTree(lines.get(lines.size() - 1));
+  }
+
+  void request(String sa, String method) {
+    registry.timer(metricName(sa, "methods", method, "requests"))
+      .update(10, TimeUnit.MILLISECONDS);
+  }
+
+  @Test
+  public void missingMetricsAreReportedAsZero() throws IOException {
+    clock.time = 10000;
+    JsonNode report = report();
+
+    assertThat(report.get("interval_msec").asLong(), is(10000L));
+    assertThat(report.get("requests").get("count").asLong(), is(0L));
+    assertThat(report.get("storage_areas").get("sa1").get("requests").asLong(), is(0L));
+    assertThat(report.get("tpc").get("active").asLong(), is(0L));
+    assertThat(report.has("thread_pool"), is(false));
+    assertThat(report.get("heap").get("used").asLong() > 0, is(true));
+  }
+
+  @Test
+  public void storageAreaActivityIsReportedAsDeltas() throws IOException {
+    request("sa1", "GET");
+    request("sa1", "GET");
+    request("sa1", "PUT");
+    registry.meter(metricName("sa1", "methods", "GET", "bytes-out")).mark(1000);
+    registry.meter(metricName("sa1", "methods", "PUT", "statuses", "5xx", "responses")).mark();
+
+    clock.time = 10000;
+    JsonNode sa1 = report().get("storage_areas").get("sa1");
+
+    assertThat(sa1.get("requests").asLong(), is(3L));
+    assertThat(sa1.get("rate").asText(), is("0.3"));
+    assertThat(sa1.get("bytes_in").asLong(), is(0L));
+    assertThat(sa1.get("bytes_out").asLong(), is(1000L));
+    assertThat(sa1.get("server_errors").asLong(), is(1L));
+
+    request("sa1", "HEAD");
+    request("sa2", "GET");
+
+    clock.time = 20000;
+    JsonNode storageAreas = report().get("storage_areas");
+
+    assertThat(storageAreas.get("sa1").get("requests").asLong(), is(1L));
+    assertThat(storageAreas.get("sa1").get("bytes_out").asLong(), is(0L));
+    assertThat(storageAreas.get("sa1").get("server_errors").asLong(), is(0L));
+    assertThat(storageAreas.get("sa2").get("requests").asLong(), is(1L));
+  }
+
+  @Test
+  public void transferThroughputIsReported() throws IOException {
+    registry.timer(HttpTransferClientMetricsWrapper.PULL_METRIC_NAME)
+      .update(1, TimeUnit.SECONDS);
+    registry.meter(HttpTransferClientMetricsWrapper.PULL_BYTES_METRIC_NAME).mark(2000);
+    registry.counter(HttpTransferClientMetricsWrapper.ACTIVE_TRANSFERS_METRIC_NAME).inc(2);
+
+    clock.time = 10000;
+    JsonNode tpc = report().get("tpc");
+
+    assertThat(tpc.get("active").asLong(), is(2L));
+    assertThat(tpc.get("pull").get("transfers").asLong(), is(1L));
+    assertThat(tpc.get("pull").get("bytes").asLong(), is(2000L));
+    assertThat(tpc.get("pull").get("bytes_per_sec").asText(), is("200.0"));
+    assertThat(tpc.get("push").get("bytes").asLong(), is(0L));
+  }
+
+  @Test
+  public void threadPoolUtilizationIsReported() throws IOException {
+    when(threadPool.getThreads()).thenReturn(10);
+    when(threadPool.getIdleThreads()).thenReturn(4);
+    when(threadPool.getMaxThreads()).thenReturn(20);
+    when(threadPool.getQueueSize()).thenReturn(3);
+
+    reporter = StormMetricsReporter.forRegistry(registry)
+      .withClock(clock)
+      .outputTo(lines::add)
+      .threadPool(() -> threadPool)
+      .build();
+
+    JsonNode tp = report().get("thread_pool");
+
+    assertThat(tp.get("threads").asInt(), is(10));
+    assertThat(tp.get("busy").asInt(), is(6));
+    assertThat(tp.get("max").asInt(), is(20));
+    assertThat(tp.get("utilization").asInt(), is(30));
+    assertThat(tp.get("queued").asInt(), is(3));
+  }
+}
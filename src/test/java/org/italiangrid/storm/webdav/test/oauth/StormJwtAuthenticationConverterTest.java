@@ -0,0 +1,118 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare, 2018.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.italiangrid.storm.webdav.test.oauth;
+
+import static org.hamcrest.CoreMatchers.hasItem;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.when;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.Map;
+
+import org.italiangrid.storm.webdav.authz.AuthoritiesCache;
+import org.italiangrid.storm.webdav.authz.ClientAddressAuthority;
+import org.italiangrid.storm.webdav.authz.SAPermission;
+import org.italiangrid.storm.webdav.config.ServiceConfigurationProperties;
+import org.italiangrid.storm.webdav.config.ServiceConfigurationProperties.AuthorizationServerProperties;
+import org.italiangrid.storm.webdav.config.StorageAreaConfiguration;
+import org.italiangrid.storm.webdav.config.StorageAreaInfo;
+import org.italiangrid.storm.webdav.oauth.StormJwtAuthenticationConverter;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.oauth2.jwt.Jwt;
+
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+
+@RunWith(MockitoJUnitRunner.class)
+public class StormJwtAuthenticationConverterTest {
+
+  public static final String LOCAL_ISSUER = "https://storm-1.example";
+  public static final String PEER_ISSUER = "https://storm-2.example";
+  public static final String EXTERNAL_ISSUER = "https://iam.example";
+
+  @Mock
+  StorageAreaConfiguration saConfig;
+
+  @Mock
+  StorageAreaInfo sa;
+
+  StormJwtAuthenticationConverter converter;
+
+  @Before
+  public void setup() {
+    when(sa.name()).thenReturn("test");
+    when(sa.orgs()).thenReturn(ImmutableSet.of(EXTERNAL_ISSUER, PEER_ISSUER));
+    when(sa.orgsGrantWritePermission()).thenReturn(true);
+    when(saConfig.getStorageAreaInfo()).thenReturn(ImmutableList.of(sa));
+
+    AuthorizationServerProperties authzServer = new AuthorizationServerProperties();
+    authzServer.setIssuer(LOCAL_ISSUER);
+    authzServer.setPeerIssuers(ImmutableList.of(PEER_ISSUER));
+
+    ServiceConfigurationProperties props = new ServiceConfigurationProperties();
+    props.setAuthzServer(authzServer);
+
+    converter = new StormJwtAuthenticationConverter(saConfig, props,
+        new AuthoritiesCache(new MetricRegistry(), 10));
+  }
+
+  private Jwt jwt(Map<String, Object> claims) {
+    return new Jwt("token", Instant.now(), Instant.now().plusSeconds(60),
+        ImmutableMap.of("alg", "RS256"), claims);
+  }
+
+  private Collection<GrantedAuthority> authorities(Jwt jwt) {
+    return converter.convert(jwt).getAuthorities();
+  }
+
+  @Test
+  public void peerTokensAreLimitedToTheirAuthoritiesClaim() {
+    Collection<GrantedAuthority> authorities = authorities(jwt(ImmutableMap.of("iss", PEER_ISSUER,
+        "authorities", ImmutableList.of(SAPermission.canRead("test").toString()), "ip",
+        ImmutableList.of("192.0.2.1"))));
+
+    assertThat(authorities, hasItem(SAPermission.canRead("test")));
+    assertThat(authorities, hasItem(new ClientAddressAuthority("192.0.2.1")));
+    assertThat(authorities, not(hasItem(SAPermission.canWrite("test"))));
+  }
+
+  @Test
+  public void peerTokensWithoutAuthoritiesGrantNothing() {
+    Collection<GrantedAuthority> authorities = authorities(
+        jwt(ImmutableMap.of("iss", PEER_ISSUER, "authorities", ImmutableList.of())));
+
+    assertThat(authorities.isEmpty(), is(true));
+  }
+
+  @Test
+  public void externalTokensGetTheOrgPermissions() {
+    Collection<GrantedAuthority> authorities =
+        authorities(jwt(ImmutableMap.of("iss", EXTERNAL_ISSUER, "sub", "user")));
+
+    assertThat(authorities, hasItem(SAPermission.canRead("test")));
+    assertThat(authorities, hasItem(SAPermission.canWrite("test")));
+  }
+}
@@ -0,0 +1,219 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare, 2018.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.italiangrid.storm.webdav.test.oauth;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.net.URI;
+import java.security.KeyPairGenerator;
+import java.security.interfaces.RSAPublicKey;
+import java.time.Clock;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+
+import org.italiangrid.storm.webdav.config.OAuthProperties;
+import org.italiangrid.storm.webdav.config.OAuthProperties.AuthorizationServer;
+import org.italiangrid.storm.webdav.oauth.UnknownTokenIssuerError;
+import org.italiangrid.storm.webdav.oauth.utils.OidcConfigurationFetcher;
+import org.italiangrid.storm.webdav.oauth.utils.OidcConfigurationResolutionError;
+import org.italiangrid.storm.webdav.oauth.utils.TrustedIssuerKeyManager;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import com.codahale.metrics.MetricRegistry;
+import com.nimbusds.jose.KeySourceException;
+import com.nimbusds.jose.jwk.JWK;
+import com.nimbusds.jose.jwk.JWKMatcher;
+import com.nimbusds.jose.jwk.JWKSelector;
+import com.nimbusds.jose.jwk.JWKSet;
+import com.nimbusds.jose.jwk.RSAKey;
+import com.nimbusds.jose.jwk.source.JWKSource;
+import com.nimbusds.jose.proc.SecurityContext;
+
+@RunWith(MockitoJUnitRunner.class)
+public class TrustedIssuerKeyManagerTest {
+
+  public static final String ISSUER = "https://iam.example";
+  public static final String JWKS_URI = "https://iam.example/jwk";
+
+  @Mock
+  OidcConfigurationFetcher fetcher;
+
+  @Mock
+  Clock clock;
+
+  @Mock
+  ScheduledExecutorService scheduler;
+
+  OAuthProperties props;
+
+  MetricRegistry registry = new MetricRegistry();
+
+  TrustedIssuerKeyManager manager;
+
+  @Before
+  public void setup() {
+    AuthorizationServer as = new AuthorizationServer();
+    as.setName("iam");
+    as.setIssuer(ISSUER);
+    as.setJwkUri(JWKS_URI);
+
+    props = new OAuthProperties();
+    props.setIssuers(Collections.singletonList(as));
+    props.setJwksMinBackoffSecs(5);
+    props.setJwksMaxBackoffSecs(60);
+    props.setUnknownKeyRefetchMinIntervalSecs(30);
+
+    manager = new TrustedIssuerKeyManager(props, fetcher, null, registry, clock);
+  }
+
+  private static JWK rsaKey(String kid) throws Exception {
+    KeyPairGenerator gen = KeyPairGenerator.getInstance("RSA");
+    gen.initialize(2048);
+    return new RSAKey.Builder((RSAPublicKey) gen.generateKeyPair().getPublic()).keyID(kid)
+      .build();
+  }
+
+  private static String jwks(JWK... keys) {
+    return new JWKSet(Arrays.asList(keys)).toString();
+  }
+
+  private static JWKSelector kid(String kid) {
+    return new JWKSelector(new JWKMatcher.Builder().keyID(kid).build());
+  }
+
+  private Object gauge(String metric) {
+    return registry.getGauges()
+      .get(MetricRegistry.name(TrustedIssuerKeyManager.class, "issuers", ISSUER, metric))
+      .getValue();
+  }
+
+  @Test
+  public void keysAreServedAfterRefresh() throws Exception {
+    when(fetcher.loadJWKSourceForURL(URI.create(JWKS_URI))).thenReturn(jwks(rsaKey("k1")));
+
+    assertThat(manager.refresh(ISSUER), is(true));
+
+    JWKSource<SecurityContext> source = manager.keySource(ISSUER);
+    List<JWK> keys = source.get(kid("k1"), null);
+
+    assertThat(keys.size(), is(1));
+    assertThat(gauge("healthy"), is(1));
+    assertThat(gauge("keys"), is(1));
+  }
+
+  @Test
+  public void staleKeysAreServedWhenRefreshFails() throws Exception {
+    when(fetcher.loadJWKSourceForURL(URI.create(JWKS_URI))).thenReturn(jwks(rsaKey("k1")))
+      .thenThrow(new OidcConfigurationResolutionError("unreachable"));
+
+    assertThat(manager.refresh(ISSUER), is(true));
+    assertThat(manager.refresh(ISSUER), is(false));
+
+    assertThat(manager.keySource(ISSUER).get(kid("k1"), null).size(), is(1));
+    assertThat(gauge("healthy"), is(0));
+    assertThat(gauge("consecutive-failures"), is(1));
+  }
+
+  @Test
+  public void unknownKeyTriggersRateLimitedRefetch() throws Exception {
+    when(clock.millis()).thenReturn(0L, 1000L, 2000L, 3000L, 40000L, 41000L);
+    when(fetcher.loadJWKSourceForURL(URI.create(JWKS_URI))).thenReturn(jwks(rsaKey("k1")),
+        jwks(rsaKey("k1"), rsaKey("k2")));
+
+    manager.refresh(ISSUER);
+    JWKSource<SecurityContext> source = manager.keySource(ISSUER);
+
+    // Rotated key: refetched on demand
+    assertThat(source.get(kid("k2"), null).size(), is(1));
+    verify(fetcher, times(2)).loadJWKSourceForURL(any());
+
+    // Unknown key within the refetch interval: no fetch
+    assertThat(source.get(kid("k3"), null).isEmpty(), is(true));
+    verify(fetcher, times(2)).loadJWKSourceForURL(any());
+
+    // Unknown key after the refetch interval
+    assertThat(source.get(kid("k3"), null).isEmpty(), is(true));
+    verify(fetcher, times(3)).loadJWKSourceForURL(any());
+  }
+
+  @Test
+  public void backoffGrowsExponentiallyUpToMax() {
+    assertThat(manager.backoffMsec(1), is(5000L));
+    assertThat(manager.backoffMsec(2), is(10000L));
+    assertThat(manager.backoffMsec(3), is(20000L));
+    assertThat(manager.backoffMsec(5), is(60000L));
+    assertThat(manager.backoffMsec(100), is(60000L));
+  }
+
+  @Test
+  public void missingKeysFailFastAndAreFetchedInTheBackground() throws Exception {
+    when(fetcher.loadJWKSourceForURL(URI.create(JWKS_URI))).thenReturn(jwks(rsaKey("k1")));
+    manager = new TrustedIssuerKeyManager(props, fetcher, scheduler, registry, clock);
+    JWKSource<SecurityContext> source = manager.keySource(ISSUER);
+
+    try {
+      source.get(kid("k1"), null);
+      fail("Expected a KeySourceException");
+    } catch (KeySourceException e) {
+      // expected
+    }
+
+    verify(fetcher, never()).loadJWKSourceForURL(any());
+
+    ArgumentCaptor<Runnable> fetch = ArgumentCaptor.forClass(Runnable.class);
+    verify(scheduler).execute(fetch.capture());
+    fetch.getValue().run();
+
+    assertThat(source.get(kid("k1"), null).size(), is(1));
+  }
+
+  @Test
+  public void backgroundFetchesAreRateLimited() throws Exception {
+    when(clock.millis()).thenReturn(0L, 1000L);
+    manager = new TrustedIssuerKeyManager(props, fetcher, scheduler, registry, clock);
+    JWKSource<SecurityContext> source = manager.keySource(ISSUER);
+
+    for (int i = 0; i < 2; i++) {
+      try {
+        source.get(kid("k1"), null);
+        fail("Expected a KeySourceException");
+      } catch (KeySourceException e) {
+        // expected
+      }
+    }
+
+    verify(scheduler, times(1)).execute(any());
+  }
+
+  @Test(expected = UnknownTokenIssuerError.class)
+  public void untrustedIssuerIsRejected() {
+    manager.keySource("https://unknown.example");
+  }
+}
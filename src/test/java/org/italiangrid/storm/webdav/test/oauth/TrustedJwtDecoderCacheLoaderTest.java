@@ -0,0 +1,129 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare, 2018.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.italiangrid.storm.webdav.test.oauth;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.when;
+
+import java.net.URI;
+import java.time.Clock;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.Date;
+
+import org.italiangrid.storm.webdav.config.OAuthProperties;
+import org.italiangrid.storm.webdav.config.OAuthProperties.AuthorizationServer;
+import org.italiangrid.storm.webdav.config.ServiceConfigurationProperties.AuthorizationServerProperties;
+import org.italiangrid.storm.webdav.oauth.authzserver.jwt.SigningKeyStore;
+import org.italiangrid.storm.webdav.oauth.utils.OidcConfigurationFetcher;
+import org.italiangrid.storm.webdav.oauth.utils.TrustedIssuerKeyManager;
+import org.italiangrid.storm.webdav.oauth.utils.TrustedJwtDecoderCacheLoader;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.security.oauth2.jwt.JwtDecoder;
+import org.springframework.security.oauth2.jwt.JwtException;
+
+import com.codahale.metrics.MetricRegistry;
+import com.nimbusds.jwt.JWTClaimsSet;
+
+@RunWith(MockitoJUnitRunner.class)
+public class TrustedJwtDecoderCacheLoaderTest {
+
+  public static final String ISSUER = "https://storm-2.example";
+  public static final String JWKS_URI = "https://storm-2.example/.well-known/jwks.json";
+
+  @Mock
+  OidcConfigurationFetcher fetcher;
+
+  @Mock
+  Clock clock;
+
+  TrustedIssuerKeyManager manager;
+
+  TrustedJwtDecoderCacheLoader loader;
+
+  @Before
+  public void setup() {
+    AuthorizationServer as = new AuthorizationServer();
+    as.setName("storm-2");
+    as.setIssuer(ISSUER);
+    as.setJwkUri(JWKS_URI);
+
+    OAuthProperties props = new OAuthProperties();
+    props.setIssuers(Collections.singletonList(as));
+    props.setJwksMinBackoffSecs(5);
+    props.setJwksMaxBackoffSecs(60);
+    props.setUnknownKeyRefetchMinIntervalSecs(30);
+
+    manager = new TrustedIssuerKeyManager(props, fetcher, null, new MetricRegistry(), clock);
+    loader = new TrustedJwtDecoderCacheLoader(manager);
+  }
+
+  private static AuthorizationServerProperties properties(String algorithm) {
+    AuthorizationServerProperties props = new AuthorizationServerProperties();
+    props.setIssuer(ISSUER);
+    props.setSignatureAlgorithm(algorithm);
+    return props;
+  }
+
+  private SigningKeyStore peerKeyStore(String algorithm) {
+    SigningKeyStore store = SigningKeyStore.fromProperties(properties(algorithm));
+    when(fetcher.loadJWKSourceForURL(URI.create(JWKS_URI)))
+      .thenReturn(store.getPublicKeys().toString());
+    manager.refresh(ISSUER);
+    return store;
+  }
+
+  private String token(SigningKeyStore store) throws Exception {
+    return store
+      .sign(new JWTClaimsSet.Builder().issuer(ISSUER)
+        .subject("user")
+        .expirationTime(Date.from(Instant.now().plusSeconds(60)))
+        .build())
+      .serialize();
+  }
+
+  @Test
+  public void rsaTokensAreVerified() throws Exception {
+    SigningKeyStore store = peerKeyStore("RS256");
+    JwtDecoder decoder = loader.load(ISSUER);
+
+    Jwt jwt = decoder.decode(token(store));
+    assertThat(jwt.getSubject(), is("user"));
+  }
+
+  @Test
+  public void ecTokensAreVerified() throws Exception {
+    SigningKeyStore store = peerKeyStore("ES256");
+    JwtDecoder decoder = loader.load(ISSUER);
+
+    Jwt jwt = decoder.decode(token(store));
+    assertThat(jwt.getSubject(), is("user"));
+  }
+
+  @Test(expected = JwtException.class)
+  public void tokensSignedWithAnUnpublishedKeyAreRejected() throws Exception {
+    peerKeyStore("ES256");
+    SigningKeyStore other = SigningKeyStore.fromProperties(properties("ES256"));
+
+    loader.load(ISSUER).decode(token(other));
+  }
+}
@@ -0,0 +1,107 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare, 2018.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.italiangrid.storm.webdav.test.oauth;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.function.Function;
+
+import org.italiangrid.storm.webdav.oauth.VerifiedJwtCache;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.springframework.security.oauth2.jwt.Jwt;
+
+import com.codahale.metrics.MetricRegistry;
+
+@RunWith(MockitoJUnitRunner.class)
+public class VerifiedJwtCacheTest {
+
+  public static final String TOKEN = "header.payload.signature";
+  public static final Instant NOW = Instant.parse("2019-01-01T00:00:00.00Z");
+
+  @Mock
+  Clock clock;
+
+  @Mock
+  Function<String, Jwt> decoder;
+
+  MetricRegistry registry = new MetricRegistry();
+
+  VerifiedJwtCache cache;
+
+  @Before
+  public void setup() {
+    cache = new VerifiedJwtCache(registry, clock, 100, Duration.ofMinutes(10),
+        Duration.ofSeconds(10));
+  }
+
+  private Jwt jwt(Instant expiresAt) {
+    return new Jwt(TOKEN, NOW, expiresAt, Collections.singletonMap("alg", "RS256"),
+        Collections.singletonMap("sub", "test"));
+  }
+
+  @Test
+  public void testTokenIsDecodedOnce() {
+    Jwt jwt = jwt(NOW.plusSeconds(3600));
+    when(clock.instant()).thenReturn(NOW);
+    when(decoder.apply(TOKEN)).thenReturn(jwt);
+
+    assertThat(cache.getOrDecode(TOKEN, decoder), sameInstance(jwt));
+    assertThat(cache.getOrDecode(TOKEN, decoder), sameInstance(jwt));
+
+    verify(decoder, times(1)).apply(TOKEN);
+    assertThat(registry.meter(MetricRegistry.name(VerifiedJwtCache.class, "hits")).getCount(),
+        is(1L));
+    assertThat(registry.meter(MetricRegistry.name(VerifiedJwtCache.class, "misses")).getCount(),
+        is(1L));
+  }
+
+  @Test
+  public void testTokenIsDecodedAgainCloseToExpiration() {
+    Jwt jwt = jwt(NOW.plusSeconds(60));
+    when(clock.instant()).thenReturn(NOW, NOW.plusSeconds(55));
+    when(decoder.apply(TOKEN)).thenReturn(jwt);
+
+    cache.getOrDecode(TOKEN, decoder);
+    cache.getOrDecode(TOKEN, decoder);
+
+    verify(decoder, times(2)).apply(TOKEN);
+  }
+
+  @Test
+  public void testTokenWithoutExpirationIsNotCached() {
+    Jwt jwt = jwt(null);
+    when(decoder.apply(TOKEN)).thenReturn(jwt);
+
+    cache.getOrDecode(TOKEN, decoder);
+    cache.getOrDecode(TOKEN, decoder);
+
+    verify(decoder, times(2)).apply(TOKEN);
+    assertThat(cache.size(), is(0L));
+  }
+}
@@ -0,0 +1,154 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare, 2018.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.italiangrid.storm.webdav.test.oauth.jwt;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.junit.Assert.assertThat;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.italiangrid.storm.webdav.config.ServiceConfigurationProperties.AuthorizationServerProperties;
+import org.italiangrid.storm.webdav.oauth.authzserver.jwt.SigningKeyStore;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.crypto.ECDSAVerifier;
+import com.nimbusds.jose.crypto.RSASSAVerifier;
+import com.nimbusds.jose.jwk.ECKey;
+import com.nimbusds.jose.jwk.JWK;
+import com.nimbusds.jose.jwk.JWKSet;
+import com.nimbusds.jose.jwk.RSAKey;
+import com.nimbusds.jwt.JWTClaimsSet;
+import com.nimbusds.jwt.SignedJWT;
+
+public class SigningKeyStoreTest {
+
+  public static final String ISSUER = "https://storm.example";
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  AuthorizationServerProperties props;
+
+  @Before
+  public void setup() {
+    props = new AuthorizationServerProperties();
+    props.setIssuer(ISSUER);
+    props.setSecret("a-secret-that-is-long-enough-for-hs256-signatures");
+  }
+
+  private SignedJWT sign(SigningKeyStore store) throws Exception {
+    return store.sign(new JWTClaimsSet.Builder().issuer(ISSUER).build());
+  }
+
+  @Test
+  public void hmacKeysAreNotPublished() {
+    SigningKeyStore store = SigningKeyStore.fromProperties(props);
+
+    assertThat(store.isAsymmetric(), is(false));
+    assertThat(store.getAlgorithm(), is(JWSAlgorithm.HS256));
+    assertThat(store.getPublicKeys().getKeys().isEmpty(), is(true));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void unsupportedAlgorithmIsRejected() {
+    props.setSignatureAlgorithm("ES512");
+    SigningKeyStore.fromProperties(props);
+  }
+
+  @Test
+  public void rsaTokensVerifyWithPublishedKey() throws Exception {
+    props.setSignatureAlgorithm("RS256");
+    SigningKeyStore store = SigningKeyStore.fromProperties(props);
+
+    assertThat(store.isAsymmetric(), is(true));
+
+    SignedJWT jwt = sign(store);
+    JWKSet publicKeys = store.getPublicKeys();
+
+    assertThat(jwt.getHeader().getAlgorithm(), is(JWSAlgorithm.RS256));
+    assertThat(jwt.getHeader().getKeyID(), is(store.getSigningKey().getKeyID()));
+
+    assertThat(publicKeys.getKeys().size(), is(1));
+    JWK key = publicKeys.getKeyByKeyId(jwt.getHeader().getKeyID());
+    assertThat(key.isPrivate(), is(false));
+    assertThat(jwt.verify(new RSASSAVerifier((RSAKey) key)), is(true));
+    assertThat(publicKeys.toJSONObject().toString().contains("\"d\""), is(false));
+  }
+
+  @Test
+  public void ecTokensVerifyWithPublishedKey() throws Exception {
+    props.setSignatureAlgorithm("ES256");
+    SigningKeyStore store = SigningKeyStore.fromProperties(props);
+
+    SignedJWT jwt = sign(store);
+    JWK key = store.getPublicKeys().getKeyByKeyId(jwt.getHeader().getKeyID());
+    assertThat(jwt.verify(new ECDSAVerifier((ECKey) key)), is(true));
+  }
+
+  @Test
+  public void rotationKeepsRetiredKeysForVerification() throws Exception {
+    props.setSignatureAlgorithm("RS256");
+    props.setRetiredSigningKeysToKeep(1);
+    SigningKeyStore store = SigningKeyStore.fromProperties(props);
+
+    SignedJWT first = sign(store);
+    store.rotate();
+    SignedJWT second = sign(store);
+
+    assertThat(second.getHeader().getKeyID(), not(first.getHeader().getKeyID()));
+    assertThat(store.getPublicKeys().getKeys().size(), is(2));
+    JWK retired = store.getPublicKeys().getKeyByKeyId(first.getHeader().getKeyID());
+    assertThat(first.verify(new RSASSAVerifier((RSAKey) retired)), is(true));
+
+    store.rotate();
+
+    assertThat(store.getPublicKeys().getKeys().size(), is(2));
+    assertThat(store.getPublicKeys().getKeyByKeyId(first.getHeader().getKeyID()) == null,
+        is(true));
+  }
+
+  @Test
+  public void keysAreLoadedFromFile() throws Exception {
+    props.setSignatureAlgorithm("RS256");
+    SigningKeyStore generated = SigningKeyStore.fromProperties(props);
+
+    File jwks = folder.newFile("jwks.json");
+    Files.write(jwks.toPath(), new JWKSet(generated.getSigningKey()).toJSONObject(false)
+      .toString()
+      .getBytes(StandardCharsets.UTF_8));
+
+    props.setJwksPath(jwks.getAbsolutePath());
+    SigningKeyStore store = SigningKeyStore.fromProperties(props);
+
+    assertThat(store.getSigningKey().getKeyID(), is(generated.getSigningKey().getKeyID()));
+    SignedJWT jwt = sign(store);
+    assertThat(jwt.verify(new RSASSAVerifier((RSAKey) generated.getSigningKey())), is(true));
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void missingKeyFileFailsInitialization() {
+    props.setSignatureAlgorithm("RS256");
+    props.setJwksPath(new File(folder.getRoot(), "missing.json").getAbsolutePath());
+    SigningKeyStore.fromProperties(props);
+  }
+}
@@ -0,0 +1,230 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare, 2018.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.italiangrid.storm.webdav.test.server;
+
+import static java.util.Collections.singletonList;
+import static org.hamcrest.CoreMatchers.is;
+import static org.italiangrid.storm.webdav.server.ResolvedResource.RESOLVED_RESOURCE_ATTRIBUTE_NAME;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.italiangrid.storm.webdav.config.ServiceConfigurationProperties.AdmissionControlProperties;
+import org.italiangrid.storm.webdav.config.StorageAreaConfiguration;
+import org.italiangrid.storm.webdav.config.StorageAreaInfo;
+import org.italiangrid.storm.webdav.server.PathResolver;
+import org.italiangrid.storm.webdav.server.ResolvedResource;
+import org.italiangrid.storm.webdav.server.servlet.AdmissionControlFilter;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+
+@RunWith(MockitoJUnitRunner.class)
+public class AdmissionControlFilterTest {
+
+  static final String METRIC_PREFIX =
+      MetricRegistry.name(AdmissionControlFilter.class, "storage-areas", "test");
+
+  @Mock
+  StorageAreaConfiguration saConfig;
+
+  @Mock
+  StorageAreaInfo sa;
+
+  @Mock
+  PathResolver resolver;
+
+  @Mock
+  HttpServletRequest request;
+
+  @Mock
+  HttpServletResponse response;
+
+  @Mock
+  FilterChain chain;
+
+  MetricRegistry registry = new MetricRegistry();
+
+  AdmissionControlProperties props = new AdmissionControlProperties();
+
+  AdmissionControlFilter filter;
+
+  @Before
+  public void setup() {
+    when(sa.name()).thenReturn("test");
+    when(saConfig.getStorageAreaInfo()).thenReturn(singletonList(sa));
+    props.setMaxQueueWaitMsec(10);
+    props.getMethodLimits().put("put", 1);
+    filter = new AdmissionControlFilter(saConfig, 2, props, registry);
+  }
+
+  @SuppressWarnings("unchecked")
+  int gauge(String name) {
+    return ((Gauge<Integer>) registry.getGauges().get(MetricRegistry.name(METRIC_PREFIX, name)))
+      .getValue();
+  }
+
+  long rejected() {
+    return registry.meter(MetricRegistry.name(METRIC_PREFIX, "rejected")).getCount();
+  }
+
+  HttpServletRequest storageAreaRequest(String method) {
+    HttpServletRequest req = mock(HttpServletRequest.class);
+    when(req.getMethod()).thenReturn(method);
+    when(resolver.resolveStorageArea("/test/file")).thenReturn(sa);
+    when(req.getAttribute(RESOLVED_RESOURCE_ATTRIBUTE_NAME))
+      .thenReturn(new ResolvedResource(resolver, "/test/file"));
+    return req;
+  }
+
+  void assertRejected(HttpServletResponse res) throws IOException {
+    verify(res).setHeader(AdmissionControlFilter.RETRY_AFTER_HEADER, "5");
+    verify(res).sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+  }
+
+  @Test
+  public void testPermitIsHeldWhileServingRequest() throws IOException, ServletException {
+    HttpServletRequest req = storageAreaRequest("GET");
+
+    doAnswer(i -> {
+      assertThat(gauge("in-flight"), is(1));
+      return null;
+    }).when(chain).doFilter(any(ServletRequest.class), any(ServletResponse.class));
+
+    filter.doFilter(req, response, chain);
+
+    verify(chain).doFilter(req, response);
+    assertThat(gauge("in-flight"), is(0));
+  }
+
+  @Test
+  public void testPermitIsReleasedOnError() throws IOException, ServletException {
+    HttpServletRequest req = storageAreaRequest("GET");
+    doThrow(new IOException("Filesystem error")).when(chain).doFilter(req, response);
+
+    try {
+      filter.doFilter(req, response, chain);
+      fail("Expected IOException");
+    } catch (IOException e) {
+      assertThat(gauge("in-flight"), is(0));
+    }
+  }
+
+  @Test
+  public void testRequestsOutsideStorageAreasAreNotLimited()
+      throws IOException, ServletException {
+    when(resolver.resolveStorageArea("/other/file")).thenReturn(null);
+    when(request.getAttribute(RESOLVED_RESOURCE_ATTRIBUTE_NAME))
+      .thenReturn(new ResolvedResource(resolver, "/other/file"));
+
+    filter.doFilter(request, response, chain);
+
+    verify(chain).doFilter(request, response);
+    assertThat(gauge("in-flight"), is(0));
+  }
+
+  @Test
+  public void testRequestIsRejectedWhenDeadlineExpires() throws IOException, ServletException {
+    HttpServletRequest first = storageAreaRequest("GET");
+    HttpServletRequest second = storageAreaRequest("GET");
+    HttpServletRequest third = storageAreaRequest("GET");
+    HttpServletResponse thirdResponse = mock(HttpServletResponse.class);
+
+    FilterChain nested = mock(FilterChain.class);
+
+    doAnswer(i -> {
+      filter.doFilter(third, thirdResponse, chain);
+      return null;
+    }).when(nested).doFilter(second, response);
+
+    doAnswer(i -> {
+      filter.doFilter(second, response, nested);
+      return null;
+    }).when(chain).doFilter(first, response);
+
+    filter.doFilter(first, response, chain);
+
+    verify(chain, never()).doFilter(third, thirdResponse);
+    assertRejected(thirdResponse);
+    assertThat(rejected(), is(1L));
+    assertThat(gauge("queued"), is(0));
+    assertThat(gauge("in-flight"), is(0));
+  }
+
+  @Test
+  public void testMethodLimitOnlyAppliesToThatMethod() throws IOException, ServletException {
+    HttpServletRequest put = storageAreaRequest("PUT");
+    HttpServletRequest otherPut = storageAreaRequest("PUT");
+    HttpServletRequest get = storageAreaRequest("GET");
+    HttpServletResponse putResponse = mock(HttpServletResponse.class);
+
+    doAnswer(i -> {
+      assertThat(gauge("methods.PUT.in-flight"), is(1));
+      filter.doFilter(otherPut, putResponse, chain);
+      filter.doFilter(get, response, chain);
+      return null;
+    }).when(chain).doFilter(put, response);
+
+    filter.doFilter(put, response, chain);
+
+    verify(chain, never()).doFilter(otherPut, putResponse);
+    verify(chain).doFilter(get, response);
+    assertRejected(putResponse);
+    assertThat(gauge("methods.PUT.in-flight"), is(0));
+    assertThat(gauge("in-flight"), is(0));
+  }
+
+  @Test
+  public void testFullQueueRejectsImmediately() throws IOException, ServletException {
+    props.setMaxQueuedRequestsPerSa(0);
+    props.setMaxQueueWaitMsec(60000);
+    filter = new AdmissionControlFilter(saConfig, 1, props, new MetricRegistry());
+
+    HttpServletRequest first = storageAreaRequest("GET");
+    HttpServletRequest second = storageAreaRequest("GET");
+    HttpServletResponse secondResponse = mock(HttpServletResponse.class);
+
+    doAnswer(i -> {
+      filter.doFilter(second, secondResponse, chain);
+      return null;
+    }).when(chain).doFilter(first, response);
+
+    filter.doFilter(first, response, chain);
+
+    verify(chain, never()).doFilter(second, secondResponse);
+    assertRejected(secondResponse);
+  }
+}
@@ -0,0 +1,311 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare, 2018.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.italiangrid.storm.webdav.test.server;
+
+import static com.codahale.metrics.MetricRegistry.name;
+import static org.hamcrest.CoreMatchers.is;
+import static org.italiangrid.storm.webdav.server.ResolvedResource.RESOLVED_RESOURCE_ATTRIBUTE_NAME;
+import static org.junit.Assert.assertThat;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.zip.Adler32;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.DispatcherType;
+import javax.servlet.ReadListener;
+import javax.servlet.ServletInputStream;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.italiangrid.storm.webdav.config.ServiceConfigurationProperties.ChecksumStrategy;
+import org.italiangrid.storm.webdav.fs.FilesystemAccess;
+import org.italiangrid.storm.webdav.fs.attrs.ExtendedAttributesHelper;
+import org.italiangrid.storm.webdav.server.PathResolver;
+import org.italiangrid.storm.webdav.server.ResolvedResource;
+import org.italiangrid.storm.webdav.server.servlet.AsyncFileSender;
+import org.italiangrid.storm.webdav.server.servlet.AsyncPutHandler;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import com.codahale.metrics.MetricRegistry;
+
+@RunWith(MockitoJUnitRunner.class)
+public class AsyncServletIoTest {
+
+  static final int BUFFER_SIZE = 1024;
+
+  @Rule
+  public TemporaryFolder storage = new TemporaryFolder();
+
+  @Mock
+  HttpServletRequest request;
+
+  @Mock
+  HttpServletResponse response;
+
+  @Mock
+  AsyncContext asyncContext;
+
+  @Mock
+  PathResolver resolver;
+
+  @Mock
+  ExtendedAttributesHelper attrsHelper;
+
+  /**
+   * An output stream that is only ready every other write, to exercise the write listener
+   * resumption.
+   */
+  static class ChokingOutputStream extends ServletOutputStream {
+
+    final ByteArrayOutputStream data = new ByteArrayOutputStream();
+    boolean ready = true;
+    WriteListener listener;
+
+    @Override
+    public boolean isReady() {
+      boolean wasReady = ready;
+      ready = !ready;
+      return wasReady;
+    }
+
+    @Override
+    public void setWriteListener(WriteListener writeListener) {
+      listener = writeListener;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+      data.write(b);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      data.write(b, off, len);
+    }
+
+    void drain() throws IOException {
+      listener.onWritePossible();
+    }
+  }
+
+  /**
+   * An input stream that delivers the request body in small chunks, one chunk per
+   * onDataAvailable call.
+   */
+  static class ChunkedInputStream extends ServletInputStream {
+
+    final ByteArrayInputStream data;
+    ReadListener listener;
+    boolean ready = false;
+
+    ChunkedInputStream(byte[] content) {
+      data = new ByteArrayInputStream(content);
+    }
+
+    @Override
+    public boolean isFinished() {
+      return data.available() == 0;
+    }
+
+    @Override
+    public boolean isReady() {
+      boolean wasReady = ready;
+      ready = false;
+      return wasReady;
+    }
+
+    @Override
+    public void setReadListener(ReadListener readListener) {
+      listener = readListener;
+    }
+
+    @Override
+    public int read() throws IOException {
+      return data.read();
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      return data.read(b, off, Math.min(len, 100));
+    }
+
+    void deliver() throws IOException {
+      while (!isFinished()) {
+        ready = true;
+        listener.onDataAvailable();
+      }
+      listener.onAllDataRead();
+    }
+  }
+
+  byte[] randomContent(int size) {
+    byte[] content = new byte[size];
+    new Random(42).nextBytes(content);
+    return content;
+  }
+
+  String adler32(byte[] content) {
+    Adler32 checksum = new Adler32();
+    checksum.update(content, 0, content.length);
+    return Long.toHexString(checksum.getValue());
+  }
+
+  void putRequest(Path target, long length) throws IOException {
+    when(request.getMethod()).thenReturn("PUT");
+    when(request.isAsyncSupported()).thenReturn(true);
+    when(request.getDispatcherType()).thenReturn(DispatcherType.REQUEST);
+    when(request.getContentLengthLong()).thenReturn(length);
+    when(resolver.resolvePath("/test/file")).thenReturn(target.toString());
+    when(request.getAttribute(RESOLVED_RESOURCE_ATTRIBUTE_NAME))
+      .thenReturn(new ResolvedResource(resolver, "/test/file"));
+  }
+
+  @Test
+  public void testFileIsSentWhenOutputIsReady() throws IOException {
+    byte[] content = randomContent(10 * BUFFER_SIZE + 17);
+    Path file = storage.newFile().toPath();
+    Files.write(file, content);
+
+    ChokingOutputStream out = new ChokingOutputStream();
+    when(request.startAsync()).thenReturn(asyncContext);
+    when(response.getOutputStream()).thenReturn(out);
+
+    AsyncFileSender.send(request, response, file, content.length, BUFFER_SIZE);
+
+    int iterations = 0;
+    while (out.data.size() < content.length) {
+      verify(asyncContext, never()).complete();
+      out.drain();
+      iterations++;
+    }
+
+    out.drain();
+    assertThat(iterations > 1, is(true));
+    assertThat(out.data.toByteArray(), is(content));
+    verify(asyncContext).setTimeout(0);
+    verify(asyncContext).complete();
+  }
+
+  @Test
+  public void testNewFileIsReceivedAndChecksummed() throws IOException {
+    byte[] content = randomContent(5 * BUFFER_SIZE + 3);
+    Path target = storage.getRoot().toPath().resolve("file");
+    putRequest(target, content.length);
+
+    ChunkedInputStream in = new ChunkedInputStream(content);
+    when(request.getInputStream()).thenReturn(in);
+    when(request.startAsync()).thenReturn(asyncContext);
+    when(asyncContext.getResponse()).thenReturn(response);
+
+    MetricRegistry registry = new MetricRegistry();
+    AsyncPutHandler handler = new AsyncPutHandler(attrsHelper, ChecksumStrategy.NO_CHECKSUM,
+        BUFFER_SIZE, null, registry);
+
+    assertThat(handler.canHandle(request), is(true));
+    handler.handle(request, response);
+    in.deliver();
+
+    assertThat(Files.readAllBytes(target), is(content));
+    verify(attrsHelper).setChecksumAttribute(target, adler32(content));
+    verify(response).setStatus(HttpServletResponse.SC_CREATED);
+    verify(asyncContext).complete();
+    assertThat(registry.timer(name(FilesystemAccess.class, "create")).getCount(), is(1L));
+    assertThat(registry.timer("storm.checksum-strategy").getCount(), is(0L));
+  }
+
+  @Test
+  public void testExistingFileIsReplaced() throws IOException {
+    Path target = storage.getRoot().toPath().resolve("file");
+    Files.write(target, "some longer previous content".getBytes(StandardCharsets.UTF_8));
+
+    byte[] content = "new content".getBytes(StandardCharsets.UTF_8);
+    putRequest(target, content.length);
+
+    ChunkedInputStream in = new ChunkedInputStream(content);
+    when(request.getInputStream()).thenReturn(in);
+    when(request.startAsync()).thenReturn(asyncContext);
+    when(asyncContext.getResponse()).thenReturn(response);
+
+    MetricRegistry registry = new MetricRegistry();
+    AsyncPutHandler handler = new AsyncPutHandler(attrsHelper, ChecksumStrategy.LATE,
+        BUFFER_SIZE, null, registry);
+
+    assertThat(handler.canHandle(request), is(true));
+    handler.handle(request, response);
+    in.deliver();
+
+    assertThat(Files.readAllBytes(target), is(content));
+    verify(attrsHelper).setChecksumAttribute(target, adler32(content));
+    verify(response).setStatus(HttpServletResponse.SC_NO_CONTENT);
+    assertThat(registry.timer("storm.checksum-strategy").getCount(), is(1L));
+    assertThat(registry.timer(name(FilesystemAccess.class, "create")).getCount(), is(0L));
+  }
+
+  @Test
+  public void testIncompleteBodyRemovesNewFile() throws IOException {
+    byte[] content = randomContent(BUFFER_SIZE);
+    Path target = storage.getRoot().toPath().resolve("file");
+    putRequest(target, content.length + 1);
+
+    ChunkedInputStream in = new ChunkedInputStream(content);
+    when(request.getInputStream()).thenReturn(in);
+    when(request.startAsync()).thenReturn(asyncContext);
+    when(asyncContext.getResponse()).thenReturn(response);
+
+    AsyncPutHandler handler = new AsyncPutHandler(attrsHelper, ChecksumStrategy.EARLY,
+        BUFFER_SIZE);
+
+    assertThat(handler.canHandle(request), is(true));
+    handler.handle(request, response);
+    in.deliver();
+
+    assertThat(Files.exists(target), is(false));
+    verify(response).sendError(eq(HttpServletResponse.SC_BAD_REQUEST), anyString());
+    verify(asyncContext).complete();
+  }
+
+  @Test
+  public void testPartialPutIsLeftToMilton() throws IOException {
+    when(request.getMethod()).thenReturn("PUT");
+    when(request.isAsyncSupported()).thenReturn(true);
+    when(request.getDispatcherType()).thenReturn(DispatcherType.REQUEST);
+    when(request.getContentLengthLong()).thenReturn(10L);
+    when(request.getHeader("Content-Range")).thenReturn("bytes 0-9/20");
+
+    AsyncPutHandler handler = new AsyncPutHandler(attrsHelper, ChecksumStrategy.EARLY,
+        BUFFER_SIZE);
+
+    assertThat(handler.canHandle(request), is(false));
+  }
+}
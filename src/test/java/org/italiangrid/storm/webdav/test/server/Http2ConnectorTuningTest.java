@@ -0,0 +1,77 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare, 2018.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.italiangrid.storm.webdav.test.server;
+
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import org.eclipse.jetty.http2.BufferingFlowControlStrategy;
+import org.eclipse.jetty.http2.SimpleFlowControlStrategy;
+import org.eclipse.jetty.http2.server.HTTP2CServerConnectionFactory;
+import org.eclipse.jetty.server.HttpConfiguration;
+import org.eclipse.jetty.server.HttpConnectionFactory;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.italiangrid.storm.webdav.config.Http2Properties;
+import org.italiangrid.storm.webdav.config.Http2Properties.FlowControlStrategy;
+import org.italiangrid.storm.webdav.server.Http2ConnectorTuning;
+import org.junit.Test;
+
+public class Http2ConnectorTuningTest {
+
+  @Test
+  public void testHttp2FactoryIsConfigured() {
+    HttpConfiguration config = new HttpConfiguration();
+    HTTP2CServerConnectionFactory h2 = new HTTP2CServerConnectionFactory(config);
+    ServerConnector connector =
+        new ServerConnector(new Server(), new HttpConnectionFactory(config), h2);
+
+    Http2Properties props = new Http2Properties();
+    props.setMaxConcurrentStreams(64);
+
+    assertThat(Http2ConnectorTuning.configure(connector, props), is(true));
+    assertThat(h2.getMaxConcurrentStreams(), is(64));
+    assertThat(h2.getInitialSessionRecvWindow(), is(16 * 1024 * 1024));
+    assertThat(h2.getInitialStreamRecvWindow(), is(8 * 1024 * 1024));
+    assertThat(h2.getFlowControlStrategyFactory().newFlowControlStrategy(),
+        instanceOf(BufferingFlowControlStrategy.class));
+  }
+
+  @Test
+  public void testSimpleFlowControlStrategy() {
+    Http2Properties props = new Http2Properties();
+    props.setFlowControlStrategy(FlowControlStrategy.SIMPLE);
+
+    assertThat(Http2ConnectorTuning.flowControlStrategyFactory(props).newFlowControlStrategy(),
+        instanceOf(SimpleFlowControlStrategy.class));
+  }
+
+  @Test
+  public void testPlainHttpConnectorIsLeftAlone() {
+    ServerConnector connector = new ServerConnector(new Server());
+    assertThat(Http2ConnectorTuning.configure(connector, new Http2Properties()), is(false));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testStreamWindowLargerThanSessionWindowIsRejected() {
+    Http2Properties props = new Http2Properties();
+    props.setInitialStreamRecvWindow(props.getInitialSessionRecvWindow() + 1);
+
+    Http2ConnectorTuning.configure(new HTTP2CServerConnectionFactory(new HttpConfiguration()),
+        props);
+  }
+}
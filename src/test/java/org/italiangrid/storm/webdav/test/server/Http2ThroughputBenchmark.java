@@ -0,0 +1,204 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare, 2018.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.italiangrid.storm.webdav.test.server;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.eclipse.jetty.client.HttpClient;
+import org.eclipse.jetty.client.HttpClientTransport;
+import org.eclipse.jetty.client.http.HttpClientTransportOverHTTP;
+import org.eclipse.jetty.http2.client.HTTP2Client;
+import org.eclipse.jetty.http2.client.http.HttpClientTransportOverHTTP2;
+import org.eclipse.jetty.http2.server.HTTP2CServerConnectionFactory;
+import org.eclipse.jetty.server.HttpConfiguration;
+import org.eclipse.jetty.server.HttpConnectionFactory;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.servlet.ServletContextHandler;
+import org.eclipse.jetty.servlet.ServletHolder;
+import org.italiangrid.storm.webdav.config.Http2Properties;
+import org.italiangrid.storm.webdav.server.Http2ConnectorTuning;
+import org.italiangrid.storm.webdav.server.servlet.AsyncFileSender;
+
+/**
+ * Compares large file download throughput over HTTP/1.1 and cleartext HTTP/2 on the loopback
+ * interface, with Jetty's default HTTP/2 settings and with the ones in {@link Http2Properties}.
+ * Each run downloads the file with {@link #STREAMS} concurrent requests: over HTTP/1.1 this means
+ * one connection per request, over HTTP/2 one stream per request on a single connection.
+ *
+ * Loopback has a tiny RTT, so differences here are a lower bound of what is seen on high
+ * bandwidth-delay product links; use tc/netem on the loopback to add latency.
+ *
+ * Not run as part of the test suite; run the main method from the IDE or with exec:java.
+ */
+public class Http2ThroughputBenchmark {
+
+  static final long FILE_SIZE = 512L * 1024 * 1024;
+  static final int STREAMS = 4;
+  static final int ROUNDS = 3;
+  static final int BUFFER_SIZE = 65536;
+
+  static class FileServlet extends HttpServlet {
+
+    private static final long serialVersionUID = 1L;
+
+    final transient Path file;
+
+    FileServlet(Path file) {
+      this.file = file;
+    }
+
+    @Override
+    protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+      resp.setContentLengthLong(FILE_SIZE);
+      resp.setContentType("application/octet-stream");
+      AsyncFileSender.send(req, resp, file, FILE_SIZE, BUFFER_SIZE);
+    }
+  }
+
+  static Path createFile() throws IOException {
+    Path file = Files.createTempFile("http2-bench", ".dat");
+    file.toFile().deleteOnExit();
+
+    byte[] chunk = new byte[1024 * 1024];
+    new Random(42).nextBytes(chunk);
+
+    try (OutputStream os = Files.newOutputStream(file)) {
+      for (long written = 0; written < FILE_SIZE; written += chunk.length) {
+        os.write(chunk);
+      }
+    }
+
+    return file;
+  }
+
+  static Server startServer(Path file, Http2Properties http2) throws Exception {
+    Server server = new Server();
+
+    HttpConfiguration config = new HttpConfiguration();
+    config.setOutputBufferSize(BUFFER_SIZE);
+
+    ServerConnector connector = new ServerConnector(server, new HttpConnectionFactory(config),
+        new HTTP2CServerConnectionFactory(config));
+    connector.setHost("127.0.0.1");
+    connector.setPort(0);
+
+    if (http2 != null) {
+      Http2ConnectorTuning.configure(connector, http2);
+    }
+
+    server.addConnector(connector);
+
+    ServletContextHandler context = new ServletContextHandler();
+    ServletHolder holder = new ServletHolder(new FileServlet(file));
+    holder.setAsyncSupported(true);
+    context.addServlet(holder, "/file");
+    server.setHandler(context);
+
+    server.start();
+    return server;
+  }
+
+  static HttpClient startClient(boolean useHttp2, Http2Properties http2) throws Exception {
+    HttpClientTransport transport;
+
+    if (useHttp2) {
+      HTTP2Client h2Client = new HTTP2Client();
+      if (http2 != null) {
+        h2Client.setInitialSessionRecvWindow(http2.getInitialSessionRecvWindow());
+        h2Client.setInitialStreamRecvWindow(http2.getInitialStreamRecvWindow());
+      }
+      transport = new HttpClientTransportOverHTTP2(h2Client);
+    } else {
+      transport = new HttpClientTransportOverHTTP();
+    }
+
+    HttpClient client = new HttpClient(transport, null);
+    client.setMaxConnectionsPerDestination(STREAMS);
+    client.start();
+    return client;
+  }
+
+  static double download(HttpClient client, String uri) throws InterruptedException {
+    final CountDownLatch latch = new CountDownLatch(STREAMS);
+    final AtomicLong bytes = new AtomicLong();
+
+    long start = System.nanoTime();
+
+    for (int i = 0; i < STREAMS; i++) {
+      client.newRequest(uri)
+        .onResponseContent((response, content) -> bytes.addAndGet(content.remaining()))
+        .send(result -> {
+          if (result.isFailed()) {
+            result.getFailure().printStackTrace();
+          }
+          latch.countDown();
+        });
+    }
+
+    if (!latch.await(10, TimeUnit.MINUTES)) {
+      throw new IllegalStateException("Downloads did not complete in time");
+    }
+
+    double elapsedSecs = (System.nanoTime() - start) / 1e9;
+    return bytes.get() / (1024.0 * 1024.0) / elapsedSecs;
+  }
+
+  static void run(String name, Path file, boolean useHttp2, Http2Properties http2)
+      throws Exception {
+    Server server = startServer(file, http2);
+    HttpClient client = startClient(useHttp2, http2);
+
+    try {
+      String uri = server.getURI().resolve("/file").toString();
+
+      // warm up
+      download(client, uri);
+
+      double total = 0;
+      for (int i = 0; i < ROUNDS; i++) {
+        total += download(client, uri);
+      }
+
+      System.out.printf("%-24s %10.1f MiB/s%n", name, total / ROUNDS);
+    } finally {
+      client.stop();
+      server.stop();
+    }
+  }
+
+  public static void main(String[] args) throws Exception {
+    Path file = createFile();
+
+    System.out.printf("Downloading %d MiB with %d concurrent requests, %d rounds%n",
+        FILE_SIZE / (1024 * 1024), STREAMS, ROUNDS);
+
+    run("HTTP/1.1", file, false, null);
+    run("HTTP/2 (Jetty defaults)", file, true, null);
+    run("HTTP/2 (tuned)", file, true, new Http2Properties());
+  }
+}
@@ -0,0 +1,193 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare, 2018.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.italiangrid.storm.webdav.test.server;
+
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.italiangrid.storm.webdav.server.ResolvedResource.RESOLVED_RESOURCE_ATTRIBUTE_NAME;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.italiangrid.storm.webdav.config.StorageAreaInfo;
+import org.italiangrid.storm.webdav.server.PathResolver;
+import org.italiangrid.storm.webdav.server.ResolvedResource;
+import org.italiangrid.storm.webdav.server.logging.RequestLog;
+import org.italiangrid.storm.webdav.server.logging.RequestLogEvent;
+import org.italiangrid.storm.webdav.server.servlet.LogRequestFilter;
+import org.italiangrid.storm.webdav.server.tracing.RequestIdFilter;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import com.codahale.metrics.MetricRegistry;
+
+@RunWith(MockitoJUnitRunner.class)
+public class RequestLogTest {
+
+  @Mock
+  HttpServletRequest request;
+
+  @Mock
+  HttpServletResponse response;
+
+  @Mock
+  FilterChain chain;
+
+  @Mock
+  PathResolver resolver;
+
+  @Mock
+  StorageAreaInfo sa;
+
+  MetricRegistry registry = new MetricRegistry();
+
+  List<String> lines = new CopyOnWriteArrayList<>();
+
+  RequestLog requestLog;
+
+  RequestLog newRequestLog(int capacity, boolean sinkEnabled) {
+    requestLog = new RequestLog(capacity, lines::add, () -> sinkEnabled, registry);
+    return requestLog;
+  }
+
+  @After
+  public void teardown() {
+    if (requestLog != null) {
+      requestLog.stop();
+    }
+  }
+
+  @Test
+  public void testEventsAreWrittenAsJsonLines() {
+    newRequestLog(4, true).start();
+
+    requestLog.publish(requestLog.claim()
+      .timestamp(0)
+      .method("GET")
+      .path("/test/\"quoted\"")
+      .status(200)
+      .bytes(0, 1024)
+      .durationUsec(150));
+
+    requestLog
+      .publish(requestLog.claim().method("PUT").status(201).tpc("pull", "https://remote/f", 10));
+
+    requestLog.stop();
+
+    assertThat(lines.size(), is(2));
+    assertThat(lines.get(0),
+        is("{\"timestamp\":\"1970-01-01T00:00:00Z\",\"method\":\"GET\","
+            + "\"path\":\"/test/\\\"quoted\\\"\",\"status\":200,\"bytes_in\":0,"
+            + "\"bytes_out\":1024,\"duration_usec\":150}"));
+    assertThat(lines.get(1), containsString("\"method\":\"PUT\""));
+    assertThat(lines.get(1), containsString(
+        "\"tpc_mode\":\"pull\",\"tpc_remote\":\"https://remote/f\",\"tpc_bytes\":10"));
+  }
+
+  @Test
+  public void testEventsAreDroppedWhenBufferIsFull() {
+    newRequestLog(2, true).start();
+
+    // The writer does not go past an unpublished event
+    RequestLogEvent first = requestLog.claim();
+    RequestLogEvent second = requestLog.claim();
+
+    assertThat(first, notNullValue());
+    assertThat(second, notNullValue());
+    assertThat(requestLog.claim(), nullValue());
+    assertThat(registry.meter(MetricRegistry.name(RequestLog.class, "dropped")).getCount(),
+        is(1L));
+
+    requestLog.publish(second.method("PUT"));
+    requestLog.publish(first.method("GET"));
+    requestLog.stop();
+
+    assertThat(lines.size(), is(2));
+    assertThat(lines.get(0), containsString("GET"));
+    assertThat(lines.get(1), containsString("PUT"));
+  }
+
+  @Test
+  public void testNoEventIsClaimedWhenDisabled() {
+    newRequestLog(2, false).start();
+    assertThat(requestLog.isEnabled(), is(false));
+    assertThat(requestLog.claim(), nullValue());
+
+    RequestLog stopped = new RequestLog(2, lines::add, () -> true, new MetricRegistry());
+    assertThat(stopped.claim(), nullValue());
+  }
+
+  @Test
+  public void testFilterPublishesRequestEvents() throws IOException, ServletException {
+    newRequestLog(4, true).start();
+
+    when(sa.name()).thenReturn("test");
+    when(resolver.resolveStorageArea("/test/file")).thenReturn(sa);
+    when(request.getAttribute(RESOLVED_RESOURCE_ATTRIBUTE_NAME))
+      .thenReturn(new ResolvedResource(resolver, "/test/file"));
+    when(request.getAttribute(RequestIdFilter.REQUEST_ID_ATTRIBUTE_NAME)).thenReturn("req-1");
+    when(request.getMethod()).thenReturn("DELETE");
+    when(request.getRequestURI()).thenReturn("/test/file");
+    when(response.getStatus()).thenReturn(404);
+
+    new LogRequestFilter(requestLog).doFilter(request, response, chain);
+    requestLog.stop();
+
+    assertThat(lines.size(), is(1));
+    assertThat(lines.get(0), containsString("\"request_id\":\"req-1\""));
+    assertThat(lines.get(0), containsString("\"method\":\"DELETE\""));
+    assertThat(lines.get(0), containsString("\"path\":\"/test/file\""));
+    assertThat(lines.get(0), containsString("\"storage_area\":\"test\""));
+    assertThat(lines.get(0), containsString("\"status\":404"));
+  }
+
+  @Test
+  public void testFailedRequestsAreLoggedAsServerErrors() throws IOException, ServletException {
+    newRequestLog(4, true).start();
+
+    when(request.getMethod()).thenReturn("PUT");
+    when(request.getRequestURI()).thenReturn("/test/file");
+    doThrow(new IllegalStateException("boom")).when(chain).doFilter(any(), any());
+
+    try {
+      new LogRequestFilter(requestLog).doFilter(request, response, chain);
+      fail("Expected the exception to propagate");
+    } catch (IllegalStateException e) {
+      // expected
+    }
+
+    requestLog.stop();
+
+    assertThat(lines.size(), is(1));
+    assertThat(lines.get(0), containsString("\"status\":500"));
+  }
+}
@@ -0,0 +1,213 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare, 2018.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.italiangrid.storm.webdav.test.server;
+
+import static java.util.Collections.singletonList;
+import static org.hamcrest.CoreMatchers.is;
+import static org.italiangrid.storm.webdav.server.ResolvedResource.RESOLVED_RESOURCE_ATTRIBUTE_NAME;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.italiangrid.storm.webdav.config.StorageAreaConfiguration;
+import org.italiangrid.storm.webdav.config.StorageAreaInfo;
+import org.italiangrid.storm.webdav.server.PathResolver;
+import org.italiangrid.storm.webdav.server.ResolvedResource;
+import org.italiangrid.storm.webdav.server.servlet.RequestMetricsFilter;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import com.codahale.metrics.MetricRegistry;
+
+@RunWith(MockitoJUnitRunner.class)
+public class RequestMetricsFilterTest {
+
+  @Mock
+  StorageAreaConfiguration saConfig;
+
+  @Mock
+  StorageAreaInfo sa;
+
+  @Mock
+  PathResolver resolver;
+
+  @Mock
+  HttpServletResponse response;
+
+  @Mock
+  FilterChain chain;
+
+  MetricRegistry registry = new MetricRegistry();
+
+  RequestMetricsFilter filter;
+
+  @Before
+  public void setup() {
+    when(sa.name()).thenReturn("test");
+    when(saConfig.getStorageAreaInfo()).thenReturn(singletonList(sa));
+    filter = new RequestMetricsFilter(saConfig, registry);
+  }
+
+  HttpServletRequest storageAreaRequest(String method) {
+    HttpServletRequest req = mock(HttpServletRequest.class);
+    when(req.getMethod()).thenReturn(method);
+    when(resolver.resolveStorageArea("/test/file")).thenReturn(sa);
+    when(req.getAttribute(RESOLVED_RESOURCE_ATTRIBUTE_NAME))
+      .thenReturn(new ResolvedResource(resolver, "/test/file"));
+    return req;
+  }
+
+  long requests(String method) {
+    return registry.timer(RequestMetricsFilter.metricName("test", "methods", method, "requests"))
+      .getCount();
+  }
+
+  long meter(String method, String... names) {
+    return registry
+      .meter(MetricRegistry.name(RequestMetricsFilter.metricName("test", "methods", method),
+          names))
+      .getCount();
+  }
+
+  long sizeClass(String sizeClass) {
+    return registry
+      .timer(RequestMetricsFilter.metricName("test", "size-classes", sizeClass, "requests"))
+      .getCount();
+  }
+
+  @Test
+  public void testRequestIsRecordedPerMethod() throws IOException, ServletException {
+    HttpServletRequest req = storageAreaRequest("PUT");
+    when(req.getContentLengthLong()).thenReturn(2048L);
+    when(response.getStatus()).thenReturn(201);
+
+    filter.doFilter(req, response, chain);
+
+    verify(chain).doFilter(req, response);
+    assertThat(requests("PUT"), is(1L));
+    assertThat(meter("PUT", "bytes-in"), is(2048L));
+    assertThat(meter("PUT", "bytes-out"), is(0L));
+    assertThat(meter("PUT", "statuses", "2xx", "responses"), is(1L));
+    assertThat(sizeClass("small"), is(1L));
+  }
+
+  @Test
+  public void testErrorsAreRecordedByStatusClass() throws IOException, ServletException {
+    HttpServletRequest req = storageAreaRequest("GET");
+    when(response.getStatus()).thenReturn(404, 500);
+
+    filter.doFilter(req, response, chain);
+    filter.doFilter(req, response, chain);
+
+    assertThat(requests("GET"), is(2L));
+    assertThat(meter("GET", "statuses", "4xx", "responses"), is(1L));
+    assertThat(meter("GET", "statuses", "5xx", "responses"), is(1L));
+    assertThat(meter("GET", "statuses", "2xx", "responses"), is(0L));
+  }
+
+  @Test
+  public void testFailedRequestIsRecordedAsServerError() throws IOException, ServletException {
+    HttpServletRequest req = storageAreaRequest("GET");
+    doThrow(new IOException("broken")).when(chain).doFilter(req, response);
+
+    try {
+      filter.doFilter(req, response, chain);
+      fail("Expected IOException");
+    } catch (IOException e) {
+      assertThat(e.getMessage(), is("broken"));
+    }
+
+    assertThat(requests("GET"), is(1L));
+    assertThat(meter("GET", "statuses", "5xx", "responses"), is(1L));
+    assertThat(meter("GET", "statuses", "2xx", "responses"), is(0L));
+  }
+
+  @Test
+  public void testResponseSizeClass() throws IOException, ServletException {
+    HttpServletRequest req = storageAreaRequest("GET");
+    when(response.getStatus()).thenReturn(200);
+    when(response.getHeader("Content-Length")).thenReturn(String.valueOf(200L * 1024 * 1024));
+
+    filter.doFilter(req, response, chain);
+
+    assertThat(meter("GET", "bytes-out"), is(200L * 1024 * 1024));
+    assertThat(sizeClass("large"), is(1L));
+    assertThat(sizeClass("small"), is(0L));
+  }
+
+  @Test
+  public void testUnknownMethodsAreGrouped() throws IOException, ServletException {
+    when(response.getStatus()).thenReturn(405);
+
+    filter.doFilter(storageAreaRequest("FOO"), response, chain);
+    filter.doFilter(storageAreaRequest("BAR"), response, chain);
+
+    assertThat(requests(RequestMetricsFilter.OTHER_METHOD), is(2L));
+    assertThat(registry.getTimers().containsKey(
+        RequestMetricsFilter.metricName("test", "methods", "FOO", "requests")), is(false));
+  }
+
+  @Test
+  public void testRequestsOutsideStorageAreasAreNotRecorded()
+      throws IOException, ServletException {
+    HttpServletRequest req = mock(HttpServletRequest.class);
+    when(resolver.resolveStorageArea("/other/file")).thenReturn(null);
+    when(req.getAttribute(RESOLVED_RESOURCE_ATTRIBUTE_NAME))
+      .thenReturn(new ResolvedResource(resolver, "/other/file"));
+
+    filter.doFilter(req, response, chain);
+
+    verify(chain).doFilter(req, response);
+    assertThat(registry.getMeters().isEmpty(), is(true));
+  }
+
+  @Test
+  public void testAsyncRequestIsRecordedOnCompletion() throws IOException, ServletException {
+    HttpServletRequest req = storageAreaRequest("GET");
+    AsyncContext asyncContext = mock(AsyncContext.class);
+    when(req.isAsyncStarted()).thenReturn(true);
+    when(req.getAsyncContext()).thenReturn(asyncContext);
+    when(response.getStatus()).thenReturn(200);
+
+    filter.doFilter(req, response, chain);
+
+    assertThat(requests("GET"), is(0L));
+
+    ArgumentCaptor<AsyncListener> listener = ArgumentCaptor.forClass(AsyncListener.class);
+    verify(asyncContext).addListener(listener.capture());
+    listener.getValue().onComplete(mock(AsyncEvent.class));
+
+    assertThat(requests("GET"), is(1L));
+    assertThat(meter("GET", "statuses", "2xx", "responses"), is(1L));
+  }
+}
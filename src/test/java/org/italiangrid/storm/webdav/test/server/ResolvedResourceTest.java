@@ -0,0 +1,123 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare, 2018.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.italiangrid.storm.webdav.test.server;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.italiangrid.storm.webdav.server.ResolvedResource.RESOLVED_RESOURCE_ATTRIBUTE_NAME;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import javax.servlet.http.HttpServletRequest;
+
+import org.italiangrid.storm.webdav.fs.attrs.ExtendedAttributesHelper;
+import org.italiangrid.storm.webdav.server.PathResolver;
+import org.italiangrid.storm.webdav.server.ResolvedResource;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+@RunWith(MockitoJUnitRunner.class)
+public class ResolvedResourceTest {
+
+  @Rule
+  public TemporaryFolder storage = new TemporaryFolder();
+
+  @Mock
+  PathResolver resolver;
+
+  @Mock
+  ExtendedAttributesHelper attrsHelper;
+
+  @Mock
+  HttpServletRequest request;
+
+  @Test
+  public void testResolutionIsStoredInRequest() {
+    when(request.getServletPath()).thenReturn("/test");
+    when(request.getPathInfo()).thenReturn("/file");
+
+    ResolvedResource resource = ResolvedResource.forRequest(request, resolver);
+
+    assertThat(resource.getPathInContext(), is("/test/file"));
+    verify(request).setAttribute(RESOLVED_RESOURCE_ATTRIBUTE_NAME, resource);
+  }
+
+  @Test
+  public void testNullPathInfoIsNotRenderedInPath() {
+    when(request.getServletPath()).thenReturn("/test");
+
+    assertThat(ResolvedResource.pathInContext(request), is("/test"));
+  }
+
+  @Test
+  public void testUnresolvedPathDoesNotExist() {
+    when(resolver.resolvePath("/unknown/file")).thenReturn(null);
+
+    ResolvedResource resource = new ResolvedResource(resolver, "/unknown/file");
+
+    assertThat(resource.getResolvedPath(), nullValue());
+    assertThat(resource.exists(), is(false));
+    assertThat(resource.isDirectory(), is(false));
+  }
+
+  @Test
+  public void testResolutionAndChecksumAreComputedOnce() throws IOException {
+    Path file = storage.getRoot().toPath().resolve("file");
+    Files.write(file, "content".getBytes(StandardCharsets.UTF_8));
+
+    when(resolver.resolvePath("/test/file")).thenReturn(file.toString());
+    when(attrsHelper.getChecksumAttribute(file.toFile())).thenReturn("01230123");
+
+    ResolvedResource resource = new ResolvedResource(resolver, "/test/file");
+
+    assertThat(resource.exists(), is(true));
+    assertThat(resource.isRegularFile(), is(true));
+    assertThat(resource.isDirectory(), is(false));
+    assertThat(resource.getChecksumAttribute(attrsHelper), is("01230123"));
+    assertThat(resource.getChecksumAttribute(attrsHelper), is("01230123"));
+
+    verify(resolver, times(1)).resolvePath("/test/file");
+    verify(attrsHelper, times(1)).getChecksumAttribute(file.toFile());
+  }
+
+  @Test
+  public void testInvalidateReloadsAttributes() throws IOException {
+    Path file = storage.getRoot().toPath().resolve("file");
+
+    when(resolver.resolvePath("/test/file")).thenReturn(file.toString());
+
+    ResolvedResource resource = new ResolvedResource(resolver, "/test/file");
+    assertThat(resource.exists(), is(false));
+
+    Files.createFile(file);
+    assertThat(resource.exists(), is(false));
+
+    resource.invalidate();
+    assertThat(resource.exists(), is(true));
+    verify(resolver, times(1)).resolvePath("/test/file");
+  }
+}
@@ -0,0 +1,236 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare, 2018.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.italiangrid.storm.webdav.test.server;
+
+import static java.util.Collections.singletonList;
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.italiangrid.storm.webdav.server.tracing.OtlpHttpSpanExporter;
+import org.italiangrid.storm.webdav.server.tracing.Span;
+import org.italiangrid.storm.webdav.server.tracing.Tracer;
+import org.italiangrid.storm.webdav.server.tracing.TracingFilter;
+import org.junit.After;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+public class TracingTest {
+
+  static final String TRACE_ID = "4bf92f3577b34da6a3ce929d0e0e4736";
+  static final String PARENT_ID = "00f067aa0ba902b7";
+
+  final List<Span> exported = new CopyOnWriteArrayList<>();
+
+  @After
+  public void cleanup() {
+    Tracer.disabled().clearCurrentSpan();
+  }
+
+  @Test
+  public void disabledTracerDoesNotTrace() {
+    Span root = Tracer.disabled().startRootSpan("HTTP GET", null);
+
+    assertThat(root, sameInstance(Span.NOOP));
+    assertThat(Span.current(), sameInstance(Span.NOOP));
+    assertThat(Span.start("authz"), sameInstance(Span.NOOP));
+    assertThat(Span.NOOP.traceparent(), nullValue());
+  }
+
+  @Test
+  public void requestsAreSampledWithTheConfiguredRatio() {
+    assertThat(new Tracer(0, exported::add).startRootSpan("HTTP GET", null),
+        sameInstance(Span.NOOP));
+
+    Span root = new Tracer(1, exported::add).startRootSpan("HTTP GET", null);
+    assertThat(root.isSampled(), is(true));
+    assertThat(root.getParentSpanId(), is(0L));
+    assertThat(Span.current(), sameInstance(root));
+  }
+
+  @Test
+  public void trustedTraceparentDecidesSampling() {
+    Tracer tracer = new Tracer(0, true, exported::add);
+
+    Span root =
+        tracer.startRootSpan("HTTP GET", String.format("00-%s-%s-01", TRACE_ID, PARENT_ID));
+
+    assertThat(root.isSampled(), is(true));
+    assertThat(root.getParentSpanId(), is(Long.parseLong(PARENT_ID, 16)));
+    assertThat(root.traceparent(), containsString("00-" + TRACE_ID + "-"));
+    assertThat(root.traceparent(), not(containsString(PARENT_ID)));
+    assertThat(root.traceparent().length(), is(55));
+
+    tracer.clearCurrentSpan();
+
+    tracer = new Tracer(1, true, exported::add);
+    assertThat(
+        tracer.startRootSpan("HTTP GET", String.format("00-%s-%s-00", TRACE_ID, PARENT_ID)),
+        sameInstance(Span.NOOP));
+  }
+
+  @Test
+  public void untrustedTraceparentDoesNotBypassTheSamplingRatio() {
+    Tracer tracer = new Tracer(0, exported::add);
+
+    for (int i = 0; i < 100; i++) {
+      assertThat(
+          tracer.startRootSpan("HTTP GET", String.format("00-%s-%s-01", TRACE_ID, PARENT_ID)),
+          sameInstance(Span.NOOP));
+    }
+
+    tracer = new Tracer(1, exported::add);
+    Span root =
+        tracer.startRootSpan("HTTP GET", String.format("00-%s-%s-00", TRACE_ID, PARENT_ID));
+
+    assertThat(root.isSampled(), is(true));
+    assertThat(root.getParentSpanId(), is(Long.parseLong(PARENT_ID, 16)));
+    assertThat(root.traceparent(), containsString("00-" + TRACE_ID + "-"));
+  }
+
+  @Test
+  public void invalidTraceparentIsIgnored() {
+    Tracer tracer = new Tracer(1, exported::add);
+
+    Span root = tracer.startRootSpan("HTTP GET", "00-not-a-valid-traceparent");
+    assertThat(root.isSampled(), is(true));
+    assertThat(root.getParentSpanId(), is(0L));
+
+    tracer.clearCurrentSpan();
+
+    root = tracer.startRootSpan("HTTP GET",
+        String.format("00-%s-%s-01", "00000000000000000000000000000000", PARENT_ID));
+    assertThat(root.getParentSpanId(), is(0L));
+  }
+
+  @Test
+  public void childSpansAreLinkedToTheirParent() {
+    Span root = new Tracer(1, exported::add).startRootSpan("HTTP PUT", null);
+
+    try (Span milton = Span.start("milton")) {
+      assertThat(Span.current(), sameInstance(milton));
+      Span.record("fs.open", System.nanoTime());
+
+      assertThat(milton.getTraceIdHigh(), is(root.getTraceIdHigh()));
+      assertThat(milton.getTraceIdLow(), is(root.getTraceIdLow()));
+      assertThat(milton.getParentSpanId(), is(root.getSpanId()));
+    }
+
+    assertThat(Span.current(), sameInstance(root));
+    root.close();
+    root.close();
+
+    assertThat(Span.current(), sameInstance(Span.NOOP));
+    assertThat(exported.size(), is(3));
+    assertThat(exported.get(0).getName(), is("fs.open"));
+    assertThat(exported.get(0).getParentSpanId(), is(exported.get(1).getSpanId()));
+    assertThat(exported.get(1).getName(), is("milton"));
+    assertThat(exported.get(2), sameInstance(root));
+  }
+
+  @Test
+  public void spansAreRenderedAsOtlpJson() {
+    Tracer tracer = new Tracer(0, true, exported::add);
+    Span root =
+        tracer.startRootSpan("HTTP GET", String.format("00-%s-%s-01", TRACE_ID, PARENT_ID));
+
+    root.setAttribute("http.target", "/test/\"file\"")
+      .setAttribute("http.status_code", 500)
+      .setError(true)
+      .close();
+
+    String json = OtlpHttpSpanExporter.toJson(singletonList(root));
+
+    assertThat(json, containsString("\"resourceSpans\":[{\"resource\":{\"attributes\":"
+        + "[{\"key\":\"service.name\",\"value\":{\"stringValue\":\"storm-webdav\"}}]}"));
+    assertThat(json, containsString("\"traceId\":\"" + TRACE_ID + "\""));
+    assertThat(json, containsString("\"parentSpanId\":\"" + PARENT_ID + "\""));
+    assertThat(json, containsString("\"name\":\"HTTP GET\",\"kind\":2"));
+    assertThat(json, containsString(
+        "{\"key\":\"http.target\",\"value\":{\"stringValue\":\"/test/\\\"file\\\"\"}}"));
+    assertThat(json,
+        containsString("{\"key\":\"http.status_code\",\"value\":{\"intValue\":\"500\"}}"));
+    assertThat(json, containsString("\"status\":{\"code\":2}"));
+  }
+
+  @Test
+  public void asyncRequestSpanEndsOnCompletion() throws IOException, ServletException {
+    HttpServletRequest req = mock(HttpServletRequest.class);
+    HttpServletResponse res = mock(HttpServletResponse.class);
+    AsyncContext asyncContext = mock(AsyncContext.class);
+    when(req.getMethod()).thenReturn("GET");
+    when(req.isAsyncStarted()).thenReturn(true);
+    when(req.getAsyncContext()).thenReturn(asyncContext);
+    when(res.getStatus()).thenReturn(200);
+
+    new TracingFilter(new Tracer(1, exported::add)).doFilter(req, res, mock(FilterChain.class));
+
+    assertThat(exported.isEmpty(), is(true));
+    assertThat(Span.current(), sameInstance(Span.NOOP));
+
+    ArgumentCaptor<AsyncListener> listener = ArgumentCaptor.forClass(AsyncListener.class);
+    verify(asyncContext).addListener(listener.capture());
+    listener.getValue().onTimeout(mock(AsyncEvent.class));
+    listener.getValue().onComplete(mock(AsyncEvent.class));
+
+    assertThat(exported.size(), is(1));
+    assertThat(exported.get(0).getName(), is("HTTP GET"));
+    assertThat(exported.get(0).isError(), is(true));
+  }
+
+  @Test
+  public void failedRequestSpanReportsAServerError() throws IOException, ServletException {
+    HttpServletRequest req = mock(HttpServletRequest.class);
+    HttpServletResponse res = mock(HttpServletResponse.class);
+    FilterChain chain = mock(FilterChain.class);
+    when(req.getMethod()).thenReturn("PUT");
+    when(res.getStatus()).thenReturn(200);
+    doThrow(new IllegalStateException("boom")).when(chain).doFilter(any(), any());
+
+    try {
+      new TracingFilter(new Tracer(1, exported::add)).doFilter(req, res, chain);
+      fail("Expected the exception to propagate");
+    } catch (IllegalStateException e) {
+      // expected
+    }
+
+    assertThat(exported.size(), is(1));
+    List<Object> attributes = exported.get(0).getAttributes();
+    assertThat(attributes.get(attributes.indexOf("http.status_code") + 1), is(500L));
+    assertThat(exported.get(0).isError(), is(true));
+  }
+}
@@ -0,0 +1,167 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare, 2018.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.italiangrid.storm.webdav.test.server;
+
+import static com.codahale.metrics.MetricRegistry.name;
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assume.assumeFalse;
+import static org.junit.Assume.assumeTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jetty.util.thread.ThreadPool;
+import org.italiangrid.storm.webdav.config.ServiceConfiguration;
+import org.italiangrid.storm.webdav.config.ServiceConfiguration.ThreadMode;
+import org.italiangrid.storm.webdav.config.StorageAreaConfiguration;
+import org.italiangrid.storm.webdav.server.JettyWebServerFactory;
+import org.italiangrid.storm.webdav.server.VirtualThreadPool;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.codahale.metrics.MetricRegistry;
+
+public class VirtualThreadPoolTest {
+
+  MetricRegistry registry;
+
+  ServiceConfiguration serviceConfig;
+
+  static boolean jvmHasVirtualThreads() {
+    try {
+      Thread.class.getMethod("ofVirtual");
+      return true;
+    } catch (NoSuchMethodException e) {
+      return false;
+    }
+  }
+
+  @Before
+  public void setup() {
+    registry = new MetricRegistry();
+    serviceConfig = mock(ServiceConfiguration.class);
+    when(serviceConfig.getHTTPPort()).thenReturn(8085);
+    when(serviceConfig.getMaxConnections()).thenReturn(10);
+    when(serviceConfig.getMaxQueueSize()).thenReturn(10);
+    when(serviceConfig.getThreadMode()).thenReturn(ThreadMode.VIRTUAL);
+  }
+
+  private ThreadPool threadPoolFor(ServiceConfiguration config) {
+    return new JettyWebServerFactory(config, mock(StorageAreaConfiguration.class), registry)
+      .getThreadPool();
+  }
+
+  private Object threadModeGauge() {
+    return registry.getGauges()
+      .get(name(JettyWebServerFactory.HTTP_CONNECTOR_NAME, "thread-mode"))
+      .getValue();
+  }
+
+  private Object busyThreadsGauge() {
+    return registry.getGauges()
+      .get(name(JettyWebServerFactory.HTTP_CONNECTOR_NAME, "threads", "busy"))
+      .getValue();
+  }
+
+  @Test
+  public void testSupportMatchesJvm() {
+    assertThat(VirtualThreadPool.isSupported(), is(jvmHasVirtualThreads()));
+  }
+
+  @Test(expected = UnsupportedOperationException.class)
+  public void testPoolCannotBeCreatedWithoutVirtualThreads() {
+    assumeFalse(jvmHasVirtualThreads());
+    new VirtualThreadPool("test", registry);
+  }
+
+  @Test
+  public void testFactoryFallsBackToPlatformThreads() {
+    assumeFalse(jvmHasVirtualThreads());
+
+    assertThat(threadPoolFor(serviceConfig), not(instanceOf(VirtualThreadPool.class)));
+    assertThat(threadModeGauge(), is("PLATFORM"));
+  }
+
+  @Test
+  public void testPlatformModeUsesPlatformThreads() {
+    when(serviceConfig.getThreadMode()).thenReturn(ThreadMode.PLATFORM);
+
+    assertThat(threadPoolFor(serviceConfig), not(instanceOf(VirtualThreadPool.class)));
+    assertThat(threadModeGauge(), is("PLATFORM"));
+    assertThat(busyThreadsGauge(), is(0));
+  }
+
+  @Test
+  public void testFactoryUsesVirtualThreadsWhenSupported() {
+    assumeTrue(jvmHasVirtualThreads());
+
+    assertThat(threadPoolFor(serviceConfig), instanceOf(VirtualThreadPool.class));
+    assertThat(threadModeGauge(), is("VIRTUAL"));
+    assertThat(busyThreadsGauge(), is(0));
+  }
+
+  @Test
+  public void testBusyThreadsGaugeTracksRunningTasks() throws Exception {
+    assumeTrue(jvmHasVirtualThreads());
+
+    ThreadPool pool = threadPoolFor(serviceConfig);
+    ((VirtualThreadPool) pool).start();
+
+    try {
+      CountDownLatch started = new CountDownLatch(1);
+      CountDownLatch release = new CountDownLatch(1);
+      pool.execute(() -> {
+        started.countDown();
+        try {
+          release.await();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      });
+
+      assertThat(started.await(5, TimeUnit.SECONDS), is(true));
+      assertThat(busyThreadsGauge(), is(1));
+      release.countDown();
+    } finally {
+      ((VirtualThreadPool) pool).stop();
+    }
+  }
+
+  @Test
+  public void testVirtualThreadPoolRunsTasks() throws Exception {
+    assumeTrue(jvmHasVirtualThreads());
+
+    VirtualThreadPool pool = new VirtualThreadPool("test", registry);
+    pool.start();
+
+    try {
+      CountDownLatch done = new CountDownLatch(10);
+      for (int i = 0; i < 10; i++) {
+        pool.execute(done::countDown);
+      }
+
+      assertThat(done.await(5, TimeUnit.SECONDS), is(true));
+      assertThat(registry.meter(name("test", "virtual-threads", "started")).getCount(), is(10L));
+    } finally {
+      pool.stop();
+    }
+  }
+}
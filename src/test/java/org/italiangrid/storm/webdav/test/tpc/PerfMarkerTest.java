@@ -0,0 +1,90 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare, 2018.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.italiangrid.storm.webdav.test.tpc;
+
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.net.InetAddress;
+
+import org.italiangrid.storm.webdav.tpc.transfer.PerfMarkerWriter;
+import org.italiangrid.storm.webdav.tpc.transfer.TransferStatus;
+import org.junit.Test;
+
+public class PerfMarkerTest {
+
+  @Test
+  public void testLegacyPerfMarkerFormat() {
+    String marker = TransferStatus.inProgress(1024).asPerfMarker();
+
+    assertThat(marker, containsString("Perf Marker\n"));
+    assertThat(marker, containsString("Stripe Index: 0\n"));
+    assertThat(marker, containsString("Stripe Bytes Transferred: 1024\n"));
+    assertThat(marker, containsString("Total Stripe Count: 1\n"));
+    assertThat(marker, not(containsString("Stripe Transfer Rate")));
+    assertThat(marker, not(containsString("RemoteConnections")));
+    assertThat(marker.endsWith("End\n"), is(true));
+  }
+
+  @Test
+  public void testFinalMarkers() {
+    assertThat(TransferStatus.done(10).asPerfMarker(), is("success: Created"));
+    assertThat(TransferStatus.error("ouch").asPerfMarker(), is("failure: ouch"));
+  }
+
+  @Test
+  public void testWriterAddsRateAndRemoteConnections() throws IOException {
+    PerfMarkerWriter writer = new PerfMarkerWriter();
+
+    StringWriter out = new StringWriter();
+    writer.write(TransferStatus.inProgress(2048, 512).withRemoteConnections("tcp:192.0.2.1:443"),
+        out);
+    writer.write(TransferStatus.inProgress(4096, 1024).withRemoteConnections("tcp:192.0.2.1:443"),
+        out);
+
+    String markers = out.toString();
+    assertThat(markers, containsString("Stripe Bytes Transferred: 2048\n"));
+    assertThat(markers, containsString("Stripe Transfer Rate: 512\n"));
+    assertThat(markers, containsString("Stripe Bytes Transferred: 4096\n"));
+    assertThat(markers, containsString("Stripe Transfer Rate: 1024\n"));
+    assertThat(markers, containsString("RemoteConnections: tcp:192.0.2.1:443\n"));
+  }
+
+  @Test
+  public void testRemoteConnectionsOmittedWhenUnknown() throws IOException {
+    StringWriter out = new StringWriter();
+    new PerfMarkerWriter().write(TransferStatus.inProgress(2048, 512).withRemoteConnections(null),
+        out);
+
+    assertThat(out.toString(), not(containsString("RemoteConnections")));
+  }
+
+  @Test
+  public void testRemoteConnectionsUsesPeerAddress() throws IOException {
+    assertThat(
+        PerfMarkerWriter.remoteConnectionsString(InetAddress.getByName("192.0.2.1"), 8443),
+        is("tcp:192.0.2.1:8443"));
+    assertThat(
+        PerfMarkerWriter.remoteConnectionsString(InetAddress.getByName("2001:db8::1"), 443),
+        is("tcp:[2001:db8:0:0:0:0:0:1]:443"));
+    assertThat(PerfMarkerWriter.remoteConnectionsString(null, 443), nullValue());
+  }
+}
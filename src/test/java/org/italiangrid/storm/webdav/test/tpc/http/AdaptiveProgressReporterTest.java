@@ -0,0 +1,152 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare, 2018.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.italiangrid.storm.webdav.test.tpc.http;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.italiangrid.storm.webdav.tpc.http.AdaptiveProgressReporter;
+import org.italiangrid.storm.webdav.tpc.transfer.TransferStatus;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+@RunWith(MockitoJUnitRunner.class)
+public class AdaptiveProgressReporterTest {
+
+  public static final long MIN_DELAY_MSEC = 100;
+  public static final long MAX_DELAY_MSEC = 800;
+  public static final long CHUNK_SIZE = 1024 * 1024;
+
+  @Mock
+  ScheduledExecutorService es;
+
+  final AtomicLong count = new AtomicLong();
+  final List<TransferStatus> statuses = new CopyOnWriteArrayList<>();
+
+  AdaptiveProgressReporter reporter(boolean adaptive, long expectedSize) {
+    return new AdaptiveProgressReporter(es, count::get, statuses::add, MIN_DELAY_MSEC,
+        MAX_DELAY_MSEC, adaptive, expectedSize);
+  }
+
+  void progressAndRun(AdaptiveProgressReporter reporter) {
+    count.addAndGet(CHUNK_SIZE);
+    reporter.run();
+  }
+
+  @Test
+  public void testInitialMarkerIsSentWhenNotSuppressed() {
+    AdaptiveProgressReporter reporter = reporter(true, -1);
+    reporter.start(true);
+
+    assertThat(statuses.size(), is(1));
+    assertThat(statuses.get(0).getTransferByteCount(), is(0L));
+    verify(es).schedule(reporter, MIN_DELAY_MSEC, MILLISECONDS);
+  }
+
+  @Test
+  public void testSubSecondTransferSendsNoMarkerWhenSuppressed() {
+    AdaptiveProgressReporter reporter = reporter(true, -1);
+    reporter.start(false);
+
+    count.set(CHUNK_SIZE);
+    reporter.cancel();
+    reporter.run();
+
+    assertThat(statuses.isEmpty(), is(true));
+    verify(es).schedule(reporter, MIN_DELAY_MSEC, MILLISECONDS);
+  }
+
+  @Test
+  public void testDelayDoublesWhileTransferProgresses() {
+    AdaptiveProgressReporter reporter = reporter(true, -1);
+    reporter.start(false);
+
+    progressAndRun(reporter);
+    assertThat(reporter.getCurrentDelayMsec(), is(200L));
+
+    progressAndRun(reporter);
+    assertThat(reporter.getCurrentDelayMsec(), is(400L));
+
+    progressAndRun(reporter);
+    assertThat(reporter.getCurrentDelayMsec(), is(MAX_DELAY_MSEC));
+
+    progressAndRun(reporter);
+    assertThat(reporter.getCurrentDelayMsec(), is(MAX_DELAY_MSEC));
+
+    assertThat(statuses.size(), is(4));
+    assertThat(statuses.get(3).getTransferByteCount(), is(4 * CHUNK_SIZE));
+    verify(es).schedule(reporter, 400L, MILLISECONDS);
+  }
+
+  @Test
+  public void testDelayResetsWhenTransferStalls() {
+    AdaptiveProgressReporter reporter = reporter(true, -1);
+    reporter.start(false);
+
+    progressAndRun(reporter);
+    progressAndRun(reporter);
+    assertThat(reporter.getCurrentDelayMsec(), is(400L));
+
+    reporter.run();
+    assertThat(reporter.getCurrentDelayMsec(), is(MIN_DELAY_MSEC));
+    assertThat(statuses.get(2).getInstantaneousRate(), is(0L));
+  }
+
+  @Test
+  public void testDelayIsFixedWhenNotAdaptive() {
+    AdaptiveProgressReporter reporter = reporter(false, -1);
+    reporter.start(false);
+
+    progressAndRun(reporter);
+    progressAndRun(reporter);
+
+    assertThat(reporter.getCurrentDelayMsec(), is(MIN_DELAY_MSEC));
+    verify(es, times(3)).schedule(reporter, MIN_DELAY_MSEC, MILLISECONDS);
+  }
+
+  @Test
+  public void testDelayDoesNotPassExpectedEndOfTransfer() {
+    AdaptiveProgressReporter reporter = reporter(true, CHUNK_SIZE + 1);
+    reporter.start(false);
+
+    progressAndRun(reporter);
+
+    assertThat(reporter.getCurrentDelayMsec(), is(MIN_DELAY_MSEC));
+  }
+
+  @Test
+  public void testCancelledReporterIsNotRescheduled() {
+    AdaptiveProgressReporter reporter = reporter(true, -1);
+    reporter.start(false);
+    reporter.cancel();
+
+    progressAndRun(reporter);
+
+    assertThat(statuses.isEmpty(), is(true));
+    verify(es, never()).schedule(reporter, 200L, MILLISECONDS);
+  }
+}
@@ -50,7 +50,7 @@ public class ClientTest extends ClientTestSupport {
   public void setup() throws IOException {
 
     super.setup();
-    when(es.scheduleAtFixedRate(Mockito.any(), Mockito.anyLong(), Mockito.anyLong(), Mockito.any()))
+    when(es.schedule(Mockito.any(Runnable.class), Mockito.anyLong(), Mockito.any()))
       .thenReturn(sf);
     when(req.remoteURI()).thenReturn(HTTP_URI_URI);
     when(req.path()).thenReturn(LOCAL_PATH);
@@ -73,7 +73,7 @@ public class ClientTest extends ClientTestSupport {
     });
 
     verify(httpClient).execute(getRequest.capture(),
-        ArgumentMatchers.<ResponseHandler<Boolean>>any());
+        ArgumentMatchers.<ResponseHandler<Boolean>>any(), ArgumentMatchers.any());
 
     HttpGet httpGetReq = getRequest.getValue();
 
@@ -91,7 +91,7 @@ public class ClientTest extends ClientTestSupport {
     });
 
     verify(httpClient).execute(getRequest.capture(),
-        ArgumentMatchers.<ResponseHandler<Boolean>>any());
+        ArgumentMatchers.<ResponseHandler<Boolean>>any(), ArgumentMatchers.any());
 
     HttpGet httpGetReq = getRequest.getValue();
 
@@ -0,0 +1,227 @@
+/**
+ * Copyright (c) Istituto Nazionale di Fisica Nucleare, 2018.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.italiangrid.storm.webdav.test.tpc.local;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Optional;
+import java.util.concurrent.ScheduledExecutorService;
+
+import org.italiangrid.storm.webdav.config.StorageAreaInfo;
+import org.italiangrid.storm.webdav.config.ThirdPartyCopyProperties;
+import org.italiangrid.storm.webdav.fs.LocalCopyEngine;
+import org.italiangrid.storm.webdav.fs.attrs.ExtendedAttributesHelper;
+import org.italiangrid.storm.webdav.server.PathResolver;
+import org.italiangrid.storm.webdav.tpc.StaticPeerListLocalCopyURLService;
+import org.italiangrid.storm.webdav.tpc.local.LocalCopyTransferClient;
+import org.italiangrid.storm.webdav.tpc.local.LocalCopyTransferClient.PathAuthorizer;
+import org.italiangrid.storm.webdav.tpc.transfer.GetTransferRequest;
+import org.italiangrid.storm.webdav.tpc.transfer.PutTransferRequest;
+import org.italiangrid.storm.webdav.tpc.transfer.TransferClient;
+import org.italiangrid.storm.webdav.tpc.transfer.TransferStatus;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+@RunWith(MockitoJUnitRunner.class)
+public class LocalCopyTest {
+
+  public static final String PEER_URI = "https://peer.storm.example/test/source";
+  public static final String REMOTE_URI = "https://remote.example/test/source";
+  public static final String CHECKSUM_ATTR = "storm.checksum.adler32";
+
+  @Rule
+  public TemporaryFolder storage = new TemporaryFolder();
+
+  @Mock
+  PathResolver resolver;
+
+  @Mock
+  StorageAreaInfo sa;
+
+  @Mock
+  ExtendedAttributesHelper attributesHelper;
+
+  @Mock
+  ScheduledExecutorService es;
+
+  @Mock
+  TransferClient delegate;
+
+  @Mock
+  GetTransferRequest request;
+
+  @Mock
+  PutTransferRequest putRequest;
+
+  @Mock
+  PathAuthorizer authorizer;
+
+  StaticPeerListLocalCopyURLService urlService;
+
+  LocalCopyTransferClient client;
+
+  File saRoot;
+
+  @Before
+  public void setup() throws IOException {
+    saRoot = storage.newFolder("test");
+
+    urlService = new StaticPeerListLocalCopyURLService(Arrays.asList("storm.example"),
+        Arrays.asList("peer.storm.example"), resolver);
+
+    ThirdPartyCopyProperties props = new ThirdPartyCopyProperties();
+    props.setReportDelaySecs(1);
+
+    client = new LocalCopyTransferClient(delegate, urlService, authorizer, resolver,
+        new LocalCopyEngine(attributesHelper), es, props);
+  }
+
+  @Test
+  public void testUnknownHostIsNotResolved() {
+    assertThat(urlService.resolveLocalPath(URI.create(REMOTE_URI)), is(Optional.empty()));
+  }
+
+  @Test
+  public void testUnmountedStorageAreaIsNotResolved() {
+    when(resolver.resolveStorageArea("/test/source")).thenReturn(sa);
+    when(sa.rootPath()).thenReturn(new File(saRoot, "missing").getAbsolutePath());
+
+    assertThat(urlService.resolveLocalPath(URI.create(PEER_URI)), is(Optional.empty()));
+  }
+
+  @Test
+  public void testPeerUriIsResolved() {
+    String resolved = new File(saRoot, "source").getAbsolutePath();
+
+    when(resolver.resolveStorageArea("/test/source")).thenReturn(sa);
+    when(sa.rootPath()).thenReturn(saRoot.getAbsolutePath());
+    when(resolver.resolvePath("/test/source")).thenReturn(resolved);
+
+    assertThat(urlService.resolveLocalPath(URI.create(PEER_URI)), is(Optional.of(resolved)));
+  }
+
+  @Test
+  public void testRemoteTransferIsDelegated() throws IOException {
+    when(request.remoteURI()).thenReturn(URI.create(REMOTE_URI));
+
+    client.handle(request, (r, s) -> {
+    });
+
+    verify(delegate).handle(any(GetTransferRequest.class), any());
+  }
+
+  @Test
+  public void testPeerPullIsServedLocally() throws IOException {
+    Path source = saRoot.toPath().resolve("source");
+    Path destination = saRoot.toPath().resolve("destination");
+    Files.write(source, "local copy".getBytes(StandardCharsets.UTF_8));
+
+    when(request.remoteURI()).thenReturn(URI.create(PEER_URI));
+    when(request.path()).thenReturn("/test/destination");
+    when(authorizer.isAllowed(any(), eq("/test/source"), eq("GET"))).thenReturn(true);
+    when(resolver.resolveStorageArea("/test/source")).thenReturn(sa);
+    when(sa.rootPath()).thenReturn(saRoot.getAbsolutePath());
+    when(resolver.resolvePath("/test/source")).thenReturn(source.toString());
+    when(resolver.resolvePath("/test/destination")).thenReturn(destination.toString());
+    when(attributesHelper.fileSupportsExtendedAttributes(source.toFile())).thenReturn(true);
+    when(attributesHelper.getExtendedFileAttributeNames(source.toFile()))
+      .thenReturn(Arrays.asList(CHECKSUM_ATTR, "user.other"));
+    when(attributesHelper.getExtendedFileAttributeValue(source.toFile(), CHECKSUM_ATTR))
+      .thenReturn("1a2b3c");
+
+    ArgumentCaptor<TransferStatus> status = ArgumentCaptor.forClass(TransferStatus.class);
+    ArgumentCaptor<File> copy = ArgumentCaptor.forClass(File.class);
+
+    client.handle(request, (r, s) -> {
+    });
+
+    verify(delegate, never()).handle(any(GetTransferRequest.class), any());
+    verify(request).setTransferStatus(status.capture());
+    verify(attributesHelper).setExtendedFileAttribute(copy.capture(), eq(CHECKSUM_ATTR),
+        eq("1a2b3c"));
+    verify(attributesHelper, never()).getExtendedFileAttributeValue(source.toFile(),
+        "user.other");
+
+    assertThat(status.getValue().getStatus(), is(TransferStatus.Status.DONE));
+    assertThat(status.getValue().getTransferByteCount(), is(10L));
+    assertThat(new String(Files.readAllBytes(destination), StandardCharsets.UTF_8),
+        is("local copy"));
+    assertThat(copy.getValue().getParentFile(), is(saRoot));
+    assertThat(copy.getValue().exists(), is(false));
+  }
+
+  @Test
+  public void testUnauthorizedPeerPullFallsBackToHttp() throws IOException {
+    Path source = saRoot.toPath().resolve("source");
+    Files.write(source, "local copy".getBytes(StandardCharsets.UTF_8));
+
+    when(request.remoteURI()).thenReturn(URI.create(PEER_URI));
+    when(resolver.resolveStorageArea("/test/source")).thenReturn(sa);
+    when(sa.rootPath()).thenReturn(saRoot.getAbsolutePath());
+    when(resolver.resolvePath("/test/source")).thenReturn(source.toString());
+
+    client.handle(request, (r, s) -> {
+    });
+
+    verify(authorizer).isAllowed(any(), eq("/test/source"), eq("GET"));
+    verify(delegate).handle(eq(request), any());
+    assertThat(Files.exists(saRoot.toPath().resolve("destination")), is(false));
+  }
+
+  @Test
+  public void testUnauthorizedPeerPushFallsBackToHttp() throws IOException {
+    Path destination = saRoot.toPath().resolve("destination");
+
+    when(putRequest.remoteURI()).thenReturn(URI.create(PEER_URI));
+    when(resolver.resolveStorageArea("/test/source")).thenReturn(sa);
+    when(sa.rootPath()).thenReturn(saRoot.getAbsolutePath());
+    when(resolver.resolvePath("/test/source")).thenReturn(destination.toString());
+
+    client.handle(putRequest, (r, s) -> {
+    });
+
+    verify(authorizer).isAllowed(any(), eq("/test/source"), eq("PUT"));
+    verify(delegate).handle(eq(putRequest), any());
+    assertThat(Files.exists(destination), is(false));
+  }
+
+  @Test
+  public void testNoPeersConfigured() {
+    StaticPeerListLocalCopyURLService service = new StaticPeerListLocalCopyURLService(
+        Collections.emptyList(), Collections.emptyList(), resolver);
+    assertThat(service.resolveLocalPath(URI.create(PEER_URI)), is(Optional.empty()));
+  }
+}
@@ -24,12 +24,16 @@ import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 
+import org.italiangrid.storm.webdav.fs.SyscallTimers;
+import org.italiangrid.storm.webdav.fs.SyscallTimers.Syscall;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
 import org.junit.runner.RunWith;
 import org.junit.runners.JUnit4;
 
+import com.codahale.metrics.MetricRegistry;
+
 @RunWith(JUnit4.class)
 public class IOUtilsTest {
 
@@ -144,4 +148,16 @@ public class IOUtilsTest {
     }
   }
 
+  @Test
+  public void testFileOpenIsTimed() throws IOException {
+    File source = tempFileOfChar("source", 0, 16);
+    File dest = tempFileOfChar("dest", 1, 16);
+    SyscallTimers timers = new SyscallTimers(new MetricRegistry());
+
+    try (FileInputStream fisSrc = new FileInputStream(source)) {
+      assertThat(rangeCopy(fisSrc, dest, 0, 16, timers), is(16L));
+    }
+
+    assertThat(timers.timer(Syscall.OPEN).getCount(), is(1L));
+  }
 }